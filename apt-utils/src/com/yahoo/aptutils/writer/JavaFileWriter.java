@@ -225,6 +225,11 @@ public class JavaFileWriter {
         
         this.kind = typeDeclaration.getKind();
         writeModifierList(typeDeclaration.getModifiers());
+        if (!AptUtils.isEmpty(typeDeclaration.getPermittedSubclasses())) {
+            out.append("sealed ");
+        } else if (typeDeclaration.isNonSealed()) {
+            out.append("non-sealed ");
+        }
         out.append(typeDeclaration.getKind().name).append(" ").append(typeDeclaration.getClassName().getSimpleName());
         writeGenericsList(typeDeclaration.getClassName().getTypeArgs(), true);
 
@@ -245,6 +250,16 @@ public class JavaFileWriter {
                 }
             }
         }
+
+        if (!AptUtils.isEmpty(typeDeclaration.getPermittedSubclasses())) {
+            out.append(" permits ");
+            for (int i = 0; i < typeDeclaration.getPermittedSubclasses().size(); i++) {
+                out.append(shortenName(typeDeclaration.getPermittedSubclasses().get(i), false));
+                if (i < typeDeclaration.getPermittedSubclasses().size() - 1) {
+                    out.append(", ");
+                }
+            }
+        }
         out.append(" {\n\n");
         moveToScope(Scope.TYPE_DEFINITION);
         return this;
@@ -513,6 +528,22 @@ public class JavaFileWriter {
         return this;
     }
 
+    /**
+     * Writes an annotation with a single value, e.g. @Label("value")
+     *
+     * @param annotationClass
+     * @param value expression for the annotation's value element
+     * @return this
+     * @throws IOException if there was a problem writing to the file
+     */
+    public JavaFileWriter writeAnnotation(DeclaredTypeName annotationClass, Expression value) throws IOException {
+        indent();
+        out.append("@").append(shortenName(annotationClass, false)).append("(");
+        appendExpression(value);
+        out.append(")\n");
+        return this;
+    }
+
     /**
      * Similar to {@link #writeStatement(com.yahoo.aptutils.writer.expressions.Expression)}
      *
@@ -527,6 +558,52 @@ public class JavaFileWriter {
         return this;
     }
 
+    /**
+     * Begins a control flow block inside a method, e.g. "if (condition)", "for (int i = 0; i < n; i++)" or "try".
+     * Writes the control flow string followed by an opening brace and increases the indent level until
+     * {@link #endControlFlow()} is called.
+     *
+     * @param controlFlow the control flow statement to write, without the opening brace
+     * @return this
+     * @throws IOException if there was a problem writing to the file
+     */
+    public JavaFileWriter beginControlFlow(String controlFlow) throws IOException {
+        checkScope(Scope.METHOD_DEFINITION);
+        indent();
+        out.append(controlFlow).append(" {\n");
+        moveToScope(Scope.METHOD_DEFINITION);
+        return this;
+    }
+
+    /**
+     * Closes the current control flow block and begins another one on the same line, e.g. "else",
+     * "else if (condition)", "catch (Exception e)" or "finally"
+     *
+     * @param controlFlow the control flow statement to write, without the opening brace
+     * @return this
+     * @throws IOException if there was a problem writing to the file
+     */
+    public JavaFileWriter nextControlFlow(String controlFlow) throws IOException {
+        finishScope(Scope.METHOD_DEFINITION);
+        indent();
+        out.append("} ").append(controlFlow).append(" {\n");
+        moveToScope(Scope.METHOD_DEFINITION);
+        return this;
+    }
+
+    /**
+     * Ends a control flow block started by {@link #beginControlFlow(String)}
+     *
+     * @return this
+     * @throws IOException if there was a problem writing to the file
+     */
+    public JavaFileWriter endControlFlow() throws IOException {
+        finishScope(Scope.METHOD_DEFINITION);
+        indent();
+        out.append("}\n");
+        return this;
+    }
+
     /**
      * Directly appends the expression with no indenting
      *
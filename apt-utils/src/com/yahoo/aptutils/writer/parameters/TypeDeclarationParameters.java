@@ -38,6 +38,8 @@ public class TypeDeclarationParameters {
     private List<Modifier> modifiers;
     private DeclaredTypeName superclass;
     private List<? extends TypeName> interfaces;
+    private List<DeclaredTypeName> permittedSubclasses;
+    private boolean nonSealed;
     
     public DeclaredTypeName getClassName() {
         return className;
@@ -89,6 +91,28 @@ public class TypeDeclarationParameters {
         return this;
     }
 
-    
-    
+    public List<DeclaredTypeName> getPermittedSubclasses() {
+        return permittedSubclasses;
+    }
+
+    /**
+     * Declares the type sealed, permitting only the given subclasses (or implementations) to extend it
+     */
+    public TypeDeclarationParameters setPermittedSubclasses(List<DeclaredTypeName> permittedSubclasses) {
+        this.permittedSubclasses = permittedSubclasses;
+        return this;
+    }
+
+    public boolean isNonSealed() {
+        return nonSealed;
+    }
+
+    /**
+     * Declares the type non-sealed, as required of subclasses of sealed types that aren't final or sealed themselves
+     */
+    public TypeDeclarationParameters setNonSealed(boolean nonSealed) {
+        this.nonSealed = nonSealed;
+        return this;
+    }
+
 }
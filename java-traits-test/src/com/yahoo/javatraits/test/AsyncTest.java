@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitExecutors;
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncTest {
+
+    @SuppressWarnings("serial")
+    private static class RunnableNumber extends Number implements Runnable {
+        private final RuntimeException toThrow;
+
+        RunnableNumber(RuntimeException toThrow) {
+            this.toThrow = toThrow;
+        }
+
+        public void run() {
+            if (toThrow != null) {
+                throw toThrow;
+            }
+        }
+
+        public int intValue() {
+            return 0;
+        }
+
+        public long longValue() {
+            return 0;
+        }
+
+        public float floatValue() {
+            return 0;
+        }
+
+        public double doubleValue() {
+            return 0;
+        }
+    }
+
+    @Test
+    public void testAsyncVariants() throws Exception {
+        SomeClass<Number, Integer, String, Long> instance = new SomeClass<Number, Integer, String, Long>();
+        assertEquals(Integer.valueOf(0), instance.multiplyByTwoAndThenSomeWeirdOpAsync(1, 2).get());
+        assertNull(instance.transformAsync(1).get());
+        assertNull(instance.testIntersectionTypeAsync(new RunnableNumber(null)).get());
+    }
+
+    @Test
+    public void testExceptionsCompleteFuture() throws Exception {
+        SomeClass<Number, Integer, String, Long> instance = new SomeClass<Number, Integer, String, Long>();
+        IllegalStateException exception = new IllegalStateException();
+        try {
+            instance.testIntersectionTypeAsync(new RunnableNumber(exception)).get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() == exception);
+        }
+    }
+
+    @Test
+    public void testNamedExecutor() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        TraitExecutors.register("math", new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executed.incrementAndGet();
+                command.run();
+            }
+        });
+        try {
+            SomeClass<Number, Integer, String, Long> instance = new SomeClass<Number, Integer, String, Long>();
+            assertEquals(Integer.valueOf(4), instance.numberToIntAsync(4.5).get());
+            assertEquals(1, executed.get());
+        } finally {
+            TraitExecutors.unregister("math");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnregisteredExecutor() {
+        new SomeClass<Number, Integer, String, Long>().numberToIntAsync(4.5);
+    }
+}
@@ -18,10 +18,13 @@ package com.yahoo.javatraits.test;
 import com.yahoo.javatraits.test.traits.*;
 import org.junit.Test;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class BasicTraitsTest {
@@ -52,6 +55,25 @@ public class BasicTraitsTest {
         assertEquals(0, lyingRect.getVolumeWithHeight(3));
     }
     
+    @Test
+    public void testFinalForwarders() throws Exception {
+        Method getSampleCount = Thermometer.class.getSuperclass().getDeclaredMethod("getSampleCount");
+        assertTrue(Modifier.isFinal(getSampleCount.getModifiers()));
+
+        // Thermometer overrides getAverage(), so its forwarder must stay overridable
+        Method getAverage = Thermometer.class.getSuperclass().getDeclaredMethod("getAverage");
+        assertFalse(Modifier.isFinal(getAverage.getModifiers()));
+
+        Thermometer thermometer = new Thermometer();
+        thermometer.addSample(1);
+        thermometer.addSample(2);
+        thermometer.addSample(2);
+        assertEquals(1.7, thermometer.getAverage(), 0);
+
+        Method getArea = FootballField.class.getSuperclass().getDeclaredMethod("getArea");
+        assertFalse(Modifier.isFinal(getArea.getModifiers()));
+    }
+
     @Test
     public void testSuperclassSpecification() {
         assertTrue(instance instanceof HashMap<?, ?>);
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.CountingLookup;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchedTest {
+
+    @Test
+    public void testCallsAreCoalesced() throws Exception {
+        CountingLookup lookup = new CountingLookup();
+        List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(lookup.lookupBatched("key" + i));
+        }
+        for (int i = 0; i < 25; i++) {
+            assertEquals(Integer.valueOf(("key" + i).length()), futures.get(i).get());
+        }
+        assertEquals(3, lookup.getBulkCalls()); // Two full batches of 10 and one flushed by the timer
+        assertEquals(25, lookup.getKeysLoaded());
+    }
+
+    @Test
+    public void testDuplicateKeysLoadedOnce() throws Exception {
+        CountingLookup lookup = new CountingLookup();
+        CompletableFuture<Integer> first = lookup.lookupBatched("abc");
+        CompletableFuture<Integer> second = lookup.lookupBatched("abc");
+        assertEquals(Integer.valueOf(3), first.get());
+        assertEquals(Integer.valueOf(3), second.get());
+        assertEquals(1, lookup.getBulkCalls());
+        assertEquals(1, lookup.getKeysLoaded());
+    }
+
+    @Test
+    public void testBulkExceptionsCompleteFutures() throws Exception {
+        CountingLookup lookup = new CountingLookup();
+        CompletableFuture<Integer> ok = lookup.lookupBatched("ok");
+        CompletableFuture<Integer> failing = lookup.lookupBatched(CountingLookup.FAILING_KEY);
+        for (CompletableFuture<?> future : new CompletableFuture<?>[] { ok, failing }) {
+            try {
+                future.get();
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    @Test
+    public void testSingleKeyMethodUnchanged() {
+        CountingLookup lookup = new CountingLookup();
+        assertEquals(Integer.valueOf(4), lookup.lookup("abcd"));
+        assertEquals(1, lookup.getBulkCalls());
+    }
+}
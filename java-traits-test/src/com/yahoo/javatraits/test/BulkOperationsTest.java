@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkOperationsTest {
+
+    private static class AnonymousRectangle implements IRectangular {
+        public void doSomething() {
+        }
+
+        public int getWidth() {
+            return 2;
+        }
+
+        public int getHeight() {
+            return 5;
+        }
+
+        public int getArea() {
+            return 10;
+        }
+
+        public int getVolumeWithHeight(int height) {
+            return 10 * height;
+        }
+
+        public int getPerimeter() {
+            return 14;
+        }
+
+        public boolean isSquare() {
+            return false;
+        }
+
+        public double getDiagonal() {
+            return Math.sqrt(29);
+        }
+
+        public void invalidateGetDiagonal() {
+        }
+    }
+
+    private static class WideRectangle extends AnonymousRectangle {
+        @Override
+        public int getWidth() {
+            return 20;
+        }
+
+        @Override
+        public int getArea() {
+            return 100;
+        }
+    }
+
+    private static IRectangular[] mixedRectangles() {
+        return new IRectangular[] {
+                new FootballField(), new FootballField(), new LyingRectangle(), new ResizableRectangle(3, 4),
+                new AnonymousRectangle(), new ResizableRectangle(2, 2), new FootballField()
+        };
+    }
+
+    @Test
+    public void testArrayOperations() {
+        IRectangular[] rects = mixedRectangles();
+        int[] areas = new int[rects.length];
+        boolean[] squares = new boolean[rects.length];
+        double[] diagonals = new double[rects.length];
+        Rectangulars.getAreas(rects, areas);
+        Rectangulars.isSquares(rects, squares);
+        Rectangulars.getDiagonals(rects, diagonals);
+        for (int i = 0; i < rects.length; i++) {
+            assertEquals(rects[i].getArea(), areas[i]);
+            assertEquals(rects[i].isSquare(), squares[i]);
+            assertEquals(rects[i].getDiagonal(), diagonals[i], 0.0);
+        }
+    }
+
+    @Test
+    public void testInterleavedOtherClasses() {
+        IRectangular[] rects = new IRectangular[] {
+                new AnonymousRectangle(), new FootballField(), new WideRectangle(), new AnonymousRectangle(),
+                new LyingRectangle(), new WideRectangle(), new WideRectangle(), new FootballField()
+        };
+        int[] widths = new int[rects.length];
+        int[] areas = new int[rects.length];
+        Rectangulars.getWidths(rects, widths);
+        Rectangulars.getAreas(rects, areas);
+        for (int i = 0; i < rects.length; i++) {
+            assertEquals(rects[i].getWidth(), widths[i]);
+            assertEquals(rects[i].getArea(), areas[i]);
+        }
+    }
+
+    @Test
+    public void testEmptyInput() {
+        Rectangulars.getAreas(new IRectangular[0], new int[0]);
+    }
+
+    @Test
+    public void testCollectionOperations() {
+        List<IRectangular> rects = Arrays.asList(mixedRectangles());
+        int[] perimeters = new int[rects.size()];
+        Rectangulars.getPerimeters(rects, perimeters);
+        for (int i = 0; i < perimeters.length; i++) {
+            assertEquals(rects.get(i).getPerimeter(), perimeters[i]);
+        }
+    }
+
+    @Test
+    public void testOutputTooShort() {
+        try {
+            Rectangulars.getAreas(mixedRectangles(), new int[1]);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("shorter"));
+        }
+    }
+}
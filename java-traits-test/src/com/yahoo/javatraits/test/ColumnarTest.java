@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.DotColumns;
+import com.yahoo.javatraits.test.traits.IPositioned;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ColumnarTest {
+
+    @Test
+    public void testAddAndGrow() {
+        DotColumns dots = new DotColumns(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, dots.add(i, -i, i % 2 == 0));
+        }
+        assertEquals(100, dots.size());
+        assertEquals(42f, dots.getX(42), 0);
+        assertEquals(-42f, dots.getY(42), 0);
+        assertTrue(dots.isVisible(42));
+        assertFalse(dots.isVisible(43));
+    }
+
+    @Test
+    public void testViews() {
+        DotColumns dots = new DotColumns();
+        dots.add(3, 4, true);
+        dots.add(6, 8, false);
+        DotColumns.View view = dots.get(0);
+        assertTrue(view instanceof IPositioned);
+        assertEquals(5.0, view.getDistance(), 0);
+        assertSame(view, view.moveTo(1));
+        assertEquals(1, view.getIndex());
+        assertEquals(10.0, view.getDistance(), 0);
+
+        view.moveBy(-6, -8);
+        assertEquals(0f, dots.getX(1), 0);
+        assertEquals(0f, dots.getY(1), 0);
+        assertEquals(3f, dots.getX(0), 0);
+    }
+
+    @Test
+    public void testRangeOperations() {
+        DotColumns dots = new DotColumns();
+        dots.add(3, 4, true);
+        dots.add(6, 8, true);
+        dots.add(0, 1, true);
+        double[] distances = new double[2];
+        dots.getDistances(1, 3, distances);
+        assertEquals(10.0, distances[0], 0);
+        assertEquals(1.0, distances[1], 0);
+    }
+
+    @Test
+    public void testBounds() {
+        DotColumns dots = new DotColumns();
+        dots.add(1, 1, true);
+        try {
+            dots.get(1);
+            fail("Expected an IndexOutOfBoundsException past the last element");
+        } catch (IndexOutOfBoundsException expected) {
+            // Expected
+        }
+        try {
+            dots.getDistances(0, 2, new double[2]);
+            fail("Expected an IndexOutOfBoundsException for a range past the last element");
+        } catch (IndexOutOfBoundsException expected) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyPolicyTest {
+
+    private static final int THREADS = 8;
+    private static final int INCREMENTS = 10000;
+    private static final List<String> NO_OPTIONS = Collections.emptyList();
+
+    private static final String TALLY =
+            "package locks;\n"
+            + "import com.yahoo.javatraits.annotations.ReadOnly;\n"
+            + "import com.yahoo.javatraits.annotations.Trait;\n"
+            + "@Trait\n"
+            + "public abstract class Tally {\n"
+            + "    private long total;\n"
+            + "    public void add(long amount) { total += amount; }\n"
+            + "    public long addTwice(long amount) { add(amount); this.add(amount); return total(); }\n"
+            + "    @ReadOnly public long total() { return total; }\n"
+            + "}\n";
+
+    private static final String GAUGE =
+            "package locks;\n"
+            + "import com.yahoo.javatraits.annotations.ReadOnly;\n"
+            + "import com.yahoo.javatraits.annotations.Trait;\n"
+            + "@Trait\n"
+            + "public abstract class Gauge {\n"
+            + "    private long level;\n"
+            + "    public abstract boolean holdsReadLock();\n"
+            + "    public void setLevel(long level) { this.level = level; }\n"
+            + "    @ReadOnly public long getLevel() { return level; }\n"
+            + "    @ReadOnly public boolean readsUnderLock() { return holdsReadLock(); }\n"
+            + "}\n";
+
+    @Test
+    public void testReadWrite() throws Exception {
+        assertIncrementsAreAtomic(new ReadWriteCounter());
+    }
+
+    @Test
+    public void testStriped() throws Exception {
+        assertIncrementsAreAtomic(new StripedCounter());
+    }
+
+    @Test
+    public void testStamped() throws Exception {
+        assertIncrementsAreAtomic(new StampedCounter());
+    }
+
+    @Test(timeout=10000)
+    public void testReentrantNestedCalls() {
+        ReadWriteTally tally = new ReadWriteTally();
+        // A mutating method can call other guarded methods, since it holds the write lock
+        assertEquals(4, tally.addTwice(2));
+        assertEquals(4, tally.getTotal());
+    }
+
+    @Test
+    public void testStampedReadsThatCallMethodsHoldTheReadLock() {
+        StampedGauge gauge = new StampedGauge();
+        assertTrue(gauge.readsUnderLock());
+        gauge.setLevel(3);
+        assertEquals(3, gauge.getLevel());
+    }
+
+    @Test
+    public void testOnlyFieldReadsAreOptimistic() throws Exception {
+        TraitCompilation compilation = TraitCompilation.process(NO_OPTIONS, GAUGE, host("Gauge", "STAMPED"));
+        String superclass = compilation.getGeneratedSource("locks.HostWithTraits");
+        assertTrue(superclass, getMethod(superclass, "long getLevel()").contains("tryOptimisticRead"));
+        assertFalse(superclass, getMethod(superclass, "boolean readsUnderLock()").contains("tryOptimisticRead"));
+    }
+
+    @Test
+    public void testNestedCallsUnderStampedLockAreRejected() throws Exception {
+        List<String> errors = TraitCompilation.process(NO_OPTIONS, TALLY, host("Tally", "STAMPED"))
+                .getMessages(Diagnostic.Kind.ERROR, "StampedLock isn't reentrant");
+        assertEquals(errors.toString(), 2, errors.size());
+        assertTrue(errors.toString(), errors.get(0).startsWith("Trait method Tally.addTwice(long) calls Tally."));
+    }
+
+    @Test
+    public void testReadLockUpgradesAreRejected() throws Exception {
+        String tally = TALLY.replace("    @ReadOnly public long total()",
+                "    @ReadOnly public long addAndGet(long amount) { add(amount); return total(); }\n    @ReadOnly public long total()");
+        List<String> errors = TraitCompilation.process(NO_OPTIONS, tally, host("Tally", "READ_WRITE"))
+                .getMessages(Diagnostic.Kind.ERROR, "Read locks can't be upgraded");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("(Tally.addAndGet(long) -> Tally.add(long))"));
+
+        // Mutating methods can call read-only ones
+        assertEquals(0, TraitCompilation.process(NO_OPTIONS, TALLY, host("Tally", "READ_WRITE"))
+                .getMessages(Diagnostic.Kind.ERROR, "").size());
+    }
+
+    private static String host(String trait, String policy) {
+        return "package locks;\n"
+                + "import com.yahoo.javatraits.annotations.ConcurrencyPolicy;\n"
+                + "import com.yahoo.javatraits.annotations.HasTraits;\n"
+                + "@HasTraits(traits=" + trait + ".class, concurrency=ConcurrencyPolicy." + policy + ")\n"
+                + "public class Host extends HostWithTraits {\n"
+                + "    public boolean holdsReadLock() { return false; }\n"
+                + "}\n";
+    }
+
+    /**
+     * @return the generated method with the given signature, up to its closing brace
+     */
+    private static String getMethod(String source, String signature) {
+        int start = source.indexOf(signature);
+        assertTrue(signature + " in " + source, start >= 0);
+        return source.substring(start, source.indexOf("\n    }", start));
+    }
+
+    private void assertIncrementsAreAtomic(final ICounting counter) throws Exception {
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long last = 0;
+                    for (int j = 0; j < INCREMENTS; j++) {
+                        counter.increment();
+                        long current = counter.current();
+                        if (current < last) {
+                            throw new IllegalStateException("Count went backwards");
+                        }
+                        last = current;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals((long) THREADS * INCREMENTS, counter.current());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitMixer;
+import com.yahoo.javatraits.test.traits.ITagging;
+import com.yahoo.javatraits.test.traits.TaggedRequest;
+import com.yahoo.javatraits.test.traits.Tagging;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class FixedArityTest {
+
+    public static class Tags {
+        private final StringBuilder tags = new StringBuilder();
+
+        public StringBuilder getTags() {
+            return tags;
+        }
+    }
+
+    @Test
+    public void testOverloadsGenerated() throws Exception {
+        assertNotNull(ITagging.class.getMethod("tag", String.class));
+        assertNotNull(ITagging.class.getMethod("tag", String.class, String.class, String.class));
+        assertNotNull(ITagging.class.getMethod("tag", String.class, String.class, String.class, String.class));
+        assertNotNull(ITagging.class.getMethod("total", long.class, long.class, long.class, long.class));
+        assertEquals(6, countMethods("total")); // The varargs method and 0 to 4 arguments
+        assertEquals(5, countMethods("tag")); // The trait's own overload for 1 argument isn't duplicated
+    }
+
+    @Test
+    public void testOverloadsCallVarArgsMethod() {
+        TaggedRequest request = new TaggedRequest();
+        assertEquals(0, request.tag("env"));
+        assertEquals(2, request.tag("env", "prod", "eu"));
+        assertEquals(4, request.tag("env", "a", "b", "c", "d"));
+        assertEquals("env:prod env:eu env:a env:b env:c env:d ", request.getTags().toString());
+        assertEquals(10, request.total(1, 2, 3, 4));
+        assertEquals(0, request.total());
+    }
+
+    @Test
+    public void testTraitOverloadPreferred() {
+        TaggedRequest request = new TaggedRequest();
+        assertEquals(1, request.tag("env", "prod"));
+        assertEquals("env=prod ", request.getTags().toString());
+    }
+
+    @Test
+    public void testMixedOverloads() {
+        Tags target = new Tags();
+        ITagging mixed = (ITagging) new TraitMixer(MethodHandles.lookup()).mix(target, Tagging.class);
+        assertEquals(6, mixed.total(1, 2, 3));
+        assertEquals(2, mixed.tag("env", "a", "b"));
+        assertEquals("env:a env:b ", target.getTags().toString());
+    }
+
+    private int countMethods(String name) {
+        int count = 0;
+        for (Method method : ITagging.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
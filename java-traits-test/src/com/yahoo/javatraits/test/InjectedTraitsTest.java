@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitIndex;
+import com.yahoo.javatraits.test.traits.Counting;
+import com.yahoo.javatraits.test.traits.ICounting;
+import com.yahoo.javatraits.test.traits.InjectedCounter;
+import com.yahoo.javatraits.test.traits.InjectedMenu;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InjectedTraitsTest {
+
+    @Test
+    public void testTraitMethodsInjected() throws Exception {
+        InjectedCounter counter = new InjectedCounter();
+        counter.increment();
+        counter.increment();
+        assertEquals(2, counter.current());
+        assertEquals(2, counter.intValue());
+        assertTrue(counter instanceof ICounting);
+        assertNotNull(InjectedCounter.class.getDeclaredMethod("increment"));
+    }
+
+    @Test
+    public void testNoGeneratedSuperclass() {
+        assertEquals(Number.class, InjectedCounter.class.getSuperclass());
+        try {
+            Class.forName(InjectedCounter.class.getName() + "WithTraits");
+            fail("Expected no generated superclass for injected traits");
+        } catch (ClassNotFoundException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testInjectedClassIndexed() {
+        assertTrue(TraitIndex.getDefault().getHostClasses(Counting.class).contains(InjectedCounter.class));
+    }
+
+    @Test
+    public void testTraitImportsQualified() throws Exception {
+        InjectedMenu menu = new InjectedMenu();
+        menu.addEntry("open");
+        assertEquals(java.util.Collections.singletonList("open"), menu.getEntries());
+        assertEquals(java.util.List.class, InjectedMenu.class.getMethod("getEntries").getReturnType());
+        assertEquals(java.awt.List.class, menu.getWidgetClass()); // The host's import is unchanged
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InliningReportTest {
+
+    private static final String CHAIN =
+            "package inlining;\n"
+            + "import com.yahoo.javatraits.annotations.Instrumented;\n"
+            + "import com.yahoo.javatraits.annotations.Trait;\n"
+            + "@Trait\n"
+            + "public abstract class Chain {\n"
+            + "    public int first() { return second() + 1; }\n"
+            + "    public int second() { return third() + 1; }\n"
+            + "    public int third() { return fourth() + 1; }\n"
+            + "    public int fourth() { return fifth() + 1; }\n"
+            + "    @Instrumented(timed=true)\n"
+            + "    public int fifth() { return 1; }\n"
+            + "}\n";
+
+    private static final String LINK =
+            "package inlining;\n"
+            + "import com.yahoo.javatraits.annotations.HasTraits;\n"
+            + "@HasTraits(traits=Chain.class)\n"
+            + "public class Link extends LinkWithTraits {\n"
+            + "}\n";
+
+    private static final List<String> OPTIONS = Arrays.asList("-Ajavatraits.reportInlining=true");
+
+    @Test
+    public void testReportsDeepCallChainsAndLargeMethods() throws Exception {
+        TraitCompilation compilation = TraitCompilation.process(OPTIONS, CHAIN, LINK);
+
+        List<String> warnings = compilation.getMessages(Diagnostic.Kind.WARNING, "MaxInlineLevel");
+        // Each call to another trait method goes through the delegate, host and default__ forwarders
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("Calls to trait method first can reach a depth of 19"));
+
+        List<String> notes = compilation.getMessages(Diagnostic.Kind.NOTE, "MaxInlineSize");
+        assertTrue(notes.toString(), contains(notes, "Generated method ChainDelegateWrapper.default__fifth is an estimated 52 bytes"));
+        assertTrue(notes.toString(), !contains(notes, "ChainDelegateWrapper.default__fourth"));
+        assertTrue(notes.toString(), !contains(notes, "LinkWithTraits.fifth"));
+    }
+
+    @Test
+    public void testLockGuardsAreCounted() throws Exception {
+        String guardedLink = LINK.replace("@HasTraits(traits=Chain.class)",
+                "@HasTraits(traits=Chain.class, concurrency=com.yahoo.javatraits.annotations.ConcurrencyPolicy.READ_WRITE)");
+        List<String> notes = TraitCompilation.process(OPTIONS, CHAIN, guardedLink).getMessages(Diagnostic.Kind.NOTE, "MaxInlineSize");
+        assertTrue(notes.toString(), contains(notes, "Generated method LinkWithTraits.fourth is an estimated"));
+    }
+
+    private static boolean contains(List<String> messages, String text) {
+        for (String message : messages) {
+            if (message.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
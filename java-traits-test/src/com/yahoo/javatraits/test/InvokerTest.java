@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitInvoker;
+import com.yahoo.javatraits.test.traits.Counting;
+import com.yahoo.javatraits.test.traits.ICounting;
+import com.yahoo.javatraits.test.traits.Rectangular;
+import com.yahoo.javatraits.test.traits.SmallCounter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class InvokerTest {
+
+    @Test
+    public void testInvokerForTrait() {
+        TraitInvoker<ICounting> invoker = TraitInvoker.forTrait(Counting.class);
+        assertSame(invoker, TraitInvoker.forTrait(Counting.class));
+        assertEquals(ICounting.class, invoker.getInterfaceClass());
+        assertEquals(4, invoker.getMethodCount());
+    }
+
+    @Test
+    public void testMethodIds() {
+        TraitInvoker<ICounting> invoker = TraitInvoker.forTrait(Counting.class);
+        int setCount = invoker.getMethodId("setCount(long)");
+        assertEquals("setCount(long)", invoker.getSignature(setCount));
+        assertEquals(setCount, invoker.getMethodId("setCount", 1));
+        assertEquals(invoker.getMethodId("current()"), invoker.getMethodId("current", 0));
+        assertEquals(-1, invoker.getMethodId("setCount(int)"));
+        assertEquals(-1, invoker.getMethodId("setCount", 2));
+    }
+
+    @Test
+    public void testInvoke() throws Exception {
+        TraitInvoker<ICounting> invoker = TraitInvoker.forTrait(Counting.class);
+        SmallCounter counter = new SmallCounter();
+        assertNull(invoker.invoke(counter, invoker.getMethodId("setCount(long)"), 41L));
+        assertNull(invoker.invoke(counter, invoker.getMethodId("increment()")));
+        assertEquals(42L, invoker.invoke(counter, invoker.getMethodId("current()")));
+        assertEquals(42L, counter.getCount());
+    }
+
+    @Test
+    public void testInvalidCalls() throws Exception {
+        TraitInvoker<ICounting> invoker = TraitInvoker.forTrait(Counting.class);
+        SmallCounter counter = new SmallCounter();
+        try {
+            invoker.invoke(counter, invoker.getMethodId("setCount(long)"));
+            fail("Expected an IllegalArgumentException for a missing argument");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+        try {
+            invoker.invoke(counter, invoker.getMethodCount());
+            fail("Expected an IllegalArgumentException for an unknown method id");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+        try {
+            invoker.invoke(counter, invoker.getMethodId("setCount(long)"), "42");
+            fail("Expected a ClassCastException for an argument of the wrong type");
+        } catch (ClassCastException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testTraitWithoutInvoker() {
+        try {
+            TraitInvoker.forTrait(Rectangular.class);
+            fail("Expected an IllegalArgumentException for a trait without @Invoker");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+}
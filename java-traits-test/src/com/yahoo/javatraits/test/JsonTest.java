@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.processor.utils.Json;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonTest {
+
+    @Test
+    public void testStringEscaped() {
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", Json.string("a\"b\\c\nd\u0001"));
+        assertEquals("\"com.example.Outer$Inner\"", Json.string("com.example.Outer$Inner"));
+    }
+
+    @Test
+    public void testNestedValues() {
+        assertEquals("{}", Json.object());
+        assertEquals("[]", Json.array(Collections.<String>emptyList()));
+        String array = Json.array(Arrays.asList(Json.object("name", Json.string("A")), Json.array(Collections.singletonList("1"))));
+        assertEquals("[\n  { \"name\": \"A\" },\n  [\n    1\n  ]\n]", array);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMemberWithoutValue() {
+        Json.object("name");
+    }
+}
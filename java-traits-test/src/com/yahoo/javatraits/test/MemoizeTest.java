@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MemoizeTest {
+
+    private static final double EPSILON = 0.000001;
+
+    @Test
+    public void testResultIsCached() {
+        ResizableRectangle rect = new ResizableRectangle(3, 4);
+        assertEquals(5.0, rect.getDiagonal(), EPSILON);
+        rect.resizeWithoutInvalidating(6, 8);
+        assertEquals(5.0, rect.getDiagonal(), EPSILON);
+    }
+
+    @Test
+    public void testInvalidate() {
+        ResizableRectangle rect = new ResizableRectangle(3, 4);
+        assertEquals(5.0, rect.getDiagonal(), EPSILON);
+        rect.resize(6, 8);
+        assertEquals(10.0, rect.getDiagonal(), EPSILON);
+    }
+
+    @Test
+    public void testCachedPerInstance() {
+        ResizableRectangle rect1 = new ResizableRectangle(3, 4);
+        ResizableRectangle rect2 = new ResizableRectangle(6, 8);
+        assertEquals(5.0, rect1.getDiagonal(), EPSILON);
+        assertEquals(10.0, rect2.getDiagonal(), EPSILON);
+    }
+
+    @Test
+    public void testInvalidateOnInterface() {
+        IRectangular rect = new ResizableRectangle(3, 4);
+        assertEquals(5.0, rect.getDiagonal(), EPSILON);
+        ((ResizableRectangle) rect).resizeWithoutInvalidating(6, 8);
+        rect.invalidateGetDiagonal();
+        assertEquals(10.0, rect.getDiagonal(), EPSILON);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Scanner;
+import java.util.Set;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NativeImageConfigTest {
+
+    private static final String CONFIG_DIR = "META-INF/native-image/javatraits/com.yahoo.javatraits.test.traits/";
+
+    private static Set<String> getBuildTimeInitializedClasses(String subdirectory) throws Exception {
+        Properties properties = new Properties();
+        InputStream in = NativeImageConfigTest.class.getClassLoader().getResourceAsStream(CONFIG_DIR + subdirectory + "/native-image.properties");
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        String args = properties.getProperty("Args");
+        return new HashSet<String>(Arrays.asList(args.substring(args.indexOf('=') + 1).split(",")));
+    }
+
+    private static String readResource(String name) throws Exception {
+        InputStream in = NativeImageConfigTest.class.getClassLoader().getResourceAsStream(name);
+        try {
+            return new Scanner(in, "UTF-8").useDelimiter("\\A").next();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testBuildTimeInitialization() throws Exception {
+        Set<String> traitClasses = getBuildTimeInitializedClasses("traits");
+        assertTrue(traitClasses.contains(IRectangular.class.getName()));
+        assertTrue(traitClasses.contains(CountingDelegateWrapper.class.getName()));
+        // Instrumented and cached traits read system properties and register caches when initialized
+        assertFalse(traitClasses.contains(RectangularDelegateWrapper.class.getName()));
+        assertFalse(traitClasses.contains(MathTraitDelegateWrapper.class.getName()));
+
+        Set<String> hostClasses = getBuildTimeInitializedClasses("hosts");
+        assertTrue(hostClasses.contains(Thermometer.class.getSuperclass().getName()));
+        assertFalse(hostClasses.contains(FootballField.class.getName()));
+        // Superclasses of classes using instrumented or cached traits initialize their delegates at run time too
+        assertFalse(hostClasses.contains(FootballField.class.getSuperclass().getName()));
+        assertFalse(hostClasses.contains(SomeClass.class.getSuperclass().getName()));
+        assertFalse(traitClasses.contains(Rectangular.class.getName()));
+    }
+
+    @Test
+    public void testIndexRegistered() throws Exception {
+        assertTrue(readResource(CONFIG_DIR + "traits/resource-config.json").contains("META-INF/javatraits/traits"));
+        assertTrue(readResource(CONFIG_DIR + "hosts/reflect-config.json").contains(FootballField.class.getName()));
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.Poolable;
+import com.yahoo.javatraits.runtime.TraitPool;
+import com.yahoo.javatraits.test.traits.Frame;
+import com.yahoo.javatraits.test.traits.FramePool;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PoolableTest {
+
+    @Test
+    public void testGeneratedSuperclassIsPoolable() {
+        assertTrue(new Frame() instanceof Poolable);
+    }
+
+    @Test
+    public void testResetRestoresTraitState() {
+        Frame frame = new Frame();
+        frame.setSize(3, 4);
+        frame.addSample(10);
+        frame.addSample(20);
+        assertEquals(5.0, frame.getDiagonal(), 0);
+        assertEquals(15.0, frame.getAverage(), 0);
+
+        frame.reset();
+        assertEquals(0, frame.getSampleCount());
+        assertEquals(0.0, frame.getAverage(), 0);
+        assertEquals(0, frame.getWidth());
+
+        frame.setSize(6, 8);
+        assertEquals(10.0, frame.getDiagonal(), 0); // Memoized value was invalidated
+    }
+
+    @Test
+    public void testSetSizeInvalidatesDiagonal() {
+        Frame frame = new Frame();
+        frame.setSize(3, 4);
+        assertEquals(5.0, frame.getDiagonal(), 0);
+        frame.setSize(6, 8);
+        assertEquals(10.0, frame.getDiagonal(), 0);
+    }
+
+    @Test
+    public void testReleasedInstanceIsReused() {
+        FramePool pool = new FramePool();
+        Frame frame = pool.acquire();
+        assertEquals(1, pool.getCreatedCount());
+        frame.setSize(3, 4);
+        frame.addSample(10);
+        pool.release(frame);
+
+        Frame reused = pool.acquire();
+        assertSame(frame, reused);
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(0, reused.getSampleCount());
+        assertEquals(0, reused.getArea());
+    }
+
+    @Test
+    public void testFullStripesDropInstances() {
+        FramePool pool = new FramePool(1);
+        List<Frame> frames = new ArrayList<Frame>();
+        for (int i = 0; i <= pool.getProbedCapacity(); i++) {
+            frames.add(pool.acquire());
+        }
+        for (Frame frame : frames) {
+            pool.release(frame);
+        }
+        assertEquals(pool.getProbedCapacity() + 1, pool.getCreatedCount());
+
+        for (int i = 0; i <= pool.getProbedCapacity(); i++) {
+            pool.acquire();
+        }
+        assertEquals(pool.getProbedCapacity() + 2, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testProbeIsBounded() {
+        FramePool pool = new FramePool(1);
+        assertEquals(Math.min(pool.getCapacity(), TraitPool.NEIGHBOUR_STRIPES + 1), pool.getProbedCapacity());
+        List<Frame> frames = new ArrayList<Frame>();
+        for (int i = 0; i < pool.getCapacity(); i++) {
+            frames.add(pool.acquire());
+        }
+        for (Frame frame : frames) {
+            pool.release(frame);
+        }
+
+        List<Frame> acquired = new ArrayList<Frame>();
+        for (int i = 0; i < pool.getCapacity(); i++) {
+            acquired.add(pool.acquire());
+        }
+        int reused = 0;
+        for (Frame frame : acquired) {
+            if (frames.contains(frame)) {
+                reused++;
+            }
+        }
+        assertEquals(pool.getProbedCapacity(), reused); // The rest was dropped out of this thread's reach
+        assertEquals(2 * pool.getCapacity() - pool.getProbedCapacity(), pool.getCreatedCount());
+    }
+
+    @Test
+    public void testReleasedOnAnotherThreadIsReusedWithinReach() throws Exception {
+        final FramePool pool = new FramePool(1);
+        final List<Frame> released = new ArrayList<Frame>();
+        for (int i = 0; i < pool.getProbedCapacity(); i++) {
+            released.add(pool.acquire());
+        }
+        Thread releasing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (Frame frame : released) {
+                    pool.release(frame);
+                }
+            }
+        });
+        releasing.start();
+        releasing.join();
+
+        final List<Frame> acquired = new ArrayList<Frame>();
+        Thread acquiring = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < pool.getCapacity(); i++) {
+                    acquired.add(pool.acquire());
+                }
+            }
+        });
+        acquiring.start();
+        acquiring.join();
+        int reused = 0;
+        for (Frame frame : acquired) {
+            if (released.contains(frame)) {
+                reused++;
+            }
+        }
+        assertTrue(reused <= pool.getProbedCapacity()); // Only the released instances in reach of the acquiring thread
+        assertEquals(pool.getProbedCapacity() + pool.getCapacity() - reused, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testReleaseNull() {
+        try {
+            new FramePool().release(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final FramePool pool = new FramePool(4);
+        final AtomicInteger dirty = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        Frame frame = pool.acquire();
+                        if (frame.getSampleCount() != 0) {
+                            dirty.incrementAndGet();
+                        }
+                        frame.addSample(j);
+                        pool.release(frame);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, dirty.get());
+        assertTrue(pool.getCreatedCount() < 8 * 10000);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.processor.utils.DispatchProfile;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Only the classes compiled by these tests use a profile, so the rest of the test module is compiled as usual
+ */
+public class ProfileGuidedInliningTest {
+
+    private static final String SCORING =
+            "package profiled;\n"
+            + "import com.yahoo.javatraits.annotations.Trait;\n"
+            + "import java.util.Locale;\n"
+            + "@Trait\n"
+            + "public abstract class Scoring {\n"
+            + "    public static final int MAX_SCORE = 100;\n"
+            + "    public abstract int getHits();\n"
+            + "    public abstract int getMisses();\n"
+            + "    public int getAttempts() {\n"
+            + "        return getHits() + getMisses();\n"
+            + "    }\n"
+            + "    public int getScore() {\n"
+            + "        int attempts = this.getAttempts();\n"
+            + "        // Nothing to score yet\n"
+            + "        if (attempts == 0) {\n"
+            + "            return 0;\n"
+            + "        }\n"
+            + "\n"
+            + "        return Math.min(MAX_SCORE, getHits() * MAX_SCORE / attempts); /* capped */\n"
+            + "    }\n"
+            + "    public int scale(int score) { return score * 2; }\n"
+            + "    public int scale(int score, int factor) { return score * factor; }\n"
+            + "    public String getReport() {\n"
+            + "        return String.format(Locale.ROOT, \"%d/%d hits\", getHits(), getAttempts());\n"
+            + "    }\n"
+            + "}\n";
+
+    // Static trait methods are only declared by the trait, so they can't be called from the generated superclass
+    private static final String SCORING_WITH_STATIC_METHOD = SCORING.replace("    public String getReport() {",
+            "    public int getPercent() {\n"
+            + "        return percentOf(getHits(), getAttempts());\n"
+            + "    }\n"
+            + "    public static int percentOf(int part, int total) {\n"
+            + "        return total == 0 ? 0 : part * 100 / total;\n"
+            + "    }\n"
+            + "    public String getReport() {");
+
+    private static final String SCOREBOARD =
+            "package profiled;\n"
+            + "import com.yahoo.javatraits.annotations.HasTraits;\n"
+            + "@HasTraits(traits=Scoring.class)\n"
+            + "public class Scoreboard extends ScoreboardWithTraits {\n"
+            + "    public int getHits() { return 3; }\n"
+            + "    public int getMisses() { return 1; }\n"
+            + "}\n";
+
+    // Half of the six methods listed are hot: getScore, getReport and getPercent, which Scoring only declares in one test
+    private static final String PROFILE =
+            "Method                                                   Samples Percent\n"
+            + "profiled.Scoreboard.getScore()                             48211  24.61%\n"
+            + "profiled.ScoringDelegateWrapper.default__getReport()      30544  15.59%\n"
+            + "profiled.Scoring.getPercent()                              20000  10.21%\n"
+            + "profiled.Scoreboard.scale(int)                              9000   4.59%\n"
+            + "profiled.Scoreboard.scale(int, int)                           12   0.01%\n"
+            + "profiled.Scoreboard.getAttempts()                           4650   2.37%\n";
+
+    private static List<String> profileOptions(String profile) throws Exception {
+        File file = File.createTempFile("profile", ".txt");
+        Files.write(file.toPath(), profile.getBytes(StandardCharsets.UTF_8));
+        return Arrays.asList("-Ajavatraits.profile=" + file.getPath(), "-Ajavatraits.hotMethodPercent=50");
+    }
+
+    private static TraitCompilation compileWithProfile(String profile) throws Exception {
+        return TraitCompilation.compile(profileOptions(profile), SCORING, SCOREBOARD);
+    }
+
+    @Test
+    public void testHotMethodIsInlinedAsWritten() throws Exception {
+        TraitCompilation compilation = compileWithProfile(PROFILE);
+        assertEquals(Collections.emptyList(), compilation.getMessages(Diagnostic.Kind.ERROR, ""));
+        String superclass = compilation.getGeneratedSource("profiled.ScoreboardWithTraits");
+        assertTrue(superclass, superclass.contains("return inline__getScore();"));
+        assertTrue(superclass, superclass.contains("    private int inline__getScore() {\n"
+                + "        int attempts = this.getAttempts();\n"
+                + "        // Nothing to score yet\n"));
+        assertTrue(superclass, superclass.contains("/* capped */"));
+        assertFalse(superclass, superclass.contains("inline__getAttempts"));
+
+        Class<?> scoreboard = compilation.loadClass("profiled.Scoreboard");
+        Object instance = scoreboard.getConstructor().newInstance();
+        assertEquals(75, scoreboard.getMethod("getScore").invoke(instance));
+    }
+
+    @Test
+    public void testOverloadsAreProfiledSeparately() throws Exception {
+        String superclass = compileWithProfile(PROFILE.replace("9000   4.59%", "90000  45.9%"))
+                .getGeneratedSource("profiled.ScoreboardWithTraits");
+        assertTrue(superclass, superclass.contains("private int inline__scale(int score) {"));
+        assertFalse(superclass, superclass.contains("inline__scale(int score, int factor)"));
+    }
+
+    @Test
+    public void testHotMethodsThatCantBeInlinedAreReported() throws Exception {
+        TraitCompilation compilation = TraitCompilation.process(profileOptions(PROFILE), SCORING_WITH_STATIC_METHOD, SCOREBOARD);
+        List<String> notes = compilation.getMessages(Diagnostic.Kind.NOTE, "isn't inlined");
+        assertEquals(notes.toString(), 2, notes.size());
+        assertTrue(notes.toString(), notes.contains("Hot trait method getReport() (weight 30544 in the profile) isn't inlined "
+                + "into Scoreboard because it refers to java.util.Locale, which may not be imported"));
+        assertTrue(notes.toString(), notes.contains("Hot trait method getPercent() (weight 20000 in the profile) isn't inlined "
+                + "into Scoreboard because it calls the static method percentOf, which is only declared by the trait"));
+    }
+
+    @Test
+    public void testProfileFile() throws Exception {
+        // Maven runs tests in the module directory
+        DispatchProfile profile = DispatchProfile.read(new File("trait-profile.txt"), DispatchProfile.DEFAULT_HOT_PERCENT);
+        String traits = "com.yahoo.javatraits.test.traits.";
+        assertTrue(profile.isHot(Arrays.asList(traits + "Scoreboard"), "getScore", ""));
+        assertTrue(profile.isHot(Arrays.asList(traits + "ScoringDelegateWrapper"), "getReport", ""));
+        assertFalse(profile.isHot(Arrays.asList(traits + "LatencyStats"), "addSample", "long"));
+        assertTrue(DispatchProfile.read(new File("trait-profile.txt"), 6).isHot(Arrays.asList(traits + "LatencyStats"), "addSample", "long"));
+        // Weights listed twice are summed, overloads are kept apart
+        assertEquals(9921 + 298, profile.getWeight(Arrays.asList(traits + "Dot"), "getDistance", ""));
+        assertEquals(6420, profile.getWeight(Arrays.asList(traits + "TaggedRequest"), "tag", "java.lang.String,java.lang.String[]"));
+        assertEquals(96, profile.getWeight(Arrays.asList(traits + "TaggedRequest"), "tag", "java.lang.String"));
+    }
+}
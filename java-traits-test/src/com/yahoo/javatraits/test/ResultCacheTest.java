@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.annotations.Cached;
+import com.yahoo.javatraits.runtime.ResultCache;
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResultCacheTest {
+
+    private SomeClass<Number, Integer, String, Long> newInstance() {
+        SomeClass<Number, Integer, String, Long> instance = new SomeClass<Number, Integer, String, Long>();
+        for (ResultCache<?> cache : ResultCache.getAllCaches()) {
+            cache.clear();
+        }
+        return instance;
+    }
+
+    @Test
+    public void testPrimitiveKeys() {
+        SomeClass<Number, Integer, String, Long> instance = newInstance();
+        ResultCache<?> cache = ResultCache.forMethod(MathTrait.class, "subtract(int,int)");
+        assertEquals(3, instance.subtract(5, 2));
+        assertEquals(-3, instance.subtract(2, 5));
+        assertEquals(3, instance.subtract(5, 2));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testSharedAcrossInstances() {
+        SomeClass<Number, Integer, String, Long> instance = newInstance();
+        ResultCache<?> cache = ResultCache.forMethod(MathTrait.class, "subtract(int,int)");
+        assertEquals(3, instance.subtract(5, 2));
+        assertEquals(3, new SomeClass<Number, Integer, String, Long>().subtract(5, 2));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testObjectKeys() {
+        SomeClass<Number, Integer, String, Long> instance = newInstance();
+        ResultCache<?> cache = ResultCache.forMethod(MathTrait.class, "numberToInt(java.lang.Number)");
+        assertEquals(4, instance.numberToInt(4.5));
+        assertEquals(4, instance.numberToInt(4.5));
+        assertEquals(4, instance.numberToInt(4L));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testMultipleObjectArguments() {
+        SomeClass<Number, Integer, String, Long> instance = newInstance();
+        ResultCache<?> cache = ResultCache.forMethod(MathTrait.class, "concat(java.lang.String,java.lang.Object)");
+        assertEquals("a1", instance.concat("a", 1));
+        assertEquals("a1", instance.concat("a", 1));
+        assertEquals("a2", instance.concat("a", 2));
+        assertEquals("null2", instance.concat(null, 2));
+        assertEquals("null2", instance.concat(null, 2));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testDirectArgumentsMatchKeys() {
+        ResultCache<String> cache = ResultCache.create(ResultCacheTest.class, "test(java.lang.Object,java.lang.Object)", 4,
+                Cached.Eviction.LRU);
+        cache.put(ResultCache.key("a", 1), "a1");
+        assertEquals("a1", cache.get("a", 1));
+        cache.put("b", 2, "b2");
+        assertEquals("b2", cache.get(ResultCache.key("b", 2)));
+        assertNull(cache.get("b", 2, null));
+    }
+
+    @Test
+    public void testReadEntriesSurviveEviction() {
+        ResultCache<String> cache = ResultCache.create(ResultCacheTest.class, "test(int)", 2, Cached.Eviction.LRU);
+        cache.putPacked(1, "1");
+        cache.putPacked(2, "2");
+        assertEquals("1", cache.getPacked(1));
+        cache.putPacked(3, "3");
+        assertEquals("1", cache.getPacked(1));
+        assertNull(cache.getPacked(2));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEviction() {
+        SomeClass<Number, Integer, String, Long> instance = newInstance();
+        ResultCache<?> cache = ResultCache.forMethod(MathTrait.class, "intToStringV1(int)");
+        for (int i = 0; i < 5; i++) {
+            instance.intToStringV1(1);
+        }
+        instance.intToStringV1(2);
+        instance.intToStringV1(3);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals("1", instance.intToStringV1(1)); // Most frequently used survives
+        assertEquals(5, cache.getHitCount());
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.ISized;
+import com.yahoo.javatraits.test.traits.InjectedBag;
+import com.yahoo.javatraits.test.traits.SealedBox;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SealedTraitsTest {
+
+    private static Set<Class<?>> permittedSubclasses(Class<?> cls) {
+        return new HashSet<Class<?>>(Arrays.asList(cls.getPermittedSubclasses()));
+    }
+
+    @Test
+    public void testInterfacePermitsImplementations() {
+        assertTrue(ISized.class.isSealed());
+        assertEquals(new HashSet<Class<?>>(Arrays.asList(SealedBox.class.getSuperclass(), InjectedBag.class)),
+                permittedSubclasses(ISized.class));
+    }
+
+    @Test
+    public void testSuperclassPermitsHost() {
+        assertTrue(SealedBox.class.getSuperclass().isSealed());
+        assertEquals(new HashSet<Class<?>>(Arrays.asList(SealedBox.class)), permittedSubclasses(SealedBox.class.getSuperclass()));
+    }
+
+    @Test
+    public void testTraitMethods() {
+        InjectedBag bag = new InjectedBag();
+        assertTrue(bag.isEmpty());
+        bag.add("item");
+        assertFalse(bag.isEmpty());
+        assertFalse(new SealedBox(3).isEmpty());
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.ICounting;
+import com.yahoo.javatraits.test.traits.LargeCounter;
+import com.yahoo.javatraits.test.traits.SmallCounter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedSuperclassTest {
+
+    @Test
+    public void testHostsShareSuperclass() {
+        assertEquals(SmallCounter.class.getSuperclass(), LargeCounter.class.getSuperclass());
+        assertEquals("CountingWithTraits", SmallCounter.class.getSuperclass().getSimpleName());
+        assertTrue(ICounting.class.isAssignableFrom(SmallCounter.class.getSuperclass()));
+    }
+
+    @Test
+    public void testNoPerHostSuperclass() {
+        try {
+            Class.forName(SmallCounter.class.getName() + "WithTraits");
+            fail("Expected no per-host superclass for a shared superclass");
+        } catch (ClassNotFoundException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testTraitMethodsOnSharedSuperclass() {
+        SmallCounter small = new SmallCounter();
+        LargeCounter large = new LargeCounter();
+        small.increment();
+        large.increment();
+        assertEquals(1, small.current());
+        assertEquals(1001, large.current());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitIndex;
+import com.yahoo.javatraits.runtime.TraitMixer;
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShrinkerRulesTest {
+
+    private static List<String> readRules(String name) throws Exception {
+        InputStream in = ShrinkerRulesTest.class.getClassLoader().getResourceAsStream("META-INF/proguard/" + name);
+        List<String> rules = new ArrayList<String>();
+        try {
+            Scanner scanner = new Scanner(in, "UTF-8");
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if (!line.startsWith("#") && line.length() > 0) {
+                    rules.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return rules;
+    }
+
+    private static String getCondition(List<String> rules, String rule) {
+        int index = rules.indexOf(rule);
+        assertTrue(index > 0);
+        return rules.get(index - 1);
+    }
+
+    @Test
+    public void testInterfacesKept() throws Exception {
+        List<String> rules = readRules("javatraits-traits.pro");
+        assertTrue(rules.contains("-keep,allowoptimization interface " + IRectangular.class.getName() + " { <methods>; }"));
+        for (String rule : rules) {
+            assertFalse(rule.startsWith("-keep ") && rule.contains(RectangularDelegateWrapper.class.getName())
+                    && !getCondition(rules, rule).contains(TraitMixer.class.getName()));
+        }
+    }
+
+    @Test
+    public void testNamesKeptForRuntimeLookups() throws Exception {
+        List<String> traitRules = readRules("javatraits-traits.pro");
+        assertEquals("-if class " + TraitIndex.class.getName(),
+                getCondition(traitRules, "-keepnames class " + Rectangular.class.getName()));
+        assertEquals("-if class " + TraitMixer.class.getName(),
+                getCondition(traitRules, "-keep class " + RectangularDelegateWrapper.class.getName() + " { public *; }"));
+
+        List<String> hostRules = readRules("javatraits-hosts.pro");
+        assertEquals("-if class " + TraitIndex.class.getName(),
+                getCondition(hostRules, "-keepnames class " + FootballField.class.getName()));
+    }
+
+    @Test
+    public void testIndexedNamesKept() throws Exception {
+        List<String> rules = new ArrayList<String>(readRules("javatraits-traits.pro"));
+        rules.addAll(readRules("javatraits-hosts.pro"));
+        Set<String> keptNames = getNamesKeptFor(rules, TraitIndex.class);
+        TraitIndex index = TraitIndex.getDefault();
+        for (String trait : index.getTraitNames()) {
+            assertTrue(trait, keptNames.contains(trait));
+            assertTrue(trait, keptNames.contains(index.getInterfaceName(trait)));
+            assertTrue(trait, keptNames.contains(index.getDelegateName(trait)));
+        }
+        for (String host : index.getHostNames()) {
+            assertTrue(host, keptNames.contains(host));
+            String superclass = index.getGeneratedSuperclassName(host);
+            assertTrue(host, superclass == null || keptNames.contains(superclass));
+        }
+        assertTrue(keptNames.contains(FootballField.class.getSuperclass().getName()));
+    }
+
+    @Test
+    public void testRulesNameExistingClasses() throws Exception {
+        List<String> rules = new ArrayList<String>(readRules("javatraits-traits.pro"));
+        rules.addAll(readRules("javatraits-hosts.pro"));
+        for (String rule : rules) {
+            String className = getClassName(rule);
+            if (className != null) {
+                Class.forName(className, false, getClass().getClassLoader());
+            }
+        }
+    }
+
+    /**
+     * @return the names of the classes kept or named by rules without a condition or conditioned on the given class
+     */
+    private static Set<String> getNamesKeptFor(List<String> rules, Class<?> condition) {
+        Set<String> result = new HashSet<String>();
+        for (int i = 0; i < rules.size(); i++) {
+            String className = getClassName(rules.get(i));
+            boolean conditional = i > 0 && rules.get(i - 1).startsWith("-if ");
+            if (className != null && rules.get(i).startsWith("-keep")
+                    && (!conditional || rules.get(i - 1).equals("-if class " + condition.getName()))) {
+                result.add(className);
+            }
+        }
+        return result;
+    }
+
+    private static String getClassName(String rule) {
+        String[] words = rule.split(" ");
+        return words.length > 2 && (words[1].equals("class") || words[1].equals("interface")) ? words[2] : null;
+    }
+}
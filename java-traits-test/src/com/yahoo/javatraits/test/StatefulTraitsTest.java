@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.IAveraging;
+import com.yahoo.javatraits.test.traits.InjectedLatencyStats;
+import com.yahoo.javatraits.test.traits.LatencyStats;
+import com.yahoo.javatraits.test.traits.Playlist;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatefulTraitsTest {
+
+    @Test
+    public void testStatePerInstance() {
+        assertState(new LatencyStats("a"), new LatencyStats("b"));
+    }
+
+    @Test
+    public void testInjectedStatePerInstance() {
+        assertState(new InjectedLatencyStats("a"), new InjectedLatencyStats("b"));
+    }
+
+    @Test
+    public void testInjectedFieldsDeclaredInClass() throws Exception {
+        Field total = InjectedLatencyStats.class.getDeclaredField("total");
+        assertEquals(long.class, total.getType());
+        assertTrue(Modifier.isPrivate(total.getModifiers()));
+        assertEquals(int.class, InjectedLatencyStats.class.getDeclaredField("samples").getType());
+    }
+
+    @Test
+    public void testFieldsDeclaredInGeneratedSuperclass() throws Exception {
+        Class<?> superclass = LatencyStats.class.getSuperclass();
+        Field total = superclass.getDeclaredField("total");
+        assertEquals(long.class, total.getType());
+        assertTrue(Modifier.isPrivate(total.getModifiers()));
+        assertEquals(int.class, superclass.getDeclaredField("samples").getType());
+        for (Field field : superclass.getDeclaredFields()) {
+            assertFalse(field.getName(), field.getName().endsWith("DelegateWrapper")); // All of Averaging runs in the superclass
+        }
+    }
+
+    @Test
+    public void testFieldsKeptInDelegate() throws Exception {
+        Playlist playlist = new Playlist();
+        playlist.addEntry("a");
+        playlist.addEntry("b");
+        assertEquals(Arrays.asList("a", "b"), playlist.getEntries());
+        assertEquals(0, new Playlist().getEntries().size());
+        // The initializer of Listing's field names java.util.ArrayList, so it isn't copied
+        assertNotNull(Playlist.class.getSuperclass().getDeclaredField("listingDelegateWrapper"));
+    }
+
+    private void assertState(IAveraging first, IAveraging second) {
+        first.addSample(10);
+        first.addSample(20);
+        second.addSample(5);
+        assertEquals(2, first.getSampleCount());
+        assertEquals(15.0, first.getAverage(), 0);
+        assertEquals(1, second.getSampleCount());
+        assertEquals(5.0, second.getAverage(), 0);
+    }
+}
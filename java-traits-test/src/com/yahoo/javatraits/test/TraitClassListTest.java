@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitClassList;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TraitClassListTest {
+
+    private static final String TRAITS_PACKAGE = "com/yahoo/javatraits/test/traits/";
+
+    @Test
+    public void testGeneratedClassesListed() {
+        List<String> classes = TraitClassList.load(getClass().getClassLoader());
+        assertTrue(classes.containsAll(Arrays.asList(TRAITS_PACKAGE + "IRectangular", TRAITS_PACKAGE + "RectangularDelegateWrapper",
+                TRAITS_PACKAGE + "Rectangulars", TRAITS_PACKAGE + "FootballFieldWithTraits")));
+        assertTrue(classes.contains(TRAITS_PACKAGE + "DotColumns$View"));
+        assertFalse(classes.contains(TRAITS_PACKAGE + "RectangularTraitEvent"));
+        for (String className : classes) {
+            assertFalse(className.contains("."));
+        }
+    }
+
+    @Test
+    public void testListedClassesExist() throws Exception {
+        for (String className : TraitClassList.load(getClass().getClassLoader())) {
+            Class.forName(className.replace('/', '.'), false, getClass().getClassLoader());
+        }
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        Path existing = Files.createTempFile("base", ".classlist");
+        Path output = Files.createTempFile("merged", ".classlist");
+        try {
+            Files.write(existing, Arrays.asList("# comment", "java/lang/Object", TRAITS_PACKAGE + "IRectangular"), StandardCharsets.UTF_8);
+            TraitClassList.merge(output, Collections.singletonList(existing), getClass().getClassLoader());
+            List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+            assertEquals(TraitClassList.HEADER, lines.get(0));
+            assertEquals("java/lang/Object", lines.get(1));
+            assertEquals(TRAITS_PACKAGE + "IRectangular", lines.get(2));
+            assertEquals(lines.indexOf(TRAITS_PACKAGE + "IRectangular"), lines.lastIndexOf(TRAITS_PACKAGE + "IRectangular"));
+            assertTrue(lines.contains(TRAITS_PACKAGE + "FootballFieldWithTraits"));
+        } finally {
+            Files.delete(existing);
+            Files.delete(output);
+        }
+    }
+}
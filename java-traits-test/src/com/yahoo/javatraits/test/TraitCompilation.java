@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.processor.HasTraitsProcessor;
+import com.yahoo.javatraits.processor.TraitProcessor;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the trait processors over sources given as strings, for tests of the checks and reports made at compile time
+ */
+final class TraitCompilation {
+
+    private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+    private static final Pattern CLASS = Pattern.compile("(?:class|interface)\\s+(\\w+)");
+
+    private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+    private final File outputDir;
+
+    private TraitCompilation(List<Diagnostic<? extends JavaFileObject>> diagnostics, File outputDir) {
+        this.diagnostics = diagnostics;
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Processes the given sources without compiling them
+     */
+    static TraitCompilation process(List<String> options, String... sources) throws IOException {
+        List<String> allOptions = new ArrayList<String>(options);
+        allOptions.add("-proc:only");
+        return run(allOptions, sources);
+    }
+
+    /**
+     * Processes and compiles the given sources, so that their classes can be loaded with {@link #loadClass(String)}
+     */
+    static TraitCompilation compile(List<String> options, String... sources) throws IOException {
+        return run(options, sources);
+    }
+
+    /**
+     * Processes and compiles the given sources into the output of this compilation, as an incremental build would
+     */
+    TraitCompilation recompile(List<String> options, String... sources) throws IOException {
+        return run(outputDir, options, sources);
+    }
+
+    private static TraitCompilation run(List<String> options, String... sources) throws IOException {
+        return run(Files.createTempDirectory("javatraits").toFile(), options, sources);
+    }
+
+    private static TraitCompilation run(File outputDir, List<String> options, String... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        List<String> allOptions = new ArrayList<String>(Arrays.asList("-d", outputDir.getPath(), "-s", outputDir.getPath(),
+                "-classpath", outputDir.getPath() + File.pathSeparator + System.getProperty("java.class.path")));
+        allOptions.addAll(options);
+        List<JavaFileObject> sourceFiles = new ArrayList<JavaFileObject>();
+        for (String source : sources) {
+            sourceFiles.add(source(source));
+        }
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, Locale.ROOT, null);
+        try {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, allOptions, null, sourceFiles);
+            task.setProcessors(Arrays.asList(new TraitProcessor(), new HasTraitsProcessor()));
+            task.call();
+        } finally {
+            fileManager.close();
+        }
+        return new TraitCompilation(diagnostics.getDiagnostics(), outputDir);
+    }
+
+    private static JavaFileObject source(final String code) {
+        Matcher packageName = PACKAGE.matcher(code);
+        Matcher className = CLASS.matcher(code);
+        if (!packageName.find() || !className.find()) {
+            throw new IllegalArgumentException("No package or class declaration in " + code);
+        }
+        String path = packageName.group(1).replace('.', '/') + "/" + className.group(1) + ".java";
+        return new SimpleJavaFileObject(URI.create("string:///" + path), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * @return the messages of the given kind that contain the given text
+     */
+    List<String> getMessages(Diagnostic.Kind kind, String text) {
+        List<String> result = new ArrayList<String>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            String message = diagnostic.getMessage(Locale.ROOT);
+            if (diagnostic.getKind() == kind && message.contains(text)) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the given compiled class, loaded in a new class loader
+     */
+    Class<?> loadClass(String className) throws IOException, ClassNotFoundException {
+        URLClassLoader loader = new URLClassLoader(new URL[] { outputDir.toURI().toURL() }, TraitCompilation.class.getClassLoader());
+        return loader.loadClass(className);
+    }
+
+    /**
+     * @return the contents of the given resource written to the class output
+     */
+    String getResource(String path) throws IOException {
+        return new String(Files.readAllBytes(new File(outputDir, path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the source of the given generated class
+     */
+    String getGeneratedSource(String className) throws IOException {
+        File file = new File(outputDir, className.replace('.', '/') + ".java");
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.test.traits.*;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraitEventsTest {
+
+    @Test
+    public void testEventClassGenerated() {
+        assertTrue(Event.class.isAssignableFrom(RectangularTraitEvent.class));
+    }
+
+    @Test
+    public void testRecordedCallsEmitEvents() throws Exception {
+        File output = File.createTempFile("traits", ".jfr");
+        try {
+            Recording recording = new Recording();
+            recording.enable(RectangularTraitEvent.class);
+            recording.start();
+            new FootballField().getArea();
+            new FootballField().getPerimeter();
+            recording.stop();
+            recording.dump(output.toPath());
+            recording.close();
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(output.toPath());
+            int count = 0;
+            for (RecordedEvent event : events) {
+                if ("com.yahoo.javatraits.test.traits.Rectangular".equals(event.getEventType().getName())) {
+                    count++;
+                    assertEquals("getArea", event.getString("methodName"));
+                    assertEquals(FootballField.class.getName(), event.getClass("hostClass").getName());
+                    assertEquals(Rectangular.class.getName(), event.getClass("traitClass").getName());
+                }
+            }
+            assertEquals(1, count);
+        } finally {
+            output.delete();
+        }
+    }
+}
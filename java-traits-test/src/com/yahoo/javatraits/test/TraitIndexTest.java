@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitIndex;
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TraitIndexTest {
+
+    private static final String COUNTING =
+            "package indexed;\n"
+            + "import com.yahoo.javatraits.annotations.Trait;\n"
+            + "@Trait\n"
+            + "public abstract class Counting {\n"
+            + "    public abstract int getCount();\n"
+            + "}\n";
+
+    private static final String NAMING =
+            "package indexed;\n"
+            + "import com.yahoo.javatraits.annotations.Trait;\n"
+            + "@Trait\n"
+            + "public abstract class Naming {\n"
+            + "    public abstract String getName();\n"
+            + "}\n";
+
+    @Test
+    public void testTraitsIndexed() {
+        TraitIndex index = TraitIndex.getDefault();
+        assertTrue(index.getTraitNames().contains(Rectangular.class.getName()));
+        assertEquals(IRectangular.class.getName(), index.getInterfaceName(Rectangular.class.getName()));
+        assertEquals(RectangularDelegateWrapper.class.getName(), index.getDelegateName(Rectangular.class.getName()));
+    }
+
+    @Test
+    public void testHostsIndexed() {
+        TraitIndex index = TraitIndex.getDefault();
+        List<Class<?>> hosts = index.getHostClasses(Rectangular.class);
+        assertTrue(hosts.containsAll(Arrays.<Class<?>>asList(FootballField.class, LyingRectangle.class, ResizableRectangle.class)));
+        assertEquals(FootballField.class.getSuperclass().getName(), index.getGeneratedSuperclassName(FootballField.class.getName()));
+        assertEquals(Arrays.<Class<?>>asList(Rectangular.class), index.getTraits(FootballField.class));
+    }
+
+    @Test
+    public void testUnindexedClass() {
+        TraitIndex index = TraitIndex.getDefault();
+        assertTrue(index.getTraits(String.class).isEmpty());
+        assertTrue(index.getHostClasses(String.class).isEmpty());
+    }
+
+    @Test
+    public void testInjectedHostHasNoGeneratedSuperclass() {
+        TraitIndex index = TraitIndex.getDefault();
+        assertTrue(index.getHostClasses(Averaging.class).contains(InjectedLatencyStats.class));
+        assertNull(index.getGeneratedSuperclassName(InjectedLatencyStats.class.getName()));
+    }
+
+    @Test
+    public void testIncrementalBuildKeepsPreviousEntries() throws Exception {
+        TraitCompilation compilation = TraitCompilation.compile(Collections.<String>emptyList(), COUNTING, NAMING);
+        TraitCompilation incremental = compilation.recompile(Collections.<String>emptyList(), NAMING);
+        assertEquals(Collections.emptyList(), incremental.getMessages(Diagnostic.Kind.ERROR, ""));
+        String traits = incremental.getResource(TraitIndex.TRAITS_RESOURCE);
+        assertTrue(traits, traits.contains("indexed.Counting indexed.ICounting indexed.CountingDelegateWrapper"));
+        assertTrue(traits, traits.contains("indexed.Naming indexed.INaming indexed.NamingDelegateWrapper"));
+        assertEquals(traits, traits.indexOf("indexed.Naming "), traits.lastIndexOf("indexed.Naming "));
+    }
+
+    @Test
+    public void testIncrementalBuildDropsRemovedTraits() throws Exception {
+        TraitCompilation compilation = TraitCompilation.compile(Collections.<String>emptyList(), COUNTING, NAMING);
+        TraitCompilation incremental = compilation.recompile(Collections.<String>emptyList(),
+                COUNTING.replace("@Trait\n", ""), NAMING);
+        String traits = incremental.getResource(TraitIndex.TRAITS_RESOURCE);
+        assertFalse(traits, traits.contains("indexed.Counting "));
+        assertTrue(traits, traits.contains("indexed.Naming "));
+    }
+}
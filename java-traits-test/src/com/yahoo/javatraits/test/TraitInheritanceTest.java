@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitMixer;
+import com.yahoo.javatraits.test.traits.Greeter;
+import com.yahoo.javatraits.test.traits.Greeting;
+import com.yahoo.javatraits.test.traits.IGreeting;
+import com.yahoo.javatraits.test.traits.INamed;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraitInheritanceTest {
+
+    public static class Person {
+        public String getName() {
+            return "Bob";
+        }
+    }
+
+    @Test
+    public void testInheritedMethods() {
+        Greeter greeter = new Greeter("Alice");
+        assertEquals("Hello Bob, I'm Alice", greeter.greet("Bob"));
+        assertEquals("Alice", greeter.getDisplayName());
+        assertEquals(Greeter.UNKNOWN, new Greeter(null).getDisplayName());
+        assertTrue(greeter.isSelf(greeter));
+    }
+
+    @Test
+    public void testOverriddenMethod() {
+        assertEquals("Greeter Alice", new Greeter("Alice").describe());
+    }
+
+    @Test
+    public void testInterfaceExtendsParentInterface() {
+        assertTrue(INamed.class.isAssignableFrom(IGreeting.class));
+        INamed named = new Greeter("Alice");
+        assertEquals("Greeter Alice", named.describe());
+    }
+
+    @Test
+    public void testSingleDelegate() {
+        int delegates = 0;
+        for (Field field : Greeter.class.getSuperclass().getDeclaredFields()) {
+            if (field.getType().getSimpleName().endsWith("DelegateWrapper")) {
+                delegates++;
+            }
+        }
+        assertEquals(1, delegates);
+    }
+
+    @Test
+    public void testMixedInheritedTrait() {
+        IGreeting mixed = (IGreeting) new TraitMixer(MethodHandles.lookup()).mix(new Person(), Greeting.class);
+        assertEquals("Hello Alice, I'm Bob", mixed.greet("Alice"));
+        assertEquals("Greeter Bob", mixed.describe());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitMetrics;
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraitMetricsTest {
+
+    @Test
+    public void testCallsAreCountedPerClass() {
+        FootballField field = new FootballField();
+        LyingRectangle lyingRect = new LyingRectangle();
+        long fieldCalls = TraitMetrics.getCallCount(FootballField.class, Rectangular.class, "getPerimeter");
+        long lyingCalls = TraitMetrics.getCallCount(LyingRectangle.class, Rectangular.class, "getPerimeter");
+
+        field.getPerimeter();
+        field.getPerimeter();
+        lyingRect.getPerimeter();
+
+        assertEquals(fieldCalls + 2, TraitMetrics.getCallCount(FootballField.class, Rectangular.class, "getPerimeter"));
+        assertEquals(lyingCalls + 1, TraitMetrics.getCallCount(LyingRectangle.class, Rectangular.class, "getPerimeter"));
+    }
+
+    @Test
+    public void testTimedMethods() {
+        Worker worker = new Worker();
+        long nanos = TraitMetrics.getTotalNanos(Worker.class, Pausing.class, "pause(long,int)");
+        worker.pause(0, 2000000);
+        assertTrue(TraitMetrics.getTotalNanos(Worker.class, Pausing.class, "pause(long,int)") - nanos >= 2000000);
+    }
+
+    @Test
+    public void testOverloadsAreCountedSeparately() {
+        Worker worker = new Worker();
+        long shortCalls = TraitMetrics.getCallCount(Worker.class, Pausing.class, "pause(long)");
+        long longCalls = TraitMetrics.getCallCount(Worker.class, Pausing.class, "pause(long,int)");
+
+        worker.pause(0);
+        worker.pause(0, 1);
+        worker.pause(0, 1);
+
+        // pause(long) calls pause(long,int) through the instance, which is counted as well
+        assertEquals(shortCalls + 1, TraitMetrics.getCallCount(Worker.class, Pausing.class, "pause(long)"));
+        assertEquals(longCalls + 3, TraitMetrics.getCallCount(Worker.class, Pausing.class, "pause(long,int)"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testOverloadedNameIsRejected() {
+        new Worker().pause(0);
+        TraitMetrics.getCallCount(Worker.class, Pausing.class, "pause");
+    }
+
+    @Test
+    public void testMethodLevelInstrumentation() {
+        SomeClass<Number, Integer, String, Long> instance = new SomeClass<Number, Integer, String, Long>();
+        long addCalls = TraitMetrics.getCallCount(SomeClass.class, MathTrait.class, "add");
+        assertEquals(3, instance.add(1, 2));
+        assertEquals(addCalls + 1, TraitMetrics.getCallCount(SomeClass.class, MathTrait.class, "add"));
+        assertEquals(0, TraitMetrics.getCallCount(SomeClass.class, MathTrait.class, "subtract"));
+    }
+}
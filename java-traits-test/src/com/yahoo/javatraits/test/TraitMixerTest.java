@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.TraitMixer;
+import com.yahoo.javatraits.runtime.Traits;
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraitMixerTest {
+
+    public static class Dimensions {
+        private final int width;
+        private final int height;
+        private long count;
+
+        public Dimensions(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+    }
+
+    public static class Summer {
+        private int sum;
+
+        public void accept(Integer value) {
+            sum += value;
+        }
+
+        public int getSum() {
+            return sum;
+        }
+    }
+
+    public static class Units {
+        public int getUnit() {
+            return 10;
+        }
+    }
+
+    private final TraitMixer mixer = new TraitMixer(MethodHandles.lookup());
+
+    @Test
+    public void testMixedTraits() {
+        Dimensions target = new Dimensions(3, 4);
+        Object mixed = mixer.mix(target, Rectangular.class, Counting.class);
+        IRectangular rect = (IRectangular) mixed;
+        assertEquals(12, rect.getArea());
+        assertEquals(14, rect.getPerimeter());
+        assertEquals(36, rect.getVolumeWithHeight(3));
+        assertFalse(rect.isSquare());
+        assertEquals(5.0, rect.getDiagonal(), 0.0);
+        rect.invalidateGetDiagonal();
+
+        ICounting counting = (ICounting) mixed;
+        counting.increment();
+        counting.increment();
+        assertEquals(2, counting.current());
+        assertEquals(2, target.getCount());
+        assertTrue(Traits.has(mixed, Counting.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGenericAbstractMethod() {
+        Summer target = new Summer();
+        IConsuming<Integer> consuming = (IConsuming<Integer>) mixer.mix(target, Consuming.class);
+        consuming.acceptAll(Arrays.asList(1, 2, 3));
+        consuming.accept(4);
+        assertEquals(10, target.getSum());
+        IConsuming<Object> erased = (IConsuming<Object>) (Object) consuming;
+        try {
+            erased.accept("five");
+            fail("Expected ClassCastException");
+        } catch (ClassCastException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBridgeMethod() {
+        Object mixed = mixer.mix(new Units(), Measuring.class);
+        assertEquals(Integer.valueOf(30), ((IMeasuring) mixed).apply("abc"));
+        Function<Object, Object> erased = (Function<Object, Object>) mixed;
+        assertEquals(40, erased.apply("abcd"));
+        try {
+            erased.apply(4);
+            fail("Expected ClassCastException");
+        } catch (ClassCastException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testClassCachedPerCombination() {
+        Object first = mixer.mix(new Dimensions(1, 1), Rectangular.class);
+        Object second = mixer.mix(new Dimensions(2, 2), Rectangular.class);
+        Object both = mixer.mix(new Dimensions(2, 2), Rectangular.class, Counting.class);
+        assertTrue(first.getClass() == second.getClass());
+        assertFalse(first.getClass() == both.getClass());
+        assertEquals(first.getClass(), mixer.getMixedClass(Dimensions.class, Rectangular.class));
+    }
+
+    @Test
+    public void testMissingAbstractMethod() {
+        try {
+            mixer.mix("not a rectangle", Rectangular.class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("getWidth") || e.getMessage().contains("getHeight"));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test;
+
+import com.yahoo.javatraits.runtime.Traits;
+import com.yahoo.javatraits.test.traits.*;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraitsTest {
+
+    @Test
+    public void testHas() {
+        assertTrue(Traits.has(new FootballField(), Rectangular.class));
+        assertFalse(Traits.has(new FootballField(), Counting.class));
+        assertFalse(Traits.has(null, Rectangular.class));
+    }
+
+    @Test
+    public void testAs() {
+        Object field = new FootballField();
+        IRectangular rect = Traits.as(field, IRectangular.class);
+        assertEquals(FootballField.WIDTH * FootballField.HEIGHT, rect.getArea());
+        assertNull(Traits.as(field, ICounting.class));
+        assertNull(Traits.as(null, IRectangular.class));
+        assertEquals(IRectangular.class, Traits.interfaceOf(Rectangular.class));
+    }
+
+    @Test
+    public void testTraitsOf() {
+        assertEquals(Arrays.<Class<?>>asList(Rectangular.class), Traits.traitsOf(FootballField.class));
+        assertEquals(Collections.<Class<?>>emptyList(), Traits.traitsOf(String.class));
+    }
+
+    @Test
+    public void testTraitsOfClassImplementingTraitInterface() {
+        Object rect = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IRectangular.class },
+                (proxy, method, args) -> null);
+        assertTrue(Traits.has(rect, Rectangular.class));
+        assertEquals(Arrays.<Class<?>>asList(Rectangular.class), Traits.traitsOf(rect.getClass()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAsNotATraitInterface() {
+        Traits.as(new FootballField(), Runnable.class);
+    }
+
+    @Test
+    public void testNotATrait() {
+        try {
+            Traits.has(new FootballField(), String.class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
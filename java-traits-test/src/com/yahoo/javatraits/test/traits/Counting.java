@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test.traits;
+
+import com.yahoo.javatraits.annotations.Invoker;
+import com.yahoo.javatraits.annotations.Mutating;
+import com.yahoo.javatraits.annotations.ReadOnly;
+import com.yahoo.javatraits.annotations.Trait;
+
+@Trait
+@Invoker
+public abstract class Counting {
+
+    public abstract long getCount();
+
+    public abstract void setCount(long count);
+
+    @Mutating
+    public void increment() {
+        setCount(getCount() + 1);
+    }
+
+    @ReadOnly
+    public long current() {
+        return getCount();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test.traits;
+
+import com.yahoo.javatraits.annotations.HasTraits;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@HasTraits(traits=KeyValueLookup.class)
+public class CountingLookup extends CountingLookupWithTraits {
+
+    public static final String FAILING_KEY = "fail";
+
+    private final AtomicInteger bulkCalls = new AtomicInteger();
+    private final AtomicInteger keysLoaded = new AtomicInteger();
+
+    @Override
+    public Map<String, Integer> lookupAll(List<String> keys) {
+        bulkCalls.incrementAndGet();
+        keysLoaded.addAndGet(keys.size());
+        if (keys.contains(FAILING_KEY)) {
+            throw new IllegalArgumentException(FAILING_KEY);
+        }
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (String key : keys) {
+            result.put(key, key.length());
+        }
+        return result;
+    }
+
+    public int getBulkCalls() {
+        return bulkCalls.get();
+    }
+
+    public int getKeysLoaded() {
+        return keysLoaded.get();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test.traits;
+
+import com.yahoo.javatraits.annotations.HasTraits;
+
+@HasTraits(traits={Rectangular.class, Averaging.class}, poolable=true)
+public class Frame extends FrameWithTraits {
+
+    private int width;
+    private int height;
+
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        invalidateGetDiagonal();
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        width = 0;
+        height = 0;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test.traits;
+
+import com.yahoo.javatraits.annotations.Trait;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Trait
+public abstract class Listing {
+
+    private final List<String> entries = new ArrayList<String>();
+
+    public void addEntry(String entry) {
+        entries.add(entry);
+    }
+
+    public List<String> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+}
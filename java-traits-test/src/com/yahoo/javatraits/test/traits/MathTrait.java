@@ -15,6 +15,9 @@
  */
 package com.yahoo.javatraits.test.traits;
 
+import com.yahoo.javatraits.annotations.Async;
+import com.yahoo.javatraits.annotations.Cached;
+import com.yahoo.javatraits.annotations.Instrumented;
 import com.yahoo.javatraits.annotations.Trait;
 
 import java.util.ArrayList;
@@ -34,18 +37,22 @@ public abstract class MathTrait<A extends Number, B extends A> {
         //
     }
     
+    @Async
     public abstract <T extends Number & Runnable> void testIntersectionType(T arg);
 
+    @Instrumented
     public int add(int arg1, int arg2) {
         return arg1 + arg2;
     }
 
+    @Cached
     public int subtract(int arg1, int arg2) {
         return arg1 - arg2;
     }
 
     public abstract int someWeirdOp(int arg1, int arg2) throws Exception;
 
+    @Async
     public int multiplyByTwoAndThenSomeWeirdOp(int arg1, int arg2) throws Exception {
         arg1 *= 2;
         arg2 *= 2;
@@ -61,16 +68,25 @@ public abstract class MathTrait<A extends Number, B extends A> {
         return sum;
     }
 
+    @Async
     public abstract B transform(A a);
 
+    @Cached
+    @Async(executor="math")
     public <D extends Number> int numberToInt(D number) {
         return number.intValue();
     }
 
+    @Cached(maxSize=2, eviction=Cached.Eviction.LFU)
     public String intToStringV1(int someArg) {
         return Integer.toHexString(someArg);
     }
     
+    @Cached
+    public String concat(String first, Object second) {
+        return first + second;
+    }
+
     public String intToStringV2(int someArg) {
         return Integer.toHexString(someArg);
     }
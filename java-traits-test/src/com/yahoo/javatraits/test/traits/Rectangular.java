@@ -15,9 +15,15 @@
  */
 package com.yahoo.javatraits.test.traits;
 
+import com.yahoo.javatraits.annotations.BulkOperations;
+import com.yahoo.javatraits.annotations.Instrumented;
+import com.yahoo.javatraits.annotations.Memoize;
+import com.yahoo.javatraits.annotations.Recorded;
 import com.yahoo.javatraits.annotations.Trait;
 
 @Trait
+@BulkOperations
+@Instrumented(timed=true)
 public abstract class Rectangular {
 
     public void doSomething() {
@@ -28,6 +34,7 @@ public abstract class Rectangular {
     
     public abstract int getHeight();
     
+    @Recorded
     public int getArea() {
         return getWidth() * getHeight();
     }
@@ -44,6 +51,7 @@ public abstract class Rectangular {
         return getWidth() == getHeight();
     }
     
+    @Memoize
     public double getDiagonal() {
         return Math.sqrt((getWidth() * getWidth()) + (getHeight() * getHeight()));
     }
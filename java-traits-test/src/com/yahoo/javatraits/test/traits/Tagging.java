@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.test.traits;
+
+import com.yahoo.javatraits.annotations.FixedArity;
+import com.yahoo.javatraits.annotations.Trait;
+
+@Trait
+public abstract class Tagging {
+
+    public abstract StringBuilder getTags();
+
+    @FixedArity(max=3)
+    public int tag(String category, String... tags) {
+        for (String tag : tags) {
+            getTags().append(category).append(':').append(tag).append(' ');
+        }
+        return tags.length;
+    }
+
+    public int tag(String category, String tag) {
+        getTags().append(category).append('=').append(tag).append(' ');
+        return 1;
+    }
+
+    @FixedArity
+    public long total(long... values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
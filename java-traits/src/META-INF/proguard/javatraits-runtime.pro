@@ -0,0 +1,15 @@
+# ProGuard/R8 rules for the java-traits runtime
+
+# The annotation processors are only used at compile time
+-dontwarn com.yahoo.javatraits.processor.**
+-dontwarn com.yahoo.aptutils.**
+-dontwarn com.sun.source.**
+-dontwarn javax.annotation.processing.**
+-dontwarn javax.lang.model.**
+-dontwarn javax.tools.**
+
+# Not available on Android. Metrics are only exposed as an MBean where JMX exists, and event classes generated
+# for @Recorded traits are never loaded without Flight Recorder.
+-dontwarn java.lang.management.**
+-dontwarn javax.management.**
+-dontwarn jdk.jfr.**
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to generate an asynchronous variant of a trait method.
+ *
+ * <br/><br/>
+ *
+ * For a trait method "R doSomething(args)", the generated interface will also declare
+ * "CompletableFuture&lt;R&gt; doSomethingAsync(args)", which calls doSomething on the instance from
+ * another thread and completes the future with its result or exception. Void methods return a
+ * CompletableFuture&lt;Void&gt;. The method can be abstract, in which case the class's own implementation
+ * runs asynchronously. Generated code using this annotation requires Java 11 or later.
+ *
+ * <br/><br/>
+ *
+ * Tasks run on the executor registered under {@link #executor()} in
+ * {@link com.yahoo.javatraits.runtime.TraitExecutors}, or on the default executor, which uses a virtual
+ * thread per task on JDK 21 or later.
+ */
+@Target(ElementType.METHOD)
+public @interface Async {
+
+    /**
+     * The name of the executor to run on. If empty, the default executor is used. Otherwise an executor must be
+     * registered with this name before the method is called.
+     */
+    String executor() default "";
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to coalesce concurrent calls to a single-key trait method into calls to a bulk method.
+ *
+ * <br/><br/>
+ *
+ * The annotated method must take exactly one argument, the key. The trait must also declare the bulk method
+ * named by {@link #bulkMethod()}, usually abstract so that the class using the trait can implement it, which
+ * takes a List of keys and returns a Map from keys to values, e.g.
+ * <pre>
+ * {@literal @}Batched(bulkMethod="findUsers")
+ * public abstract User findUser(String id);
+ *
+ * public abstract Map&lt;String, User&gt; findUsers(List&lt;String&gt; ids);
+ * </pre>
+ * The generated interface will declare "CompletableFuture&lt;User&gt; findUserBatched(String id)". Calls to it
+ * are collected for up to {@link #windowMillis()} milliseconds or until {@link #maxBatchSize()} distinct keys
+ * have been collected, and then the bulk method is called once for all of them. Batches are collected
+ * separately for each instance of the class using the trait. Generated code using this annotation requires
+ * Java 11 or later.
+ */
+@Target(ElementType.METHOD)
+public @interface Batched {
+
+    /**
+     * The name of the bulk method declared by the trait
+     */
+    String bulkMethod();
+
+    /**
+     * The maximum number of distinct keys per call to the bulk method
+     */
+    int maxBatchSize() default 100;
+
+    /**
+     * The maximum time to wait for more keys after the first key of a batch is submitted
+     */
+    long windowMillis() default 5;
+
+    /**
+     * The name of the executor the bulk method runs on; see {@link Async#executor()}. If no executor is registered
+     * with this name when a batch is sent, the futures of the batch complete with an IllegalArgumentException.
+     */
+    String executor() default "";
+}
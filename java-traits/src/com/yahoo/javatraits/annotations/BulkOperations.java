@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to generate static bulk operations over arrays and collections of trait instances.
+ *
+ * <br/><br/>
+ *
+ * For a trait named Rectangular, the code generator will write a class named Rectangulars with a
+ * static method for each public trait method that takes no arguments and returns a value, e.g.
+ * getAreas(IRectangular[] in, int[] out) for int getArea(). The generated loops split the input into
+ * runs of elements of the same class and call each run through a separate, monomorphic call site for
+ * each class using the trait that is compiled together with it. Elements of other classes are called
+ * through the interface.
+ */
+@Target(ElementType.TYPE)
+public @interface BulkOperations {
+}
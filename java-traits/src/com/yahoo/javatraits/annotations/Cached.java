@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to cache the results of a concrete trait method in a bounded cache keyed by its arguments.
+ *
+ * <br/><br/>
+ *
+ * Unlike {@literal @}{@link Memoize}, the cache is shared by all instances of all classes using the trait,
+ * so the method must be a pure function of its arguments: it must not depend on any state of the instance
+ * it is called on. Arguments are compared using equals(), so array arguments are not supported. Methods
+ * whose arguments are all primitives and fit in 64 bits in total are keyed without boxing. Null results
+ * are not cached.
+ *
+ * <br/><br/>
+ *
+ * Hit, miss and eviction statistics for each cache can be read from
+ * {@link com.yahoo.javatraits.runtime.ResultCache#forMethod(Class, String)}.
+ */
+@Target(ElementType.METHOD)
+public @interface Cached {
+
+    enum Eviction {
+        /** Evict the least recently used entry */
+        LRU,
+        /** Evict the least frequently used of a sample of the least recently used entries */
+        LFU
+    }
+
+    /**
+     * The maximum number of results to cache
+     */
+    int maxSize() default 1024;
+
+    /**
+     * The policy used to choose the entry to evict when the cache is full
+     */
+    Eviction eviction() default Eviction.LRU;
+}
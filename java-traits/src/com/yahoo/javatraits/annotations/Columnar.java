@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to generate a columnar container for a class annotated with {@literal @}{@link HasTraits}.
+ *
+ * <br/><br/>
+ *
+ * For a class named Dot, the code generator will write a class named DotColumns that stores the
+ * values of each abstract trait getter in a primitive array, one element per instance, instead of
+ * one object per instance. The container returns flyweight views implementing the trait interfaces,
+ * and declares an operation over index ranges for each trait method that takes no arguments and
+ * returns a value, e.g. getAreas(int from, int to, int[] out) for int getArea().
+ *
+ * <br/><br/>
+ *
+ * Every abstract method of the traits must be a getter of a primitive value, e.g. int getWidth() or
+ * boolean isVisible(), or a setter for such a getter, e.g. void setWidth(int width). The traits can't be
+ * generic, implement interfaces, declare instance fields, or use {@literal @}{@link Memoize},
+ * {@literal @}{@link Cached}, {@literal @}{@link Async} or {@literal @}{@link Batched}, since views are
+ * shared between the elements they move over. Containers aren't thread-safe.
+ */
+@Target(ElementType.TYPE)
+public @interface Columnar {
+}
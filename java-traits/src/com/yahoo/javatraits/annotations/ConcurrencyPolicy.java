@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+/**
+ * Locking strategies for the methods a class with traits inherits from its traits.
+ * See {@link HasTraits#concurrency()}.
+ *
+ * <br/><br/>
+ *
+ * Only the generated forwarders for concrete trait methods are guarded. Abstract trait methods are
+ * implemented by the class itself and must be synchronized by hand if necessary. Trait methods annotated
+ * with {@literal @}{@link ReadOnly} take a shared lock, and all other concrete trait methods are treated
+ * as {@literal @}{@link Mutating} and take an exclusive lock. The generated code never uses synchronized,
+ * so virtual threads blocked on these locks don't pin their carrier threads.
+ */
+public enum ConcurrencyPolicy {
+
+    /** No locking */
+    NONE,
+
+    /**
+     * One ReentrantReadWriteLock per instance, shared by all traits. Locks are reentrant, but a
+     * {@literal @}ReadOnly method must not call a {@literal @}Mutating one since read locks can't
+     * be upgraded to write locks. Such calls are reported as compile errors.
+     */
+    READ_WRITE,
+
+    /**
+     * One ReentrantReadWriteLock per trait per instance, so that methods of different traits never
+     * contend with each other. Only suitable when the traits don't share state.
+     */
+    STRIPED,
+
+    /**
+     * One StampedLock per instance. {@literal @}ReadOnly methods that only read fields and local variables
+     * first run under an optimistic read, and are run again under a read lock if a write happened concurrently.
+     * Other {@literal @}ReadOnly methods always run under the read lock. StampedLock is not reentrant, so
+     * guarded trait methods calling other concrete trait methods through this are reported as compile errors.
+     */
+    STAMPED
+}
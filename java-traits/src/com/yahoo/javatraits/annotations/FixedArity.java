@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for concrete varargs trait methods to generate overloads taking a fixed number of arguments
+ * in place of the varargs array.
+ *
+ * <br/><br/>
+ *
+ * For a method int sum(int... values), the generated interface, superclass and delegate also declare
+ * sum(), sum(int values0), sum(int values0, int values1) and so on up to {@link #max()} arguments.
+ * Calls to these overloads don't allocate an array at the call site; the delegate creates it right before
+ * calling the trait method, where the JIT can eliminate it once both are inlined. Overloads the trait
+ * already declares itself, e.g. int sum(int a, int b), are called as is. The varargs component type
+ * can't be generic, and classes using the trait can't inject it.
+ */
+@Target(ElementType.METHOD)
+public @interface FixedArity {
+
+    /**
+     * The largest number of varargs arguments to generate an overload for
+     */
+    int max() default 4;
+}
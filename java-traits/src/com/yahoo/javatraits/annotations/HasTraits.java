@@ -68,4 +68,53 @@ public @interface HasTraits {
      * when resolving method naming conflicts.
      */
     Prefer[] prefer() default {};
+
+    /**
+     * If true, the generated forwarding methods for concrete trait methods will be declared final
+     * wherever the annotated class doesn't override them. Final forwarders are simpler for the JIT
+     * to inline, but subclasses of the annotated class will no longer be able to override those methods.
+     */
+    boolean finalForwarders() default false;
+
+    /**
+     * The locking strategy for the generated forwarding methods of concrete trait methods.
+     * See {@link ConcurrencyPolicy}.
+     */
+    ConcurrencyPolicy concurrency() default ConcurrencyPolicy.NONE;
+
+    /**
+     * If true, the members of the traits are copied into the annotated class by the JavaTraits javac plugin
+     * (-Xplugin:JavaTraits) instead of being inherited from a generated superclass, so the annotated class may
+     * extend any class. Traits must be compiled together with the annotated class and can't be generic or
+     * use annotations that add methods to the trait interface, like {@literal @}{@link Memoize}. Delegate features
+     * like {@literal @}{@link Instrumented}, as well as {@link #finalForwarders()}, {@link #concurrency()} and
+     * {@link #prefer()}, don't apply to injected traits.
+     */
+    boolean injected() default false;
+
+    /**
+     * If true, the generated superclass is named after the traits rather than the annotated class, e.g.
+     * "CountingWithTraits" for traits={Counting.class}, and is shared by all classes in the same package
+     * that use the same traits in the same order. Classes sharing a superclass must also declare the same
+     * {@link #desiredSuperclass()}, {@link #prefer()}, {@link #concurrency()} and {@link #poolable()}, and can't use
+     * {@link #finalForwarders()}, since which forwarders can be final depends on each class.
+     */
+    boolean sharedSuperclass() default false;
+
+    /**
+     * If true, the generated superclass is declared sealed, permitting only the annotated class (or all the classes
+     * sharing it, see {@link #sharedSuperclass()}), which must then be declared final, sealed or non-sealed.
+     * Requires Java 17.
+     */
+    boolean sealed() default false;
+
+    /**
+     * If true, the generated superclass implements {@link com.yahoo.javatraits.runtime.Poolable} with a reset() method
+     * that restores the state of every trait: it calls the reset() method of each trait declaring one and invalidates
+     * the values of {@literal @}{@link Memoize} methods. Traits with instance fields must declare a public void reset()
+     * method restoring them. Classes with state of their own should override reset() and call super.reset(). If the
+     * annotated class has a no-argument constructor, a {@link com.yahoo.javatraits.runtime.TraitPool} for it is
+     * also generated, e.g. "MyClassPool". Can't be used with injected traits.
+     */
+    boolean poolable() default false;
 }
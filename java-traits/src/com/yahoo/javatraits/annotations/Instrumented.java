@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to request call counters for the concrete methods of a trait.
+ *
+ * <br/><br/>
+ *
+ * When placed on a {@literal @}{@link Trait} class, every concrete method of the trait
+ * will be instrumented. When placed on individual concrete methods, only those methods
+ * will be. The generated delegate will count calls to the trait implementations of those
+ * methods, and optionally measure the time spent in them, separately for each class that
+ * uses the trait. The collected metrics can be read from
+ * {@link com.yahoo.javatraits.runtime.TraitMetrics} or the TraitMetrics MBean.
+ *
+ * <br/><br/>
+ *
+ * Metrics are disabled by default and must be enabled at startup with the system property
+ * "javatraits.metrics=true". The check is made through a static final field, so the JIT
+ * will remove the instrumentation entirely when it is disabled.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Instrumented {
+
+    /**
+     * If true, the time spent in each call will be measured in nanoseconds as well
+     * as the number of calls
+     */
+    boolean timed() default false;
+}
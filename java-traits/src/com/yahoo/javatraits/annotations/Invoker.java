@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to generate an invoker that calls the methods of a trait by id.
+ *
+ * <br/><br/>
+ *
+ * For a trait named Rectangular, the code generator will write a subclass of
+ * {@link com.yahoo.javatraits.runtime.TraitInvoker} named RectangularInvoker, which maps the signature
+ * of each method of the generated interface to an id and calls the method for an id through a switch
+ * statement instead of reflection. Generic traits aren't supported.
+ */
+@Target(ElementType.TYPE)
+public @interface Invoker {
+}
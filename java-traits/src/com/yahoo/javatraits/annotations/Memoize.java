@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to cache the result of a concrete trait method with no arguments.
+ *
+ * <br/><br/>
+ *
+ * The result is computed on the first call and cached separately for each instance of a class
+ * using the trait. The generated interface will declare an invalidate&lt;MethodName&gt;() method,
+ * e.g. invalidateGetArea(), which must be called whenever the state the method depends on changes.
+ * Publication of the cached value is lock free, and a value computed concurrently with a call to
+ * the invalidate method will not be cached.
+ */
+@Target(ElementType.METHOD)
+public @interface Memoize {
+}
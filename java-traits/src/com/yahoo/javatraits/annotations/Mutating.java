@@ -0,0 +1,28 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a concrete trait method as modifying state, so that it takes an exclusive lock when the class
+ * using the trait has a {@link HasTraits#concurrency()} policy. This is the default for concrete trait methods
+ * not annotated with {@literal @}{@link ReadOnly}; the annotation documents the intent.
+ */
+@Target(ElementType.METHOD)
+public @interface Mutating {
+}
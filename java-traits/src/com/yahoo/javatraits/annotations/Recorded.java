@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to request JDK Flight Recorder events for calls to the concrete methods of a trait.
+ *
+ * <br/><br/>
+ *
+ * When placed on a {@literal @}{@link Trait} class, every concrete method of the trait
+ * will be recorded. When placed on individual concrete methods, only those methods will be.
+ * A jdk.jfr.Event subclass named &lt;TraitName&gt;TraitEvent is generated for the trait, and
+ * each recorded call emits one carrying the host class, the trait, the method name and the
+ * duration of the call. Generated code using this annotation requires Java 11 or later.
+ *
+ * <br/><br/>
+ *
+ * When the event is not enabled in the running recording the generated code only allocates
+ * the event object and checks isEnabled(), which the JIT can usually eliminate.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Recorded {
+
+    /**
+     * The default threshold for the generated event, in the format accepted by jdk.jfr.Threshold,
+     * e.g. "20 ms". Calls shorter than the threshold are not committed. Since the event class is
+     * shared by all methods of the trait, the threshold can only be set on the trait class.
+     */
+    String threshold() default "0 ns";
+}
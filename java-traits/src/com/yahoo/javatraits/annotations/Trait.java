@@ -23,11 +23,17 @@ import java.lang.annotation.Target;
  * 
  * <br/><br/>
  * 
- * Classes defining traits should be abstract classes with no
- * superclass (i.e. extend only java.lang.Object) and declare
- * no state/instance variable. Traits should also not declare
- * any constructors--the generated code will construct instances
- * for you.
+ * Classes defining traits should be abstract classes that extend
+ * either java.lang.Object or another trait. A parent trait must
+ * not be generic or sealed; its members are flattened into the
+ * child trait, so the child's generated interface and delegate
+ * declare the inherited methods as well as its own. Traits may
+ * declare instance variables, which are stored per instance of
+ * each class using the trait, in its generated superclass when
+ * all of the trait's methods can be copied there, and otherwise in
+ * the trait's delegate. Traits should not declare any
+ * constructors with arguments--the generated code will construct
+ * instances for you.
  * 
  * <br/><br/>
  * 
@@ -44,4 +50,15 @@ import java.lang.annotation.Target;
  * @author Sam Bosley
  */
 @Target(ElementType.TYPE)
-public @interface Trait {}
+public @interface Trait {
+
+    /**
+     * If true, the generated interface is declared sealed, permitting only the generated superclasses of the
+     * {@literal @}{@link HasTraits} classes compiled together with the trait (or those classes themselves,
+     * for injected traits). Superclasses generated for sealed traits are declared non-sealed unless
+     * {@link HasTraits#sealed()} is set. Other classes can't implement the interface, so the trait can't be
+     * used from other compilations or with {@link com.yahoo.javatraits.runtime.TraitMixer}. Requires Java 17,
+     * and unless the classes are in a named module, the classes using the trait must be in its package.
+     */
+    boolean sealed() default false;
+}
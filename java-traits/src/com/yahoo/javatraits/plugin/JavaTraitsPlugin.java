@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.plugin;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.api.BasicJavacTask;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.yahoo.javatraits.processor.JavaTraitsProcessor;
+
+/**
+ * A javac plugin that copies the members of traits directly into classes annotated with
+ * {@literal @}{@link com.yahoo.javatraits.annotations.HasTraits}(injected=true), so that those classes don't need
+ * a generated superclass. Enable it with -Xplugin:JavaTraits. The plugin modifies the syntax trees of the
+ * compilation before they are entered, so it uses javac internals and needs javac to be run with
+ * -J--add-exports=jdk.compiler/com.sun.tools.javac.*=ALL-UNNAMED for the api, code, tree and util packages.
+ *
+ * <br/><br/>
+ *
+ * Injected traits must be compiled in the same compilation as the classes using them, since their source is
+ * copied. The annotation processors still generate the trait interfaces and validate the injected classes.
+ */
+public class JavaTraitsPlugin implements Plugin {
+
+    public static final String NAME = JavaTraitsProcessor.PLUGIN_NAME;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void init(JavacTask task, String... args) {
+        final TraitInjector injector = new TraitInjector(((BasicJavacTask) task).getContext(), Trees.instance(task));
+        task.addTaskListener(new TaskListener() {
+            @Override
+            public void started(TaskEvent e) {
+                if (e.getKind() == TaskEvent.Kind.ENTER) { // Every compilation unit of the round has been parsed
+                    injector.injectPendingHosts();
+                }
+            }
+
+            @Override
+            public void finished(TaskEvent e) {
+                if (e.getKind() == TaskEvent.Kind.PARSE) {
+                    injector.addCompilationUnit((JCCompilationUnit) e.getCompilationUnit());
+                }
+            }
+        });
+    }
+}
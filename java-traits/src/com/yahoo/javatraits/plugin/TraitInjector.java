@@ -0,0 +1,414 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.plugin;
+
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCAnnotation;
+import com.sun.tools.javac.tree.JCTree.JCAssign;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCExpression;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.JCTree.JCImport;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCNewArray;
+import com.sun.tools.javac.tree.JCTree.JCStatement;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.TreeCopier;
+import com.sun.tools.javac.tree.TreeMaker;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.ListBuffer;
+import com.sun.tools.javac.util.Names;
+import com.yahoo.javatraits.annotations.HasTraits;
+import com.yahoo.javatraits.annotations.Trait;
+import com.yahoo.javatraits.processor.data.TraitElement;
+import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
+
+import javax.lang.model.element.Modifier;
+import javax.tools.Diagnostic.Kind;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies the members of traits into the syntax trees of the classes using them. Only the syntax is available
+ * before the trees are entered, so annotations and trait classes are resolved by name from the imports of each
+ * compilation unit, and host methods are matched to trait methods by name and number of arguments. Concrete
+ * trait methods, fields and initializers are copied unless the host declares a matching member, in which case
+ * the host's member wins, as does the member of the trait listed first. Abstract trait methods are left for the
+ * host to implement, except getThis(), which is implemented to return the host. The copied members are positioned
+ * at the host's declaration, and names the trait imports by name are qualified in them so that they can't clash
+ * with the host's imports.
+ */
+class TraitInjector {
+
+    private static final String INJECTED = "injected";
+    private static final String TRAITS = "traits";
+    private static final String CONSTRUCTOR = "<init>";
+    private static final String JAVA_LANG = "java.lang";
+
+    private final TreeMaker make;
+    private final Names names;
+    private final Trees trees;
+
+    private final Map<String, TypeSource> traits = new LinkedHashMap<String, TypeSource>();
+    private final List<TypeSource> pendingHosts = new ArrayList<TypeSource>();
+
+    private static class TypeSource {
+        final JCCompilationUnit unit;
+        final JCClassDecl decl;
+        final JCAnnotation annotation;
+
+        TypeSource(JCCompilationUnit unit, JCClassDecl decl, JCAnnotation annotation) {
+            this.unit = unit;
+            this.decl = decl;
+            this.annotation = annotation;
+        }
+    }
+
+    TraitInjector(Context context, Trees trees) {
+        this.make = TreeMaker.instance(context);
+        this.names = Names.instance(context);
+        this.trees = trees;
+    }
+
+    void addCompilationUnit(JCCompilationUnit unit) {
+        for (JCTree def : unit.defs) {
+            if (def instanceof JCClassDecl) {
+                JCClassDecl decl = (JCClassDecl) def;
+                JCAnnotation trait = getAnnotation(unit, decl, Trait.class.getName());
+                if (trait != null) {
+                    traits.put(qualify(getPackageName(unit), decl.name.toString()), new TypeSource(unit, decl, trait));
+                }
+                JCAnnotation hasTraits = getAnnotation(unit, decl, HasTraits.class.getName());
+                if (hasTraits != null && "true".equals(String.valueOf(getArgument(hasTraits, INJECTED)))) {
+                    pendingHosts.add(new TypeSource(unit, decl, hasTraits));
+                }
+            }
+        }
+    }
+
+    void injectPendingHosts() {
+        for (TypeSource host : pendingHosts) {
+            for (String traitReference : getTraitReferences(host.annotation)) {
+                TypeSource trait = findTrait(host.unit, traitReference);
+                if (trait == null) {
+                    trees.printMessage(Kind.ERROR, "Trait " + traitReference + " must be compiled together with "
+                            + host.decl.name + " to be injected", host.annotation, host.unit);
+                } else if (!trait.decl.typarams.isEmpty()) {
+                    trees.printMessage(Kind.ERROR, "Generic trait " + traitReference + " can't be injected", host.annotation, host.unit);
+                } else {
+                    inject(host, trait);
+                }
+            }
+        }
+        pendingHosts.clear();
+    }
+
+    private void inject(TypeSource host, TypeSource trait) {
+        String traitPackage = getPackageName(trait.unit);
+        PositionedCopier copier = new PositionedCopier(host.decl.pos, getSingleTypeImports(trait.unit, true));
+        make.at(host.decl.pos);
+        host.decl.implementing = host.decl.implementing.append(
+                qualifiedIdent(qualify(traitPackage, TraitElement.INTERFACE_PREFIX + trait.decl.name)));
+
+        ListBuffer<JCTree> copied = new ListBuffer<JCTree>();
+        for (JCTree member : trait.decl.defs) {
+            if (member instanceof JCMethodDecl) {
+                JCMethodDecl method = (JCMethodDecl) member;
+                if (CONSTRUCTOR.equals(method.name.toString()) || declaresMethod(host.decl, method)) {
+                    continue;
+                }
+                if (method.getModifiers().getFlags().contains(Modifier.ABSTRACT)) {
+                    if (TraitProcessorAptUtils.GET_THIS.equals(method.name.toString()) && method.params.isEmpty()) {
+                        JCMethodDecl getThis = copier.copy(method);
+                        getThis.mods.flags &= ~Flags.ABSTRACT;
+                        getThis.body = make.Block(0, com.sun.tools.javac.util.List.<JCStatement>of(make.Return(make.Ident(names._this))));
+                        copied.append(getThis);
+                    }
+                    continue;
+                }
+            } else if (member instanceof JCVariableDecl && declaresField(host.decl, ((JCVariableDecl) member).name.toString())) {
+                continue;
+            }
+            copied.append(copier.copy(member));
+        }
+        if (checkImportClashes(host, trait, traitPackage, copied.toList())) {
+            host.decl.defs = host.decl.defs.appendList(copied);
+            addImports(host.unit, trait.unit, traitPackage, copier);
+        }
+    }
+
+    /**
+     * @return the simple names imported by single-type (or, if includeStatic is true, single static) imports of the
+     * given compilation unit, mapped to the names they import
+     */
+    private static Map<String, String> getSingleTypeImports(JCCompilationUnit unit, boolean includeStatic) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (ImportTree imp : unit.getImports()) {
+            String imported = imp.getQualifiedIdentifier().toString();
+            String simpleName = imported.substring(imported.lastIndexOf('.') + 1);
+            if (!"*".equals(simpleName) && (includeStatic || !imp.isStatic())) {
+                result.put(simpleName, imported);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Names imported by single-type imports of the trait are qualified in the copied members, but names the trait
+     * resolves through its package or on-demand imports are left as they are. A single-type import of the host
+     * would shadow those, so such clashes are reported instead of letting the name silently change meaning.
+     *
+     * @return true if no copied member uses a name that the host imports from another package
+     */
+    private boolean checkImportClashes(TypeSource host, TypeSource trait, String traitPackage, List<JCTree> copied) {
+        Set<String> traitPackages = new HashSet<String>();
+        traitPackages.add(JAVA_LANG);
+        traitPackages.add(traitPackage);
+        for (ImportTree imp : trait.unit.getImports()) {
+            String imported = imp.getQualifiedIdentifier().toString();
+            if (!imp.isStatic() && imported.endsWith(".*")) {
+                traitPackages.add(imported.substring(0, imported.length() - 2));
+            }
+        }
+        final Set<String> usedNames = new HashSet<String>();
+        TreeScanner<Void, Void> scanner = new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitIdentifier(IdentifierTree node, Void p) {
+                usedNames.add(node.getName().toString());
+                return null;
+            }
+        };
+        for (JCTree member : copied) {
+            member.accept(scanner, null);
+        }
+
+        boolean valid = true;
+        for (Map.Entry<String, String> hostImport : getSingleTypeImports(host.unit, false).entrySet()) {
+            String imported = hostImport.getValue();
+            String importedPackage = imported.substring(0, imported.lastIndexOf('.'));
+            if (usedNames.contains(hostImport.getKey()) && !traitPackages.contains(importedPackage)) {
+                trees.printMessage(Kind.ERROR, "Injected trait " + qualify(traitPackage, trait.decl.name.toString())
+                        + " refers to " + hostImport.getKey() + ", which " + host.decl.name + " imports as " + imported
+                        + ". Import the trait's " + hostImport.getKey() + " by name in the trait, or qualify one of them",
+                        host.annotation, host.unit);
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Adds the on-demand imports of the trait's compilation unit and the trait's package to the host's, so that the
+     * copied members resolve the same names. Names imported by single-type imports are qualified by the copier
+     * instead, since importing them could clash with the host's imports.
+     */
+    private void addImports(JCCompilationUnit host, JCCompilationUnit trait, String traitPackage, PositionedCopier copier) {
+        Set<String> existing = new HashSet<String>();
+        for (ImportTree imp : host.getImports()) {
+            existing.add(imp.isStatic() + " " + imp.getQualifiedIdentifier());
+        }
+        ListBuffer<JCTree> imports = new ListBuffer<JCTree>();
+        for (ImportTree imp : trait.getImports()) {
+            if (imp.getQualifiedIdentifier().toString().endsWith(".*")
+                    && existing.add(imp.isStatic() + " " + imp.getQualifiedIdentifier())) {
+                imports.append(copier.copy((JCImport) imp));
+            }
+        }
+        if (traitPackage.length() > 0 && !traitPackage.equals(getPackageName(host))
+                && existing.add(false + " " + traitPackage + ".*")) {
+            imports.append(newImport(make.Select(qualifiedIdent(traitPackage), names.asterisk)));
+        }
+        if (imports.isEmpty()) {
+            return;
+        }
+
+        ListBuffer<JCTree> defs = new ListBuffer<JCTree>();
+        boolean added = false;
+        for (JCTree def : host.defs) {
+            if (!added && def instanceof JCClassDecl) { // Imports precede all type declarations
+                defs.appendList(imports);
+                added = true;
+            }
+            defs.append(def);
+        }
+        host.defs = defs.toList();
+    }
+
+    private JCTree newImport(JCFieldAccess qualid) {
+        // TreeMaker.Import takes a JCTree before JDK 21 and a JCFieldAccess after
+        for (Method method : TreeMaker.class.getMethods()) {
+            if ("Import".equals(method.getName()) && method.getParameterTypes().length == 2) {
+                try {
+                    return (JCTree) method.invoke(make, qualid, false);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Couldn't create import of " + qualid, e);
+                }
+            }
+        }
+        throw new IllegalStateException("TreeMaker.Import not found");
+    }
+
+    private JCExpression qualifiedIdent(String name) {
+        String[] parts = name.split("\\.");
+        JCExpression result = make.Ident(names.fromString(parts[0]));
+        for (int i = 1; i < parts.length; i++) {
+            result = make.Select(result, names.fromString(parts[i]));
+        }
+        return result;
+    }
+
+    private static boolean declaresMethod(JCClassDecl decl, JCMethodDecl method) {
+        for (JCTree def : decl.defs) {
+            if (def instanceof JCMethodDecl && ((JCMethodDecl) def).name.toString().equals(method.name.toString())
+                    && ((JCMethodDecl) def).params.size() == method.params.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean declaresField(JCClassDecl decl, String name) {
+        for (JCTree def : decl.defs) {
+            if (def instanceof JCVariableDecl && ((JCVariableDecl) def).name.toString().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private TypeSource findTrait(JCCompilationUnit unit, String reference) {
+        for (Map.Entry<String, TypeSource> entry : traits.entrySet()) {
+            if (refersTo(unit, reference, entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static JCAnnotation getAnnotation(JCCompilationUnit unit, JCClassDecl decl, String annotationName) {
+        for (JCAnnotation annotation : decl.mods.annotations) {
+            if (refersTo(unit, annotation.annotationType.toString(), annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the given name, as written in the given compilation unit, may refer to the given top level class
+     */
+    private static boolean refersTo(JCCompilationUnit unit, String name, String qualifiedName) {
+        if (name.equals(qualifiedName)) {
+            return true;
+        }
+        int lastDot = qualifiedName.lastIndexOf('.');
+        String packageName = lastDot < 0 ? "" : qualifiedName.substring(0, lastDot);
+        if (!name.equals(qualifiedName.substring(lastDot + 1))) {
+            return false;
+        }
+        for (ImportTree imp : unit.getImports()) {
+            String imported = imp.getQualifiedIdentifier().toString();
+            if (!imp.isStatic() && (imported.equals(qualifiedName) || imported.equals(packageName + ".*"))) {
+                return true;
+            }
+        }
+        return packageName.equals(getPackageName(unit));
+    }
+
+    private static JCExpression getArgument(JCAnnotation annotation, String name) {
+        for (JCExpression arg : annotation.args) {
+            if (arg instanceof JCAssign && name.equals(((JCAssign) arg).lhs.toString())) {
+                return ((JCAssign) arg).rhs;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> getTraitReferences(JCAnnotation hasTraits) {
+        List<String> result = new ArrayList<String>();
+        JCExpression value = getArgument(hasTraits, TRAITS);
+        List<JCExpression> classLiterals = new ArrayList<JCExpression>();
+        if (value instanceof JCNewArray) {
+            classLiterals.addAll(((JCNewArray) value).elems);
+        } else if (value != null) {
+            classLiterals.add(value);
+        }
+        for (JCExpression classLiteral : classLiterals) {
+            if (classLiteral instanceof JCFieldAccess && "class".equals(((JCFieldAccess) classLiteral).name.toString())) {
+                result.add(((JCFieldAccess) classLiteral).selected.toString());
+            }
+        }
+        return result;
+    }
+
+    private static String getPackageName(JCCompilationUnit unit) {
+        ExpressionTree packageName = unit.getPackageName();
+        return packageName == null ? "" : packageName.toString();
+    }
+
+    private static String qualify(String packageName, String simpleName) {
+        return packageName.length() == 0 ? simpleName : packageName + "." + simpleName;
+    }
+
+    /**
+     * Copies trees and places them at a single position in the host's source, since positions in the trait's
+     * source are meaningless there. Identifiers imported by name in the trait's source are replaced with the
+     * names they import.
+     */
+    private class PositionedCopier extends TreeCopier<Void> {
+        private final int pos;
+        private final Map<String, String> qualifiedNames;
+
+        PositionedCopier(int pos, Map<String, String> qualifiedNames) {
+            super(make);
+            this.pos = pos;
+            this.qualifiedNames = qualifiedNames;
+        }
+
+        @Override
+        public <T extends JCTree> T copy(T tree, Void p) {
+            T copy = super.copy(tree, p);
+            if (copy != null) {
+                copy.pos = pos;
+            }
+            return copy;
+        }
+
+        @Override
+        public JCTree visitIdentifier(IdentifierTree node, Void p) {
+            String qualifiedName = qualifiedNames.get(node.getName().toString());
+            if (qualifiedName != null) {
+                return make.at(pos).Select(qualifiedIdent(qualifiedName.substring(0, qualifiedName.lastIndexOf('.'))),
+                        ((JCIdent) node).name);
+            }
+            return super.visitIdentifier(node, p);
+        }
+    }
+}
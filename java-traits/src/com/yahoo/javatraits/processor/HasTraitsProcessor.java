@@ -15,15 +15,53 @@
  */
 package com.yahoo.javatraits.processor;
 
+import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.aptutils.utils.AptUtils;
+import com.yahoo.javatraits.annotations.ConcurrencyPolicy;
 import com.yahoo.javatraits.annotations.HasTraits;
 import com.yahoo.javatraits.processor.data.ClassWithTraits;
+import com.yahoo.javatraits.processor.data.TraitElement;
+import com.yahoo.javatraits.processor.utils.DispatchProfile;
+import com.yahoo.javatraits.processor.utils.InliningReporter;
+import com.yahoo.javatraits.processor.utils.LockGuardChecker;
+import com.yahoo.javatraits.processor.utils.TraitMethodInliner;
+import com.yahoo.javatraits.processor.writers.ClassWithTraitsColumnsWriter;
+import com.yahoo.javatraits.processor.writers.ClassWithTraitsPoolWriter;
 import com.yahoo.javatraits.processor.writers.ClassWithTraitsSuperclassWriter;
+import com.yahoo.javatraits.runtime.TraitClassList;
+import com.yahoo.javatraits.runtime.TraitIndex;
 
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class HasTraitsProcessor extends JavaTraitsProcessor<ClassWithTraits> {
 
+    private final Map<String, ClassWithTraits> sharedSuperclasses = new HashMap<String, ClassWithTraits>();
+
+    private DispatchProfile profile;
+    private boolean profileLoaded;
+
     @Override
     protected Class<? extends Annotation> getAnnotationClass() {
         return HasTraits.class;
@@ -36,6 +74,382 @@ public class HasTraitsProcessor extends JavaTraitsProcessor<ClassWithTraits> {
 
     @Override
     protected void processItem(ClassWithTraits item) {
-        new ClassWithTraitsSuperclassWriter(item, utils).writeClass(filer);
+        String hostName = utils.getElements().getBinaryName(item.getSourceElement()).toString();
+        reflectivelyLoadedClasses.add(hostName);
+        addConditionalShrinkerRule(TraitIndex.class, "-keepnames class " + hostName);
+        if (item.getColumnsName() != null && validateColumnarTraits(item)) {
+            writeClass(new ClassWithTraitsColumnsWriter(item, utils));
+        }
+        if (item.isInjected()) {
+            validateInjectedTraits(item);
+            if (item.isPoolable()) {
+                messager.printMessage(Kind.ERROR, "poolable can't be used with injected traits", item.getSourceElement());
+            }
+            return;
+        }
+
+        if (item.hasSharedSuperclass() && !claimSharedSuperclass(item)) {
+            return;
+        }
+        List<DeclaredTypeName> permittedSubclasses = item.isSealed()
+                ? getPermittedSubclasses(item) : Collections.<DeclaredTypeName>emptyList();
+        TraitMethodInliner inliner = new TraitMethodInliner(processingEnv, utils);
+        Map<TraitElement, Map<VariableElement, String>> flattenedFields = getFlattenedFields(item, inliner);
+        Map<ExecutableElement, List<String>> inlinedMethods = getInlinedMethods(item, inliner, flattenedFields.keySet());
+        Set<ExecutableElement> optimisticReads = getOptimisticReads(item);
+        writeClass(new ClassWithTraitsSuperclassWriter(item, permittedSubclasses, flattenedFields, inlinedMethods, optimisticReads, utils));
+        // The trait index names the generated superclass. Only its name is kept, so shrinkers can still inline its forwarders
+        addConditionalShrinkerRule(TraitIndex.class, "-keepnames class " + item.getGeneratedSuperclassName());
+        if (item.isPoolable() && validatePoolableTraits(item) && item.getPoolName() != null) {
+            writeClass(new ClassWithTraitsPoolWriter(item, utils));
+        }
+        // Initializing the generated superclass initializes the desired superclass and the traits re-exporting constants.
+        // It's only listed along with the delegates it creates, so that all of a class's trait code is initialized alike
+        boolean canInitializeAtBuildTime = AptUtils.OBJECT_CLASS_NAME.equals(item.getDesiredSuperclass().toString());
+        for (TraitElement trait : item.getTraitClasses()) {
+            canInitializeAtBuildTime &= trait != null && trait.canInitializeAtBuildTime();
+        }
+        if (canInitializeAtBuildTime) {
+            buildTimeInitializedClasses.add(item.getGeneratedSuperclassName().toString());
+        }
+        if (isOptionEnabled(OPTION_REPORT_INLINING)) {
+            new InliningReporter(processingEnv, utils).reportForClassWithTraits(item, inlinedMethods.keySet(), optimisticReads);
+        }
+    }
+
+    /**
+     * Checks that the lock guards of the class's concurrency policy can't deadlock
+     *
+     * @return the read-only trait methods that are safe to run under a StampedLock optimistic read
+     */
+    private Set<ExecutableElement> getOptimisticReads(ClassWithTraits item) {
+        if (item.getConcurrencyPolicy() == ConcurrencyPolicy.NONE) {
+            return Collections.emptySet();
+        }
+        LockGuardChecker checker = new LockGuardChecker(processingEnv, utils);
+        checker.checkNestedCalls(item);
+        if (item.getConcurrencyPolicy() != ConcurrencyPolicy.STAMPED) {
+            return Collections.emptySet();
+        }
+        Set<ExecutableElement> result = new HashSet<ExecutableElement>();
+        for (TraitElement trait : item.getTraitClasses()) {
+            if (trait == null) {
+                continue;
+            }
+            for (ExecutableElement exec : trait.getDeclaredMethods()) {
+                if (checker.canReadOptimistically(trait, exec)) {
+                    result.add(exec);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the traits of the given class whose fields are declared by its generated superclass instead of their
+     * delegates, mapped to the source of each field's initializer (or null for fields without one)
+     */
+    private Map<TraitElement, Map<VariableElement, String>> getFlattenedFields(ClassWithTraits item, TraitMethodInliner inliner) {
+        Map<TraitElement, Map<VariableElement, String>> result = new LinkedHashMap<TraitElement, Map<VariableElement, String>>();
+        for (TraitElement trait : item.getTraitClasses()) {
+            if (trait == null || trait.getFields().isEmpty()) {
+                continue;
+            }
+            String reason = inliner.getReasonFieldsNotFlattenable(item, trait);
+            if (reason == null) {
+                Map<VariableElement, String> initializers = new LinkedHashMap<VariableElement, String>();
+                for (VariableElement field : trait.getFields()) {
+                    initializers.put(field, inliner.getInitializerSource(field));
+                }
+                result.put(trait, initializers);
+            } else {
+                messager.printMessage(Kind.NOTE, "The fields of trait " + trait.getSimpleName() + " are kept in its delegate for "
+                        + item.getSimpleName() + " because " + reason, item.getSourceElement());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the body lines of the trait methods to run in the generated superclass of the given class instead of
+     * forwarding them to their delegates: every concrete method of the traits with flattened fields, and the
+     * methods the profile marks as hot
+     */
+    private Map<ExecutableElement, List<String>> getInlinedMethods(ClassWithTraits item, TraitMethodInliner inliner,
+            Set<TraitElement> flattenedTraits) {
+        Map<ExecutableElement, List<String>> result = new HashMap<ExecutableElement, List<String>>();
+        for (TraitElement trait : flattenedTraits) {
+            for (ExecutableElement exec : trait.getDeclaredMethods()) {
+                if (!exec.getModifiers().contains(Modifier.ABSTRACT) && !utils.isGetThis(trait, exec)) {
+                    result.put(exec, inliner.getBodyLines(exec));
+                }
+            }
+        }
+        DispatchProfile profile = getProfile();
+        if (profile == null) {
+            return result;
+        }
+        for (TraitElement trait : item.getTraitClasses()) {
+            if (trait == null || flattenedTraits.contains(trait)) {
+                continue;
+            }
+            for (ExecutableElement exec : trait.getDeclaredMethods()) {
+                String name = exec.getSimpleName().toString();
+                // Inherited methods can also be recorded on the trait declaring them
+                Set<String> classNames = new LinkedHashSet<String>(Arrays.asList(item.getElementName().toString(),
+                        item.getGeneratedSuperclassName().toString(), trait.getElementName().toString(),
+                        trait.getDelegateName().toString(), ((TypeElement) exec.getEnclosingElement()).getQualifiedName().toString()));
+                String signature = utils.getErasedSignature(exec);
+                String parameters = signature.substring(signature.indexOf('(') + 1, signature.length() - 1);
+                if (!profile.isHot(classNames, name, parameters) || item.declaresMethodMatching(exec)) {
+                    continue;
+                }
+                String reason = inliner.getReasonNotInlinable(item, trait, exec);
+                if (reason == null) {
+                    result.put(exec, inliner.getBodyLines(exec));
+                } else {
+                    messager.printMessage(Kind.NOTE, "Hot trait method " + signature + " (weight " + profile.getWeight(classNames, name, parameters)
+                            + " in the profile) isn't inlined into " + item.getSimpleName() + " because " + reason, exec);
+                }
+            }
+        }
+        return result;
+    }
+
+    private DispatchProfile getProfile() {
+        if (!profileLoaded) {
+            profileLoaded = true;
+            String path = processingEnv.getOptions().get(OPTION_PROFILE);
+            if (path != null) {
+                String percent = processingEnv.getOptions().get(OPTION_HOT_METHOD_PERCENT);
+                try {
+                    profile = DispatchProfile.read(new File(path),
+                            percent != null ? Integer.parseInt(percent) : DispatchProfile.DEFAULT_HOT_PERCENT);
+                } catch (IOException e) {
+                    messager.printMessage(Kind.ERROR, "Couldn't read profile " + path + ": " + e.getMessage());
+                } catch (NumberFormatException e) {
+                    messager.printMessage(Kind.ERROR, OPTION_HOT_METHOD_PERCENT + " must be an integer, was " + percent);
+                }
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * @return the classes compiled in this round that extend the generated superclass of the given class
+     */
+    private List<DeclaredTypeName> getPermittedSubclasses(ClassWithTraits item) {
+        if (!item.hasSharedSuperclass()) {
+            return Collections.singletonList(item.getElementName());
+        }
+        List<DeclaredTypeName> result = new ArrayList<DeclaredTypeName>();
+        for (Element e : roundEnv.getElementsAnnotatedWith(HasTraits.class)) {
+            if (e.getKind() == ElementKind.CLASS) {
+                ClassWithTraits host = e.equals(item.getSourceElement()) ? item : new ClassWithTraits((TypeElement) e, utils);
+                if (host.hasSharedSuperclass() && host.getGeneratedSuperclassName().equals(item.getGeneratedSuperclassName())) {
+                    result.add(host.getElementName());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the given class is the first to use its shared superclass, which should then be generated
+     */
+    private boolean claimSharedSuperclass(ClassWithTraits item) {
+        if (item.useFinalForwarders()) {
+            messager.printMessage(Kind.ERROR, "finalForwarders can't be used with a shared superclass", item.getSourceElement());
+        }
+        String name = item.getGeneratedSuperclassName().toString();
+        ClassWithTraits owner = sharedSuperclasses.get(name);
+        if (owner == null) {
+            sharedSuperclasses.put(name, item);
+            return true;
+        }
+        if (!owner.hasSameSuperclassConfiguration(item)) {
+            messager.printMessage(Kind.ERROR, "Shared superclass " + name + " is already used by " + owner.getSimpleName()
+                    + " with a different desiredSuperclass, prefer, concurrency, sealed or poolable", item.getSourceElement());
+        } else if (item.isPoolable() && validatePoolableTraits(item) && item.getPoolName() != null) {
+            writeClass(new ClassWithTraitsPoolWriter(item, utils));
+        }
+        return false;
+    }
+
+    /**
+     * Checks that the generated reset() method can restore the state of all traits of the given poolable class
+     *
+     * @return true if the traits are valid
+     */
+    private boolean validatePoolableTraits(ClassWithTraits item) {
+        boolean valid = true;
+        for (TraitElement trait : item.getTraitClasses()) {
+            if (trait == null) {
+                continue;
+            }
+            ExecutableElement reset = trait.getResetMethod();
+            if (reset != null && (reset.getModifiers().contains(Modifier.ABSTRACT) || !reset.getModifiers().contains(Modifier.PUBLIC)
+                    || reset.getReturnType().getKind() != TypeKind.VOID)) {
+                messager.printMessage(Kind.ERROR, "Trait " + trait.getSimpleName() + " is used by poolable class "
+                        + item.getSimpleName() + ", so its reset() method must be public, void and not abstract", reset);
+                valid = false;
+            } else if (reset == null && !trait.getFields().isEmpty()) {
+                messager.printMessage(Kind.ERROR, "Trait " + trait.getSimpleName() + " has instance fields, so it must declare "
+                        + "a public void reset() method restoring them to be used by poolable class " + item.getSimpleName(),
+                        item.getSourceElement());
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Checks that the javac plugin injected the traits into the given class and that they don't need a generated
+     * superclass
+     */
+    private void validateInjectedTraits(ClassWithTraits item) {
+        TypeElement host = item.getSourceElement();
+        Map<String, TraitElement> fieldOwners = new HashMap<String, TraitElement>();
+        for (TraitElement trait : item.getTraitClasses()) {
+            if (trait == null) {
+                continue;
+            }
+            if (!implementsInterface(host, trait.getGeneratedInterfaceName())) {
+                messager.printMessage(Kind.ERROR, "Trait " + trait.getSimpleName() + " wasn't injected into " + host.getSimpleName()
+                        + "; compile with -Xplugin:" + PLUGIN_NAME, host);
+            }
+            if (trait.getParentTrait() != null) {
+                messager.printMessage(Kind.ERROR, "Trait " + trait.getSimpleName() + " extends another trait, and can't be injected", host);
+            }
+            if (!trait.getMemoizedMethods().isEmpty() || !trait.getAsyncMethods().isEmpty() || !trait.getBatchedMethods().isEmpty()
+                    || !trait.getFixedArityMethods().isEmpty()) {
+                messager.printMessage(Kind.ERROR, "Trait " + trait.getSimpleName() + " declares @Memoize, @Async, @Batched or @FixedArity methods, "
+                        + "which need a generated superclass, and can't be injected", host);
+            }
+            if (!trait.getInstrumentedMethods().isEmpty() || !trait.getRecordedMethods().isEmpty() || !trait.getCachedMethods().isEmpty()) {
+                messager.printMessage(Kind.WARNING, "@Instrumented, @Recorded and @Cached methods of trait " + trait.getSimpleName()
+                        + " are copied as is when injected into " + host.getSimpleName(), host);
+            }
+            validateInjectedFields(host, trait, fieldOwners);
+        }
+    }
+
+    /**
+     * Injected fields that the class already declares aren't copied, so the trait's methods use the class's
+     * field instead. That only works if the field has the same type, and isn't also used by another trait.
+     */
+    private void validateInjectedFields(TypeElement host, TraitElement trait, Map<String, TraitElement> fieldOwners) {
+        for (VariableElement field : trait.getFields()) {
+            String name = field.getSimpleName().toString();
+            TraitElement owner = fieldOwners.put(name, trait);
+            if (owner != null) {
+                messager.printMessage(Kind.ERROR, "Traits " + owner.getSimpleName() + " and " + trait.getSimpleName()
+                        + " both declare a field named " + name + " and can't be injected into the same class", host);
+            }
+            for (VariableElement hostField : ElementFilter.fieldsIn(host.getEnclosedElements())) {
+                if (hostField.getSimpleName().contentEquals(name)
+                        && !utils.getTypes().isSameType(hostField.asType(), field.asType())) {
+                    messager.printMessage(Kind.ERROR, "Field " + name + " of trait " + trait.getSimpleName()
+                            + " has a different type than the field with the same name in " + host.getSimpleName(), hostField);
+                }
+            }
+        }
+    }
+
+    /**
+     * Views of a columnar container move between elements, so trait state that the delegates keep per instance,
+     * like fields, memoized values and results of asynchronous calls, would be shared between elements
+     *
+     * @return true if the container can be generated
+     */
+    private boolean validateColumnarTraits(ClassWithTraits item) {
+        TypeElement host = item.getSourceElement();
+        boolean valid = true;
+        Map<String, ExecutableElement> getters = new HashMap<String, ExecutableElement>();
+        List<ExecutableElement> setters = new ArrayList<ExecutableElement>();
+        for (TraitElement trait : item.getTraitClasses()) {
+            if (trait == null) {
+                return false;
+            }
+            if (!AptUtils.isEmpty(trait.getTypeParameters()) || !AptUtils.isEmpty(trait.getInterfaceNames())
+                    || !trait.getFields().isEmpty()) {
+                messager.printMessage(Kind.ERROR, "Trait " + trait.getSimpleName() + " is generic, implements interfaces or "
+                        + "declares fields, and can't be used by a @Columnar class", host);
+                valid = false;
+            }
+            if (!trait.getMemoizedMethods().isEmpty() || !trait.getCachedMethods().isEmpty()
+                    || !trait.getAsyncMethods().isEmpty() || !trait.getBatchedMethods().isEmpty()) {
+                messager.printMessage(Kind.ERROR, "Trait " + trait.getSimpleName() + " declares @Memoize, @Cached, @Async or "
+                        + "@Batched methods, and can't be used by a @Columnar class", host);
+                valid = false;
+            }
+            for (ExecutableElement exec : trait.getDeclaredMethods()) {
+                if (!exec.getModifiers().contains(Modifier.ABSTRACT) || utils.isGetThis(trait, exec)) {
+                    continue;
+                }
+                String column = utils.getColumnName(exec);
+                if (column == null) {
+                    messager.printMessage(Kind.ERROR, "Abstract method " + exec.getSimpleName() + " of trait " + trait.getSimpleName()
+                            + " isn't a getter or setter of a primitive value, and can't be stored by a @Columnar class", host);
+                    valid = false;
+                } else if (exec.getParameters().isEmpty()) {
+                    ExecutableElement other = getters.put(column, exec);
+                    if (other != null && !utils.getTypes().isSameType(other.getReturnType(), exec.getReturnType())) {
+                        messager.printMessage(Kind.ERROR, "Getters for column " + column + " have different types", host);
+                        valid = false;
+                    }
+                } else {
+                    setters.add(exec);
+                }
+            }
+        }
+        for (ExecutableElement setter : setters) {
+            ExecutableElement getter = getters.get(utils.getColumnName(setter));
+            if (getter == null || !utils.getTypes().isSameType(getter.getReturnType(), setter.getParameters().get(0).asType())) {
+                messager.printMessage(Kind.ERROR, "Setter " + setter.getSimpleName() + " has no abstract getter of the same type, "
+                        + "and can't be stored by a @Columnar class", host);
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private boolean implementsInterface(TypeElement host, DeclaredTypeName interfaceName) {
+        for (TypeMirror iface : host.getInterfaces()) {
+            // The interface may not have been generated yet, in which case its type is an error type named as written
+            String name = utils.getTypes().erasure(iface).toString();
+            if (name.equals(interfaceName.toString()) || name.equals(interfaceName.getSimpleName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected String getConfigurationName() {
+        return "hosts";
+    }
+
+    @Override
+    protected String getClassListResource() {
+        return TraitClassList.HOSTS_RESOURCE;
+    }
+
+    @Override
+    protected String getIndexResource() {
+        return TraitIndex.HOSTS_RESOURCE;
+    }
+
+    @Override
+    protected String getIndexEntry(ClassWithTraits item) {
+        // Injected classes don't have a generated superclass
+        StringBuilder entry = new StringBuilder(utils.getElements().getBinaryName(item.getSourceElement()))
+            .append(" ").append(item.isInjected() ? TraitIndex.NO_CLASS : getBinaryName(item.getGeneratedSuperclassName()));
+        for (TraitElement trait : item.getTraitClasses()) {
+            if (trait != null) {
+                entry.append(" ").append(utils.getElements().getBinaryName(trait.getSourceElement()));
+            }
+        }
+        return entry.toString();
     }
 }
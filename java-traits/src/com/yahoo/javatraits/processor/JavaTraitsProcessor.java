@@ -15,37 +15,145 @@
  */
 package com.yahoo.javatraits.processor;
 
+import com.yahoo.aptutils.model.DeclaredTypeName;
 import com.yahoo.javatraits.processor.data.TypeElementWrapper;
+import com.yahoo.javatraits.processor.utils.Json;
 import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
+import com.yahoo.javatraits.processor.writers.JavaTraitsWriter;
+import com.yahoo.javatraits.runtime.TraitClassList;
+import com.yahoo.javatraits.runtime.TraitIndex;
 
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
 import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 public abstract class JavaTraitsProcessor<T extends TypeElementWrapper> extends AbstractProcessor {
 
+    /**
+     * Processor option (-Ajavatraits.reportInlining=true) to report generated methods that
+     * are estimated to exceed the JIT's default inlining budgets
+     */
+    public static final String OPTION_REPORT_INLINING = "javatraits.reportInlining";
+
+    /**
+     * Processor option (-Ajavatraits.nativeImage=false) to stop writing GraalVM native-image configuration
+     */
+    public static final String OPTION_NATIVE_IMAGE = "javatraits.nativeImage";
+
+    /**
+     * Processor option (-Ajavatraits.nativeImageDir=group/artifact) naming the directory under META-INF/native-image
+     * to write configuration to. Defaults to javatraits/ followed by the package of the first processed class.
+     */
+    public static final String OPTION_NATIVE_IMAGE_DIR = "javatraits.nativeImageDir";
+
+    /**
+     * Processor option (-Ajavatraits.shrinkerRules=false) to stop writing ProGuard/R8 consumer rules
+     */
+    public static final String OPTION_SHRINKER_RULES = "javatraits.shrinkerRules";
+
+    /**
+     * Processor option (-Ajavatraits.profile=path/to/profile.txt) naming a profile ranking methods by how hot they are,
+     * e.g. the execution samples printed by jfr view hot-methods. The hottest trait methods are inlined into generated superclasses (see {@link com.yahoo.javatraits.processor.utils.DispatchProfile})
+     */
+    public static final String OPTION_PROFILE = "javatraits.profile";
+
+    /**
+     * Processor option (-Ajavatraits.hotMethodPercent=5) setting the percentage of methods in the profile to inline
+     */
+    public static final String OPTION_HOT_METHOD_PERCENT = "javatraits.hotMethodPercent";
+
+    /**
+     * The name of the javac plugin injecting traits, as passed to -Xplugin. It's declared here rather than by
+     * JavaTraitsPlugin so that the processors don't depend on the plugin, which is compiled separately since it
+     * uses javac internals.
+     */
+    public static final String PLUGIN_NAME = "JavaTraits";
+
+    private static final String NATIVE_IMAGE_ROOT = "META-INF/native-image/";
+    private static final String DEFAULT_NATIVE_IMAGE_DIR = "javatraits";
+    private static final String SHRINKER_RULES_ROOT = "META-INF/proguard/javatraits-";
+
     protected Messager messager;
     protected TraitProcessorAptUtils utils;
     protected Filer filer;
+    protected RoundEnvironment roundEnv;
     
     protected abstract Class<? extends Annotation> getAnnotationClass();
     protected abstract T itemFromTypeElement(TypeElement typeElem);
     protected abstract void processItem(T item);
 
+    /**
+     * @return the trait index resource this processor writes to
+     */
+    protected abstract String getIndexResource();
+
+    /**
+     * @return the line describing the given item in the trait index
+     */
+    protected abstract String getIndexEntry(T item);
+
+    /**
+     * @return the class list resource this processor writes the names of its generated classes to
+     */
+    protected abstract String getClassListResource();
+
+    /**
+     * @return the name distinguishing the configuration this processor writes (native-image subdirectory,
+     * shrinker rules file) from that of the other processor in the same compilation
+     */
+    protected abstract String getConfigurationName();
+
+    private final List<String> indexEntries = new ArrayList<String>();
+    private final List<Element> indexedElements = new ArrayList<Element>();
+    private final List<String> generatedClasses = new ArrayList<String>();
+
+    /**
+     * Binary names of the classes with no static state depending on the runtime environment, which native images
+     * can initialize at build time
+     */
+    protected final Set<String> buildTimeInitializedClasses = new LinkedHashSet<String>();
+
+    /**
+     * Binary names of the classes the runtime may load by name, e.g. through the trait index
+     */
+    protected final Set<String> reflectivelyLoadedClasses = new LinkedHashSet<String>();
+
+    /**
+     * ProGuard/R8 rules for the generated classes, which shrinkers read from META-INF/proguard in library jars
+     */
+    protected final List<String> shrinkerRules = new ArrayList<String>();
+
     @Override
     public Set<String> getSupportedAnnotationTypes() {
         return Collections.singleton(getAnnotationClass().getCanonicalName());
     }
 
+    @Override
+    public Set<String> getSupportedOptions() {
+        return new HashSet<String>(Arrays.asList(OPTION_REPORT_INLINING, OPTION_NATIVE_IMAGE, OPTION_NATIVE_IMAGE_DIR,
+                OPTION_SHRINKER_RULES, OPTION_PROFILE, OPTION_HOT_METHOD_PERCENT));
+    }
+
     @Override
     public SourceVersion getSupportedSourceVersion() {
-        return SourceVersion.RELEASE_6;
+        return SourceVersion.latestSupported();
     }
 
     @Override
@@ -54,14 +162,27 @@ public abstract class JavaTraitsProcessor<T extends TypeElementWrapper> extends
 
         this.messager = env.getMessager();
         this.filer = env.getFiler();
-        this.utils = new TraitProcessorAptUtils(messager, env.getTypeUtils(), env.getElementUtils());
+        this.utils = new TraitProcessorAptUtils(env);
     }
     
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
         try {
+            this.roundEnv = env;
             Set<? extends Element> annotatedElements = env.getElementsAnnotatedWith(getAnnotationClass());
             processElements(annotatedElements);
+            if (env.processingOver()) {
+                writeResource(getIndexResource(), TraitIndex.FORMAT_HEADER + " " + TraitIndex.FORMAT_VERSION,
+                        mergeWithPreviousIndex(indexEntries));
+                writeResource(getClassListResource(), TraitClassList.HEADER, getClassListEntries());
+                if (!"false".equalsIgnoreCase(processingEnv.getOptions().get(OPTION_NATIVE_IMAGE))) {
+                    writeNativeImageConfiguration();
+                }
+                if (!"false".equalsIgnoreCase(processingEnv.getOptions().get(OPTION_SHRINKER_RULES))) {
+                    writeResource(SHRINKER_RULES_ROOT + getConfigurationName() + ".pro",
+                            "# ProGuard/R8 rules generated by java-traits", shrinkerRules);
+                }
+            }
         } catch (Exception e) {
             messager.printMessage(Kind.ERROR, "Uncaught exception in annotation processor " + this + ": " + e + ", message " + e.getMessage());
             throw new RuntimeException(e);
@@ -69,13 +190,165 @@ public abstract class JavaTraitsProcessor<T extends TypeElementWrapper> extends
         return true;
     }
 
+    protected boolean isOptionEnabled(String option) {
+        return Boolean.parseBoolean(processingEnv.getOptions().get(option));
+    }
+
     private void processElements(Set<? extends Element> elements) {
         for (Element e : elements) {
             if (e.getKind() != ElementKind.CLASS || !(e instanceof TypeElement)) {
                 messager.printMessage(Kind.ERROR, "Only a class can be annotated with @" + getAnnotationClass().getSimpleName(), e);
             } else {
-                processItem(itemFromTypeElement((TypeElement) e));
+                T item = itemFromTypeElement((TypeElement) e);
+                processItem(item);
+                indexEntries.add(getIndexEntry(item));
+                indexedElements.add(e);
+            }
+        }
+    }
+
+    /**
+     * @return the binary name of the given generated class. Generated classes are top level classes, so this is
+     * their qualified name without type arguments.
+     */
+    protected static String getBinaryName(DeclaredTypeName generated) {
+        return generated.toString();
+    }
+
+    /**
+     * Incremental compilations only process the changed elements, so the entries of the index written by an earlier
+     * compilation to the same output are kept, unless they describe an element of this compilation or an element
+     * that no longer exists or no longer has this processor's annotation
+     *
+     * @return the given entries followed by the entries kept from the previous index
+     */
+    private List<String> mergeWithPreviousIndex(List<String> entries) {
+        Set<String> indexedNames = new HashSet<String>();
+        for (String entry : entries) {
+            indexedNames.add(entry.substring(0, entry.indexOf(' ')));
+        }
+        List<String> result = new ArrayList<String>(entries);
+        try {
+            FileObject previous = filer.getResource(StandardLocation.CLASS_OUTPUT, "", getIndexResource());
+            BufferedReader reader = new BufferedReader(previous.openReader(true));
+            try {
+                String header = reader.readLine();
+                if (!(TraitIndex.FORMAT_HEADER + " " + TraitIndex.FORMAT_VERSION).equals(header)) {
+                    return result;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int separator = line.indexOf(' ');
+                    String name = separator > 0 ? line.substring(0, separator) : line;
+                    if (!line.isEmpty() && indexedNames.add(name) && isStillAnnotated(name)) {
+                        result.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // No previous index
+        } catch (IllegalArgumentException e) {
+            // No previous index
+        }
+        return result;
+    }
+
+    private boolean isStillAnnotated(String binaryName) {
+        TypeElement element = utils.getElements().getTypeElement(binaryName.replace('$', '.'));
+        return element != null && element.getAnnotation(getAnnotationClass()) != null;
+    }
+
+    /**
+     * Writes the given writer's class and records it in this processor's class list
+     */
+    protected void writeClass(JavaTraitsWriter<?> writer) {
+        DeclaredTypeName generated = writer.writeClass(filer);
+        if (generated != null) {
+            generatedClasses.add(getBinaryName(generated));
+        }
+    }
+
+    /**
+     * Generated sources are compiled in the round after they're written, so by the last round the classes nested in
+     * them can be listed too
+     *
+     * @return the internal names of the generated classes and the classes nested in them
+     */
+    private List<String> getClassListEntries() {
+        List<String> result = new ArrayList<String>();
+        for (String binaryName : generatedClasses) {
+            TypeElement element = utils.getElements().getTypeElement(binaryName);
+            if (element == null) {
+                result.add(TraitClassList.toInternalName(binaryName));
+            } else {
+                addClassListEntries(element, result);
+            }
+        }
+        return result;
+    }
+
+    private void addClassListEntries(TypeElement element, List<String> result) {
+        result.add(TraitClassList.toInternalName(utils.getElements().getBinaryName(element).toString()));
+        for (TypeElement nested : ElementFilter.typesIn(element.getEnclosedElements())) {
+            addClassListEntries(nested, result);
+        }
+    }
+
+    /**
+     * Adds a shrinker rule that only applies if the given runtime class is kept, i.e. if the application uses it
+     */
+    protected void addConditionalShrinkerRule(Class<?> runtimeClass, String rule) {
+        shrinkerRules.add("-if class " + runtimeClass.getName());
+        shrinkerRules.add(rule);
+    }
+
+    private void writeNativeImageConfiguration() {
+        if (indexedElements.isEmpty()) {
+            return;
+        }
+        String directory = processingEnv.getOptions().get(OPTION_NATIVE_IMAGE_DIR);
+        if (directory == null) {
+            directory = DEFAULT_NATIVE_IMAGE_DIR + "/" + utils.getElements().getPackageOf(indexedElements.get(0)).getQualifiedName();
+        }
+        String prefix = NATIVE_IMAGE_ROOT + directory + "/" + getConfigurationName() + "/";
+
+        StringBuilder args = new StringBuilder();
+        for (String className : buildTimeInitializedClasses) {
+            args.append(args.length() == 0 ? "Args = --initialize-at-build-time=" : ",").append(className);
+        }
+        writeResource(prefix + "native-image.properties", args.toString(), Collections.<String>emptyList());
+
+        List<String> reflectConfig = new ArrayList<String>();
+        for (String className : reflectivelyLoadedClasses) {
+            reflectConfig.add(Json.object("name", Json.string(className)));
+        }
+        writeResource(prefix + "reflect-config.json", Json.array(reflectConfig), Collections.<String>emptyList());
+
+        String indexPattern = Json.object("pattern", Json.string("\\Q" + getIndexResource() + "\\E"));
+        String resourceConfig = Json.object("resources", Json.object("includes", Json.array(Collections.singletonList(indexPattern))));
+        writeResource(prefix + "resource-config.json", resourceConfig, Collections.<String>emptyList());
+    }
+
+    private void writeResource(String resourceName, String header, List<String> lines) {
+        if (indexedElements.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject resource = filer.createResource(StandardLocation.CLASS_OUTPUT, "", resourceName,
+                    indexedElements.toArray(new Element[indexedElements.size()]));
+            Writer writer = resource.openWriter();
+            try {
+                writer.write(header + "\n");
+                for (String line : lines) {
+                    writer.write(line + "\n");
+                }
+            } finally {
+                writer.close();
             }
+        } catch (IOException e) {
+            messager.printMessage(Kind.ERROR, "IOException writing " + resourceName + ": " + e.getMessage());
         }
     }
 
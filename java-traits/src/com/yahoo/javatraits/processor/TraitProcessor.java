@@ -15,13 +15,36 @@
  */
 package com.yahoo.javatraits.processor;
 
+import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.javatraits.annotations.HasTraits;
 import com.yahoo.javatraits.annotations.Trait;
+import com.yahoo.javatraits.processor.data.ClassWithTraits;
 import com.yahoo.javatraits.processor.data.TraitElement;
+import com.yahoo.javatraits.processor.utils.InliningReporter;
+import com.yahoo.javatraits.processor.writers.TraitBulkOperationsWriter;
 import com.yahoo.javatraits.processor.writers.TraitDelegateWriter;
+import com.yahoo.javatraits.processor.writers.TraitEventWriter;
 import com.yahoo.javatraits.processor.writers.TraitInterfaceWriter;
+import com.yahoo.javatraits.processor.writers.TraitInvokerWriter;
+import com.yahoo.javatraits.runtime.TraitClassList;
+import com.yahoo.javatraits.runtime.TraitIndex;
+import com.yahoo.javatraits.runtime.TraitInvoker;
+import com.yahoo.javatraits.runtime.TraitMixer;
 
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 public class TraitProcessor extends JavaTraitsProcessor<TraitElement> {
 
@@ -37,7 +60,130 @@ public class TraitProcessor extends JavaTraitsProcessor<TraitElement> {
 
     @Override
     protected void processItem(TraitElement item) {
-        new TraitInterfaceWriter(item, utils).writeClass(filer);
-        new TraitDelegateWriter(item, utils).writeClass(filer);
+        List<DeclaredTypeName> permittedSubclasses = item.isSealed()
+                ? getPermittedSubclasses(item) : Collections.<DeclaredTypeName>emptyList();
+        writeClass(new TraitInterfaceWriter(item, permittedSubclasses, utils));
+        writeClass(new TraitDelegateWriter(item, utils));
+        if (item.getEventName() != null) {
+            new TraitEventWriter(item, utils).writeClass(filer); // JFR event classes can't be archived by CDS
+        }
+        if (item.getInvokerName() != null) {
+            writeClass(new TraitInvokerWriter(item, utils));
+            reflectivelyLoadedClasses.add(item.getInvokerName().toString());
+            addConditionalShrinkerRule(TraitInvoker.class, "-keep class " + item.getInvokerName() + " { public static ** INSTANCE; }");
+            addConditionalShrinkerRule(TraitInvoker.class, "-keepnames class " + utils.getElements().getBinaryName(item.getSourceElement()));
+        }
+        if (item.getBulkOperationsName() != null) {
+            writeClass(new TraitBulkOperationsWriter(item, getHostClassesInRound(item), utils));
+            buildTimeInitializedClasses.add(item.getBulkOperationsName().toString());
+        }
+
+        String traitName = utils.getElements().getBinaryName(item.getSourceElement()).toString();
+        reflectivelyLoadedClasses.add(traitName);
+        reflectivelyLoadedClasses.add(item.getGeneratedInterfaceName().toString());
+        buildTimeInitializedClasses.add(item.getGeneratedInterfaceName().toString());
+        addShrinkerRules(item, traitName);
+        if (item.canInitializeAtBuildTime()) {
+            buildTimeInitializedClasses.add(traitName);
+            buildTimeInitializedClasses.add(item.getDelegateName().toString());
+        }
+        if (isOptionEnabled(OPTION_REPORT_INLINING)) {
+            new InliningReporter(processingEnv, utils).reportForTrait(item);
+        }
+    }
+
+    /**
+     * Keeps the generated interface as the trait's public API. Delegates and their forwarders are only kept for
+     * the runtime classes that look them up by name, so shrinkers are otherwise free to inline them and to merge
+     * each delegate with its trait. The trait index names the delegate, so its name is kept along with the index.
+     */
+    private void addShrinkerRules(TraitElement item, String traitName) {
+        shrinkerRules.add("-keep,allowoptimization interface " + item.getGeneratedInterfaceName() + " { <methods>; }");
+        addConditionalShrinkerRule(TraitIndex.class, "-keepnames class " + traitName);
+        addConditionalShrinkerRule(TraitIndex.class, "-keepnames class " + item.getDelegateName());
+        addConditionalShrinkerRule(TraitMixer.class, "-keepnames class " + traitName);
+        addConditionalShrinkerRule(TraitMixer.class, "-keep class " + item.getDelegateName() + " { public *; }");
+        if (item.getEventName() != null) { // Flight Recorder reads event fields reflectively
+            shrinkerRules.add("-keepclassmembers class " + item.getEventName() + " { <fields>; }");
+        }
+    }
+
+    @Override
+    protected String getConfigurationName() {
+        return "traits";
+    }
+
+    @Override
+    protected String getClassListResource() {
+        return TraitClassList.TRAITS_RESOURCE;
+    }
+
+    @Override
+    protected String getIndexResource() {
+        return TraitIndex.TRAITS_RESOURCE;
+    }
+
+    @Override
+    protected String getIndexEntry(TraitElement item) {
+        return utils.getElements().getBinaryName(item.getSourceElement()) + " " + getBinaryName(item.getGeneratedInterfaceName())
+                + " " + getBinaryName(item.getDelegateName());
+    }
+
+    /**
+     * @return the concrete, non-generic top level classes compiled in this round that use the given trait and are
+     * accessible from the trait's package
+     */
+    private List<DeclaredTypeName> getHostClassesInRound(TraitElement trait) {
+        List<DeclaredTypeName> result = new ArrayList<DeclaredTypeName>();
+        for (Element e : roundEnv.getElementsAnnotatedWith(HasTraits.class)) {
+            if (e.getKind() != ElementKind.CLASS || e.getModifiers().contains(Modifier.ABSTRACT)
+                    || ((TypeElement) e).getNestingKind() != NestingKind.TOP_LEVEL) {
+                continue;
+            }
+            TypeElement host = (TypeElement) e;
+            boolean accessible = host.getModifiers().contains(Modifier.PUBLIC)
+                    || utils.getElements().getPackageOf(host).equals(utils.getElements().getPackageOf(trait.getSourceElement()));
+            if (host.getTypeParameters().isEmpty() && accessible && usesTrait(host, trait)) {
+                result.add(new DeclaredTypeName(host.getQualifiedName().toString()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the classes compiled in this round that implement the interface of the given trait directly, i.e. the
+     * generated superclasses of the classes using the trait, or those classes themselves if the trait is injected
+     */
+    private List<DeclaredTypeName> getPermittedSubclasses(TraitElement trait) {
+        Set<DeclaredTypeName> result = new LinkedHashSet<DeclaredTypeName>();
+        PackageElement traitPackage = utils.getElements().getPackageOf(trait.getSourceElement());
+        boolean unnamedModule = utils.getElements().getModuleOf(trait.getSourceElement()).isUnnamed();
+        for (Element e : roundEnv.getElementsAnnotatedWith(HasTraits.class)) {
+            if (e.getKind() != ElementKind.CLASS || !usesTrait((TypeElement) e, trait)) {
+                continue;
+            }
+            if (unnamedModule && !utils.getElements().getPackageOf(e).equals(traitPackage)) {
+                messager.printMessage(Kind.ERROR, "Sealed trait " + trait.getSimpleName() + " can only be used by classes in its own "
+                        + "package unless it is in a named module", e);
+                continue;
+            }
+            ClassWithTraits host = new ClassWithTraits((TypeElement) e, utils);
+            result.add(host.isInjected() ? host.getElementName() : host.getGeneratedSuperclassName());
+        }
+        if (result.isEmpty()) {
+            messager.printMessage(Kind.WARNING, "Sealed trait " + trait.getSimpleName() + " isn't used by any class compiled with it, "
+                    + "so its interface isn't sealed", trait.getSourceElement());
+        }
+        return new ArrayList<DeclaredTypeName>(result);
+    }
+
+    private boolean usesTrait(TypeElement host, TraitElement trait) {
+        TypeMirror traitType = utils.getTypes().erasure(trait.getSourceElement().asType());
+        for (TypeMirror traitMirror : utils.getClassMirrorsFromAnnotation(host, HasTraits.class, "traits")) {
+            if (utils.getTypes().isSameType(utils.getTypes().erasure(traitMirror), traitType)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -19,13 +19,21 @@ import com.yahoo.aptutils.model.CoreTypes;
 import com.yahoo.aptutils.model.DeclaredTypeName;
 import com.yahoo.aptutils.model.GenericName;
 import com.yahoo.aptutils.utils.AptUtils;
+import com.yahoo.javatraits.annotations.Columnar;
+import com.yahoo.javatraits.annotations.ConcurrencyPolicy;
 import com.yahoo.javatraits.annotations.HasTraits;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.tools.Diagnostic.Kind;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -35,6 +43,8 @@ import java.util.Map;
 public class ClassWithTraits extends TypeElementWrapper {
 
     private static final String GEN_SUFFIX = "WithTraits";
+    private static final String COLUMNS_SUFFIX = "Columns";
+    private static final String POOL_SUFFIX = "Pool";
 
     private List<TraitElement> traitClasses;
 
@@ -43,11 +53,23 @@ public class ClassWithTraits extends TypeElementWrapper {
 
     private Map<String, DeclaredTypeName> prefer;
 
+    private boolean finalForwarders;
+    private ConcurrencyPolicy concurrencyPolicy;
+    private boolean injected;
+    private boolean sharedSuperclass;
+    private boolean sealed;
+    private boolean poolable;
+    private DeclaredTypeName columnsName;
+
     public ClassWithTraits(TypeElement elem, AptUtils aptUtils) {
         super(elem, aptUtils);
         initTraitClasses();
         initSuperclasses();
         initPreferValues();
+        initFinalForwarders();
+        initConcurrencyPolicy();
+        initInjected();
+        initColumnar();
     }
 
     private void initTraitClasses() {
@@ -107,7 +129,23 @@ public class ClassWithTraits extends TypeElementWrapper {
             desiredSuperclass = CoreTypes.JAVA_OBJECT;
         }
 
-        generatedSuperclass = new DeclaredTypeName(elementName.toString() + GEN_SUFFIX);
+        AnnotationValue sharedSuperclassValue = aptUtils.getAnnotationValueFromMirror(hasTraits, "sharedSuperclass");
+        sharedSuperclass = sharedSuperclassValue != null && (Boolean) sharedSuperclassValue.getValue();
+        AnnotationValue sealedValue = aptUtils.getAnnotationValueFromMirror(hasTraits, "sealed");
+        sealed = sealedValue != null && (Boolean) sealedValue.getValue();
+        AnnotationValue poolableValue = aptUtils.getAnnotationValueFromMirror(hasTraits, "poolable");
+        poolable = poolableValue != null && (Boolean) poolableValue.getValue();
+        if (sharedSuperclass) {
+            StringBuilder traitNames = new StringBuilder();
+            for (TraitElement trait : traitClasses) {
+                if (trait != null) {
+                    traitNames.append(trait.getSimpleName());
+                }
+            }
+            generatedSuperclass = new DeclaredTypeName(elementName.getPackageName(), traitNames + GEN_SUFFIX);
+        } else {
+            generatedSuperclass = new DeclaredTypeName(elementName.toString() + GEN_SUFFIX);
+        }
     }
 
     private void initPreferValues() {
@@ -132,6 +170,29 @@ public class ClassWithTraits extends TypeElementWrapper {
         }
     }
 
+    private void initFinalForwarders() {
+        AnnotationValue finalForwardersValue = aptUtils.getAnnotationValue(elem, HasTraits.class, "finalForwarders");
+        finalForwarders = finalForwardersValue != null && (Boolean) finalForwardersValue.getValue();
+    }
+
+    private void initConcurrencyPolicy() {
+        AnnotationValue concurrencyValue = aptUtils.getAnnotationValue(elem, HasTraits.class, "concurrency");
+        concurrencyPolicy = concurrencyValue != null
+                ? ConcurrencyPolicy.valueOf(((VariableElement) concurrencyValue.getValue()).getSimpleName().toString())
+                : ConcurrencyPolicy.NONE;
+    }
+
+    private void initInjected() {
+        AnnotationValue injectedValue = aptUtils.getAnnotationValue(elem, HasTraits.class, "injected");
+        injected = injectedValue != null && (Boolean) injectedValue.getValue();
+    }
+
+    private void initColumnar() {
+        if (aptUtils.getAnnotationMirror(elem, Columnar.class) != null) {
+            columnsName = new DeclaredTypeName(elementName.toString() + COLUMNS_SUFFIX);
+        }
+    }
+
     public DeclaredTypeName getGeneratedSuperclassName() {
         return generatedSuperclass;
     }
@@ -151,4 +212,103 @@ public class ClassWithTraits extends TypeElementWrapper {
     public Map<String, DeclaredTypeName> getPreferMap() {
         return prefer;
     }
+
+    public boolean useFinalForwarders() {
+        return finalForwarders;
+    }
+
+    public ConcurrencyPolicy getConcurrencyPolicy() {
+        return concurrencyPolicy;
+    }
+
+    public boolean hasSharedSuperclass() {
+        return sharedSuperclass;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * @return true if the generated superclass implements Poolable and resets the state of the traits
+     */
+    public boolean isPoolable() {
+        return poolable;
+    }
+
+    /**
+     * @return the name of the generated pool, or null if the class isn't poolable or can't be created by a pool
+     */
+    public DeclaredTypeName getPoolName() {
+        if (!poolable || elem.getModifiers().contains(Modifier.ABSTRACT) || !elem.getTypeParameters().isEmpty()) {
+            return null;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(elem.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return new DeclaredTypeName(elementName.toString() + POOL_SUFFIX);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the generated superclass for the other class would be identical to the one for this class
+     */
+    public boolean hasSameSuperclassConfiguration(ClassWithTraits other) {
+        List<DeclaredTypeName> traitNames = new ArrayList<DeclaredTypeName>();
+        List<DeclaredTypeName> otherTraitNames = new ArrayList<DeclaredTypeName>();
+        for (TraitElement trait : traitClasses) {
+            traitNames.add(trait == null ? null : trait.getElementName());
+        }
+        for (TraitElement trait : other.traitClasses) {
+            otherTraitNames.add(trait == null ? null : trait.getElementName());
+        }
+        return traitNames.equals(otherTraitNames)
+                && desiredSuperclass.equals(other.desiredSuperclass)
+                && (desiredSuperclass.getTypeArgs() == null ? other.desiredSuperclass.getTypeArgs() == null
+                        : desiredSuperclass.getTypeArgs().equals(other.desiredSuperclass.getTypeArgs()))
+                && prefer.equals(other.prefer)
+                && concurrencyPolicy == other.concurrencyPolicy
+                && sealed == other.sealed
+                && poolable == other.poolable;
+    }
+
+    /**
+     * @return true if the traits are injected into the annotated class by the javac plugin rather than
+     * inherited from a generated superclass
+     */
+    public boolean isInjected() {
+        return injected;
+    }
+
+    /**
+     * @return the name of the generated columnar container, or null if the class isn't annotated with {@literal @}Columnar
+     */
+    public DeclaredTypeName getColumnsName() {
+        return columnsName;
+    }
+
+    /**
+     * Conservatively checks if the annotated class declares a method that may override the given trait method.
+     * Methods are matched by name and number of arguments, since the generic names used by the class and the
+     * trait may differ.
+     */
+    public boolean declaresMethodMatching(ExecutableElement traitMethod) {
+        return declaresMethodMatching(traitMethod.getSimpleName().toString(), traitMethod.getParameters().size());
+    }
+
+    /**
+     * Conservatively checks if the annotated class declares a method with the given name and number of arguments
+     */
+    public boolean declaresMethodMatching(String name, int numArgs) {
+        for (Element e : elem.getEnclosedElements()) {
+            if (e.getKind() == ElementKind.METHOD && e instanceof ExecutableElement) {
+                ExecutableElement exec = (ExecutableElement) e;
+                if (name.equals(exec.getSimpleName().toString()) && exec.getParameters().size() == numArgs) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 }
@@ -19,26 +19,71 @@ import com.yahoo.aptutils.model.DeclaredTypeName;
 import com.yahoo.aptutils.model.GenericName;
 import com.yahoo.aptutils.model.TypeName;
 import com.yahoo.aptutils.utils.AptUtils;
+import com.yahoo.javatraits.annotations.Async;
+import com.yahoo.javatraits.annotations.Batched;
+import com.yahoo.javatraits.annotations.BulkOperations;
+import com.yahoo.javatraits.annotations.Cached;
+import com.yahoo.javatraits.annotations.FixedArity;
+import com.yahoo.javatraits.annotations.Instrumented;
+import com.yahoo.javatraits.annotations.Invoker;
+import com.yahoo.javatraits.annotations.Memoize;
+import com.yahoo.javatraits.annotations.Mutating;
+import com.yahoo.javatraits.annotations.ReadOnly;
+import com.yahoo.javatraits.annotations.Recorded;
+import com.yahoo.javatraits.annotations.Trait;
 
 import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic.Kind;
 import java.util.*;
 
 public class TraitElement extends TypeElementWrapper {
 
-    private static final String INTERFACE_PREFIX = "I";
+    public static final String INTERFACE_PREFIX = "I";
+    public static final String RESET_METHOD = "reset";
     private static final String DELEGATE_SUFFIX = "DelegateWrapper";
+    private static final String EVENT_SUFFIX = "TraitEvent";
+    private static final String BULK_OPERATIONS_SUFFIX = "s";
+    private static final String INVOKER_SUFFIX = "Invoker";
+    private static final String INVALIDATE_PREFIX = "invalidate";
+    private static final String ASYNC_SUFFIX = "Async";
+    private static final String BATCHED_SUFFIX = "Batched";
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    private static final long DEFAULT_BATCH_WINDOW_MILLIS = 5;
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+    private static final int DEFAULT_MAX_FIXED_ARITY = 4;
+    private static final String DEFAULT_THRESHOLD = "0 ns";
+    private static final String THRESHOLD_PATTERN = "0|\\d+ (ns|us|ms|s|m|h|d)";
 
     private List<ExecutableElement> declaredMethods = new ArrayList<ExecutableElement>();
     private List<TypeName> interfaceNames;
     private List<VariableElement> constants = new ArrayList<VariableElement>();
+    private List<VariableElement> fields = new ArrayList<VariableElement>();
     private List<List<ExecutableElement>> interfaceMethods = new ArrayList<List<ExecutableElement>>();
     private List<Map<String, TypeName>> interfaceGenericNameMaps;
+    private List<ExecutableElement> instrumentedMethods = new ArrayList<ExecutableElement>();
+    private Set<ExecutableElement> timedMethods = new HashSet<ExecutableElement>();
+    private List<ExecutableElement> recordedMethods = new ArrayList<ExecutableElement>();
+    private String recordingThreshold = DEFAULT_THRESHOLD;
+    private List<ExecutableElement> memoizedMethods = new ArrayList<ExecutableElement>();
+    private Map<ExecutableElement, AnnotationMirror> cachedMethods = new LinkedHashMap<ExecutableElement, AnnotationMirror>();
+    private Set<ExecutableElement> readOnlyMethods = new HashSet<ExecutableElement>();
+    private Map<ExecutableElement, String> asyncMethods = new LinkedHashMap<ExecutableElement, String>();
+    private Map<ExecutableElement, AnnotationMirror> batchedMethods = new LinkedHashMap<ExecutableElement, AnnotationMirror>();
+    private Map<ExecutableElement, ExecutableElement> bulkMethods = new HashMap<ExecutableElement, ExecutableElement>();
+    private Map<ExecutableElement, List<Integer>> fixedArities = new LinkedHashMap<ExecutableElement, List<Integer>>();
 
     private DeclaredTypeName generatedInterfaceName;
     private DeclaredTypeName delegateName;
+    private DeclaredTypeName eventName;
+    private DeclaredTypeName bulkOperationsName;
+    private boolean sealed;
+    private DeclaredTypeName invokerName;
+    private TraitElement parentTrait;
+    private List<ExecutableElement> bulkOperationMethods = new ArrayList<ExecutableElement>();
 
     public TraitElement(TypeElement elem, AptUtils aptUtils) {
         super(elem, aptUtils);
@@ -47,9 +92,12 @@ public class TraitElement extends TypeElementWrapper {
 
     private void initializeElement() {
         if (!AptUtils.OBJECT_CLASS_NAME.equals(elem.getSuperclass().toString())) {
-            aptUtils.getMessager().printMessage(Kind.ERROR, "Trait elements must have java.lang.Object as their superclass", elem);
+            initializeParentTrait();
         }
         accumulateMethods(elem, declaredMethods);
+        if (parentTrait != null) {
+            inheritMembers();
+        }
         generatedInterfaceName = new DeclaredTypeName(elementName.getPackageName(), INTERFACE_PREFIX + elementName.getSimpleName());
         generatedInterfaceName.setTypeArgs(getTypeParameters());
 
@@ -57,6 +105,52 @@ public class TraitElement extends TypeElementWrapper {
         delegateName.setTypeArgs(getTypeParameters());
 
         initializeInterfaces();
+        initializeInstrumentedMethods();
+        initializeRecordedMethods();
+        initializeMemoizedMethods();
+        initializeCachedMethods();
+        initializeReadOnlyMethods();
+        initializeAsyncMethods();
+        initializeBatchedMethods();
+        initializeFixedArityMethods();
+        initializeSealed();
+        initializeInvoker();
+        initializeBulkOperations();
+    }
+
+    private void initializeParentTrait() {
+        Element superclass = aptUtils.getTypes().asElement(elem.getSuperclass());
+        if (!(superclass instanceof TypeElement) || aptUtils.getAnnotationMirror(superclass, Trait.class) == null
+                || !((TypeElement) superclass).getTypeParameters().isEmpty()) {
+            aptUtils.getMessager().printMessage(Kind.ERROR, "Trait elements must have java.lang.Object or a non-generic trait as their superclass", elem);
+            return;
+        }
+        parentTrait = new TraitElement((TypeElement) superclass, aptUtils);
+        if (parentTrait.isSealed()) {
+            aptUtils.getMessager().printMessage(Kind.ERROR, "Sealed traits can't be extended by other traits", elem);
+        }
+    }
+
+    /**
+     * Flattens the members of the parent trait into this one, so that a single delegate implements the methods of
+     * the whole hierarchy. Methods overridden by this trait are left out.
+     */
+    private void inheritMembers() {
+        List<ExecutableElement> ownMethods = new ArrayList<ExecutableElement>(declaredMethods);
+        for (ExecutableElement inherited : parentTrait.getDeclaredMethods()) {
+            if (inherited.getModifiers().contains(Modifier.PRIVATE) || inherited.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            boolean overridden = false;
+            for (ExecutableElement own : ownMethods) {
+                overridden |= aptUtils.getElements().overrides(own, inherited, elem);
+            }
+            if (!overridden) {
+                declaredMethods.add(inherited);
+            }
+        }
+        constants.addAll(parentTrait.getConstants());
+        fields.addAll(parentTrait.getFields());
     }
 
     private void accumulateMethods(Element element, List<ExecutableElement> methods) {
@@ -69,8 +163,10 @@ public class TraitElement extends TypeElementWrapper {
                     }
                 } else if (elementIsConstant(e)) {
                     constants.add((VariableElement) e);
+                } else if (e.getKind() == ElementKind.FIELD && !e.getModifiers().contains(Modifier.STATIC)) {
+                    fields.add((VariableElement) e);
                 } else {
-                    aptUtils.getMessager().printMessage(Kind.ERROR, "Trait elements may only declare methods, abstract methods, or public static final variables", e);
+                    aptUtils.getMessager().printMessage(Kind.ERROR, "Trait elements may only declare methods, abstract methods, instance fields, or public static final variables", e);
                 }
             } else {
                 methods.add((ExecutableElement) e);
@@ -88,7 +184,10 @@ public class TraitElement extends TypeElementWrapper {
     }
 
     private void initializeInterfaces() {
-        List<? extends TypeMirror> interfaces = elem.getInterfaces();
+        List<TypeMirror> interfaces = new ArrayList<TypeMirror>(elem.getInterfaces());
+        for (TraitElement parent = parentTrait; parent != null; parent = parent.parentTrait) {
+            interfaces.addAll(parent.elem.getInterfaces()); // Implemented by the delegate along with the inherited methods
+        }
         if (!AptUtils.isEmpty(interfaces)) {
             initializeInterfaceMappings(interfaces);
         }
@@ -111,6 +210,16 @@ public class TraitElement extends TypeElementWrapper {
         TypeElement interfaceElement = (TypeElement) interfaceMirror.asElement();
         List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
         accumulateMethods(interfaceElement, methods);
+        Iterator<ExecutableElement> iter = methods.iterator();
+        while (iter.hasNext()) {
+            ExecutableElement method = iter.next();
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)) { // Not inherited from the interface
+                iter.remove();
+            } else if (isImplementedByTrait(method)) { // Already forwarded as a trait method
+                iter.remove();
+            }
+        }
         interfaceMethods.add(methods);
 
         List<? extends TypeName> args = interfaceName.getTypeArgs();
@@ -129,6 +238,304 @@ public class TraitElement extends TypeElementWrapper {
         interfaceGenericNameMaps.add(genericNameMap);
     }
 
+    private boolean isImplementedByTrait(ExecutableElement interfaceMethod) {
+        for (ExecutableElement exec : declaredMethods) {
+            if (aptUtils.getElements().overrides(exec, interfaceMethod, elem)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void initializeInstrumentedMethods() {
+        AnnotationMirror traitInstrumented = aptUtils.getAnnotationMirror(elem, Instrumented.class);
+        for (ExecutableElement exec : declaredMethods) {
+            AnnotationMirror methodInstrumented = aptUtils.getAnnotationMirror(exec, Instrumented.class);
+            boolean isAbstract = exec.getModifiers().contains(Modifier.ABSTRACT);
+            if (methodInstrumented != null && isAbstract) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "Only concrete trait methods can be @Instrumented", exec);
+            } else if (!isAbstract && (methodInstrumented != null || traitInstrumented != null)) {
+                instrumentedMethods.add(exec);
+                AnnotationValue timed = aptUtils.getAnnotationValueFromMirror(
+                        methodInstrumented != null ? methodInstrumented : traitInstrumented, "timed");
+                if (timed != null && (Boolean) timed.getValue()) {
+                    timedMethods.add(exec);
+                }
+            }
+        }
+    }
+
+    private void initializeRecordedMethods() {
+        AnnotationMirror traitRecorded = aptUtils.getAnnotationMirror(elem, Recorded.class);
+        if (traitRecorded != null) {
+            AnnotationValue threshold = aptUtils.getAnnotationValueFromMirror(traitRecorded, "threshold");
+            if (threshold != null) {
+                recordingThreshold = ((String) threshold.getValue()).trim();
+                if (!recordingThreshold.matches(THRESHOLD_PATTERN)) {
+                    aptUtils.getMessager().printMessage(Kind.ERROR, "Invalid @Recorded threshold " + recordingThreshold
+                            + "; expected a value like \"20 ms\"", elem);
+                }
+            }
+        }
+        for (ExecutableElement exec : declaredMethods) {
+            AnnotationMirror methodRecorded = aptUtils.getAnnotationMirror(exec, Recorded.class);
+            boolean isAbstract = exec.getModifiers().contains(Modifier.ABSTRACT);
+            if (methodRecorded != null && isAbstract) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "Only concrete trait methods can be @Recorded", exec);
+            } else if (!isAbstract && (methodRecorded != null || traitRecorded != null)) {
+                recordedMethods.add(exec);
+            }
+            if (methodRecorded != null && aptUtils.getAnnotationValueFromMirror(methodRecorded, "threshold") != null) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@Recorded thresholds apply to the whole trait and can only be set on the trait class", exec);
+            }
+        }
+        if (!recordedMethods.isEmpty()) {
+            eventName = new DeclaredTypeName(elementName.getPackageName(), elementName.getSimpleName() + EVENT_SUFFIX);
+        }
+    }
+
+    private void initializeMemoizedMethods() {
+        for (ExecutableElement exec : declaredMethods) {
+            if (aptUtils.getAnnotationMirror(exec, Memoize.class) != null) {
+                if (exec.getModifiers().contains(Modifier.ABSTRACT) || exec.getModifiers().contains(Modifier.STATIC)) {
+                    aptUtils.getMessager().printMessage(Kind.ERROR, "Only concrete instance methods of a trait can be @Memoize", exec);
+                } else if (!exec.getParameters().isEmpty()) {
+                    aptUtils.getMessager().printMessage(Kind.ERROR, "@Memoize methods cannot have arguments", exec);
+                } else if (exec.getReturnType().getKind() == TypeKind.VOID) {
+                    aptUtils.getMessager().printMessage(Kind.ERROR, "@Memoize methods must return a value", exec);
+                } else {
+                    memoizedMethods.add(exec);
+                }
+            }
+        }
+    }
+
+    private void initializeCachedMethods() {
+        for (ExecutableElement exec : declaredMethods) {
+            AnnotationMirror cached = aptUtils.getAnnotationMirror(exec, Cached.class);
+            if (cached == null) {
+                continue;
+            }
+            if (exec.getModifiers().contains(Modifier.ABSTRACT) || exec.getModifiers().contains(Modifier.STATIC)) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "Only concrete instance methods of a trait can be @Cached", exec);
+            } else if (exec.getParameters().isEmpty()) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@Cached methods must have arguments; use @Memoize for methods without arguments", exec);
+            } else if (exec.getReturnType().getKind() == TypeKind.VOID) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@Cached methods must return a value", exec);
+            } else if (dependsOnTypeVariables(exec.getReturnType())) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@Cached results are shared by all instances, so the return type can't depend on type parameters", exec);
+            } else if (getCacheMaxSize(cached) <= 0) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@Cached maxSize must be positive", exec);
+            } else {
+                boolean hasArrayArgument = false;
+                for (VariableElement param : exec.getParameters()) {
+                    hasArrayArgument |= param.asType().getKind() == TypeKind.ARRAY;
+                }
+                if (hasArrayArgument) {
+                    aptUtils.getMessager().printMessage(Kind.ERROR, "@Cached arguments are compared with equals(), so they can't be arrays", exec);
+                } else {
+                    cachedMethods.put(exec, cached);
+                }
+            }
+        }
+    }
+
+    private void initializeReadOnlyMethods() {
+        for (ExecutableElement exec : declaredMethods) {
+            boolean readOnly = aptUtils.getAnnotationMirror(exec, ReadOnly.class) != null;
+            boolean mutating = aptUtils.getAnnotationMirror(exec, Mutating.class) != null;
+            if (readOnly && mutating) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "Trait methods can't be both @ReadOnly and @Mutating", exec);
+            } else if ((readOnly || mutating) && exec.getModifiers().contains(Modifier.ABSTRACT)) {
+                aptUtils.getMessager().printMessage(Kind.WARNING, "Abstract trait methods are implemented by the class using the trait "
+                        + "and are not guarded, so @ReadOnly and @Mutating have no effect", exec);
+            } else if (readOnly) {
+                readOnlyMethods.add(exec);
+            }
+        }
+    }
+
+    private void initializeAsyncMethods() {
+        Set<String> methodNames = new HashSet<String>();
+        for (ExecutableElement exec : declaredMethods) {
+            methodNames.add(exec.getSimpleName().toString());
+        }
+        for (ExecutableElement exec : declaredMethods) {
+            AnnotationMirror async = aptUtils.getAnnotationMirror(exec, Async.class);
+            if (async == null) {
+                continue;
+            }
+            if (exec.getModifiers().contains(Modifier.STATIC)) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "Static trait methods can't be @Async", exec);
+            } else if (methodNames.contains(getAsyncMethodName(exec))) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "Trait already declares a method named " + getAsyncMethodName(exec), exec);
+            } else {
+                AnnotationValue executor = aptUtils.getAnnotationValueFromMirror(async, "executor");
+                asyncMethods.put(exec, executor != null ? (String) executor.getValue() : "");
+            }
+        }
+    }
+
+    private void initializeBatchedMethods() {
+        for (ExecutableElement exec : declaredMethods) {
+            AnnotationMirror batched = aptUtils.getAnnotationMirror(exec, Batched.class);
+            if (batched == null) {
+                continue;
+            }
+            String bulkMethodName = (String) aptUtils.getAnnotationValueFromMirror(batched, "bulkMethod").getValue();
+            ExecutableElement bulkMethod = null;
+            for (ExecutableElement candidate : declaredMethods) {
+                if (candidate.getSimpleName().contentEquals(bulkMethodName) && candidate.getParameters().size() == 1) {
+                    bulkMethod = candidate;
+                }
+            }
+            if (exec.getModifiers().contains(Modifier.STATIC) || !exec.getTypeParameters().isEmpty()
+                    || exec.getParameters().size() != 1 || exec.getReturnType().getKind() == TypeKind.VOID) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@Batched methods must be non-generic instance methods with one argument that return a value", exec);
+            } else if (bulkMethod == null) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "Trait does not declare a bulk method " + bulkMethodName + " with one argument", exec);
+            } else if (!isErasureAssignable(List.class, bulkMethod.getParameters().get(0).asType())
+                    || !isErasureAssignable(bulkMethod.getReturnType(), Map.class)) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "Bulk method " + bulkMethodName + " must take a List of keys and return a Map", exec);
+            } else if (getBatchMaxSize(batched) <= 0 || getBatchWindowMillis(batched) < 0) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@Batched maxBatchSize must be positive and windowMillis non-negative", exec);
+            } else {
+                batchedMethods.put(exec, batched);
+                bulkMethods.put(exec, bulkMethod);
+            }
+        }
+    }
+
+    private void initializeFixedArityMethods() {
+        for (ExecutableElement exec : declaredMethods) {
+            AnnotationMirror fixedArity = aptUtils.getAnnotationMirror(exec, FixedArity.class);
+            if (fixedArity == null) {
+                continue;
+            }
+            AnnotationValue maxValue = aptUtils.getAnnotationValueFromMirror(fixedArity, "max");
+            int max = maxValue != null ? (Integer) maxValue.getValue() : DEFAULT_MAX_FIXED_ARITY;
+            if (!exec.isVarArgs() || exec.getModifiers().contains(Modifier.ABSTRACT) || exec.getModifiers().contains(Modifier.STATIC)) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@FixedArity methods must be concrete varargs instance methods", exec);
+                continue;
+            }
+            TypeMirror componentType = ((ArrayType) exec.getParameters().get(exec.getParameters().size() - 1).asType()).getComponentType();
+            if (dependsOnTypeVariables(componentType)
+                    || !aptUtils.getTypes().isSameType(componentType, aptUtils.getTypes().erasure(componentType))) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@FixedArity methods can't have a generic varargs type", exec);
+            } else if (max < 0) {
+                aptUtils.getMessager().printMessage(Kind.ERROR, "@FixedArity max can't be negative", exec);
+            } else {
+                List<Integer> arities = new ArrayList<Integer>();
+                for (int arity = 0; arity <= max; arity++) {
+                    if (!declaresFixedArityOverload(exec, componentType, arity)) {
+                        arities.add(arity);
+                    }
+                }
+                fixedArities.put(exec, arities);
+            }
+        }
+    }
+
+    /**
+     * @return true if the trait declares the overload of the given varargs method with the given number of
+     * varargs arguments itself
+     */
+    private boolean declaresFixedArityOverload(ExecutableElement exec, TypeMirror componentType, int arity) {
+        int leading = exec.getParameters().size() - 1;
+        for (ExecutableElement candidate : declaredMethods) {
+            if (!candidate.getSimpleName().equals(exec.getSimpleName()) || candidate.getParameters().size() != leading + arity) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < candidate.getParameters().size() && matches; i++) {
+                TypeMirror expected = i < leading ? exec.getParameters().get(i).asType() : componentType;
+                matches = aptUtils.getTypes().isSameType(aptUtils.getTypes().erasure(candidate.getParameters().get(i).asType()),
+                        aptUtils.getTypes().erasure(expected));
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void initializeSealed() {
+        AnnotationValue sealedValue = aptUtils.getAnnotationValue(elem, Trait.class, "sealed");
+        sealed = sealedValue != null && (Boolean) sealedValue.getValue();
+    }
+
+    private void initializeInvoker() {
+        if (aptUtils.getAnnotationMirror(elem, Invoker.class) == null) {
+            return;
+        }
+        if (!elem.getTypeParameters().isEmpty()) {
+            aptUtils.getMessager().printMessage(Kind.ERROR, "@Invoker is not supported for generic traits", elem);
+            return;
+        }
+        invokerName = new DeclaredTypeName(elementName.getPackageName(), elementName.getSimpleName() + INVOKER_SUFFIX);
+    }
+
+    private void initializeBulkOperations() {
+        if (aptUtils.getAnnotationMirror(elem, BulkOperations.class) == null) {
+            return;
+        }
+        if (!elem.getTypeParameters().isEmpty()) {
+            aptUtils.getMessager().printMessage(Kind.ERROR, "@BulkOperations is not supported for generic traits", elem);
+            return;
+        }
+        bulkOperationsName = new DeclaredTypeName(elementName.getPackageName(), elementName.getSimpleName() + BULK_OPERATIONS_SUFFIX);
+        for (ExecutableElement exec : declaredMethods) {
+            if (!exec.getModifiers().contains(Modifier.STATIC) && exec.getParameters().isEmpty() && exec.getTypeParameters().isEmpty()
+                    && exec.getThrownTypes().isEmpty() && exec.getReturnType().getKind() != TypeKind.VOID) {
+                bulkOperationMethods.add(exec);
+            }
+        }
+    }
+
+    private boolean isErasureAssignable(Class<?> from, TypeMirror to) {
+        TypeMirror fromMirror = aptUtils.getElements().getTypeElement(from.getName()).asType();
+        return aptUtils.getTypes().isAssignable(aptUtils.getTypes().erasure(fromMirror), aptUtils.getTypes().erasure(to));
+    }
+
+    private boolean isErasureAssignable(TypeMirror from, Class<?> to) {
+        TypeMirror toMirror = aptUtils.getElements().getTypeElement(to.getName()).asType();
+        return aptUtils.getTypes().isAssignable(aptUtils.getTypes().erasure(from), aptUtils.getTypes().erasure(toMirror));
+    }
+
+    private int getBatchMaxSize(AnnotationMirror batched) {
+        AnnotationValue maxBatchSize = aptUtils.getAnnotationValueFromMirror(batched, "maxBatchSize");
+        return maxBatchSize != null ? (Integer) maxBatchSize.getValue() : DEFAULT_MAX_BATCH_SIZE;
+    }
+
+    private long getBatchWindowMillis(AnnotationMirror batched) {
+        AnnotationValue windowMillis = aptUtils.getAnnotationValueFromMirror(batched, "windowMillis");
+        return windowMillis != null ? (Long) windowMillis.getValue() : DEFAULT_BATCH_WINDOW_MILLIS;
+    }
+
+    private boolean dependsOnTypeVariables(TypeMirror type) {
+        switch (type.getKind()) {
+            case TYPEVAR:
+            case WILDCARD:
+                return true;
+            case ARRAY:
+                return dependsOnTypeVariables(((ArrayType) type).getComponentType());
+            case DECLARED:
+                for (TypeMirror arg : ((DeclaredType) type).getTypeArguments()) {
+                    if (dependsOnTypeVariables(arg)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private int getCacheMaxSize(AnnotationMirror cached) {
+        AnnotationValue maxSize = aptUtils.getAnnotationValueFromMirror(cached, "maxSize");
+        return maxSize != null ? (Integer) maxSize.getValue() : DEFAULT_CACHE_SIZE;
+    }
+
     public DeclaredTypeName getGeneratedInterfaceName() {
         return generatedInterfaceName;
     }
@@ -141,6 +548,13 @@ public class TraitElement extends TypeElementWrapper {
         return declaredMethods;
     }
 
+    /**
+     * @return the trait this trait extends, whose methods it inherits, or null if it extends java.lang.Object
+     */
+    public TraitElement getParentTrait() {
+        return parentTrait;
+    }
+
     public List<TypeName> getInterfaceNames() {
         return interfaceNames;
     }
@@ -157,8 +571,180 @@ public class TraitElement extends TypeElementWrapper {
         return interfaceGenericNameMaps.get(ith);
     }
 
+    /**
+     * @return the reset() method of this trait, which poolable classes call to restore its state, or null if it
+     * doesn't declare one
+     */
+    public ExecutableElement getResetMethod() {
+        for (ExecutableElement exec : getDeclaredMethods()) {
+            if (RESET_METHOD.equals(exec.getSimpleName().toString()) && exec.getParameters().isEmpty()) {
+                return exec;
+            }
+        }
+        return null;
+    }
+
     public List<VariableElement> getConstants() {
         return constants;
     }
 
+    /**
+     * @return the instance fields declared by the trait, which are stored in each delegate, or in the class itself
+     * when the trait is injected
+     */
+    public List<VariableElement> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return true if all the constants declared by the trait are compile-time constants, so that initializing
+     * the trait class has no side effects
+     */
+    public boolean hasOnlyCompileTimeConstants() {
+        for (VariableElement constant : constants) {
+            if (constant.getConstantValue() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the trait and its delegate can be initialized when a native image is built, i.e. if
+     * initializing them has no side effects. Metrics flags and result caches depend on the runtime environment.
+     */
+    public boolean canInitializeAtBuildTime() {
+        return hasOnlyCompileTimeConstants() && instrumentedMethods.isEmpty() && cachedMethods.isEmpty();
+    }
+
+    public List<ExecutableElement> getInstrumentedMethods() {
+        return instrumentedMethods;
+    }
+
+    public boolean isTimed(ExecutableElement exec) {
+        return timedMethods.contains(exec);
+    }
+
+    public List<ExecutableElement> getRecordedMethods() {
+        return recordedMethods;
+    }
+
+    public String getRecordingThreshold() {
+        return recordingThreshold;
+    }
+
+    /**
+     * @return the name of the generated JFR event class, or null if no methods of this trait are recorded
+     */
+    public DeclaredTypeName getEventName() {
+        return eventName;
+    }
+
+    public List<ExecutableElement> getMemoizedMethods() {
+        return memoizedMethods;
+    }
+
+    /**
+     * @return the varargs methods annotated with {@literal @}FixedArity
+     */
+    public Set<ExecutableElement> getFixedArityMethods() {
+        return fixedArities.keySet();
+    }
+
+    /**
+     * @return the numbers of varargs arguments to generate overloads of the given {@literal @}FixedArity method for
+     */
+    public List<Integer> getFixedArities(ExecutableElement exec) {
+        return fixedArities.get(exec);
+    }
+
+    public Set<ExecutableElement> getCachedMethods() {
+        return cachedMethods.keySet();
+    }
+
+    public int getCacheMaxSize(ExecutableElement exec) {
+        return getCacheMaxSize(cachedMethods.get(exec));
+    }
+
+    /**
+     * @return the name of the {@link Cached.Eviction} constant to use for the given cached method
+     */
+    public String getCacheEviction(ExecutableElement exec) {
+        AnnotationValue eviction = aptUtils.getAnnotationValueFromMirror(cachedMethods.get(exec), "eviction");
+        return eviction != null ? ((VariableElement) eviction.getValue()).getSimpleName().toString() : Cached.Eviction.LRU.name();
+    }
+
+    public boolean isReadOnly(ExecutableElement exec) {
+        return readOnlyMethods.contains(exec);
+    }
+
+    public Set<ExecutableElement> getAsyncMethods() {
+        return asyncMethods.keySet();
+    }
+
+    public String getAsyncExecutorName(ExecutableElement exec) {
+        return asyncMethods.get(exec);
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * @return the name of the generated invoker, or null if the trait isn't annotated with {@literal @}Invoker
+     */
+    public DeclaredTypeName getInvokerName() {
+        return invokerName;
+    }
+
+    /**
+     * @return the name of the class of static bulk operations to generate, or null if the trait isn't annotated with {@literal @}BulkOperations
+     */
+    public DeclaredTypeName getBulkOperationsName() {
+        return bulkOperationsName;
+    }
+
+    public List<ExecutableElement> getBulkOperationMethods() {
+        return bulkOperationMethods;
+    }
+
+    public static String getBulkOperationMethodName(ExecutableElement exec) {
+        String name = exec.getSimpleName().toString();
+        return name + (name.endsWith("s") || name.endsWith("x") ? "es" : "s");
+    }
+
+    public Set<ExecutableElement> getBatchedMethods() {
+        return batchedMethods.keySet();
+    }
+
+    public ExecutableElement getBulkMethod(ExecutableElement exec) {
+        return bulkMethods.get(exec);
+    }
+
+    public int getBatchMaxSize(ExecutableElement exec) {
+        return getBatchMaxSize(batchedMethods.get(exec));
+    }
+
+    public long getBatchWindowMillis(ExecutableElement exec) {
+        return getBatchWindowMillis(batchedMethods.get(exec));
+    }
+
+    public String getBatchExecutorName(ExecutableElement exec) {
+        AnnotationValue executor = aptUtils.getAnnotationValueFromMirror(batchedMethods.get(exec), "executor");
+        return executor != null ? (String) executor.getValue() : "";
+    }
+
+    public static String getBatchedMethodName(ExecutableElement exec) {
+        return exec.getSimpleName() + BATCHED_SUFFIX;
+    }
+
+    public static String getAsyncMethodName(ExecutableElement exec) {
+        return exec.getSimpleName() + ASYNC_SUFFIX;
+    }
+
+    public static String getInvalidateMethodName(ExecutableElement exec) {
+        String name = exec.getSimpleName().toString();
+        return INVALIDATE_PREFIX + name.substring(0, 1).toUpperCase() + name.substring(1);
+    }
+
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A profile of the application, used to decide which trait methods are hot enough to be inlined into generated
+ * superclasses.
+ *
+ * <br/><br/>
+ *
+ * The profile is a text file with one method per line followed by its weight, e.g.
+ * <code>com.example.Rectangle.resize(int, int) 120000</code>. The weight only has to rank methods by how hot they
+ * are: it can be the number of execution samples printed by <code>jfr view hot-methods</code>, which measures the
+ * time spent in each method rather than the number of calls, or a call count from another profiler. The first
+ * qualified method name on a line is the method, optionally followed by its parameter types, and the first integer
+ * after it is its weight, so tables printed by profilers can be used as they are. Lines without both are ignored, as
+ * are lines starting with #. The method can be named on the class using the trait, its generated superclass, the trait
+ * itself or its delegate. Parameter types can be simple or qualified names; a method listed without them stands for
+ * all its overloads. Weights listed more than once for the same method are summed.
+ */
+public class DispatchProfile {
+
+    public static final int DEFAULT_HOT_PERCENT = 5;
+
+    private static final String DEFAULT_PREFIX = "default__";
+    private static final Pattern METHOD = Pattern.compile("([\\w$]+(?:\\.[\\w$]+)+)(?:\\s*\\(([^)]*)\\))?");
+
+    private final Map<String, Long> weights = new HashMap<String, Long>();
+    private final Set<String> hotMethods = new HashSet<String>();
+
+    /**
+     * @param hotPercent the percentage of profiled methods with the highest weights to consider hot
+     */
+    public static DispatchProfile read(File file, int hotPercent) throws IOException {
+        DispatchProfile profile = new DispatchProfile();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                profile.parseLine(line.trim());
+            }
+        } finally {
+            reader.close();
+        }
+        profile.selectHotMethods(hotPercent);
+        return profile;
+    }
+
+    private void parseLine(String line) {
+        if (line.length() == 0 || line.startsWith("#")) {
+            return;
+        }
+        Matcher matcher = METHOD.matcher(line);
+        while (matcher.find()) {
+            if (!isMethodName(matcher.group(1))) {
+                continue;
+            }
+            String method = normalize(matcher.group(1));
+            if (matcher.group(2) != null) {
+                method += "(" + normalizeParameters(matcher.group(2)) + ")";
+            }
+            for (String token : line.substring(matcher.end()).split("[\\s,;]+")) {
+                Long weight = parseWeight(token);
+                if (weight != null) {
+                    Long previous = weights.get(method);
+                    weights.put(method, previous == null ? weight : previous + weight);
+                    return;
+                }
+            }
+            return;
+        }
+    }
+
+    private static boolean isMethodName(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = c == '.' || c == '$' || (i == 0 || name.charAt(i - 1) == '.'
+                    ? Character.isJavaIdentifierStart(c) : Character.isJavaIdentifierPart(c));
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalize(String token) {
+        String name = token.replace('$', '.');
+        int dot = name.lastIndexOf('.');
+        String methodName = name.substring(dot + 1);
+        if (methodName.startsWith(DEFAULT_PREFIX)) {
+            methodName = methodName.substring(DEFAULT_PREFIX.length());
+        }
+        return name.substring(0, dot + 1) + methodName;
+    }
+
+    /**
+     * @return the given comma separated parameter types as simple names without type arguments, e.g. "List,String[]"
+     * for "java.util.List&lt;String&gt;, java.lang.String..."
+     */
+    public static String normalizeParameters(String parameters) {
+        StringBuilder result = new StringBuilder();
+        String withoutTypeArguments = parameters;
+        String previous;
+        do { // Innermost type arguments first
+            previous = withoutTypeArguments;
+            withoutTypeArguments = withoutTypeArguments.replaceAll("<[^<>]*>", "");
+        } while (!withoutTypeArguments.equals(previous));
+        for (String parameter : withoutTypeArguments.split(",")) {
+            String type = parameter.replace("...", "[]").replace('$', '.').replaceAll("\\s+", "");
+            if (type.length() > 0) {
+                int dimensions = type.indexOf('[');
+                int dot = type.lastIndexOf('.', dimensions >= 0 ? dimensions : type.length());
+                result.append(result.length() > 0 ? "," : "").append(type.substring(dot + 1));
+            }
+        }
+        return result.toString();
+    }
+
+    private static Long parseWeight(String token) {
+        try {
+            return Long.parseLong(token);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void selectHotMethods(int hotPercent) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(weights.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> lhs, Map.Entry<String, Long> rhs) {
+                return rhs.getValue().compareTo(lhs.getValue());
+            }
+        });
+        int hotCount = (int) Math.ceil(entries.size() * Math.max(0, Math.min(100, hotPercent)) / 100.0);
+        for (int i = 0; i < hotCount; i++) {
+            hotMethods.add(entries.get(i).getKey());
+        }
+    }
+
+    /**
+     * @param classNames the names of the classes a call to the method could be recorded on
+     * @param parameters the method's parameter types, see {@link #normalizeParameters(String)}
+     * @return true if the method, or all overloads of its name, are among the hottest methods in the profile
+     */
+    public boolean isHot(Iterable<String> classNames, String methodName, String parameters) {
+        for (String key : getKeys(classNames, methodName, parameters)) {
+            if (hotMethods.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the weight recorded for the method, summed over the given classes
+     */
+    public long getWeight(Iterable<String> classNames, String methodName, String parameters) {
+        long result = 0;
+        for (String key : getKeys(classNames, methodName, parameters)) {
+            Long weight = weights.get(key);
+            if (weight != null) {
+                result += weight;
+            }
+        }
+        return result;
+    }
+
+    private List<String> getKeys(Iterable<String> classNames, String methodName, String parameters) {
+        List<String> keys = new ArrayList<String>();
+        String normalizedParameters = normalizeParameters(parameters);
+        for (String className : classNames) {
+            String method = className.replace('$', '.') + "." + methodName;
+            keys.add(method);
+            keys.add(method + "(" + normalizedParameters + ")");
+        }
+        return keys;
+    }
+}
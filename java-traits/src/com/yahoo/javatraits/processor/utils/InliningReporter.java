@@ -0,0 +1,326 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.utils;
+
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import com.sun.source.util.Trees;
+import com.yahoo.javatraits.annotations.ConcurrencyPolicy;
+import com.yahoo.javatraits.processor.data.ClassWithTraits;
+import com.yahoo.javatraits.processor.data.TraitElement;
+import com.yahoo.javatraits.runtime.ResultCache;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic.Kind;
+import java.util.*;
+
+/**
+ * Estimates the bytecode size and call depth of the generated forwarding methods and reports any that
+ * would exceed HotSpot's default inlining budgets (MaxInlineSize, FreqInlineSize and MaxInlineLevel).
+ * The sizes are computed from the code the writers emit for each method, including call counters, Flight
+ * Recorder events, memoization, result caches and lock guards, rather than read from class files, since
+ * the annotation processor runs before any bytecode exists. Each part is estimated from the instructions
+ * javac produces for it, e.g. finally blocks are counted once for each way out of their try block. Call
+ * depths are computed by scanning the trait method bodies for calls to other trait methods when the javac
+ * tree API is available.
+ */
+public class InliningReporter {
+
+    public static final int MAX_INLINE_SIZE = 35;
+    public static final int FREQ_INLINE_SIZE = 325;
+    public static final int MAX_INLINE_LEVEL = 15;
+
+    // aload_0 + getfield
+    private static final int FIELD_RECEIVER_SIZE = 4;
+    // aload_0
+    private static final int THIS_RECEIVER_SIZE = 1;
+    private static final int INVOKEVIRTUAL_SIZE = 3;
+    private static final int INVOKESPECIAL_SIZE = 3;
+    private static final int INVOKEINTERFACE_SIZE = 5;
+    private static final int RETURN_SIZE = 1;
+    // lstore/lload or astore/aload of a local beyond slot 3
+    private static final int LOCAL_SIZE = 2;
+    // Exception handler of a try/finally: astore + aload + athrow
+    private static final int FINALLY_HANDLER_SIZE = 5;
+    // goto over the exception handler
+    private static final int GOTO_SIZE = 3;
+
+    // getstatic METRICS_ENABLED + ifeq
+    private static final int METRICS_GUARD_SIZE = 6;
+    // aload_0 + getfield + bipush + invokevirtual
+    private static final int METRICS_INCREMENT_SIZE = 9;
+    // invokestatic nanoTime + lstore
+    private static final int METRICS_START_SIZE = 3 + LOCAL_SIZE;
+    // aload_0 + getfield + bipush + lload + invokevirtual
+    private static final int METRICS_RECORD_SIZE = 9 + LOCAL_SIZE;
+    // new + dup + invokespecial + astore, aload + invokevirtual isEnabled + ifeq, aload + invokevirtual begin
+    private static final int EVENT_BEGIN_SIZE = 8 + 7 + 4;
+    // end(), shouldCommit() check, the three field assignments and commit()
+    private static final int EVENT_END_SIZE = 4 + 7 + 11 + 6 + 6 + 4;
+    // state(), isValue() check, valueOf() with its cast and publish() with its cast, excluding the compute__ call
+    private static final int MEMOIZED_LOOKUP_SIZE = 9 + 8 + 12 + 16;
+    // get() with its cast and null check, the return of the cached value and put() with its casts, excluding
+    // the key and the compute__ call
+    private static final int CACHED_LOOKUP_SIZE = 14 + 11 + 17;
+    // Widening and masking a primitive argument into a packed key, and shifting it into place
+    private static final int PACKED_KEY_ARGUMENT_SIZE = 5 + 4;
+    // iconst + anewarray + invokestatic for the varargs ResultCache.key call of methods with many arguments
+    private static final int KEY_ARRAY_SIZE = 7;
+    // dup + iconst + boxing + aastore for each argument of the key array, excluding the argument load
+    private static final int KEY_ARRAY_ELEMENT_SIZE = 6;
+    // aload_0 + getfield + invokevirtual readLock/writeLock + invokeinterface lock/unlock
+    private static final int READ_WRITE_LOCK_CALL_SIZE = 12;
+    // aload_0 + getfield + invokevirtual writeLock/readLock + lstore
+    private static final int STAMPED_LOCK_SIZE = 7 + LOCAL_SIZE;
+    // aload_0 + getfield + lload + invokevirtual unlockWrite/unlockRead
+    private static final int STAMPED_UNLOCK_SIZE = 7 + LOCAL_SIZE;
+    // aload_0 + getfield + lload + invokevirtual validate + ifeq
+    private static final int STAMPED_VALIDATE_SIZE = 10 + LOCAL_SIZE;
+    // tryOptimisticRead, the check for a zero stamp, storing and returning the result and rethrowing exceptions
+    private static final int STAMPED_OPTIMISTIC_SIZE = STAMPED_LOCK_SIZE + 7 + 2 * LOCAL_SIZE + RETURN_SIZE + GOTO_SIZE
+            + 2 * LOCAL_SIZE + 1 + 2 * STAMPED_VALIDATE_SIZE;
+
+    // Host forwarder -> delegate default__ method -> trait method body
+    private static final int FORWARDING_CHAIN_DEPTH = 3;
+    // Delegate forwarder -> host method, for calls to abstract trait methods
+    private static final int ABSTRACT_CALL_DEPTH = 2;
+
+    private final TraitProcessorAptUtils utils;
+    private final Trees trees;
+
+    public InliningReporter(ProcessingEnvironment env, TraitProcessorAptUtils utils) {
+        this.utils = utils;
+        this.trees = getTrees(env);
+    }
+
+    private static Trees getTrees(ProcessingEnvironment env) {
+        try {
+            return Trees.instance(env);
+        } catch (Throwable t) { // Not running in javac
+            return null;
+        }
+    }
+
+    public void reportForTrait(TraitElement trait) {
+        Map<String, ExecutableElement> concreteMethods = new HashMap<String, ExecutableElement>();
+        Set<String> abstractMethods = new HashSet<String>();
+        for (ExecutableElement exec : trait.getDeclaredMethods()) {
+            String name = exec.getSimpleName().toString();
+            if (exec.getModifiers().contains(Modifier.ABSTRACT)) {
+                abstractMethods.add(name);
+            } else {
+                concreteMethods.put(name, exec);
+            }
+        }
+
+        String delegateName = trait.getDelegateName().getSimpleName();
+        Map<String, Integer> depths = new HashMap<String, Integer>();
+        for (ExecutableElement exec : trait.getDeclaredMethods()) {
+            String name = exec.getSimpleName().toString();
+            if (!exec.getModifiers().contains(Modifier.ABSTRACT)) {
+                int bodySize = defaultMethodBodySize(trait, exec);
+                if (trait.getMemoizedMethods().contains(exec)) {
+                    reportSize(exec, delegateName + ".default__" + name, MEMOIZED_LOOKUP_SIZE + THIS_RECEIVER_SIZE + INVOKESPECIAL_SIZE);
+                    reportSize(exec, delegateName + ".compute__" + name, bodySize);
+                } else if (trait.getCachedMethods().contains(exec)) {
+                    reportSize(exec, delegateName + ".default__" + name, cachedLookupSize(exec));
+                    reportSize(exec, delegateName + ".compute__" + name, bodySize);
+                } else {
+                    reportSize(exec, delegateName + ".default__" + name, bodySize);
+                }
+
+                int depth = callDepth(exec, concreteMethods, abstractMethods, depths, new HashSet<String>());
+                if (depth > MAX_INLINE_LEVEL) {
+                    utils.getMessager().printMessage(Kind.WARNING, "Calls to trait method " + name + " can reach a depth of "
+                            + depth + " through generated forwarders, exceeding MaxInlineLevel=" + MAX_INLINE_LEVEL, exec);
+                }
+            }
+            if (!utils.isGetThis(trait, exec)) {
+                int forwarderSize = FIELD_RECEIVER_SIZE + argumentLoadSize(exec) + INVOKEINTERFACE_SIZE + RETURN_SIZE;
+                reportSize(exec, delegateName + "." + name, forwarderSize);
+            }
+        }
+    }
+
+    /**
+     * @param inlinedMethods the trait methods whose code is copied into the generated superclass
+     * @param optimisticReads the trait methods run under an optimistic read first
+     */
+    public void reportForClassWithTraits(ClassWithTraits cls, Set<ExecutableElement> inlinedMethods, Set<ExecutableElement> optimisticReads) {
+        for (TraitElement trait : cls.getTraitClasses()) {
+            for (ExecutableElement exec : trait.getDeclaredMethods()) {
+                if (!exec.getModifiers().contains(Modifier.ABSTRACT) && !cls.declaresMethodMatching(exec)) {
+                    int callSize = inlinedMethods.contains(exec)
+                            ? THIS_RECEIVER_SIZE + argumentLoadSize(exec) + INVOKESPECIAL_SIZE
+                            : FIELD_RECEIVER_SIZE + argumentLoadSize(exec) + INVOKEVIRTUAL_SIZE;
+                    int forwarderSize = guardedCallSize(cls.getConcurrencyPolicy(), optimisticReads.contains(exec), callSize, returnsValue(exec));
+                    reportSize(exec, cls.getGeneratedSuperclassName().getSimpleName() + "." + exec.getSimpleName(), forwarderSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the size of the delegate method that calls the trait implementation of the given method, with its
+     * Flight Recorder event and call counters
+     */
+    private int defaultMethodBodySize(TraitElement trait, ExecutableElement exec) {
+        boolean returnsValue = returnsValue(exec);
+        int callSize = THIS_RECEIVER_SIZE + argumentLoadSize(exec) + INVOKESPECIAL_SIZE + RETURN_SIZE;
+        int size = callSize;
+        if (trait.getInstrumentedMethods().contains(exec)) {
+            size += METRICS_GUARD_SIZE + (trait.isTimed(exec)
+                    ? METRICS_START_SIZE + tryFinallySize(callSize, METRICS_RECORD_SIZE, returnsValue)
+                    : METRICS_INCREMENT_SIZE);
+        }
+        if (trait.getRecordedMethods().contains(exec)) {
+            size += EVENT_BEGIN_SIZE + tryFinallySize(size, EVENT_END_SIZE, returnsValue);
+        }
+        return size;
+    }
+
+    private int cachedLookupSize(ExecutableElement exec) {
+        int keySize;
+        boolean packed = true;
+        int bits = 0;
+        for (VariableElement param : exec.getParameters()) {
+            TypeKind kind = param.asType().getKind();
+            packed &= kind.isPrimitive();
+            bits += (kind == TypeKind.LONG || kind == TypeKind.DOUBLE) ? 64 : 32;
+        }
+        packed &= bits <= 64; // Narrower primitives can fit more, but this is an estimate
+        int argumentsSize = argumentLoadSize(exec);
+        if (exec.getParameters().size() == 1) {
+            keySize = argumentsSize + (packed ? PACKED_KEY_ARGUMENT_SIZE : 0) + LOCAL_SIZE;
+        } else if (packed) {
+            keySize = argumentsSize + exec.getParameters().size() * PACKED_KEY_ARGUMENT_SIZE + LOCAL_SIZE;
+        } else if (exec.getParameters().size() <= ResultCache.MAX_UNKEYED_ARGUMENTS) {
+            keySize = argumentsSize; // The arguments are loaded again for put() instead of a key
+        } else {
+            keySize = KEY_ARRAY_SIZE + argumentsSize + exec.getParameters().size() * KEY_ARRAY_ELEMENT_SIZE + LOCAL_SIZE;
+        }
+        return keySize + CACHED_LOOKUP_SIZE + THIS_RECEIVER_SIZE + argumentsSize + INVOKESPECIAL_SIZE;
+    }
+
+    /**
+     * @return the size of a generated superclass forwarder making a call of the given size under the class's lock
+     */
+    private int guardedCallSize(ConcurrencyPolicy policy, boolean optimistic, int callSize, boolean returnsValue) {
+        int bodySize = callSize + RETURN_SIZE;
+        switch (policy) {
+            case NONE:
+                return bodySize;
+            case STAMPED:
+                int lockedSize = STAMPED_LOCK_SIZE + tryFinallySize(bodySize, STAMPED_UNLOCK_SIZE, returnsValue);
+                return optimistic ? STAMPED_OPTIMISTIC_SIZE + callSize + lockedSize : lockedSize;
+            default:
+                return READ_WRITE_LOCK_CALL_SIZE + tryFinallySize(bodySize, READ_WRITE_LOCK_CALL_SIZE, returnsValue);
+        }
+    }
+
+    /**
+     * @return the size of a try/finally block, whose finally block javac copies to both the normal and the
+     * exceptional way out of the try block
+     */
+    private int tryFinallySize(int bodySize, int finallySize, boolean returnsValue) {
+        return bodySize + 2 * finallySize + FINALLY_HANDLER_SIZE + (returnsValue ? 2 * LOCAL_SIZE : GOTO_SIZE);
+    }
+
+    private boolean returnsValue(ExecutableElement exec) {
+        return exec.getReturnType().getKind() != TypeKind.VOID;
+    }
+
+    private void reportSize(ExecutableElement exec, String generatedMethod, int size) {
+        if (size > FREQ_INLINE_SIZE) {
+            utils.getMessager().printMessage(Kind.WARNING, "Generated method " + generatedMethod + " is an estimated " + size
+                    + " bytes, exceeding FreqInlineSize=" + FREQ_INLINE_SIZE + "; it will not be inlined", exec);
+        } else if (size > MAX_INLINE_SIZE) {
+            utils.getMessager().printMessage(Kind.NOTE, "Generated method " + generatedMethod + " is an estimated " + size
+                    + " bytes, exceeding MaxInlineSize=" + MAX_INLINE_SIZE + "; it will only be inlined at hot call sites", exec);
+        }
+    }
+
+    private int argumentLoadSize(ExecutableElement exec) {
+        int size = 0;
+        int slot = 1;
+        for (VariableElement param : exec.getParameters()) {
+            size += slot <= 3 ? 1 : (slot <= 255 ? 2 : 4);
+            TypeKind kind = param.asType().getKind();
+            slot += (kind == TypeKind.LONG || kind == TypeKind.DOUBLE) ? 2 : 1;
+        }
+        return size;
+    }
+
+    private int callDepth(ExecutableElement exec, Map<String, ExecutableElement> concreteMethods, Set<String> abstractMethods,
+            Map<String, Integer> memo, Set<String> visiting) {
+        String name = exec.getSimpleName().toString();
+        if (memo.containsKey(name)) {
+            return memo.get(name);
+        }
+        if (!visiting.add(name)) { // Recursive calls can't be fully inlined anyway
+            return FORWARDING_CHAIN_DEPTH;
+        }
+        int maxCalleeDepth = 0;
+        for (String callee : getCalledMethodNames(exec)) {
+            int calleeDepth = 0;
+            if (concreteMethods.containsKey(callee)) {
+                calleeDepth = 1 + callDepth(concreteMethods.get(callee), concreteMethods, abstractMethods, memo, visiting);
+            } else if (abstractMethods.contains(callee)) {
+                calleeDepth = ABSTRACT_CALL_DEPTH;
+            }
+            maxCalleeDepth = Math.max(maxCalleeDepth, calleeDepth);
+        }
+        visiting.remove(name);
+        int depth = FORWARDING_CHAIN_DEPTH + maxCalleeDepth;
+        memo.put(name, depth);
+        return depth;
+    }
+
+    private Set<String> getCalledMethodNames(ExecutableElement exec) {
+        final Set<String> result = new HashSet<String>();
+        if (trees == null) {
+            return result;
+        }
+        MethodTree tree = trees.getTree(exec);
+        if (tree == null || tree.getBody() == null) {
+            return result;
+        }
+        tree.getBody().accept(new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitMethodInvocation(MethodInvocationTree node, Void v) {
+                Tree select = node.getMethodSelect();
+                if (select instanceof IdentifierTree) {
+                    result.add(((IdentifierTree) select).getName().toString());
+                } else if (select instanceof MemberSelectTree) {
+                    MemberSelectTree memberSelect = (MemberSelectTree) select;
+                    if ("this".equals(memberSelect.getExpression().toString())) {
+                        result.add(memberSelect.getIdentifier().toString());
+                    }
+                }
+                return super.visitMethodInvocation(node, v);
+            }
+        }, null);
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.utils;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Builds the JSON configuration files written by the annotation processors, e.g. for GraalVM native-image. Values
+ * are passed around as JSON text, so objects and arrays can be nested.
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * @return the given string as a JSON string, with quotes, backslashes and control characters escaped
+     */
+    public static String string(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        result.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /**
+     * @param namesAndValues alternating member names and JSON values
+     * @return a JSON object with the given members, on a single line unless a value spans several lines
+     */
+    public static String object(String... namesAndValues) {
+        if (namesAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Every member name needs a value");
+        }
+        StringBuilder result = new StringBuilder("{");
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            result.append(i == 0 ? " " : ", ").append(string(namesAndValues[i])).append(": ").append(namesAndValues[i + 1]);
+        }
+        return result.append(namesAndValues.length == 0 ? "}" : " }").toString();
+    }
+
+    /**
+     * @param values JSON values
+     * @return a JSON array with one value per line
+     */
+    public static String array(Collection<String> values) {
+        if (values.isEmpty()) {
+            return "[]";
+        }
+        StringBuilder result = new StringBuilder("[");
+        for (String value : values) {
+            result.append(result.length() == 1 ? "\n  " : ",\n  ").append(value.replace("\n", "\n  "));
+        }
+        return result.append("\n]").toString();
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.utils;
+
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.SynchronizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.UnaryTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import com.yahoo.javatraits.annotations.ConcurrencyPolicy;
+import com.yahoo.javatraits.processor.data.ClassWithTraits;
+import com.yahoo.javatraits.processor.data.TraitElement;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.tools.Diagnostic.Kind;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks the lock guards a {@link ConcurrencyPolicy} adds to the forwarders of a generated superclass. Trait methods
+ * calling other guarded trait methods through the class take its locks again, which deadlocks on a StampedLock since
+ * it isn't reentrant, and on a ReentrantReadWriteLock when a read lock would have to be upgraded to a write lock.
+ * Calls are found by scanning the trait method bodies when the javac tree API is available.
+ */
+public class LockGuardChecker {
+
+    private static final Set<String> LOCAL_KINDS = new HashSet<String>(Arrays.asList("LOCAL_VARIABLE", "PARAMETER",
+            "EXCEPTION_PARAMETER", "RESOURCE_VARIABLE", "BINDING_VARIABLE"));
+
+    private final TraitProcessorAptUtils utils;
+    private final Trees trees;
+
+    public LockGuardChecker(ProcessingEnvironment env, TraitProcessorAptUtils utils) {
+        this.utils = utils;
+        this.trees = getTrees(env);
+    }
+
+    private static Trees getTrees(ProcessingEnvironment env) {
+        try {
+            return Trees.instance(env);
+        } catch (Throwable t) { // Not running in javac
+            return null;
+        }
+    }
+
+    /**
+     * Reports an error for each guarded trait method of the given class that can deadlock by calling another guarded
+     * trait method through the class
+     *
+     * @return true if no errors were reported
+     */
+    public boolean checkNestedCalls(ClassWithTraits cls) {
+        ConcurrencyPolicy policy = cls.getConcurrencyPolicy();
+        if (policy == ConcurrencyPolicy.NONE || trees == null) {
+            return true;
+        }
+        Map<String, ExecutableElement> guardedMethods = new LinkedHashMap<String, ExecutableElement>();
+        Map<ExecutableElement, TraitElement> traits = new HashMap<ExecutableElement, TraitElement>();
+        for (TraitElement trait : cls.getTraitClasses()) {
+            if (trait == null) {
+                continue;
+            }
+            for (ExecutableElement exec : trait.getDeclaredMethods()) {
+                if (isGuarded(cls, trait, exec)) {
+                    String signature = utils.getErasedSignature(exec);
+                    if (!guardedMethods.containsKey(signature)) { // The first trait declaring a method wins
+                        guardedMethods.put(signature, exec);
+                        traits.put(exec, trait);
+                    }
+                }
+            }
+        }
+
+        boolean valid = true;
+        for (ExecutableElement exec : guardedMethods.values()) {
+            TraitElement trait = traits.get(exec);
+            for (ExecutableElement callee : getGuardedCallees(exec, guardedMethods)) {
+                if (policy == ConcurrencyPolicy.STAMPED) {
+                    utils.getMessager().printMessage(Kind.ERROR, "Trait method " + describe(trait, exec) + " calls "
+                            + describe(traits.get(callee), callee) + ", which is also guarded by the StampedLock of "
+                            + cls.getSimpleName() + ". StampedLock isn't reentrant, so the call would deadlock",
+                            cls.getSourceElement());
+                    valid = false;
+                }
+            }
+            if (policy != ConcurrencyPolicy.STAMPED && trait.isReadOnly(exec)) {
+                List<ExecutableElement> upgrade = findLockUpgrade(policy, exec, traits, guardedMethods,
+                        new ArrayList<ExecutableElement>(Arrays.asList(exec)));
+                if (upgrade != null) {
+                    StringBuilder chain = new StringBuilder();
+                    for (ExecutableElement step : upgrade) {
+                        chain.append(chain.length() > 0 ? " -> " : "").append(describe(traits.get(step), step));
+                    }
+                    utils.getMessager().printMessage(Kind.ERROR, "@ReadOnly trait method " + describe(trait, exec)
+                            + " calls a method needing the write lock it holds the read lock of (" + chain + "). "
+                            + "Read locks can't be upgraded to write locks, so the call would deadlock", cls.getSourceElement());
+                    valid = false;
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @return the chain of calls from the given read-only method to a method taking the write lock of a read lock
+     * held further up the chain, or null if there is none
+     */
+    private List<ExecutableElement> findLockUpgrade(ConcurrencyPolicy policy, ExecutableElement exec,
+            Map<ExecutableElement, TraitElement> traits, Map<String, ExecutableElement> guardedMethods, List<ExecutableElement> chain) {
+        for (ExecutableElement callee : getGuardedCallees(exec, guardedMethods)) {
+            if (chain.contains(callee)) {
+                continue;
+            }
+            chain.add(callee);
+            TraitElement calleeTrait = traits.get(callee);
+            if (!calleeTrait.isReadOnly(callee)) {
+                for (ExecutableElement caller : chain.subList(0, chain.size() - 1)) {
+                    // Striped locks are held per trait
+                    if (traits.get(caller).isReadOnly(caller) && (policy != ConcurrencyPolicy.STRIPED || traits.get(caller) == calleeTrait)) {
+                        return chain;
+                    }
+                }
+            }
+            if (findLockUpgrade(policy, callee, traits, guardedMethods, chain) != null) {
+                return chain;
+            }
+            chain.remove(chain.size() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the given read-only trait method can run under a StampedLock optimistic read, which it can if it
+     * only reads fields and local variables: it may then see inconsistent state, but can't act on it before the read
+     * is validated. Methods calling other methods, allocating, writing fields or looping always take the read lock.
+     */
+    public boolean canReadOptimistically(TraitElement trait, ExecutableElement exec) {
+        if (trees == null || !trait.isReadOnly(exec) || trait.getMemoizedMethods().contains(exec)
+                || trait.getCachedMethods().contains(exec) || trait.getInstrumentedMethods().contains(exec)
+                || trait.getRecordedMethods().contains(exec)) {
+            return false;
+        }
+        TreePath path = trees.getPath(exec);
+        if (path == null || ((MethodTree) path.getLeaf()).getBody() == null) {
+            return false;
+        }
+        ReadOnlyChecker checker = new ReadOnlyChecker();
+        checker.scan(new TreePath(path, ((MethodTree) path.getLeaf()).getBody()), null);
+        return checker.readOnly;
+    }
+
+    private boolean isGuarded(ClassWithTraits cls, TraitElement trait, ExecutableElement exec) {
+        return !exec.getModifiers().contains(Modifier.ABSTRACT) && !exec.getModifiers().contains(Modifier.STATIC)
+                && !utils.isGetThis(trait, exec) && !cls.declaresMethodMatching(exec);
+    }
+
+    private String describe(TraitElement trait, ExecutableElement exec) {
+        return trait.getSimpleName() + "." + utils.getErasedSignature(exec);
+    }
+
+    /**
+     * @return the guarded methods the given trait method calls through the class, i.e. on this or getThis()
+     */
+    private Set<ExecutableElement> getGuardedCallees(ExecutableElement exec, final Map<String, ExecutableElement> guardedMethods) {
+        final Set<ExecutableElement> result = new HashSet<ExecutableElement>();
+        final TreePath path = trees.getPath(exec);
+        if (path == null || ((MethodTree) path.getLeaf()).getBody() == null) {
+            return result;
+        }
+        new TreePathScanner<Void, Void>() {
+            @Override
+            public Void visitMethodInvocation(MethodInvocationTree node, Void v) {
+                Tree select = node.getMethodSelect();
+                boolean throughClass = select instanceof IdentifierTree;
+                if (select instanceof MemberSelectTree) {
+                    ExpressionTree receiver = ((MemberSelectTree) select).getExpression();
+                    throughClass = "this".equals(receiver.toString()) || isGetThisCall(receiver);
+                }
+                if (throughClass) {
+                    Element e = trees.getElement(getCurrentPath());
+                    if (e != null && e.getKind() == ElementKind.METHOD) {
+                        ExecutableElement callee = guardedMethods.get(utils.getErasedSignature((ExecutableElement) e));
+                        if (callee != null) {
+                            result.add(callee);
+                        }
+                    }
+                }
+                return super.visitMethodInvocation(node, v);
+            }
+
+            @Override
+            public Void visitClass(ClassTree node, Void v) {
+                return null; // Code in nested classes doesn't run while the lock is held
+            }
+
+            @Override
+            public Void visitLambdaExpression(LambdaExpressionTree node, Void v) {
+                return null;
+            }
+        }.scan(new TreePath(path, ((MethodTree) path.getLeaf()).getBody()), null);
+        return result;
+    }
+
+    private static boolean isGetThisCall(ExpressionTree tree) {
+        if (!(tree instanceof MethodInvocationTree)) {
+            return false;
+        }
+        MethodInvocationTree invocation = (MethodInvocationTree) tree;
+        return invocation.getArguments().isEmpty() && invocation.getMethodSelect() instanceof IdentifierTree
+                && TraitProcessorAptUtils.GET_THIS.equals(((IdentifierTree) invocation.getMethodSelect()).getName().toString());
+    }
+
+    private class ReadOnlyChecker extends TreePathScanner<Void, Void> {
+
+        private boolean readOnly = true;
+
+        @Override
+        public Void scan(Tree tree, Void v) {
+            return readOnly ? super.scan(tree, v) : null;
+        }
+
+        @Override
+        public Void visitMethodInvocation(MethodInvocationTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitNewClass(NewClassTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitNewArray(NewArrayTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitLambdaExpression(LambdaExpressionTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitClass(ClassTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitSynchronized(SynchronizedTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitForLoop(ForLoopTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitEnhancedForLoop(EnhancedForLoopTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitWhileLoop(WhileLoopTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitDoWhileLoop(DoWhileLoopTree node, Void v) {
+            return reject();
+        }
+
+        @Override
+        public Void visitAssignment(AssignmentTree node, Void v) {
+            checkLocal(node.getVariable());
+            return super.visitAssignment(node, v);
+        }
+
+        @Override
+        public Void visitCompoundAssignment(CompoundAssignmentTree node, Void v) {
+            checkLocal(node.getVariable());
+            return super.visitCompoundAssignment(node, v);
+        }
+
+        @Override
+        public Void visitUnary(UnaryTree node, Void v) {
+            switch (node.getKind()) {
+                case PREFIX_INCREMENT:
+                case PREFIX_DECREMENT:
+                case POSTFIX_INCREMENT:
+                case POSTFIX_DECREMENT:
+                    checkLocal(node.getExpression());
+                    break;
+                default:
+                    break;
+            }
+            return super.visitUnary(node, v);
+        }
+
+        private void checkLocal(ExpressionTree variable) {
+            Element e = trees.getElement(new TreePath(getCurrentPath(), variable));
+            if (e == null || !LOCAL_KINDS.contains(e.getKind().name())) {
+                readOnly = false;
+            }
+        }
+
+        private Void reject() {
+            readOnly = false;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.utils;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import com.yahoo.javatraits.annotations.Trait;
+import com.yahoo.javatraits.processor.data.ClassWithTraits;
+import com.yahoo.javatraits.processor.data.TraitElement;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copies the bodies of trait methods into generated superclasses, so calls to hot methods run the trait code directly
+ * on the class using the trait instead of going through its delegate. A body can only be copied if it means the same
+ * thing in the generated superclass: it may call the trait's methods, read its constants and use its parameters, local
+ * variables and public members of other types, but can't read trait fields, call private, static or getThis() methods,
+ * use this or super other than to call trait methods, declare classes or name types outside of java.lang. Bodies are
+ * copied from the source as written, comments included.
+ *
+ * <br/><br/>
+ *
+ * The fields of a trait can be declared by the generated superclass instead of the trait's delegate if every
+ * concrete method of the trait and every field initializer can be copied there, with the trait's fields allowed.
+ * The superclass then runs all of the trait's code itself, and doesn't need the delegate.
+ */
+public class TraitMethodInliner {
+
+    private static final Set<String> LOCAL_KINDS = new HashSet<String>(Arrays.asList("LOCAL_VARIABLE", "PARAMETER",
+            "EXCEPTION_PARAMETER", "RESOURCE_VARIABLE", "BINDING_VARIABLE"));
+    private static final String JAVA_LANG = "java.lang";
+
+    private final TraitProcessorAptUtils utils;
+    private final Trees trees;
+
+    public TraitMethodInliner(ProcessingEnvironment env, TraitProcessorAptUtils utils) {
+        this.utils = utils;
+        this.trees = getTrees(env);
+    }
+
+    private static Trees getTrees(ProcessingEnvironment env) {
+        try {
+            return Trees.instance(env);
+        } catch (Throwable t) { // Not running in javac
+            return null;
+        }
+    }
+
+    /**
+     * @return null if the given method can be inlined into the superclass generated for the given class, or the
+     * reason it can't
+     */
+    public String getReasonNotInlinable(ClassWithTraits cls, TraitElement trait, ExecutableElement exec) {
+        return getReasonNotInlinable(cls, trait, exec, false);
+    }
+
+    /**
+     * @return null if the fields of the given trait can be declared by the superclass generated for the given class,
+     * with all the trait's concrete methods inlined into it, or the reason they can't
+     */
+    public String getReasonFieldsNotFlattenable(ClassWithTraits cls, TraitElement trait) {
+        if (trees == null) {
+            return "method bodies are only available when compiling with javac";
+        }
+        if (!trait.getTypeParameters().isEmpty()) {
+            return "it is generic";
+        }
+        if (!trait.getAsyncMethods().isEmpty() || !trait.getBatchedMethods().isEmpty()) {
+            return "its @Async and @Batched methods run on its delegate";
+        }
+        Set<String> otherFieldNames = new HashSet<String>();
+        for (TraitElement other : cls.getTraitClasses()) {
+            if (other != null && other != trait) {
+                for (VariableElement field : other.getFields()) {
+                    otherFieldNames.add(field.getSimpleName().toString());
+                }
+            }
+        }
+        Set<String> fieldNames = new HashSet<String>();
+        for (VariableElement field : trait.getFields()) {
+            String name = field.getSimpleName().toString();
+            if (!fieldNames.add(name) || otherFieldNames.contains(name)) {
+                return "another field of " + cls.getSimpleName() + "'s traits is named " + name;
+            }
+            TreePath path = trees.getPath(field);
+            if (path == null) {
+                return "its source isn't available";
+            }
+            ExpressionTree initializer = ((VariableTree) path.getLeaf()).getInitializer();
+            if (initializer != null) {
+                BodyChecker checker = new BodyChecker(getDuplicateConstantNames(cls), true);
+                checker.scan(new TreePath(path, initializer), null);
+                if (checker.reason != null) {
+                    return "the initializer of " + name + " can't be copied, since " + checker.reason;
+                }
+            }
+        }
+        for (TraitElement t = trait; t != null; t = t.getParentTrait()) {
+            String reason = getReasonInitializersNotFlattenable(t);
+            if (reason != null) {
+                return reason;
+            }
+        }
+        for (ExecutableElement exec : trait.getDeclaredMethods()) {
+            if (!exec.getModifiers().contains(Modifier.ABSTRACT) && !utils.isGetThis(trait, exec)) {
+                String reason = getReasonNotInlinable(cls, trait, exec, true);
+                if (reason != null) {
+                    return exec.getSimpleName() + "() can't be inlined, since " + reason;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the reason the initializer blocks or constructor of the given trait can't run in the generated
+     * superclass, or null if it has none
+     */
+    private String getReasonInitializersNotFlattenable(TraitElement trait) {
+        TreePath path = trees.getPath(trait.getSourceElement());
+        if (path == null) {
+            return "its source isn't available";
+        }
+        for (Tree member : ((ClassTree) path.getLeaf()).getMembers()) {
+            if (member instanceof BlockTree && !((BlockTree) member).isStatic()) {
+                return trait.getSimpleName() + " has an instance initializer";
+            } else if (member instanceof MethodTree && "<init>".equals(((MethodTree) member).getName().toString())
+                    && ((MethodTree) member).getBody() != null && !isSuperCallOnly(((MethodTree) member).getBody())) {
+                return trait.getSimpleName() + " has a constructor";
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSuperCallOnly(BlockTree body) {
+        List<? extends StatementTree> statements = body.getStatements();
+        return statements.isEmpty() || (statements.size() == 1 && statements.get(0).toString().startsWith("super()"));
+    }
+
+    /**
+     * @return the source of the initializer of the given trait field, or null if it has none
+     */
+    public String getInitializerSource(VariableElement field) {
+        TreePath path = trees.getPath(field);
+        ExpressionTree initializer = path != null ? ((VariableTree) path.getLeaf()).getInitializer() : null;
+        if (initializer == null) {
+            return null;
+        }
+        CompilationUnitTree unit = path.getCompilationUnit();
+        SourcePositions positions = trees.getSourcePositions();
+        try {
+            CharSequence source = unit.getSourceFile().getCharContent(true);
+            return source.subSequence((int) positions.getStartPosition(unit, initializer),
+                    (int) positions.getEndPosition(unit, initializer)).toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String getReasonNotInlinable(ClassWithTraits cls, TraitElement trait, ExecutableElement exec, boolean fieldsFlattened) {
+        if (trees == null) {
+            return "method bodies are only available when compiling with javac";
+        }
+        if (exec.getModifiers().contains(Modifier.ABSTRACT) || utils.isGetThis(trait, exec)) {
+            return "it is abstract";
+        }
+        if (!exec.getTypeParameters().isEmpty() || !trait.getTypeParameters().isEmpty()) {
+            return "it is generic";
+        }
+        if (trait.getMemoizedMethods().contains(exec) || trait.getCachedMethods().contains(exec)
+                || trait.getBatchedMethods().contains(exec) || trait.getFixedArityMethods().contains(exec)
+                || trait.getInstrumentedMethods().contains(exec) || trait.getRecordedMethods().contains(exec)) {
+            return "its delegate method adds behavior";
+        }
+        TreePath path = trees.getPath(exec);
+        String body = getBodySource(exec);
+        if (path == null || body == null) {
+            return "its source isn't available";
+        } else if (body.contains("\"\"\"")) { // Reindenting the body would change the text
+            return "it contains a text block";
+        }
+        BodyChecker checker = new BodyChecker(getDuplicateConstantNames(cls), fieldsFlattened);
+        checker.scan(new TreePath(path, ((MethodTree) path.getLeaf()).getBody()), null);
+        return checker.reason;
+    }
+
+    /**
+     * @return the lines of the body of the given method as written in its source, comments included, without the
+     * enclosing braces and indented relative to the body
+     */
+    public List<String> getBodyLines(ExecutableElement exec) {
+        String[] lines = getBodySource(exec).split("\r?\n", -1);
+        List<String> result = new ArrayList<String>();
+        int indent = Integer.MAX_VALUE;
+        for (int i = 1; i < lines.length; i++) { // The first line follows the opening brace
+            if (lines[i].trim().length() > 0) {
+                indent = Math.min(indent, lines[i].length() - lines[i].replaceAll("^\\s+", "").length());
+            }
+        }
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim().length() == 0 ? "" : i == 0 ? lines[i].trim() : lines[i].substring(indent).replaceAll("\\s+$", "");
+            if (line.length() > 0 || !result.isEmpty()) { // Skips blank lines before the first statement
+                result.add(line);
+            }
+        }
+        while (!result.isEmpty() && result.get(result.size() - 1).length() == 0) {
+            result.remove(result.size() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * @return the source of the body of the given method between its braces, or null if it can't be read
+     */
+    private String getBodySource(ExecutableElement exec) {
+        TreePath path = trees.getPath(exec);
+        BlockTree body = path != null ? ((MethodTree) path.getLeaf()).getBody() : null;
+        if (body == null) {
+            return null;
+        }
+        CompilationUnitTree unit = path.getCompilationUnit();
+        SourcePositions positions = trees.getSourcePositions();
+        long start = positions.getStartPosition(unit, body);
+        long end = positions.getEndPosition(unit, body);
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        try {
+            CharSequence source = unit.getSourceFile().getCharContent(true);
+            return source.subSequence((int) start + 1, (int) end - 1).toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Set<String> getDuplicateConstantNames(ClassWithTraits cls) {
+        Set<String> names = new HashSet<String>();
+        Set<String> duplicates = new HashSet<String>();
+        for (TraitElement trait : cls.getTraitClasses()) {
+            if (trait == null) {
+                continue;
+            }
+            for (VariableElement constant : trait.getConstants()) {
+                if (!names.add(constant.getSimpleName().toString())) {
+                    duplicates.add(constant.getSimpleName().toString());
+                }
+            }
+        }
+        return duplicates.isEmpty() ? Collections.<String>emptySet() : duplicates;
+    }
+
+    private class BodyChecker extends TreePathScanner<Void, Void> {
+
+        private final Set<String> duplicateConstantNames;
+        private final boolean fieldsFlattened;
+        private String reason;
+
+        BodyChecker(Set<String> duplicateConstantNames, boolean fieldsFlattened) {
+            this.duplicateConstantNames = duplicateConstantNames;
+            this.fieldsFlattened = fieldsFlattened;
+        }
+
+        @Override
+        public Void scan(Tree tree, Void v) {
+            return reason != null ? null : super.scan(tree, v);
+        }
+
+        @Override
+        public Void visitClass(ClassTree node, Void v) {
+            reason = "it declares a class";
+            return null;
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree node, Void v) {
+            String name = node.getName().toString();
+            if ("this".equals(name)) {
+                Tree parent = getCurrentPath().getParentPath().getLeaf();
+                if (!(parent instanceof MemberSelectTree) || ((MemberSelectTree) parent).getExpression() != node) {
+                    reason = "it uses this";
+                }
+                return null;
+            } else if ("super".equals(name)) {
+                reason = "it uses super";
+                return null;
+            }
+            Element e = trees.getElement(getCurrentPath());
+            if (e == null) {
+                reason = "it uses " + name + ", which can't be resolved";
+            } else if (e.getKind() == ElementKind.METHOD || e.getKind() == ElementKind.FIELD) {
+                checkTraitMember(e);
+            } else if (e.getKind().isClass() || e.getKind().isInterface()) {
+                TypeElement type = (TypeElement) e;
+                if (type.getNestingKind() != NestingKind.TOP_LEVEL
+                        || !JAVA_LANG.equals(utils.getElements().getPackageOf(type).getQualifiedName().toString())) {
+                    reason = "it refers to " + type.getQualifiedName() + ", which may not be imported";
+                }
+            } else if (!LOCAL_KINDS.contains(e.getKind().name()) && e.getKind() != ElementKind.PACKAGE
+                    && e.getKind() != ElementKind.ENUM_CONSTANT) {
+                reason = "it uses " + name;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree node, Void v) {
+            String receiver = node.getExpression().toString();
+            if ("this".equals(receiver)) {
+                Element e = trees.getElement(getCurrentPath());
+                if (e == null) {
+                    reason = "it uses this." + node.getIdentifier() + ", which can't be resolved";
+                } else {
+                    checkTraitMember(e);
+                }
+                return null;
+            } else if ("super".equals(receiver)) {
+                reason = "it uses super";
+                return null;
+            }
+            if (!"class".equals(node.getIdentifier().toString()) && !isArrayLength(node)) {
+                checkPublic(trees.getElement(getCurrentPath()), node.getIdentifier().toString());
+            }
+            return super.visitMemberSelect(node, v);
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree node, Void v) {
+            checkPublic(trees.getElement(getCurrentPath()), node.getName().toString());
+            return super.visitMemberReference(node, v);
+        }
+
+        private boolean isArrayLength(MemberSelectTree node) {
+            if (!"length".equals(node.getIdentifier().toString())) {
+                return false;
+            }
+            TypeMirror type = trees.getTypeMirror(new TreePath(getCurrentPath(), node.getExpression()));
+            return type != null && type.getKind() == TypeKind.ARRAY;
+        }
+
+        private void checkPublic(Element e, String name) {
+            if (e == null) {
+                reason = "it uses " + name + ", which can't be resolved";
+            } else if (e.getKind() != ElementKind.PACKAGE && !e.getModifiers().contains(Modifier.PUBLIC)) {
+                reason = "it uses " + name + ", which isn't public";
+            }
+        }
+
+        private void checkTraitMember(Element e) {
+            String name = e.getSimpleName().toString();
+            Element owner = e.getEnclosingElement();
+            if (owner == null || utils.getAnnotationMirror(owner, Trait.class) == null) {
+                reason = "it calls " + name + ", which isn't a trait member";
+            } else if (e.getKind() == ElementKind.FIELD && !e.getModifiers().contains(Modifier.STATIC)) {
+                if (!fieldsFlattened) { // Otherwise declared by the generated superclass with the same name
+                    reason = "it uses the field " + name;
+                }
+            } else if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                reason = "it uses the private member " + name;
+            } else if (e.getKind() == ElementKind.METHOD && e.getModifiers().contains(Modifier.STATIC)) {
+                reason = "it calls the static method " + name + ", which is only declared by the trait";
+            } else if (e.getKind() == ElementKind.FIELD && duplicateConstantNames.contains(name)) {
+                reason = "it uses the constant " + name + ", which is declared by more than one trait";
+            } else if (e.getKind() == ElementKind.METHOD && TraitProcessorAptUtils.GET_THIS.equals(name)
+                    && ((ExecutableElement) e).getParameters().isEmpty()) {
+                reason = "it calls getThis()";
+            }
+        }
+    }
+}
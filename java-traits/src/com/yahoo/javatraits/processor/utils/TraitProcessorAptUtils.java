@@ -15,24 +15,33 @@
  */
 package com.yahoo.javatraits.processor.utils;
 
+import com.yahoo.aptutils.model.CoreTypes;
+import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.aptutils.model.TypeName;
 import com.yahoo.aptutils.utils.AptUtils;
+import com.yahoo.aptutils.writer.parameters.MethodDeclarationParameters;
 import com.yahoo.javatraits.processor.data.TraitElement;
 
-import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.type.ErrorType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
-import javax.lang.model.util.Elements;
-import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class TraitProcessorAptUtils extends AptUtils {
 
-    public TraitProcessorAptUtils(Messager messager, Types types, Elements elements) {
-        super(messager, types, elements);
+    public TraitProcessorAptUtils(ProcessingEnvironment env) {
+        super(env);
     }
 
     public static final String GET_THIS = "getThis";
+    public static final DeclaredTypeName COMPLETABLE_FUTURE = new DeclaredTypeName("java.util.concurrent.CompletableFuture");
+    private static final DeclaredTypeName JAVA_VOID = new DeclaredTypeName(CoreTypes.JAVA_LANG, "Void");
 
     public boolean isGetThis(TraitElement element, ExecutableElement exec) {
         return GET_THIS.equals(exec.getSimpleName().toString())
@@ -41,12 +50,136 @@ public class TraitProcessorAptUtils extends AptUtils {
                 && exec.getParameters().size() == 0;
     }
     
+    /**
+     * @return the signature used to identify the given method at runtime, i.e. its name followed by the erased
+     * types of its arguments, e.g. "resize(int,int)"
+     */
+    public String getErasedSignature(ExecutableElement exec) {
+        StringBuilder signature = new StringBuilder(exec.getSimpleName()).append("(");
+        for (int i = 0; i < exec.getParameters().size(); i++) {
+            if (i > 0) {
+                signature.append(",");
+            }
+            signature.append(getTypes().erasure(exec.getParameters().get(i).asType()));
+        }
+        return signature.append(")").toString();
+    }
+
+    /**
+     * @return the declaration of the overload of the given {@literal @}FixedArity method that takes the given number
+     * of arguments in place of its varargs array, which are named after the varargs parameter, e.g. values0, values1
+     */
+    public MethodDeclarationParameters fixedArityMethodDeclarationParams(TraitElement elem, ExecutableElement exec, int arity,
+            String nameOverride, Modifier... modifiers) {
+        MethodDeclarationParameters params = methodDeclarationParamsFromExecutableElement(exec, nameOverride, elem.getSimpleName(), modifiers);
+        List<TypeName> argumentTypes = new ArrayList<TypeName>(params.getArgumentTypes());
+        List<String> argumentNames = new ArrayList<String>(params.getArgumentNames());
+        TypeName componentType = argumentTypes.remove(argumentTypes.size() - 1).clone();
+        componentType.setIsVarArgs(false);
+        componentType.setArrayDepth(componentType.getArrayDepth() - 1);
+        String varArgsName = argumentNames.remove(argumentNames.size() - 1);
+        for (int i = 0; i < arity; i++) {
+            argumentTypes.add(componentType);
+            argumentNames.add(varArgsName + i);
+        }
+        return params.setArgumentTypes(argumentTypes).setArgumentNames(argumentNames);
+    }
+
+    /**
+     * @return the array type of the varargs parameter of the given method, e.g. int[] for int... values
+     */
+    public TypeName getVarArgsArrayType(TraitElement elem, ExecutableElement exec) {
+        return getTypeNameFromTypeMirror(exec.getParameters().get(exec.getParameters().size() - 1).asType(), elem.getSimpleName());
+    }
+
+    /**
+     * @return the arguments passing the arguments of a fixed arity overload to its varargs method, with the trailing
+     * ones in a new array of the given type, e.g. "prefix, new int[] {values0, values1}"
+     */
+    public String getVarArgsCallArguments(ExecutableElement exec, MethodDeclarationParameters overload, String arrayTypeName) {
+        int leading = exec.getParameters().size() - 1;
+        List<String> names = overload.getArgumentNames();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < leading; i++) {
+            result.append(names.get(i)).append(", ");
+        }
+        result.append("new ").append(arrayTypeName).append(" {");
+        for (int i = leading; i < names.size(); i++) {
+            result.append(i > leading ? ", " : "").append(names.get(i));
+        }
+        return result.append("}").toString();
+    }
+
+    /**
+     * @return the name of the column a {@literal @}Columnar container stores the value of the given abstract method
+     * in, e.g. "width" for int getWidth(), boolean isWidth() or void setWidth(int), or null if the method isn't
+     * a getter or setter of a primitive value
+     */
+    public String getColumnName(ExecutableElement exec) {
+        String name = exec.getSimpleName().toString();
+        String property = null;
+        if (exec.getParameters().isEmpty() && exec.getReturnType().getKind().isPrimitive()) {
+            if (name.startsWith("get")) {
+                property = name.substring(3);
+            } else if (name.startsWith("is") && exec.getReturnType().getKind() == TypeKind.BOOLEAN) {
+                property = name.substring(2);
+            }
+        } else if (exec.getParameters().size() == 1 && exec.getReturnType().getKind() == TypeKind.VOID
+                && exec.getParameters().get(0).asType().getKind().isPrimitive() && name.startsWith("set")) {
+            property = name.substring(3);
+        }
+        if (property == null || property.isEmpty() || !Character.isUpperCase(property.charAt(0))) {
+            return null;
+        }
+        return Character.toLowerCase(property.charAt(0)) + property.substring(1);
+    }
+
+    /**
+     * @return the type name for the given type, or for its boxed type if it is primitive
+     */
+    public TypeName getBoxedTypeName(TypeMirror mirror, String genericQualifier) {
+        if (mirror.getKind().isPrimitive()) {
+            mirror = getTypes().boxedClass((PrimitiveType) mirror).asType();
+        }
+        return getTypeNameFromTypeMirror(mirror, genericQualifier);
+    }
+
+    /**
+     * @return parameters for the CompletableFuture-returning variant of the given {@literal @}Async trait method
+     */
+    public MethodDeclarationParameters asyncMethodDeclarationParams(TraitElement element, ExecutableElement exec, String nameOverride, Modifier... modifiers) {
+        return futureMethodDeclarationParams(element, exec, nameOverride != null ? nameOverride : TraitElement.getAsyncMethodName(exec), modifiers);
+    }
+
+    /**
+     * @return parameters for the CompletableFuture-returning variant of the given {@literal @}Batched trait method
+     */
+    public MethodDeclarationParameters batchedMethodDeclarationParams(TraitElement element, ExecutableElement exec, String nameOverride, Modifier... modifiers) {
+        return futureMethodDeclarationParams(element, exec, nameOverride != null ? nameOverride : TraitElement.getBatchedMethodName(exec), modifiers);
+    }
+
+    private MethodDeclarationParameters futureMethodDeclarationParams(TraitElement element, ExecutableElement exec, String name, Modifier... modifiers) {
+        MethodDeclarationParameters params = methodDeclarationParamsFromExecutableElement(exec, name, element.getSimpleName(), modifiers);
+        DeclaredTypeName futureType = COMPLETABLE_FUTURE.clone();
+        TypeName resultType = exec.getReturnType().getKind() == TypeKind.VOID ? JAVA_VOID
+                : getBoxedTypeName(exec.getReturnType(), element.getSimpleName());
+        futureType.setTypeArgs(Collections.singletonList(resultType));
+        return params.setReturnType(futureType)
+                .setThrowsTypes(new ArrayList<TypeName>()); // Exceptions complete the future instead
+    }
+
     private boolean checkReturnType(TraitElement element, ExecutableElement exec) {
         TypeMirror returnType = exec.getReturnType();
         if (returnType instanceof ErrorType) { // It may not exist yet
             return true;
         } else {
-            return element.getGeneratedInterfaceName().equals(getTypeNameFromTypeMirror(returnType, null));
+            TypeName returnTypeName = getTypeNameFromTypeMirror(returnType, null);
+            for (TraitElement trait = element; trait != null; trait = trait.getParentTrait()) { // Possibly inherited
+                if (trait.getGeneratedInterfaceName().equals(returnTypeName)) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
 }
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.writers;
+
+import com.yahoo.aptutils.model.CoreTypes;
+import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.aptutils.model.MethodSignature;
+import com.yahoo.aptutils.model.TypeName;
+import com.yahoo.aptutils.utils.Pair;
+import com.yahoo.aptutils.writer.JavaFileWriter.Type;
+import com.yahoo.aptutils.writer.expressions.Expression;
+import com.yahoo.aptutils.writer.expressions.Expressions;
+import com.yahoo.aptutils.writer.parameters.MethodDeclarationParameters;
+import com.yahoo.aptutils.writer.parameters.TypeDeclarationParameters;
+import com.yahoo.javatraits.processor.data.ClassWithTraits;
+import com.yahoo.javatraits.processor.data.TraitElement;
+import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writes the columnar container for a class annotated with {@literal @}Columnar. Each abstract getter of the
+ * class's traits is backed by a primitive array, and the nested View class implements the trait interfaces
+ * for one index at a time, forwarding concrete methods to one delegate per trait like a generated superclass.
+ */
+public class ClassWithTraitsColumnsWriter extends JavaTraitsWriter<ClassWithTraits> {
+
+    private static final DeclaredTypeName ARRAYS = new DeclaredTypeName("java.util.Arrays");
+    private static final DeclaredTypeName MATH = new DeclaredTypeName("java.lang.Math");
+    private static final String VIEW = "View";
+    private static final String SIZE = "size";
+    private static final String CAPACITY = "capacity";
+    private static final String COLUMNS = "columns";
+    private static final String INDEX = "index";
+    private static final String COLUMN_SUFFIX = "Column";
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final DeclaredTypeName columnsName;
+    private final DeclaredTypeName viewName;
+    private final Map<String, TypeName> columns = new LinkedHashMap<String, TypeName>();
+    private final Map<String, String> getterNames = new HashMap<String, String>();
+    private final List<Pair<TraitElement, ExecutableElement>> methods = new ArrayList<Pair<TraitElement, ExecutableElement>>();
+
+    public ClassWithTraitsColumnsWriter(ClassWithTraits cls, TraitProcessorAptUtils utils) {
+        super(cls, utils);
+        this.columnsName = cls.getColumnsName();
+        this.viewName = new DeclaredTypeName(columnsName.toString(), VIEW);
+
+        Map<MethodSignature, Pair<TraitElement, ExecutableElement>> chosen = new LinkedHashMap<MethodSignature, Pair<TraitElement, ExecutableElement>>();
+        for (TraitElement trait : cls.getTraitClasses()) {
+            for (ExecutableElement exec : trait.getDeclaredMethods()) {
+                if (utils.isGetThis(trait, exec)) {
+                    continue;
+                }
+                MethodSignature signature = utils.executableElementToMethodSignature(exec, trait.getSimpleName());
+                if (!chosen.containsKey(signature)
+                        || trait.getElementName().equals(cls.getPreferMap().get(exec.getSimpleName().toString()))) {
+                    chosen.put(signature, Pair.create(trait, exec));
+                }
+            }
+        }
+        for (Pair<TraitElement, ExecutableElement> method : chosen.values()) {
+            methods.add(method);
+            ExecutableElement exec = method.getRight();
+            if (isAbstract(exec) && exec.getParameters().isEmpty()) {
+                String column = utils.getColumnName(exec);
+                columns.put(column, utils.getTypeNameFromTypeMirror(exec.getReturnType()));
+                getterNames.put(column, exec.getSimpleName().toString());
+            }
+        }
+    }
+
+    private static boolean isAbstract(ExecutableElement exec) {
+        return exec.getModifiers().contains(Modifier.ABSTRACT);
+    }
+
+    @Override
+    protected DeclaredTypeName getClassNameToGenerate() {
+        return columnsName;
+    }
+
+    @Override
+    protected void gatherImports(Set<DeclaredTypeName> imports) {
+        for (TraitElement trait : element.getTraitClasses()) {
+            utils.accumulateImportsFromElements(imports, trait.getDeclaredMethods());
+            imports.add(trait.getDelegateName());
+            imports.add(trait.getGeneratedInterfaceName());
+        }
+        imports.add(ARRAYS);
+    }
+
+    @Override
+    protected void writeClassDefinition() throws IOException {
+        TypeDeclarationParameters params = new TypeDeclarationParameters()
+            .setName(columnsName)
+            .setKind(Type.CLASS)
+            .setModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        writer.registerOtherKnownNames(viewName);
+        writer.beginTypeDefinition(params);
+
+        writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_INT, SIZE, null, Modifier.PRIVATE)
+            .writeFieldDeclaration(CoreTypes.PRIMITIVE_INT, CAPACITY, null, Modifier.PRIVATE);
+        for (Map.Entry<String, TypeName> column : columns.entrySet()) {
+            writer.writeFieldDeclaration(getArrayType(column.getValue()), column.getKey() + COLUMN_SUFFIX, null, Modifier.PRIVATE);
+        }
+        writer.writeNewline();
+
+        emitConstructors();
+        emitSize();
+        emitAdd();
+        emitColumnAccessors();
+        emitGet();
+        emitRangeOperations();
+        emitGrow();
+        emitCheckIndex();
+        emitView();
+
+        writer.finishTypeDefinition();
+    }
+
+    private TypeName getArrayType(TypeName columnType) {
+        TypeName arrayType = columnType.clone();
+        arrayType.setArrayDepth(1);
+        return arrayType;
+    }
+
+    private void emitConstructors() throws IOException {
+        writer.beginConstructorDeclaration(new MethodDeclarationParameters()
+                .setConstructorName(columnsName)
+                .setModifiers(Modifier.PUBLIC))
+            .writeStatement(Expressions.callMethod("this", DEFAULT_CAPACITY))
+            .finishMethodDefinition();
+
+        writer.beginConstructorDeclaration(new MethodDeclarationParameters()
+                .setConstructorName(columnsName)
+                .setModifiers(Modifier.PUBLIC)
+                .setArgumentTypes(CoreTypes.PRIMITIVE_INT)
+                .setArgumentNames("initialCapacity"))
+            .beginControlFlow("if (initialCapacity < 0)")
+            .writeStringStatement("throw new IllegalArgumentException(\"Negative capacity: \" + initialCapacity)")
+            .endControlFlow()
+            .writeStatement(Expressions.assign(Expressions.reference("this", CAPACITY), Expressions.reference("initialCapacity")));
+        for (Map.Entry<String, TypeName> column : columns.entrySet()) {
+            writer.writeStatement(Expressions.assign(Expressions.reference(column.getKey() + COLUMN_SUFFIX),
+                    Expressions.fromString("new " + writer.shortenName(column.getValue(), false) + "[initialCapacity]")));
+        }
+        writer.finishMethodDefinition();
+    }
+
+    private void emitSize() throws IOException {
+        writer.beginMethodDefinition(new MethodDeclarationParameters()
+                .setMethodName(SIZE)
+                .setModifiers(Modifier.PUBLIC)
+                .setReturnType(CoreTypes.PRIMITIVE_INT))
+            .writeStatement(Expressions.reference(SIZE).returnExpr())
+            .finishMethodDefinition();
+    }
+
+    private void emitAdd() throws IOException {
+        writer.beginMethodDefinition(new MethodDeclarationParameters()
+                .setMethodName("add")
+                .setModifiers(Modifier.PUBLIC)
+                .setReturnType(CoreTypes.PRIMITIVE_INT)
+                .setArgumentTypes(new ArrayList<TypeName>(columns.values()))
+                .setArgumentNames(new ArrayList<String>(columns.keySet())))
+            .beginControlFlow("if (" + SIZE + " == " + CAPACITY + ")")
+            .writeStatement(Expressions.callMethod("grow"))
+            .endControlFlow();
+        for (String column : columns.keySet()) {
+            writer.writeStatement(Expressions.assign(element(column + COLUMN_SUFFIX, SIZE), Expressions.reference(column)));
+        }
+        writer.writeStatement(Expressions.fromString(SIZE + "++").returnExpr())
+            .finishMethodDefinition();
+    }
+
+    private void emitColumnAccessors() throws IOException {
+        for (Map.Entry<String, TypeName> column : columns.entrySet()) {
+            String property = Character.toUpperCase(column.getKey().charAt(0)) + column.getKey().substring(1);
+            String array = column.getKey() + COLUMN_SUFFIX;
+            writer.beginMethodDefinition(new MethodDeclarationParameters()
+                    .setMethodName(getterNames.get(column.getKey()))
+                    .setModifiers(Modifier.PUBLIC)
+                    .setReturnType(column.getValue())
+                    .setArgumentTypes(CoreTypes.PRIMITIVE_INT)
+                    .setArgumentNames(INDEX))
+                .writeStatement(Expressions.callMethod("checkIndex", INDEX))
+                .writeStatement(element(array, INDEX).returnExpr())
+                .finishMethodDefinition();
+
+            writer.beginMethodDefinition(new MethodDeclarationParameters()
+                    .setMethodName("set" + property)
+                    .setModifiers(Modifier.PUBLIC)
+                    .setArgumentTypes(CoreTypes.PRIMITIVE_INT, column.getValue())
+                    .setArgumentNames(INDEX, column.getKey()))
+                .writeStatement(Expressions.callMethod("checkIndex", INDEX))
+                .writeStatement(Expressions.assign(element(array, INDEX), Expressions.reference(column.getKey())))
+                .finishMethodDefinition();
+        }
+    }
+
+    private void emitGet() throws IOException {
+        writer.beginMethodDefinition(new MethodDeclarationParameters()
+                .setMethodName("get")
+                .setModifiers(Modifier.PUBLIC)
+                .setReturnType(viewName)
+                .setArgumentTypes(CoreTypes.PRIMITIVE_INT)
+                .setArgumentNames(INDEX))
+            .writeStatement(Expressions.callMethod("checkIndex", INDEX))
+            .writeStatement(Expressions.callConstructor(viewName, "this", INDEX).returnExpr())
+            .finishMethodDefinition();
+    }
+
+    private void emitRangeOperations() throws IOException {
+        Set<String> emitted = new HashSet<String>();
+        for (Pair<TraitElement, ExecutableElement> method : methods) {
+            ExecutableElement exec = method.getRight();
+            if (isAbstract(exec) || !exec.getParameters().isEmpty() || exec.getReturnType().getKind() == TypeKind.VOID) {
+                continue;
+            }
+            String name = TraitElement.getBulkOperationMethodName(exec);
+            if (!emitted.add(name)) {
+                continue;
+            }
+            TypeName outputType = getArrayType(utils.getTypeNameFromTypeMirror(exec.getReturnType(), method.getLeft().getSimpleName()));
+            writer.beginMethodDefinition(new MethodDeclarationParameters()
+                    .setMethodName(name)
+                    .setModifiers(Modifier.PUBLIC)
+                    .setArgumentTypes(CoreTypes.PRIMITIVE_INT, CoreTypes.PRIMITIVE_INT, outputType)
+                    .setArgumentNames("from", "to", "out"))
+                .beginControlFlow("if (from < 0 || to > " + SIZE + " || from > to)")
+                .writeStringStatement("throw new IndexOutOfBoundsException(\"Range: [\" + from + \", \" + to + \"), size: \" + " + SIZE + ")")
+                .endControlFlow()
+                .beginControlFlow("if (out.length < to - from)")
+                .writeStringStatement("throw new IllegalArgumentException(\"Output array is shorter than the range\")")
+                .endControlFlow()
+                .writeFieldDeclaration(viewName, "view", Expressions.callConstructor(viewName, "this", "from"))
+                .beginControlFlow("for (int i = from; i < to; i++)")
+                .writeStatement(Expressions.assign(Expressions.reference("view", INDEX), Expressions.reference("i")))
+                .writeStatement(Expressions.assign(element("out", "i - from"), Expressions.callMethodOn("view", exec.getSimpleName().toString())))
+                .endControlFlow()
+                .finishMethodDefinition();
+        }
+    }
+
+    private void emitGrow() throws IOException {
+        writer.beginMethodDefinition(new MethodDeclarationParameters()
+                .setMethodName("grow")
+                .setModifiers(Modifier.PRIVATE))
+            .writeStatement(Expressions.assign(Expressions.reference(CAPACITY),
+                    Expressions.staticMethod(MATH, "max", DEFAULT_CAPACITY, CAPACITY + " * 2")));
+        for (String column : columns.keySet()) {
+            writer.writeStatement(Expressions.assign(Expressions.reference(column + COLUMN_SUFFIX),
+                    Expressions.staticMethod(ARRAYS, "copyOf", column + COLUMN_SUFFIX, CAPACITY)));
+        }
+        writer.finishMethodDefinition();
+    }
+
+    private void emitCheckIndex() throws IOException {
+        writer.beginMethodDefinition(new MethodDeclarationParameters()
+                .setMethodName("checkIndex")
+                .setModifiers(Modifier.PRIVATE)
+                .setArgumentTypes(CoreTypes.PRIMITIVE_INT)
+                .setArgumentNames(INDEX))
+            .beginControlFlow("if (" + INDEX + " < 0 || " + INDEX + " >= " + SIZE + ")")
+            .writeStringStatement("throw new IndexOutOfBoundsException(\"Index: \" + " + INDEX + " + \", size: \" + " + SIZE + ")")
+            .endControlFlow()
+            .finishMethodDefinition();
+    }
+
+    private void emitView() throws IOException {
+        List<DeclaredTypeName> interfaces = new ArrayList<DeclaredTypeName>();
+        for (TraitElement trait : element.getTraitClasses()) {
+            interfaces.add(trait.getGeneratedInterfaceName());
+        }
+        writer.beginTypeDefinition(new TypeDeclarationParameters()
+                .setName(viewName)
+                .setKind(Type.CLASS)
+                .setModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .setInterfaces(interfaces));
+
+        writer.writeFieldDeclaration(columnsName, COLUMNS, null, Modifier.PRIVATE, Modifier.FINAL);
+        for (TraitElement trait : element.getTraitClasses()) {
+            writer.writeFieldDeclaration(trait.getDelegateName(), getDelegateVariableName(trait), null, Modifier.PRIVATE, Modifier.FINAL);
+        }
+        writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_INT, INDEX, null, Modifier.PRIVATE)
+            .writeNewline();
+
+        writer.beginConstructorDeclaration(new MethodDeclarationParameters()
+                .setConstructorName(viewName)
+                .setArgumentTypes(columnsName, CoreTypes.PRIMITIVE_INT)
+                .setArgumentNames(COLUMNS, INDEX))
+            .writeStatement(Expressions.assign(Expressions.reference("this", COLUMNS), Expressions.reference(COLUMNS)))
+            .writeStatement(Expressions.assign(Expressions.reference("this", INDEX), Expressions.reference(INDEX)));
+        for (TraitElement trait : element.getTraitClasses()) {
+            writer.writeStatement(Expressions.assign(Expressions.reference("this", getDelegateVariableName(trait)),
+                    Expressions.callConstructor(trait.getDelegateName(), "this")));
+        }
+        writer.finishMethodDefinition();
+
+        writer.beginMethodDefinition(new MethodDeclarationParameters()
+                .setMethodName("getIndex")
+                .setModifiers(Modifier.PUBLIC)
+                .setReturnType(CoreTypes.PRIMITIVE_INT))
+            .writeStatement(Expressions.reference(INDEX).returnExpr())
+            .finishMethodDefinition();
+
+        writer.beginMethodDefinition(new MethodDeclarationParameters()
+                .setMethodName("moveTo")
+                .setModifiers(Modifier.PUBLIC)
+                .setReturnType(viewName)
+                .setArgumentTypes(CoreTypes.PRIMITIVE_INT)
+                .setArgumentNames(INDEX))
+            .writeStatement(Expressions.callMethodOn(COLUMNS, "checkIndex", INDEX))
+            .writeStatement(Expressions.assign(Expressions.reference("this", INDEX), Expressions.reference(INDEX)))
+            .writeStatement(Expressions.reference("this").returnExpr())
+            .finishMethodDefinition();
+
+        for (Pair<TraitElement, ExecutableElement> method : methods) {
+            emitViewMethod(method.getLeft(), method.getRight());
+            if (method.getLeft().getFixedArityMethods().contains(method.getRight())) {
+                emitFixedArityViewMethods(method.getLeft(), method.getRight());
+            }
+        }
+        writer.finishTypeDefinition();
+    }
+
+    private void emitViewMethod(TraitElement trait, ExecutableElement exec) throws IOException {
+        MethodDeclarationParameters params = utils.methodDeclarationParamsFromExecutableElement(exec, null, trait.getSimpleName(), Modifier.PUBLIC);
+        writer.beginMethodDefinition(params);
+        if (!isAbstract(exec)) {
+            writeDelegateCall(trait, exec, params);
+        } else if (exec.getParameters().isEmpty()) {
+            writer.writeStatement(element(COLUMNS + "." + utils.getColumnName(exec) + COLUMN_SUFFIX, INDEX).returnExpr());
+        } else {
+            writer.writeStatement(Expressions.assign(element(COLUMNS + "." + utils.getColumnName(exec) + COLUMN_SUFFIX, INDEX),
+                    Expressions.reference(params.getArgumentNames().get(0))));
+        }
+        writer.finishMethodDefinition();
+    }
+
+    private void emitFixedArityViewMethods(TraitElement trait, ExecutableElement exec) throws IOException {
+        for (int arity : trait.getFixedArities(exec)) {
+            MethodDeclarationParameters params = utils.fixedArityMethodDeclarationParams(trait, exec, arity, null, Modifier.PUBLIC);
+            writer.beginMethodDefinition(params);
+            writeDelegateCall(trait, exec, params);
+            writer.finishMethodDefinition();
+        }
+    }
+
+    private void writeDelegateCall(TraitElement trait, ExecutableElement exec, MethodDeclarationParameters params) throws IOException {
+        Expression call = Expressions.callMethodOn(getDelegateVariableName(trait), "default__" + exec.getSimpleName(),
+                params.getArgumentNames());
+        writer.writeStatement(exec.getReturnType().getKind() == TypeKind.VOID ? call : call.returnExpr());
+    }
+
+    private static Expression element(String array, String index) {
+        return Expressions.fromString(array + "[" + index + "]");
+    }
+
+    private String getDelegateVariableName(TraitElement trait) {
+        String base = trait.getDelegateName().getSimpleName();
+        return base.substring(0, 1).toLowerCase() + base.substring(1);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.writers;
+
+import com.yahoo.aptutils.model.CoreTypes;
+import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.aptutils.writer.JavaFileWriter.Type;
+import com.yahoo.aptutils.writer.expressions.Expressions;
+import com.yahoo.aptutils.writer.parameters.MethodDeclarationParameters;
+import com.yahoo.aptutils.writer.parameters.TypeDeclarationParameters;
+import com.yahoo.javatraits.processor.data.ClassWithTraits;
+import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
+
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Writes the {@link com.yahoo.javatraits.runtime.TraitPool} for a poolable class, which creates new instances with
+ * the class's no-argument constructor
+ */
+public class ClassWithTraitsPoolWriter extends JavaTraitsWriter<ClassWithTraits> {
+
+    private static final DeclaredTypeName TRAIT_POOL = new DeclaredTypeName("com.yahoo.javatraits.runtime.TraitPool");
+    private static final String CAPACITY_PER_STRIPE = "capacityPerStripe";
+
+    private final DeclaredTypeName poolName;
+
+    public ClassWithTraitsPoolWriter(ClassWithTraits cls, TraitProcessorAptUtils utils) {
+        super(cls, utils);
+        this.poolName = cls.getPoolName();
+    }
+
+    @Override
+    protected DeclaredTypeName getClassNameToGenerate() {
+        return poolName;
+    }
+
+    @Override
+    protected void gatherImports(Set<DeclaredTypeName> imports) {
+        imports.add(TRAIT_POOL);
+        imports.add(element.getElementName());
+    }
+
+    @Override
+    protected void writeClassDefinition() throws IOException {
+        DeclaredTypeName superclass = TRAIT_POOL.clone();
+        superclass.setTypeArgs(Collections.singletonList(element.getElementName()));
+        boolean isPublic = element.getSourceElement().getModifiers().contains(Modifier.PUBLIC);
+        TypeDeclarationParameters params = new TypeDeclarationParameters()
+            .setName(poolName)
+            .setKind(Type.CLASS)
+            .setModifiers(isPublic ? new Modifier[] { Modifier.PUBLIC, Modifier.FINAL } : new Modifier[] { Modifier.FINAL })
+            .setSuperclass(superclass);
+
+        writer.beginTypeDefinition(params);
+
+        writer.beginConstructorDeclaration(new MethodDeclarationParameters()
+                .setConstructorName(poolName)
+                .setModifiers(Modifier.PUBLIC))
+            .writeStringStatement("super(DEFAULT_CAPACITY_PER_STRIPE)")
+            .finishMethodDefinition();
+
+        writer.beginConstructorDeclaration(new MethodDeclarationParameters()
+                .setConstructorName(poolName)
+                .setModifiers(Modifier.PUBLIC)
+                .setArgumentTypes(CoreTypes.PRIMITIVE_INT)
+                .setArgumentNames(CAPACITY_PER_STRIPE))
+            .writeStringStatement("super(" + CAPACITY_PER_STRIPE + ")")
+            .finishMethodDefinition();
+
+        writer.writeAnnotation(CoreTypes.OVERRIDE)
+            .beginMethodDefinition(new MethodDeclarationParameters()
+                .setMethodName("create")
+                .setReturnType(element.getElementName())
+                .setModifiers(Modifier.PROTECTED))
+            .writeStatement(Expressions.callConstructor(element.getElementName()).returnExpr())
+            .finishMethodDefinition();
+
+        writer.finishTypeDefinition();
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.yahoo.javatraits.processor.writers;
 
+import com.yahoo.aptutils.model.CoreTypes;
 import com.yahoo.aptutils.model.DeclaredTypeName;
 import com.yahoo.aptutils.model.GenericName;
 import com.yahoo.aptutils.model.MethodSignature;
@@ -26,6 +27,7 @@ import com.yahoo.aptutils.writer.expressions.Expression;
 import com.yahoo.aptutils.writer.expressions.Expressions;
 import com.yahoo.aptutils.writer.parameters.MethodDeclarationParameters;
 import com.yahoo.aptutils.writer.parameters.TypeDeclarationParameters;
+import com.yahoo.javatraits.annotations.ConcurrencyPolicy;
 import com.yahoo.javatraits.processor.data.ClassWithTraits;
 import com.yahoo.javatraits.processor.data.TraitElement;
 import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
@@ -39,11 +41,42 @@ import java.util.*;
 
 public class ClassWithTraitsSuperclassWriter extends JavaTraitsWriter<ClassWithTraits> {
 
+    private static final DeclaredTypeName READ_WRITE_LOCK = new DeclaredTypeName("java.util.concurrent.locks.ReentrantReadWriteLock");
+    private static final DeclaredTypeName STAMPED_LOCK = new DeclaredTypeName("java.util.concurrent.locks.StampedLock");
+    private static final String LOCK_FIELD = "traitLock";
+    private static final DeclaredTypeName POOLABLE = new DeclaredTypeName("com.yahoo.javatraits.runtime.Poolable");
+    private static final String STAMP_VARIABLE = "stamp__";
+    private static final String RESULT_VARIABLE = "result__";
+    private static final String EXCEPTION_VARIABLE = "e__";
+    private static final String INLINED_PREFIX = "inline__";
+
     private List<TraitElement> allTraits;
+    private ConcurrencyPolicy concurrencyPolicy;
+    private List<DeclaredTypeName> permittedSubclasses;
+    private Map<TraitElement, Map<VariableElement, String>> flattenedFields;
+    private Map<ExecutableElement, List<String>> inlinedMethods;
+    private Set<ExecutableElement> optimisticReads;
 
-    public ClassWithTraitsSuperclassWriter(ClassWithTraits cls, TraitProcessorAptUtils utils) {
+    /**
+     * @param permittedSubclasses the classes the generated superclass permits if it is sealed
+     * @param flattenedFields the traits whose fields the generated superclass declares instead of creating their
+     *                        delegates, mapped to the source of each field's initializer. All their concrete methods
+     *                        must be inlined
+     * @param inlinedMethods the body lines of the trait methods to run in the generated superclass instead of
+     *                       forwarding them to their delegate
+     * @param optimisticReads the read-only trait methods to run under an optimistic read first with the
+     *                        STAMPED concurrency policy
+     */
+    public ClassWithTraitsSuperclassWriter(ClassWithTraits cls, List<DeclaredTypeName> permittedSubclasses,
+            Map<TraitElement, Map<VariableElement, String>> flattenedFields, Map<ExecutableElement, List<String>> inlinedMethods,
+            Set<ExecutableElement> optimisticReads, TraitProcessorAptUtils utils) {
         super(cls, utils);
         this.allTraits = cls.getTraitClasses();
+        this.concurrencyPolicy = cls.getConcurrencyPolicy();
+        this.permittedSubclasses = permittedSubclasses;
+        this.flattenedFields = flattenedFields;
+        this.inlinedMethods = inlinedMethods;
+        this.optimisticReads = optimisticReads;
     }
 
     @Override
@@ -55,12 +88,30 @@ public class ClassWithTraitsSuperclassWriter extends JavaTraitsWriter<ClassWithT
     protected void gatherImports(Set<DeclaredTypeName> imports) {
         for (TraitElement elem : allTraits) {
             utils.accumulateImportsFromElements(imports, elem.getDeclaredMethods());
-            imports.add(elem.getDelegateName());
+            if (flattenedFields.containsKey(elem)) {
+                utils.accumulateImportsFromElements(imports, elem.getFields());
+            } else {
+                imports.add(elem.getDelegateName());
+            }
             imports.add(elem.getGeneratedInterfaceName());
             if (elem.getConstants().size() > 0) {
                 imports.add(elem.getElementName());
             }
         }
+        if (concurrencyPolicy != ConcurrencyPolicy.NONE) {
+            imports.add(getLockType());
+        }
+        if (element.isSealed()) {
+            imports.addAll(permittedSubclasses);
+        }
+        if (element.isPoolable()) {
+            imports.add(POOLABLE);
+        }
+        for (TraitElement elem : allTraits) {
+            if (!elem.getAsyncMethods().isEmpty() || !elem.getBatchedMethods().isEmpty()) {
+                imports.add(TraitProcessorAptUtils.COMPLETABLE_FUTURE);
+            }
+        }
         DeclaredTypeName desiredSuperclass = element.getDesiredSuperclass();
         if (!AptUtils.OBJECT_CLASS_NAME.equals(desiredSuperclass.toString())) {
             imports.add(desiredSuperclass);
@@ -111,6 +162,9 @@ public class ClassWithTraitsSuperclassWriter extends JavaTraitsWriter<ClassWithT
                 return arg.getGeneratedInterfaceName();
             }
         });
+        if (element.isPoolable()) {
+            interfaces.add(POOLABLE);
+        }
 
         TypeDeclarationParameters params = new TypeDeclarationParameters()
             .setName(superclassName)
@@ -118,6 +172,16 @@ public class ClassWithTraitsSuperclassWriter extends JavaTraitsWriter<ClassWithT
             .setModifiers(Modifier.ABSTRACT)
             .setSuperclass(element.getDesiredSuperclass())
             .setInterfaces(interfaces);
+        if (element.isSealed()) {
+            params.setPermittedSubclasses(permittedSubclasses);
+        } else {
+            // Subclasses of sealed interfaces must be final, sealed or non-sealed
+            for (TraitElement elem : allTraits) {
+                if (elem != null && elem.isSealed()) {
+                    params.setNonSealed(true);
+                }
+            }
+        }
 
         writer.beginTypeDefinition(params);
 
@@ -161,13 +225,59 @@ public class ClassWithTraitsSuperclassWriter extends JavaTraitsWriter<ClassWithT
 
     private void emitDelegateFields() throws IOException {
         for (TraitElement elem : allTraits) {
+            if (flattenedFields.containsKey(elem)) {
+                emitFlattenedFields(flattenedFields.get(elem));
+                continue;
+            }
             DeclaredTypeName delegateClass = elem.getDelegateName();
             Expression init = Expressions.callConstructor(delegateClass, "this");
             writer.writeFieldDeclaration(delegateClass, getDelegateVariableName(elem), init, Modifier.PRIVATE);
         }
+        emitLockFields();
         writer.writeNewline();
     }
 
+    /**
+     * Declares the fields of a trait whose methods are all inlined, so that its state sits in the instance itself
+     */
+    private void emitFlattenedFields(Map<VariableElement, String> initializers) throws IOException {
+        for (Map.Entry<VariableElement, String> field : initializers.entrySet()) {
+            List<Modifier> modifiers = new ArrayList<Modifier>();
+            modifiers.add(Modifier.PRIVATE);
+            for (Modifier modifier : Arrays.asList(Modifier.FINAL, Modifier.TRANSIENT, Modifier.VOLATILE)) {
+                if (field.getKey().getModifiers().contains(modifier)) {
+                    modifiers.add(modifier);
+                }
+            }
+            writer.writeFieldDeclaration(utils.getTypeNameFromTypeMirror(field.getKey().asType()), field.getKey().getSimpleName().toString(),
+                    field.getValue() != null ? Expressions.fromString(field.getValue()) : null, modifiers);
+        }
+    }
+
+    private void emitLockFields() throws IOException {
+        if (concurrencyPolicy == ConcurrencyPolicy.STRIPED) {
+            for (TraitElement elem : allTraits) {
+                writer.writeFieldDeclaration(READ_WRITE_LOCK, getLockVariableName(elem), Expressions.callConstructor(READ_WRITE_LOCK),
+                        Modifier.PRIVATE, Modifier.FINAL);
+            }
+        } else if (concurrencyPolicy != ConcurrencyPolicy.NONE) {
+            DeclaredTypeName lockType = getLockType();
+            writer.writeFieldDeclaration(lockType, LOCK_FIELD, Expressions.callConstructor(lockType), Modifier.PRIVATE, Modifier.FINAL);
+        }
+    }
+
+    private DeclaredTypeName getLockType() {
+        return concurrencyPolicy == ConcurrencyPolicy.STAMPED ? STAMPED_LOCK : READ_WRITE_LOCK;
+    }
+
+    private String getLockVariableName(TraitElement elem) {
+        if (concurrencyPolicy != ConcurrencyPolicy.STRIPED) {
+            return LOCK_FIELD;
+        }
+        String base = elem.getSimpleName();
+        return base.substring(0, 1).toLowerCase() + base.substring(1) + "Lock";
+    }
+
     private String getDelegateVariableName(TraitElement elem) {
         String base = elem.getDelegateName().getSimpleName();
         return base.substring(0, 1).toLowerCase() + base.substring(1);
@@ -185,7 +295,119 @@ public class ClassWithTraitsSuperclassWriter extends JavaTraitsWriter<ClassWithT
 
         for (List<Pair<TraitElement, ExecutableElement>> executablePairList : methodToExecElements.values()) {
             Pair<TraitElement, ExecutableElement> executablePair = executablePairList.get(0);
+            if (element.isPoolable() && executablePair.getRight() == executablePair.getLeft().getResetMethod()) {
+                if (inlinedMethods.containsKey(executablePair.getRight())) {
+                    emitInlinedMethod(executablePair.getLeft(), executablePair.getRight());
+                }
+                continue; // Calls the reset() methods of all traits
+            }
             emitMethodDefinition(executablePair.getLeft(), executablePair.getRight());
+            if (inlinedMethods.containsKey(executablePair.getRight())) {
+                emitInlinedMethod(executablePair.getLeft(), executablePair.getRight());
+            }
+            if (executablePair.getLeft().getFixedArityMethods().contains(executablePair.getRight())) {
+                emitFixedArityMethods(executablePair.getLeft(), executablePair.getRight());
+            }
+        }
+
+        emitInvalidateMethods();
+        emitAsyncMethods();
+        emitBatchedMethods();
+        if (element.isPoolable()) {
+            emitResetMethod();
+        }
+    }
+
+    private void emitResetMethod() throws IOException {
+        MethodDeclarationParameters params = new MethodDeclarationParameters()
+            .setMethodName(TraitElement.RESET_METHOD)
+            .setModifiers(Modifier.PUBLIC);
+        writer.writeAnnotation(CoreTypes.OVERRIDE)
+            .beginMethodDefinition(params);
+        for (TraitElement elem : allTraits) {
+            String delegateVariableName = getDelegateVariableName(elem);
+            if (elem.getResetMethod() != null && inlinedMethods.containsKey(elem.getResetMethod())) {
+                writer.writeStatement(Expressions.callMethod(INLINED_PREFIX + TraitElement.RESET_METHOD));
+            } else if (elem.getResetMethod() != null) {
+                writer.writeStatement(Expressions.callMethodOn(delegateVariableName, "default__" + TraitElement.RESET_METHOD));
+            }
+            for (ExecutableElement exec : elem.getMemoizedMethods()) {
+                writer.writeStatement(Expressions.callMethodOn(delegateVariableName, "invalidate__" + exec.getSimpleName()));
+            }
+        }
+        writer.finishMethodDefinition();
+    }
+
+    private void emitInlinedMethod(TraitElement elem, ExecutableElement exec) throws IOException {
+        writer.beginMethodDefinition(utils.methodDeclarationParamsFromExecutableElement(exec,
+                INLINED_PREFIX + exec.getSimpleName(), elem.getSimpleName(), Modifier.PRIVATE));
+        for (String line : inlinedMethods.get(exec)) {
+            if (line.length() > 0) {
+                writer.writeString(line);
+            }
+            writer.writeNewline();
+        }
+        writer.finishMethodDefinition();
+    }
+
+    private void emitBatchedMethods() throws IOException {
+        Set<MethodSignature> emitted = new HashSet<MethodSignature>();
+        for (TraitElement elem : allTraits) {
+            for (ExecutableElement exec : elem.getBatchedMethods()) {
+                if (emitted.add(utils.executableElementToMethodSignature(exec, elem.getSimpleName()))) {
+                    MethodDeclarationParameters params = utils.batchedMethodDeclarationParams(elem, exec, null, Modifier.PUBLIC);
+                    writer.beginMethodDefinition(params)
+                        .writeStatement(Expressions.callMethodOn(getDelegateVariableName(elem),
+                                TraitDelegateWriter.BATCHED_PREFIX + exec.getSimpleName(), params.getArgumentNames()).returnExpr())
+                        .finishMethodDefinition();
+                }
+            }
+        }
+    }
+
+    private void emitAsyncMethods() throws IOException {
+        Set<MethodSignature> emitted = new HashSet<MethodSignature>();
+        for (TraitElement elem : allTraits) {
+            for (ExecutableElement exec : elem.getAsyncMethods()) {
+                if (emitted.add(utils.executableElementToMethodSignature(exec, elem.getSimpleName()))) {
+                    emitAsyncMethod(elem, exec);
+                }
+            }
+        }
+    }
+
+    private void emitAsyncMethod(TraitElement elem, ExecutableElement exec) throws IOException {
+        MethodDeclarationParameters params = utils.asyncMethodDeclarationParams(elem, exec, null, Modifier.PUBLIC);
+        writer.beginMethodDefinition(params)
+            .writeStatement(Expressions.callMethodOn(getDelegateVariableName(elem),
+                    TraitDelegateWriter.ASYNC_PREFIX + exec.getSimpleName(), params.getArgumentNames()).returnExpr())
+            .finishMethodDefinition();
+    }
+
+    private void emitInvalidateMethods() throws IOException {
+        Map<String, List<Pair<TraitElement, ExecutableElement>>> invalidateMethods = new LinkedHashMap<String, List<Pair<TraitElement, ExecutableElement>>>();
+        for (TraitElement elem : allTraits) {
+            for (ExecutableElement exec : elem.getMemoizedMethods()) {
+                String name = TraitElement.getInvalidateMethodName(exec);
+                List<Pair<TraitElement, ExecutableElement>> targets = invalidateMethods.get(name);
+                if (targets == null) {
+                    targets = new ArrayList<Pair<TraitElement, ExecutableElement>>();
+                    invalidateMethods.put(name, targets);
+                }
+                targets.add(Pair.create(elem, exec));
+            }
+        }
+
+        for (Map.Entry<String, List<Pair<TraitElement, ExecutableElement>>> entry : invalidateMethods.entrySet()) {
+            MethodDeclarationParameters params = new MethodDeclarationParameters()
+                .setMethodName(entry.getKey())
+                .setModifiers(Modifier.PUBLIC);
+            writer.beginMethodDefinition(params);
+            for (Pair<TraitElement, ExecutableElement> target : entry.getValue()) { // Same name in several traits invalidates all of them
+                writer.writeStatement(Expressions.callMethodOn(getDelegateVariableName(target.getLeft()),
+                        "invalidate__" + target.getRight().getSimpleName()));
+            }
+            writer.finishMethodDefinition();
         }
     }
 
@@ -232,6 +454,21 @@ public class ClassWithTraitsSuperclassWriter extends JavaTraitsWriter<ClassWithT
         }
     }
     
+    private void emitFixedArityMethods(TraitElement elem, ExecutableElement exec) throws IOException {
+        for (int arity : elem.getFixedArities(exec)) {
+            Set<Modifier> modifiers = EnumSet.noneOf(Modifier.class);
+            modifiers.addAll(exec.getModifiers());
+            if (element.useFinalForwarders()
+                    && !element.declaresMethodMatching(exec.getSimpleName().toString(), exec.getParameters().size() - 1 + arity)) {
+                modifiers.add(Modifier.FINAL);
+            }
+            MethodDeclarationParameters methodDeclaration = utils.fixedArityMethodDeclarationParams(elem, exec, arity, null,
+                    modifiers.toArray(new Modifier[modifiers.size()]));
+            writer.beginMethodDefinition(methodDeclaration);
+            emitMethodBody(elem, exec, methodDeclaration);
+        }
+    }
+
     private void emitMethodDefinition(TraitElement elem, ExecutableElement exec) throws IOException {
         if (utils.isGetThis(elem, exec)) {
             return;
@@ -239,22 +476,96 @@ public class ClassWithTraitsSuperclassWriter extends JavaTraitsWriter<ClassWithT
 
         Set<Modifier> modifiers = exec.getModifiers();
         boolean isAbstract = modifiers.contains(Modifier.ABSTRACT);
+        if (!isAbstract && element.useFinalForwarders() && !element.declaresMethodMatching(exec)) {
+            Set<Modifier> finalModifiers = EnumSet.noneOf(Modifier.class);
+            finalModifiers.addAll(modifiers);
+            finalModifiers.add(Modifier.FINAL);
+            modifiers = finalModifiers;
+        }
         MethodDeclarationParameters methodDeclaration = utils.methodDeclarationParamsFromExecutableElement(exec, null, elem.getSimpleName(), modifiers.toArray(new Modifier[modifiers.size()]));
         writer.beginMethodDefinition(methodDeclaration);
         
         if (!isAbstract) {
-            emitMethodBody(elem, exec, methodDeclaration.getArgumentNames());
+            emitMethodBody(elem, exec, methodDeclaration);
         }
     }
     
-    private void emitMethodBody(TraitElement elem, ExecutableElement exec, List<?> arguments) throws IOException {
-        String delegateVariableName = getDelegateVariableName(elem);
-        
-        Expression body = Expressions.callMethodOn(delegateVariableName, "default__" + exec.getSimpleName(), arguments);
+    private void emitMethodBody(TraitElement elem, ExecutableElement exec, MethodDeclarationParameters methodDeclaration) throws IOException {
+        Expression call;
+        if (inlinedMethods.containsKey(exec)) { // Hot method, runs the trait code on this instead of the delegate
+            call = Expressions.callMethod(INLINED_PREFIX + exec.getSimpleName(), methodDeclaration.getArgumentNames());
+        } else {
+            call = Expressions.callMethodOn(getDelegateVariableName(elem), "default__" + exec.getSimpleName(),
+                    methodDeclaration.getArgumentNames());
+        }
+        Expression body = call;
         if (exec.getReturnType().getKind() != TypeKind.VOID) {
             body = body.returnExpr();
         }
-        writer.writeStatement(body)
-            .finishMethodDefinition();
+        if (concurrencyPolicy == ConcurrencyPolicy.NONE) {
+            writer.writeStatement(body);
+        } else if (concurrencyPolicy == ConcurrencyPolicy.STAMPED) {
+            emitStampedLockBody(elem.isReadOnly(exec), optimisticReads.contains(exec), exec, methodDeclaration, call, body);
+        } else {
+            emitReadWriteLockBody(getLockVariableName(elem), elem.isReadOnly(exec), body);
+        }
+        writer.finishMethodDefinition();
+    }
+
+    private void emitReadWriteLockBody(String lockName, boolean readOnly, Expression body) throws IOException {
+        Expression lock = Expressions.callMethodOn(lockName, readOnly ? "readLock" : "writeLock");
+        writer.writeStatement(Expressions.callMethodOn(lock, "lock"))
+            .beginControlFlow("try")
+            .writeStatement(body)
+            .nextControlFlow("finally")
+            .writeStatement(Expressions.callMethodOn(lock, "unlock"))
+            .endControlFlow();
+    }
+
+    private void emitStampedLockBody(boolean readOnly, boolean optimistic, ExecutableElement exec,
+            MethodDeclarationParameters methodDeclaration, Expression call, Expression body) throws IOException {
+        if (!readOnly) {
+            writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_LONG, STAMP_VARIABLE, Expressions.callMethodOn(LOCK_FIELD, "writeLock"))
+                .beginControlFlow("try")
+                .writeStatement(body)
+                .nextControlFlow("finally")
+                .writeStatement(Expressions.callMethodOn(LOCK_FIELD, "unlockWrite", STAMP_VARIABLE))
+                .endControlFlow();
+            return;
+        } else if (!optimistic) {
+            writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_LONG, STAMP_VARIABLE, Expressions.callMethodOn(LOCK_FIELD, "readLock"))
+                .beginControlFlow("try")
+                .writeStatement(body)
+                .nextControlFlow("finally")
+                .writeStatement(Expressions.callMethodOn(LOCK_FIELD, "unlockRead", STAMP_VARIABLE))
+                .endControlFlow();
+            return;
+        }
+
+        boolean returnsValue = exec.getReturnType().getKind() != TypeKind.VOID;
+        String validate = LOCK_FIELD + ".validate(" + STAMP_VARIABLE + ")";
+        writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_LONG, STAMP_VARIABLE, Expressions.callMethodOn(LOCK_FIELD, "tryOptimisticRead"))
+            .beginControlFlow("if (" + STAMP_VARIABLE + " != 0L)")
+            .beginControlFlow("try");
+        if (returnsValue) {
+            writer.writeFieldDeclaration(methodDeclaration.getReturnType(), RESULT_VARIABLE, call);
+        } else {
+            writer.writeStatement(call);
+        }
+        writer.beginControlFlow("if (" + validate + ")")
+            .writeStringStatement(returnsValue ? "return " + RESULT_VARIABLE : "return")
+            .endControlFlow()
+            .nextControlFlow("catch (RuntimeException " + EXCEPTION_VARIABLE + ")") // Possibly caused by reading inconsistent state
+            .beginControlFlow("if (" + validate + ")")
+            .writeStringStatement("throw " + EXCEPTION_VARIABLE)
+            .endControlFlow()
+            .endControlFlow()
+            .endControlFlow()
+            .writeStatement(Expressions.assign(Expressions.reference(STAMP_VARIABLE), Expressions.callMethodOn(LOCK_FIELD, "readLock")))
+            .beginControlFlow("try")
+            .writeStatement(body)
+            .nextControlFlow("finally")
+            .writeStatement(Expressions.callMethodOn(LOCK_FIELD, "unlockRead", STAMP_VARIABLE))
+            .endControlFlow();
     }
 }
@@ -39,7 +39,10 @@ public abstract class JavaTraitsWriter<T extends TypeElementWrapper> {
         this.utils = utils;
     }
 
-    public void writeClass(Filer filer) {
+    /**
+     * @return the name of the generated class, or null if it could not be written
+     */
+    public DeclaredTypeName writeClass(Filer filer) {
         try {
             if (writer != null) {
                 throw new IllegalStateException("Already created source file for " + getClassNameToGenerate());
@@ -48,11 +51,13 @@ public abstract class JavaTraitsWriter<T extends TypeElementWrapper> {
             writer = new JavaFileWriter(jfo.openWriter());
             writeFile();
             writer.close();
+            return getClassNameToGenerate();
         } catch (FilerException e) {
             utils.getMessager().printMessage(Kind.ERROR, "FilerException creating file " + getClassNameToGenerate() + ": " + e.getMessage(), element.getSourceElement());
         } catch (IOException e) {
             utils.getMessager().printMessage(Kind.ERROR, "IOException writing file " + getClassNameToGenerate() + ": " + e.getMessage(), element.getSourceElement());
         }
+        return null;
     }
 
     protected abstract DeclaredTypeName getClassNameToGenerate();
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.writers;
+
+import com.yahoo.aptutils.model.CoreTypes;
+import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.aptutils.model.GenericName;
+import com.yahoo.aptutils.model.TypeName;
+import com.yahoo.aptutils.writer.JavaFileWriter.Type;
+import com.yahoo.aptutils.writer.expressions.Expression;
+import com.yahoo.aptutils.writer.expressions.Expressions;
+import com.yahoo.aptutils.writer.parameters.MethodDeclarationParameters;
+import com.yahoo.aptutils.writer.parameters.TypeDeclarationParameters;
+import com.yahoo.javatraits.processor.data.TraitElement;
+import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the class of static bulk operations for a trait annotated with {@literal @}BulkOperations.
+ * Each operation first groups the indexes of its input by class with a counting sort over the known host
+ * classes, and then runs one loop per host class through a cast to that class, so that the call site in each
+ * loop stays monomorphic. Elements of other classes are split into runs of the same class and called through
+ * the trait interface.
+ */
+public class TraitBulkOperationsWriter extends JavaTraitsWriter<TraitElement> {
+
+    private static final DeclaredTypeName COLLECTION = new DeclaredTypeName("java.util.Collection");
+    private static final String INPUT = "in";
+    private static final String OUTPUT = "out";
+    private static final String OFFSETS = "offsets";
+    private static final String INDEXES = "indexes";
+    private static final String CLASSES = "classes";
+    private static final String NEXT = "next";
+    private static final String GROUP_BY_CLASS = "groupByClass__";
+    private static final DeclaredTypeName INT_ARRAY = CoreTypes.PRIMITIVE_INT.clone();
+
+    static {
+        INT_ARRAY.setArrayDepth(1);
+    }
+
+    private final List<DeclaredTypeName> hostClasses;
+    private final DeclaredTypeName interfaceName;
+
+    public TraitBulkOperationsWriter(TraitElement traitElement, List<DeclaredTypeName> hostClasses, TraitProcessorAptUtils utils) {
+        super(traitElement, utils);
+        this.hostClasses = hostClasses;
+        this.interfaceName = traitElement.getGeneratedInterfaceName();
+    }
+
+    @Override
+    protected DeclaredTypeName getClassNameToGenerate() {
+        return element.getBulkOperationsName();
+    }
+
+    @Override
+    protected void gatherImports(Set<DeclaredTypeName> imports) {
+        utils.accumulateImportsFromElements(imports, element.getBulkOperationMethods());
+        imports.add(interfaceName);
+        imports.add(COLLECTION);
+        imports.addAll(hostClasses);
+    }
+
+    @Override
+    protected void writeClassDefinition() throws IOException {
+        TypeDeclarationParameters params = new TypeDeclarationParameters()
+            .setName(element.getBulkOperationsName())
+            .setKind(Type.CLASS)
+            .setModifiers(Modifier.PUBLIC, Modifier.FINAL);
+
+        writer.beginTypeDefinition(params);
+        writer.beginConstructorDeclaration(new MethodDeclarationParameters()
+                .setConstructorName(element.getBulkOperationsName())
+                .setModifiers(Modifier.PRIVATE))
+            .finishMethodDefinition();
+
+        emitGroupByClass();
+        for (ExecutableElement exec : element.getBulkOperationMethods()) {
+            if (!utils.isGetThis(element, exec)) {
+                emitArrayOperation(exec);
+                emitCollectionOperation(exec);
+            }
+        }
+        writer.finishTypeDefinition();
+    }
+
+    private TypeName getOutputType(ExecutableElement exec) {
+        TypeName outputType = utils.getTypeNameFromTypeMirror(exec.getReturnType(), element.getSimpleName()).clone();
+        outputType.setArrayDepth(outputType.getArrayDepth() + 1);
+        return outputType;
+    }
+
+    private DeclaredTypeName getInputArrayType() {
+        DeclaredTypeName inputType = interfaceName.clone();
+        inputType.setArrayDepth(1);
+        return inputType;
+    }
+
+    /**
+     * Emits the helper sorting the indexes of the input elements by class with a counting sort. Elements of the known
+     * host classes come first, one group per class in the order of {@link #hostClasses}, followed by the elements of
+     * any other class in input order. The offsets array, of length number of host classes + 2, receives the start of
+     * each group and ends with the input length.
+     */
+    private void emitGroupByClass() throws IOException {
+        MethodDeclarationParameters params = new MethodDeclarationParameters()
+            .setMethodName(GROUP_BY_CLASS)
+            .setModifiers(Modifier.PRIVATE, Modifier.STATIC)
+            .setReturnType(INT_ARRAY)
+            .setArgumentTypes(getInputArrayType(), INT_ARRAY)
+            .setArgumentNames(INPUT, OFFSETS);
+
+        writer.beginMethodDefinition(params)
+            .writeFieldDeclaration(INT_ARRAY, CLASSES, Expressions.fromString("new int[" + INPUT + ".length]"))
+            .beginControlFlow("for (int i = 0; i < " + INPUT + ".length; i++)");
+        Expression classOfElement = Expressions.fromString(CLASSES + "[i]");
+        if (hostClasses.isEmpty()) {
+            writer.writeStatement(Expressions.assign(classOfElement, Expressions.fromString("0")));
+        } else {
+            writer.writeStringStatement("Class<?> cls = " + INPUT + "[i].getClass()");
+            for (int c = 0; c < hostClasses.size(); c++) {
+                String condition = "if (cls == " + writer.shortenName(hostClasses.get(c), false) + ".class)";
+                if (c == 0) {
+                    writer.beginControlFlow(condition);
+                } else {
+                    writer.nextControlFlow("else " + condition);
+                }
+                writer.writeStatement(Expressions.assign(classOfElement, Expressions.fromString(Integer.toString(c))));
+            }
+            writer.nextControlFlow("else")
+                .writeStatement(Expressions.assign(classOfElement, Expressions.fromString(Integer.toString(hostClasses.size()))))
+                .endControlFlow();
+        }
+        writer.writeStringStatement(OFFSETS + "[" + CLASSES + "[i] + 1]++")
+            .endControlFlow()
+            .beginControlFlow("for (int c = 1; c < " + OFFSETS + ".length; c++)")
+            .writeStringStatement(OFFSETS + "[c] += " + OFFSETS + "[c - 1]")
+            .endControlFlow()
+            .writeFieldDeclaration(INT_ARRAY, NEXT, Expressions.callMethodOn(OFFSETS, "clone"))
+            .writeFieldDeclaration(INT_ARRAY, INDEXES, Expressions.fromString("new int[" + INPUT + ".length]"))
+            .beginControlFlow("for (int i = 0; i < " + INPUT + ".length; i++)")
+            .writeStringStatement(INDEXES + "[" + NEXT + "[" + CLASSES + "[i]]++] = i")
+            .endControlFlow()
+            .writeStatement(Expressions.reference(INDEXES).returnExpr())
+            .finishMethodDefinition();
+    }
+
+    private void emitArrayOperation(ExecutableElement exec) throws IOException {
+        MethodDeclarationParameters params = new MethodDeclarationParameters()
+            .setMethodName(TraitElement.getBulkOperationMethodName(exec))
+            .setModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .setArgumentTypes(getInputArrayType(), getOutputType(exec))
+            .setArgumentNames(INPUT, OUTPUT);
+
+        String methodName = exec.getSimpleName().toString();
+        writer.beginMethodDefinition(params)
+            .beginControlFlow("if (" + OUTPUT + ".length < " + INPUT + ".length)")
+            .writeStringStatement("throw new IllegalArgumentException(\"Output array is shorter than the input\")")
+            .endControlFlow()
+            .writeFieldDeclaration(INT_ARRAY, OFFSETS, Expressions.arrayAllocation(CoreTypes.PRIMITIVE_INT, 1, hostClasses.size() + 2))
+            .writeFieldDeclaration(INT_ARRAY, INDEXES, Expressions.callMethod(GROUP_BY_CLASS, INPUT, OFFSETS));
+
+        // One monomorphic loop per known host class
+        for (int c = 0; c < hostClasses.size(); c++) {
+            writer.beginControlFlow("for (int j = " + OFFSETS + "[" + c + "]; j < " + OFFSETS + "[" + (c + 1) + "]; j++)");
+            Expression element = Expressions.fromString("((" + writer.shortenName(hostClasses.get(c), false) + ") " + INPUT + "[i])");
+            emitElementCall(Expressions.callMethodOn(element, methodName));
+            writer.endControlFlow();
+        }
+
+        // Elements of other classes, split into runs of the same class
+        writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_INT, "start", Expressions.fromString(OFFSETS + "[" + hostClasses.size() + "]"))
+            .beginControlFlow("while (start < " + INPUT + ".length)")
+            .writeStringStatement("Class<?> cls = " + INPUT + "[" + INDEXES + "[start]].getClass()")
+            .writeStringStatement("int end = start + 1")
+            .beginControlFlow("while (end < " + INPUT + ".length && " + INPUT + "[" + INDEXES + "[end]].getClass() == cls)")
+            .writeStringStatement("end++")
+            .endControlFlow()
+            .beginControlFlow("for (int j = start; j < end; j++)");
+        emitElementCall(Expressions.callMethodOn(INPUT + "[i]", methodName));
+        writer.endControlFlow()
+            .writeStatement(Expressions.assign(Expressions.reference("start"), Expressions.reference("end")))
+            .endControlFlow()
+            .finishMethodDefinition();
+    }
+
+    private void emitElementCall(Expression invocation) throws IOException {
+        writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_INT, "i", Expressions.fromString(INDEXES + "[j]"))
+            .writeStatement(Expressions.assign(Expressions.fromString(OUTPUT + "[i]"), invocation));
+    }
+
+    private void emitCollectionOperation(ExecutableElement exec) throws IOException {
+        DeclaredTypeName inputType = COLLECTION.clone();
+        List<TypeName> bound = new ArrayList<TypeName>();
+        bound.add(interfaceName);
+        inputType.setTypeArgs(Collections.singletonList(new GenericName(GenericName.WILDCARD_CHAR, bound, null)));
+        String name = TraitElement.getBulkOperationMethodName(exec);
+        MethodDeclarationParameters params = new MethodDeclarationParameters()
+            .setMethodName(name)
+            .setModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .setArgumentTypes(inputType, getOutputType(exec))
+            .setArgumentNames(INPUT, OUTPUT);
+
+        writer.beginMethodDefinition(params)
+            .writeStringStatement(name + "(" + INPUT + ".toArray(new " + writer.shortenName(interfaceName, false) + "[0]), " + OUTPUT + ")")
+            .finishMethodDefinition();
+    }
+}
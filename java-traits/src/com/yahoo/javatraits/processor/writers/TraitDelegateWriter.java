@@ -15,6 +15,7 @@
  */
 package com.yahoo.javatraits.processor.writers;
 
+import com.yahoo.aptutils.model.CoreTypes;
 import com.yahoo.aptutils.model.DeclaredTypeName;
 import com.yahoo.aptutils.model.TypeName;
 import com.yahoo.aptutils.utils.AptUtils;
@@ -25,17 +26,45 @@ import com.yahoo.aptutils.writer.parameters.MethodDeclarationParameters;
 import com.yahoo.aptutils.writer.parameters.TypeDeclarationParameters;
 import com.yahoo.javatraits.processor.data.TraitElement;
 import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
+import com.yahoo.javatraits.runtime.ResultCache;
 
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.type.TypeKind;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class TraitDelegateWriter extends JavaTraitsWriter<TraitElement> {
 
+    private static final DeclaredTypeName TRAIT_METRICS = new DeclaredTypeName("com.yahoo.javatraits.runtime.TraitMetrics");
+    private static final DeclaredTypeName TRAIT_METHOD_COUNTERS = new DeclaredTypeName("com.yahoo.javatraits.runtime.TraitMethodCounters");
+    private static final String METRICS_ENABLED = "METRICS_ENABLED";
+    private static final String METRICS_FIELD = "traitMetrics";
+    private static final String METRICS_COUNTERS = "METRICS_COUNTERS";
+    private static final DeclaredTypeName CLASS_VALUE = new DeclaredTypeName("java.lang.ClassValue");
+    private static final String EVENT_VARIABLE = "event__";
+    private static final DeclaredTypeName MEMOIZED_VALUE = new DeclaredTypeName("com.yahoo.javatraits.runtime.MemoizedValue");
+    private static final String MEMO_PREFIX = "memo__";
+    private static final String COMPUTE_PREFIX = "compute__";
+    private static final String INVALIDATE_PREFIX = "invalidate__";
+    private static final String STATE_VARIABLE = "state__";
+    private static final DeclaredTypeName RESULT_CACHE = new DeclaredTypeName("com.yahoo.javatraits.runtime.ResultCache");
+    private static final DeclaredTypeName CACHED = new DeclaredTypeName("com.yahoo.javatraits.annotations.Cached");
+    private static final String CACHE_PREFIX = "CACHE__";
+    private static final String KEY_VARIABLE = "key__";
+    private static final String CACHED_VARIABLE = "cached__";
+    private static final int LONG_KEY_BITS = 64;
+    private static final DeclaredTypeName BATCH_DISPATCHER = new DeclaredTypeName("com.yahoo.javatraits.runtime.BatchDispatcher");
+    private static final String BATCHER_PREFIX = "batcher__";
+    static final String BATCHED_PREFIX = "batched__";
+    private static final DeclaredTypeName TRAIT_EXECUTORS = new DeclaredTypeName("com.yahoo.javatraits.runtime.TraitExecutors");
+    static final String ASYNC_PREFIX = "async__";
+
     private DeclaredTypeName traitDelegateClass;
     private DeclaredTypeName delegateInterface;
 
@@ -56,6 +85,28 @@ public class TraitDelegateWriter extends JavaTraitsWriter<TraitElement> {
         for (int i = 0; i < element.getNumSuperinterfaces(); i++) {
             utils.accumulateImportsFromElements(imports, element.getExecutableElementsForInterface(i));
         }
+        if (!element.getInstrumentedMethods().isEmpty()) {
+            imports.add(TRAIT_METRICS);
+            imports.add(TRAIT_METHOD_COUNTERS);
+        }
+        if (element.getEventName() != null) {
+            imports.add(element.getEventName());
+        }
+        if (!element.getMemoizedMethods().isEmpty()) {
+            imports.add(MEMOIZED_VALUE);
+        }
+        if (!element.getCachedMethods().isEmpty()) {
+            imports.add(RESULT_CACHE);
+            imports.add(CACHED);
+        }
+        if (!element.getBatchedMethods().isEmpty()) {
+            imports.add(BATCH_DISPATCHER);
+            imports.add(TraitProcessorAptUtils.COMPLETABLE_FUTURE);
+        }
+        if (!element.getAsyncMethods().isEmpty()) {
+            imports.add(TRAIT_EXECUTORS);
+            imports.add(TraitProcessorAptUtils.COMPLETABLE_FUTURE);
+        }
     }
 
     protected void writeClassDefinition() throws IOException {
@@ -71,9 +122,17 @@ public class TraitDelegateWriter extends JavaTraitsWriter<TraitElement> {
         writer.registerOtherKnownNames(delegateInterface, element.getElementName());
         writer.beginTypeDefinition(params);
 
+        emitMetricsFields();
+        emitCacheFields();
+        emitMemoFields();
         emitDelegateInstance();
+        emitBatcherFields();
         emitConstructor();
         emitDefaultMethodImplementations();
+        emitFixedArityMethods();
+        emitInvalidateMethods();
+        emitBatchedMethods();
+        emitAsyncMethods();
         emitDelegateMethodImplementations();
 
         writer.finishTypeDefinition();
@@ -83,6 +142,76 @@ public class TraitDelegateWriter extends JavaTraitsWriter<TraitElement> {
         writer.writeFieldDeclaration(delegateInterface, "delegate", null, Modifier.PRIVATE);
     }
 
+    private void emitMetricsFields() throws IOException {
+        List<ExecutableElement> instrumentedMethods = element.getInstrumentedMethods();
+        if (!instrumentedMethods.isEmpty()) {
+            writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_BOOLEAN, METRICS_ENABLED,
+                    Expressions.staticMethod(TRAIT_METRICS, "isEnabled"), Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+            // Counters are registered once per class with traits, so creating instances only costs a ClassValue lookup
+            List<Object> arguments = new ArrayList<Object>();
+            arguments.add(Expressions.classObject(element.getElementName()));
+            for (ExecutableElement exec : instrumentedMethods) {
+                arguments.add("\"" + utils.getErasedSignature(exec) + "\"");
+            }
+            DeclaredTypeName countersType = CLASS_VALUE.clone();
+            countersType.setTypeArgs(Collections.singletonList(TRAIT_METHOD_COUNTERS));
+            writer.writeFieldDeclaration(countersType, METRICS_COUNTERS, Expressions.staticMethod(TRAIT_METRICS, "countersFor", arguments),
+                    Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+            writer.writeFieldDeclaration(TRAIT_METHOD_COUNTERS, METRICS_FIELD, null, Modifier.PRIVATE);
+        }
+    }
+
+    private void emitCacheFields() throws IOException {
+        for (ExecutableElement exec : element.getCachedMethods()) {
+            DeclaredTypeName cacheType = RESULT_CACHE.clone();
+            cacheType.setTypeArgs(Collections.singletonList(utils.getBoxedTypeName(exec.getReturnType(), element.getSimpleName())));
+            Expression init = Expressions.staticMethod(RESULT_CACHE, "create", Expressions.classObject(element.getElementName()),
+                    "\"" + utils.getErasedSignature(exec) + "\"", element.getCacheMaxSize(exec),
+                    Expressions.fromString(writer.shortenName(CACHED, false) + ".Eviction." + element.getCacheEviction(exec)));
+            writer.writeFieldDeclaration(cacheType, getCacheFieldName(exec), init, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL);
+        }
+    }
+
+    private String getCacheFieldName(ExecutableElement exec) {
+        String name = exec.getSimpleName().toString();
+        for (ExecutableElement other : element.getCachedMethods()) {
+            if (other != exec && other.getSimpleName().contentEquals(name)) { // Overloaded
+                return CACHE_PREFIX + name + "_" + element.getDeclaredMethods().indexOf(exec);
+            }
+        }
+        return CACHE_PREFIX + name;
+    }
+
+    private void emitMemoFields() throws IOException {
+        for (ExecutableElement exec : element.getMemoizedMethods()) {
+            DeclaredTypeName memoType = getMemoType(exec);
+            writer.writeFieldDeclaration(memoType, MEMO_PREFIX + exec.getSimpleName(), Expressions.callConstructor(memoType),
+                    Modifier.PRIVATE, Modifier.FINAL);
+        }
+    }
+
+    private void emitBatcherFields() throws IOException {
+        for (ExecutableElement exec : element.getBatchedMethods()) {
+            DeclaredTypeName batcherType = BATCH_DISPATCHER.clone();
+            batcherType.setTypeArgs(Arrays.asList(
+                    utils.getBoxedTypeName(exec.getParameters().get(0).asType(), element.getSimpleName()),
+                    utils.getBoxedTypeName(exec.getReturnType(), element.getSimpleName())));
+            // The bulk method is called through the delegate so that abstract bulk methods reach the host class
+            Expression loader = Expressions.fromString("keys -> delegate." + element.getBulkMethod(exec).getSimpleName() + "(keys)");
+            writer.writeFieldDeclaration(batcherType, BATCHER_PREFIX + exec.getSimpleName(),
+                    Expressions.callConstructor(batcherType, loader, element.getBatchMaxSize(exec),
+                            Expressions.fromString(element.getBatchWindowMillis(exec) + "L"),
+                            "\"" + element.getBatchExecutorName(exec) + "\""),
+                    Modifier.PRIVATE, Modifier.FINAL);
+        }
+    }
+
+    private DeclaredTypeName getMemoType(ExecutableElement exec) {
+        DeclaredTypeName memoType = MEMOIZED_VALUE.clone();
+        memoType.setTypeArgs(Collections.singletonList(utils.getBoxedTypeName(exec.getReturnType(), element.getSimpleName())));
+        return memoType;
+    }
+
     private void emitConstructor() throws IOException {
         MethodDeclarationParameters params = new MethodDeclarationParameters()
             .setConstructorName(traitDelegateClass)
@@ -92,17 +221,211 @@ public class TraitDelegateWriter extends JavaTraitsWriter<TraitElement> {
 
         writer.beginConstructorDeclaration(params)
             .writeStringStatement("super()")
-            .writeStatement(Expressions.assign(Expressions.reference("this", "delegate"), Expressions.reference("delegate")))
-            .finishMethodDefinition();
+            .writeStatement(Expressions.assign(Expressions.reference("this", "delegate"), Expressions.reference("delegate")));
+        emitMetricsInitialization();
+        writer.finishMethodDefinition();
+    }
+
+    private void emitMetricsInitialization() throws IOException {
+        if (!element.getInstrumentedMethods().isEmpty()) {
+            writer.beginControlFlow("if (" + METRICS_ENABLED + ")")
+                .writeStatement(Expressions.assign(Expressions.reference("this", METRICS_FIELD),
+                        Expressions.callMethodOn(METRICS_COUNTERS, "get", Expressions.callMethodOn("delegate", "getClass"))))
+                .endControlFlow();
+        }
     }
 
     private void emitDefaultMethodImplementations() throws IOException {
         List<? extends ExecutableElement> allMethods = element.getDeclaredMethods();
         for (ExecutableElement exec : allMethods) {
             if (!exec.getModifiers().contains(Modifier.ABSTRACT)) {
-                emitMethodDeclaration(exec, null, true, Modifier.PUBLIC, Modifier.FINAL);
+                if (element.getMemoizedMethods().contains(exec)) {
+                    emitMemoizedMethod(exec);
+                    emitMethodDeclaration(exec, COMPUTE_PREFIX + exec.getSimpleName(), null, true, Modifier.PRIVATE);
+                } else if (element.getCachedMethods().contains(exec)) {
+                    emitCachedMethod(exec);
+                    emitMethodDeclaration(exec, COMPUTE_PREFIX + exec.getSimpleName(), null, true, Modifier.PRIVATE);
+                } else {
+                    emitMethodDeclaration(exec, null, true, Modifier.PUBLIC, Modifier.FINAL);
+                }
+            }
+        }
+    }
+
+    private void emitFixedArityMethods() throws IOException {
+        for (ExecutableElement exec : element.getFixedArityMethods()) {
+            String name = "default__" + exec.getSimpleName();
+            String arrayType = writer.shortenName(utils.getVarArgsArrayType(element, exec), false);
+            for (int arity : element.getFixedArities(exec)) {
+                MethodDeclarationParameters params = utils.fixedArityMethodDeclarationParams(element, exec, arity, name,
+                        Modifier.PUBLIC, Modifier.FINAL);
+                // The array doesn't escape the varargs method once it is inlined here
+                String call = name + "(" + utils.getVarArgsCallArguments(exec, params, arrayType) + ")";
+                writer.beginMethodDefinition(params)
+                    .writeStringStatement(exec.getReturnType().getKind() == TypeKind.VOID ? call : "return " + call)
+                    .finishMethodDefinition();
+            }
+        }
+    }
+
+    private void emitMemoizedMethod(ExecutableElement exec) throws IOException {
+        MethodDeclarationParameters methodDeclaration = utils.methodDeclarationParamsFromExecutableElement(exec,
+                "default__" + exec.getSimpleName(), element.getSimpleName(), Modifier.PUBLIC, Modifier.FINAL);
+        String memoField = MEMO_PREFIX + exec.getSimpleName();
+        writer.beginMethodDefinition(methodDeclaration)
+            .writeFieldDeclaration(CoreTypes.JAVA_OBJECT, STATE_VARIABLE, Expressions.callMethodOn(memoField, "state"))
+            .beginControlFlow("if (" + writer.shortenName(MEMOIZED_VALUE, false) + ".isValue(" + STATE_VARIABLE + "))")
+            .writeStatement(Expressions.callMethodOn(memoField, "valueOf", STATE_VARIABLE).returnExpr())
+            .endControlFlow()
+            .writeStatement(Expressions.callMethodOn(memoField, "publish", STATE_VARIABLE,
+                    Expressions.callMethod(COMPUTE_PREFIX + exec.getSimpleName())).returnExpr())
+            .finishMethodDefinition();
+    }
+
+    private void emitCachedMethod(ExecutableElement exec) throws IOException {
+        MethodDeclarationParameters methodDeclaration = utils.methodDeclarationParamsFromExecutableElement(exec,
+                "default__" + exec.getSimpleName(), element.getSimpleName(), Modifier.PUBLIC, Modifier.FINAL);
+        List<?> argumentNames = methodDeclaration.getArgumentNames();
+        String cacheField = getCacheFieldName(exec);
+        String packedKey = getPackedKey(exec, argumentNames);
+
+        // Up to ResultCache.MAX_UNKEYED_ARGUMENTS object arguments are passed directly, so lookups don't build a key
+        boolean unkeyed = packedKey == null && argumentNames.size() > 1
+                && argumentNames.size() <= ResultCache.MAX_UNKEYED_ARGUMENTS;
+        List<Object> keyArguments = new ArrayList<Object>();
+        writer.beginMethodDefinition(methodDeclaration);
+        if (unkeyed) {
+            keyArguments.addAll(argumentNames);
+        } else {
+            keyArguments.add(KEY_VARIABLE);
+            if (packedKey != null) {
+                writer.writeFieldDeclaration(CoreTypes.PRIMITIVE_LONG, KEY_VARIABLE, Expressions.fromString(packedKey));
+            } else if (argumentNames.size() == 1) {
+                writer.writeFieldDeclaration(CoreTypes.JAVA_OBJECT, KEY_VARIABLE, Expressions.reference(argumentNames.get(0).toString()));
+            } else {
+                writer.writeFieldDeclaration(CoreTypes.JAVA_OBJECT, KEY_VARIABLE, Expressions.staticMethod(RESULT_CACHE, "key", argumentNames));
             }
         }
+        List<Object> putArguments = new ArrayList<Object>(keyArguments);
+        putArguments.add(Expressions.callMethod(COMPUTE_PREFIX + exec.getSimpleName(), argumentNames));
+        writer.writeFieldDeclaration(utils.getBoxedTypeName(exec.getReturnType(), element.getSimpleName()), CACHED_VARIABLE,
+                    Expressions.callMethodOn(cacheField, packedKey != null ? "getPacked" : "get", keyArguments))
+            .beginControlFlow("if (" + CACHED_VARIABLE + " != null)")
+            .writeStatement(Expressions.reference(CACHED_VARIABLE).returnExpr())
+            .endControlFlow()
+            .writeStatement(Expressions.callMethodOn(cacheField, packedKey != null ? "putPacked" : "put", putArguments).returnExpr())
+            .finishMethodDefinition();
+    }
+
+    /**
+     * @return an expression packing all the arguments of the given method into a long, or null if
+     * they aren't all primitives or don't fit in 64 bits
+     */
+    private String getPackedKey(ExecutableElement exec, List<?> argumentNames) {
+        int totalBits = 0;
+        StringBuilder key = null;
+        for (int i = 0; i < argumentNames.size(); i++) {
+            TypeKind kind = exec.getParameters().get(i).asType().getKind();
+            int bits = getPrimitiveBits(kind);
+            totalBits += bits;
+            if (bits == 0 || totalBits > LONG_KEY_BITS) {
+                return null;
+            }
+            String bitsExpression = getPrimitiveBitsExpression(kind, argumentNames.get(i).toString());
+            if (key == null) {
+                key = new StringBuilder(bitsExpression);
+            } else {
+                if (i > 1) {
+                    key.insert(0, "(").append(")");
+                }
+                key.insert(0, "(").append(" << ").append(bits).append(") | ").append(bitsExpression);
+            }
+        }
+        return key.toString();
+    }
+
+    private int getPrimitiveBits(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN:
+                return 1;
+            case BYTE:
+                return 8;
+            case SHORT:
+            case CHAR:
+                return 16;
+            case INT:
+            case FLOAT:
+                return 32;
+            case LONG:
+            case DOUBLE:
+                return 64;
+            default:
+                return 0;
+        }
+    }
+
+    private String getPrimitiveBitsExpression(TypeKind kind, String argument) {
+        switch (kind) {
+            case BOOLEAN:
+                return "(" + argument + " ? 1L : 0L)";
+            case BYTE:
+                return "((long) " + argument + " & 0xFFL)";
+            case SHORT:
+                return "((long) " + argument + " & 0xFFFFL)";
+            case CHAR:
+                return "((long) " + argument + ")";
+            case INT:
+                return "((long) " + argument + " & 0xFFFFFFFFL)";
+            case FLOAT:
+                return "((long) Float.floatToRawIntBits(" + argument + ") & 0xFFFFFFFFL)";
+            case DOUBLE:
+                return "Double.doubleToRawLongBits(" + argument + ")";
+            default:
+                return argument;
+        }
+    }
+
+    private void emitInvalidateMethods() throws IOException {
+        for (ExecutableElement exec : element.getMemoizedMethods()) {
+            MethodDeclarationParameters params = new MethodDeclarationParameters()
+                .setMethodName(INVALIDATE_PREFIX + exec.getSimpleName())
+                .setModifiers(Modifier.PUBLIC, Modifier.FINAL);
+            writer.beginMethodDefinition(params)
+                .writeStatement(Expressions.callMethodOn(MEMO_PREFIX + exec.getSimpleName(), "invalidate"))
+                .finishMethodDefinition();
+        }
+    }
+
+    private void emitBatchedMethods() throws IOException {
+        for (ExecutableElement exec : element.getBatchedMethods()) {
+            MethodDeclarationParameters params = utils.batchedMethodDeclarationParams(element, exec,
+                    BATCHED_PREFIX + exec.getSimpleName(), Modifier.PUBLIC, Modifier.FINAL);
+            writer.beginMethodDefinition(params)
+                .writeStatement(Expressions.callMethodOn(BATCHER_PREFIX + exec.getSimpleName(), "submit",
+                        params.getArgumentNames()).returnExpr())
+                .finishMethodDefinition();
+        }
+    }
+
+    private void emitAsyncMethods() throws IOException {
+        for (ExecutableElement exec : element.getAsyncMethods()) {
+            MethodDeclarationParameters params = utils.asyncMethodDeclarationParams(element, exec,
+                    ASYNC_PREFIX + exec.getSimpleName(), Modifier.PUBLIC, Modifier.FINAL);
+            StringBuilder call = new StringBuilder("delegate.").append(exec.getSimpleName()).append("(");
+            List<?> arguments = params.getArgumentNames();
+            for (int i = 0; i < arguments.size(); i++) {
+                call.append(i > 0 ? ", " : "").append(arguments.get(i));
+            }
+            call.append(")");
+            // Calls go through the delegate so that they reach the host's implementation of the method
+            String task = exec.getReturnType().getKind() == TypeKind.VOID
+                    ? "() -> { " + call + "; return null; }"
+                    : "() -> " + call;
+            writer.beginMethodDefinition(params)
+                .writeStatement(Expressions.staticMethod(TRAIT_EXECUTORS, "submit", "\"" + element.getAsyncExecutorName(exec) + "\"",
+                        Expressions.fromString(task)).returnExpr())
+                .finishMethodDefinition();
+        }
     }
 
     private void emitDelegateMethodImplementations() throws IOException {
@@ -131,6 +454,10 @@ public class TraitDelegateWriter extends JavaTraitsWriter<TraitElement> {
 
     private void emitMethodDeclaration(ExecutableElement exec, Map<String, TypeName> genericNameMap, boolean isDefault, Modifier... modifiers) throws IOException {
         String name = isDefault ? "default__" + exec.getSimpleName().toString() : null;
+        emitMethodDeclaration(exec, name, genericNameMap, isDefault, modifiers);
+    }
+
+    private void emitMethodDeclaration(ExecutableElement exec, String name, Map<String, TypeName> genericNameMap, boolean isDefault, Modifier... modifiers) throws IOException {
         MethodDeclarationParameters methodDeclaration = utils.methodDeclarationParamsFromExecutableElement(exec, name, element.getSimpleName(), modifiers);
         remapMethodDeclarationGenerics(methodDeclaration, genericNameMap);
         writer.beginMethodDefinition(methodDeclaration);
@@ -141,8 +468,67 @@ public class TraitDelegateWriter extends JavaTraitsWriter<TraitElement> {
         if (exec.getReturnType().getKind() != TypeKind.VOID) {
             methodInvocation = methodInvocation.returnExpr();
         }
-        writer.writeStatement(methodInvocation)
-            .finishMethodDefinition();
+        if (isDefault) {
+            emitDefaultMethodBody(exec, methodInvocation, element.getRecordedMethods().contains(exec), false);
+        } else {
+            writer.writeStatement(methodInvocation);
+        }
+        writer.finishMethodDefinition();
+    }
+
+    private void emitDefaultMethodBody(ExecutableElement exec, Expression methodInvocation, boolean record, boolean explicitReturn) throws IOException {
+        if (record) {
+            emitEventRecordingForDefaultMethod(exec, methodInvocation);
+        }
+        emitMetricsForDefaultMethod(exec, methodInvocation);
+        writer.writeStatement(methodInvocation);
+        if (explicitReturn && exec.getReturnType().getKind() == TypeKind.VOID) {
+            writer.writeStringStatement("return");
+        }
+    }
+
+    private void emitEventRecordingForDefaultMethod(ExecutableElement exec, Expression methodInvocation) throws IOException {
+        DeclaredTypeName eventName = element.getEventName();
+        writer.writeFieldDeclaration(eventName, EVENT_VARIABLE, Expressions.callConstructor(eventName))
+            .beginControlFlow("if (" + EVENT_VARIABLE + ".isEnabled())")
+            .writeStatement(Expressions.callMethodOn(EVENT_VARIABLE, "begin"))
+            .beginControlFlow("try");
+        emitDefaultMethodBody(exec, methodInvocation, false, true);
+        writer.nextControlFlow("finally")
+            .writeStatement(Expressions.callMethodOn(EVENT_VARIABLE, "end"))
+            .beginControlFlow("if (" + EVENT_VARIABLE + ".shouldCommit())")
+            .writeStatement(Expressions.assign(Expressions.reference(EVENT_VARIABLE, TraitEventWriter.HOST_CLASS_FIELD),
+                    Expressions.callMethodOn("delegate", "getClass")))
+            .writeStatement(Expressions.assign(Expressions.reference(EVENT_VARIABLE, TraitEventWriter.TRAIT_CLASS_FIELD),
+                    Expressions.classObject(element.getElementName())))
+            .writeStatement(Expressions.assign(Expressions.reference(EVENT_VARIABLE, TraitEventWriter.METHOD_NAME_FIELD),
+                    Expressions.fromString("\"" + exec.getSimpleName() + "\"")))
+            .writeStatement(Expressions.callMethodOn(EVENT_VARIABLE, "commit"))
+            .endControlFlow()
+            .endControlFlow()
+            .endControlFlow();
+    }
+
+    private void emitMetricsForDefaultMethod(ExecutableElement exec, Expression methodInvocation) throws IOException {
+        int index = element.getInstrumentedMethods().indexOf(exec);
+        if (index < 0) {
+            return;
+        }
+        writer.beginControlFlow("if (" + METRICS_ENABLED + ")");
+        if (element.isTimed(exec)) {
+            writer.writeStringStatement("long start__ = System.nanoTime()")
+                .beginControlFlow("try")
+                .writeStatement(methodInvocation);
+            if (exec.getReturnType().getKind() == TypeKind.VOID) {
+                writer.writeStringStatement("return");
+            }
+            writer.nextControlFlow("finally")
+                .writeStatement(Expressions.callMethodOn(METRICS_FIELD, "record", index, "start__"))
+                .endControlFlow();
+        } else {
+            writer.writeStatement(Expressions.callMethodOn(METRICS_FIELD, "increment", index));
+        }
+        writer.endControlFlow();
     }
 
     private void emitInterfaceMethods() throws IOException {
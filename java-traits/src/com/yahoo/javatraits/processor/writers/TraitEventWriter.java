@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.writers;
+
+import com.yahoo.aptutils.model.CoreTypes;
+import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.aptutils.model.GenericName;
+import com.yahoo.aptutils.model.TypeName;
+import com.yahoo.aptutils.writer.JavaFileWriter.Type;
+import com.yahoo.aptutils.writer.expressions.Expression;
+import com.yahoo.aptutils.writer.expressions.Expressions;
+import com.yahoo.aptutils.writer.parameters.TypeDeclarationParameters;
+import com.yahoo.javatraits.processor.data.TraitElement;
+import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
+
+import javax.lang.model.element.Modifier;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Writes the jdk.jfr.Event subclass used to record calls to the {@literal @}Recorded methods of a trait
+ */
+public class TraitEventWriter extends JavaTraitsWriter<TraitElement> {
+
+    private static final String JFR_PACKAGE = "jdk.jfr";
+    private static final DeclaredTypeName JFR_EVENT = new DeclaredTypeName(JFR_PACKAGE, "Event");
+    private static final DeclaredTypeName JFR_NAME = new DeclaredTypeName(JFR_PACKAGE, "Name");
+    private static final DeclaredTypeName JFR_LABEL = new DeclaredTypeName(JFR_PACKAGE, "Label");
+    private static final DeclaredTypeName JFR_CATEGORY = new DeclaredTypeName(JFR_PACKAGE, "Category");
+    private static final DeclaredTypeName JFR_THRESHOLD = new DeclaredTypeName(JFR_PACKAGE, "Threshold");
+
+    private static final DeclaredTypeName CLASS_TYPE = new DeclaredTypeName(CoreTypes.JAVA_LANG, "Class");
+    static {
+        CLASS_TYPE.setTypeArgs(Arrays.asList(GenericName.DEFAULT_WILDCARD));
+    }
+
+    public static final String CATEGORY = "Java Traits";
+    public static final String HOST_CLASS_FIELD = "hostClass";
+    public static final String TRAIT_CLASS_FIELD = "traitClass";
+    public static final String METHOD_NAME_FIELD = "methodName";
+
+    public TraitEventWriter(TraitElement traitElement, TraitProcessorAptUtils utils) {
+        super(traitElement, utils);
+    }
+
+    @Override
+    protected DeclaredTypeName getClassNameToGenerate() {
+        return element.getEventName();
+    }
+
+    @Override
+    protected void gatherImports(Set<DeclaredTypeName> imports) {
+        imports.addAll(Arrays.asList(JFR_EVENT, JFR_NAME, JFR_LABEL, JFR_CATEGORY, JFR_THRESHOLD));
+    }
+
+    @Override
+    protected void writeClassDefinition() throws IOException {
+        TypeDeclarationParameters params = new TypeDeclarationParameters()
+            .setName(element.getEventName())
+            .setKind(Type.CLASS)
+            .setModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .setSuperclass(JFR_EVENT);
+
+        writer.writeAnnotation(JFR_NAME, stringLiteral(element.getPackageName() + "." + element.getSimpleName()))
+            .writeAnnotation(JFR_LABEL, stringLiteral(element.getSimpleName() + " Trait Call"))
+            .writeAnnotation(JFR_CATEGORY, stringLiteral(CATEGORY))
+            .writeAnnotation(JFR_THRESHOLD, stringLiteral(element.getRecordingThreshold()))
+            .beginTypeDefinition(params);
+
+        emitField(CLASS_TYPE, HOST_CLASS_FIELD, "Host Class");
+        emitField(CLASS_TYPE, TRAIT_CLASS_FIELD, "Trait");
+        emitField(CoreTypes.JAVA_STRING, METHOD_NAME_FIELD, "Method");
+
+        writer.finishTypeDefinition();
+    }
+
+    private void emitField(TypeName type, String name, String label) throws IOException {
+        writer.writeAnnotation(JFR_LABEL, stringLiteral(label))
+            .writeFieldDeclaration(type, name, null, Modifier.PUBLIC);
+    }
+
+    private Expression stringLiteral(String value) {
+        return Expressions.fromString("\"" + value + "\"");
+    }
+}
@@ -16,6 +16,7 @@
 package com.yahoo.javatraits.processor.writers;
 
 import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.aptutils.model.TypeName;
 import com.yahoo.aptutils.writer.JavaFileWriter.Type;
 import com.yahoo.aptutils.writer.parameters.MethodDeclarationParameters;
 import com.yahoo.aptutils.writer.parameters.TypeDeclarationParameters;
@@ -25,12 +26,20 @@ import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 public class TraitInterfaceWriter extends JavaTraitsWriter<TraitElement> {
 
-    public TraitInterfaceWriter(TraitElement element, TraitProcessorAptUtils utils) {
+    private final List<DeclaredTypeName> permittedSubclasses;
+
+    /**
+     * @param permittedSubclasses the classes the interface permits if the trait is sealed
+     */
+    public TraitInterfaceWriter(TraitElement element, List<DeclaredTypeName> permittedSubclasses, TraitProcessorAptUtils utils) {
         super(element, utils);
+        this.permittedSubclasses = permittedSubclasses;
     }
 
     @Override
@@ -41,27 +50,71 @@ public class TraitInterfaceWriter extends JavaTraitsWriter<TraitElement> {
     @Override
     protected void gatherImports(Set<DeclaredTypeName> imports) {
         utils.accumulateImportsFromTypeNames(imports, element.getInterfaceNames());
+        if (element.getParentTrait() != null) {
+            imports.add(element.getParentTrait().getGeneratedInterfaceName());
+        }
         utils.accumulateImportsFromElements(imports, element.getDeclaredMethods());
+        if (!element.getAsyncMethods().isEmpty() || !element.getBatchedMethods().isEmpty()) {
+            imports.add(TraitProcessorAptUtils.COMPLETABLE_FUTURE);
+        }
+        if (element.isSealed()) {
+            imports.addAll(permittedSubclasses);
+        }
     }
 
     protected void writeClassDefinition() throws IOException {
         TypeDeclarationParameters params = new TypeDeclarationParameters()
             .setName(element.getGeneratedInterfaceName())
             .setKind(Type.INTERFACE)
-            .setInterfaces(element.getInterfaceNames())
+            .setInterfaces(getSuperinterfaces())
             .setModifiers(Modifier.PUBLIC);
+        if (element.isSealed()) {
+            params.setPermittedSubclasses(permittedSubclasses);
+        }
 
         writer.beginTypeDefinition(params);
         emitMethodDeclarations();
         writer.finishTypeDefinition();
     }
 
+    /**
+     * The interface of a trait extending another trait extends the other trait's interface, and also declares
+     * the inherited methods
+     */
+    private List<TypeName> getSuperinterfaces() {
+        List<TypeName> result = new ArrayList<TypeName>();
+        if (element.getParentTrait() != null) {
+            result.add(element.getParentTrait().getGeneratedInterfaceName());
+        }
+        if (element.getInterfaceNames() != null) {
+            result.addAll(element.getInterfaceNames());
+        }
+        return result;
+    }
+
     private void emitMethodDeclarations() throws IOException {
         for (ExecutableElement exec : element.getDeclaredMethods()) {
             if (!utils.isGetThis(element, exec)) {
                 emitMethodDeclarationForExecutableElement(exec);
             }
         }
+        for (ExecutableElement exec : element.getFixedArityMethods()) {
+            for (int arity : element.getFixedArities(exec)) {
+                writer.beginMethodDefinition(utils.fixedArityMethodDeclarationParams(element, exec, arity, null, Modifier.PUBLIC));
+            }
+        }
+        for (ExecutableElement exec : element.getMemoizedMethods()) {
+            MethodDeclarationParameters invalidateDeclaration = new MethodDeclarationParameters()
+                .setMethodName(TraitElement.getInvalidateMethodName(exec))
+                .setModifiers(Modifier.PUBLIC);
+            writer.beginMethodDefinition(invalidateDeclaration);
+        }
+        for (ExecutableElement exec : element.getAsyncMethods()) {
+            writer.beginMethodDefinition(utils.asyncMethodDeclarationParams(element, exec, null, Modifier.PUBLIC));
+        }
+        for (ExecutableElement exec : element.getBatchedMethods()) {
+            writer.beginMethodDefinition(utils.batchedMethodDeclarationParams(element, exec, null, Modifier.PUBLIC));
+        }
     }
 
     private void emitMethodDeclarationForExecutableElement(ExecutableElement exec) throws IOException {
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.processor.writers;
+
+import com.yahoo.aptutils.model.CoreTypes;
+import com.yahoo.aptutils.model.DeclaredTypeName;
+import com.yahoo.aptutils.model.TypeName;
+import com.yahoo.aptutils.writer.JavaFileWriter.Type;
+import com.yahoo.aptutils.writer.expressions.Expressions;
+import com.yahoo.aptutils.writer.parameters.MethodDeclarationParameters;
+import com.yahoo.aptutils.writer.parameters.TypeDeclarationParameters;
+import com.yahoo.javatraits.processor.data.TraitElement;
+import com.yahoo.javatraits.processor.utils.TraitProcessorAptUtils;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.TypeKind;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the invoker for a trait annotated with {@literal @}Invoker. The id of each method is its index among the
+ * methods of the generated interface, and the invoker calls the method for an id from a switch statement.
+ */
+public class TraitInvokerWriter extends JavaTraitsWriter<TraitElement> {
+
+    private static final DeclaredTypeName TRAIT_INVOKER = new DeclaredTypeName("com.yahoo.javatraits.runtime.TraitInvoker");
+    private static final DeclaredTypeName EXCEPTION = new DeclaredTypeName("java.lang.Exception");
+    private static final String TARGET = "target";
+    private static final String METHOD_ID = "methodId";
+    private static final String ARGS = "args";
+
+    private final List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+
+    public TraitInvokerWriter(TraitElement element, TraitProcessorAptUtils utils) {
+        super(element, utils);
+        for (ExecutableElement exec : element.getDeclaredMethods()) {
+            if (!utils.isGetThis(element, exec)) {
+                methods.add(exec);
+            }
+        }
+    }
+
+    @Override
+    protected DeclaredTypeName getClassNameToGenerate() {
+        return element.getInvokerName();
+    }
+
+    @Override
+    protected void gatherImports(Set<DeclaredTypeName> imports) {
+        utils.accumulateImportsFromElements(imports, methods);
+        imports.add(TRAIT_INVOKER);
+        imports.add(element.getGeneratedInterfaceName());
+    }
+
+    @Override
+    protected void writeClassDefinition() throws IOException {
+        DeclaredTypeName interfaceName = element.getGeneratedInterfaceName();
+        DeclaredTypeName superclass = TRAIT_INVOKER.clone();
+        superclass.setTypeArgs(Collections.singletonList(interfaceName));
+        TypeDeclarationParameters params = new TypeDeclarationParameters()
+            .setName(element.getInvokerName())
+            .setKind(Type.CLASS)
+            .setModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .setSuperclass(superclass);
+
+        writer.beginTypeDefinition(params);
+        writer.writeFieldDeclaration(element.getInvokerName(), "INSTANCE", Expressions.callConstructor(element.getInvokerName()),
+                Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL);
+
+        StringBuilder superCall = new StringBuilder("super(").append(writer.shortenName(interfaceName, false)).append(".class");
+        for (ExecutableElement exec : methods) {
+            superCall.append(", \"").append(utils.getErasedSignature(exec)).append("\"");
+        }
+        writer.beginConstructorDeclaration(new MethodDeclarationParameters()
+                .setConstructorName(element.getInvokerName())
+                .setModifiers(Modifier.PRIVATE))
+            .writeStringStatement(superCall.append(")").toString())
+            .finishMethodDefinition();
+
+        emitInvoke(interfaceName);
+        writer.finishTypeDefinition();
+    }
+
+    private void emitInvoke(DeclaredTypeName interfaceName) throws IOException {
+        DeclaredTypeName argsType = CoreTypes.JAVA_OBJECT.clone();
+        argsType.setArrayDepth(1);
+        argsType.setIsVarArgs(true);
+        MethodDeclarationParameters params = new MethodDeclarationParameters()
+            .setMethodName("invoke")
+            .setModifiers(Modifier.PUBLIC)
+            .setReturnType(CoreTypes.JAVA_OBJECT)
+            .setArgumentTypes(interfaceName, CoreTypes.PRIMITIVE_INT, argsType)
+            .setArgumentNames(TARGET, METHOD_ID, ARGS)
+            .setThrowsTypes(Collections.singletonList(EXCEPTION));
+
+        writer.writeAnnotation(CoreTypes.OVERRIDE);
+        writer.beginMethodDefinition(params)
+            .beginControlFlow("switch (" + METHOD_ID + ")");
+        for (int id = 0; id < methods.size(); id++) {
+            ExecutableElement exec = methods.get(id);
+            int argumentCount = exec.getParameters().size();
+            writer.beginControlFlow("case " + id + ":")
+                .beginControlFlow("if (" + ARGS + ".length != " + argumentCount + ")")
+                .writeStringStatement("throw wrongArgumentCount(" + METHOD_ID + ", " + ARGS + ".length)")
+                .endControlFlow();
+
+            StringBuilder call = new StringBuilder(TARGET).append(".").append(exec.getSimpleName()).append("(");
+            for (int i = 0; i < argumentCount; i++) {
+                TypeName argType = utils.getBoxedTypeName(utils.getTypes().erasure(exec.getParameters().get(i).asType()), null);
+                call.append(i > 0 ? ", " : "").append("(").append(writer.shortenName(argType, false)).append(") ")
+                    .append(ARGS).append("[").append(i).append("]");
+            }
+            call.append(")");
+            if (exec.getReturnType().getKind() == TypeKind.VOID) {
+                writer.writeStringStatement(call.toString())
+                    .writeStringStatement("return null");
+            } else {
+                writer.writeStringStatement("return " + call);
+            }
+            writer.endControlFlow();
+        }
+        writer.beginControlFlow("default:")
+            .writeStringStatement("throw noSuchMethod(" + METHOD_ID + ")")
+            .endControlFlow()
+            .endControlFlow()
+            .finishMethodDefinition();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces single-key calls to a {@literal @}{@link com.yahoo.javatraits.annotations.Batched} trait method
+ * into calls to its bulk method. Each generated delegate holds one dispatcher per batched method.
+ *
+ * <br/><br/>
+ *
+ * The first key submitted to an empty batch starts a timer; the batch is dispatched when the timer fires
+ * or as soon as it holds the maximum number of distinct keys, whichever comes first. Keys submitted more
+ * than once to the same batch are only loaded once. The bulk method runs on the executor named in the
+ * annotation (see {@link TraitExecutors}), and each caller's future is completed with the value the bulk
+ * method returned for its key, with null if it returned none, or exceptionally if the bulk method threw.
+ */
+public final class BatchDispatcher<K, V> {
+
+    /**
+     * The bulk method of a batched trait method
+     */
+    public interface BulkLoader<K, V> {
+        Map<K, V> loadAll(List<K> keys) throws Exception;
+    }
+
+    private static final class TimerHolder { // Created on first use
+        static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "trait-batch-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private final BulkLoader<K, V> loader;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final String executorName;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Batch<K, V> pending; // Guarded by lock
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder keys = new LongAdder();
+
+    public BatchDispatcher(BulkLoader<K, V> loader, int maxBatchSize, long windowMillis, String executorName) {
+        if (maxBatchSize <= 0 || windowMillis < 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive and windowMillis non-negative");
+        }
+        this.loader = loader;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        this.executorName = executorName;
+    }
+
+    /**
+     * Adds the given key to the current batch
+     *
+     * @return a future that will be completed with the value for the key once the batch has been loaded
+     */
+    public CompletableFuture<V> submit(K key) {
+        CompletableFuture<V> future;
+        Batch<K, V> newBatch = null;
+        Batch<K, V> fullBatch = null;
+        lock.lock();
+        try {
+            if (pending == null) {
+                pending = newBatch = new Batch<K, V>();
+            }
+            future = pending.add(key);
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = pending;
+                pending = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (fullBatch != null) {
+            dispatch(fullBatch);
+        } else if (newBatch != null) {
+            final Batch<K, V> scheduled = newBatch;
+            TimerHolder.TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush(scheduled);
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * @return the number of calls made to the bulk method
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the number of distinct keys loaded through the bulk method
+     */
+    public long getKeyCount() {
+        return keys.sum();
+    }
+
+    private void flush(Batch<K, V> batch) {
+        lock.lock();
+        try {
+            if (pending != batch) { // Already dispatched because it was full
+                return;
+            }
+            pending = null;
+        } finally {
+            lock.unlock();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(final Batch<K, V> batch) {
+        batches.increment();
+        keys.add(batch.size());
+        try {
+            TraitExecutors.executorFor(executorName).execute(new Runnable() {
+                @Override
+                public void run() {
+                    batch.load(loader);
+                }
+            });
+        } catch (Throwable t) { // e.g. RejectedExecutionException
+            batch.fail(t);
+        }
+    }
+
+    private static final class Batch<K, V> {
+        private final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<K, CompletableFuture<V>>();
+
+        CompletableFuture<V> add(K key) {
+            CompletableFuture<V> future = futures.get(key);
+            if (future == null) {
+                future = new CompletableFuture<V>();
+                futures.put(key, future);
+            }
+            return future;
+        }
+
+        int size() {
+            return futures.size();
+        }
+
+        void load(BulkLoader<K, V> loader) {
+            Map<K, V> results;
+            try {
+                results = loader.loadAll(new ArrayList<K>(futures.keySet()));
+            } catch (Throwable t) {
+                fail(t);
+                return;
+            }
+            for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+                entry.getValue().complete(results != null ? results.get(entry.getKey()) : null);
+            }
+        }
+
+        void fail(Throwable t) {
+            for (CompletableFuture<V> future : futures.values()) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Holds the cached result of a {@literal @}Memoize trait method for one instance of a class with traits.
+ *
+ * <br/><br/>
+ *
+ * The holder is lock free. Generated code reads the current {@link #state()}, returns the cached value
+ * if there is one, and otherwise computes the value and {@link #publish(Object, Object) publishes} it
+ * against the state it originally read. Each call to {@link #invalidate()} installs a new state, so a value
+ * computed before an invalidation is returned to its caller but never cached. Null results are cached
+ * like any other value.
+ */
+public final class MemoizedValue<T> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MemoizedValue, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(MemoizedValue.class, Object.class, "state");
+
+    private static final Object NULL_VALUE = new Object();
+
+    private static final class Invalid {
+    }
+
+    private volatile Object state = new Invalid();
+
+    /**
+     * @return the current state, to be passed to {@link #isValue(Object)}, {@link #valueOf(Object)}
+     * or {@link #publish(Object, Object)}
+     */
+    public Object state() {
+        return state;
+    }
+
+    /**
+     * @return true if the given state holds a cached value
+     */
+    public static boolean isValue(Object state) {
+        return !(state instanceof Invalid);
+    }
+
+    /**
+     * @return the cached value held by the given state
+     */
+    @SuppressWarnings("unchecked")
+    public T valueOf(Object state) {
+        return state == NULL_VALUE ? null : (T) state;
+    }
+
+    /**
+     * Caches the given value unless the holder has been invalidated since the given state was read
+     *
+     * @return value
+     */
+    public T publish(Object expectedState, T value) {
+        STATE.compareAndSet(this, expectedState, value == null ? NULL_VALUE : value);
+        return value;
+    }
+
+    /**
+     * Discards the cached value, if any
+     */
+    public void invalidate() {
+        state = new Invalid();
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the class files of the classes spun up by {@link TraitMixer}. Only the handful of instructions
+ * needed by constructors and forwarding methods are supported. None of the generated methods branch,
+ * so no stack map frames are needed.
+ */
+final class MixinClassWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int JAVA_11_VERSION = 55;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int FLOAD = 0x17;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DUP = 0x59;
+    private static final int IRETURN = 0xac;
+    private static final int LRETURN = 0xad;
+    private static final int FRETURN = 0xae;
+    private static final int DRETURN = 0xaf;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEW = 0xbb;
+    private static final int CHECKCAST = 0xc0;
+
+    private static final String CONSTRUCTOR_NAME = "<init>";
+
+    private final String className;
+    private final ByteArrayOutputStream constantBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constants = new DataOutputStream(constantBytes);
+    private final Map<String, Integer> constantIndexes = new HashMap<String, Integer>();
+    private int constantCount = 1;
+
+    private final List<Integer> interfaces = new ArrayList<Integer>();
+    private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+    private final DataOutputStream fields = new DataOutputStream(fieldBytes);
+    private int fieldCount;
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount;
+
+    /**
+     * @param className the internal (slash separated) name of the class to write
+     */
+    MixinClassWriter(String className) {
+        this.className = className;
+    }
+
+    void addInterface(Class<?> iface) {
+        interfaces.add(classConstant(internalName(iface)));
+    }
+
+    void addField(String name, Class<?> type) {
+        try {
+            fields.writeShort(ACC_PRIVATE | ACC_FINAL);
+            fields.writeShort(utf8Constant(name));
+            fields.writeShort(utf8Constant(descriptor(type)));
+            fields.writeShort(0); // No attributes
+            fieldCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds a constructor taking the target object, which stores it in the given field and then stores a new instance
+     * of each wrapper class, constructed with this object as its only argument, in the corresponding wrapper field
+     */
+    void addConstructor(String targetField, Class<?> targetType, List<String> wrapperFields, List<Class<?>> wrapperTypes,
+            List<Class<?>> wrapperArgTypes) {
+        Code code = new Code();
+        code.op(ALOAD_0).op(INVOKESPECIAL).u2(methodConstant("java/lang/Object", CONSTRUCTOR_NAME, "()V", false));
+        code.op(ALOAD_0).op(ALOAD_1).op(PUTFIELD).u2(fieldConstant(targetField, targetType));
+        for (int i = 0; i < wrapperFields.size(); i++) {
+            String wrapperName = internalName(wrapperTypes.get(i));
+            code.op(ALOAD_0).op(NEW).u2(classConstant(wrapperName)).op(DUP).op(ALOAD_0)
+                .op(INVOKESPECIAL).u2(methodConstant(wrapperName, CONSTRUCTOR_NAME,
+                        "(" + descriptor(wrapperArgTypes.get(i)) + ")V", false))
+                .op(PUTFIELD).u2(fieldConstant(wrapperFields.get(i), wrapperTypes.get(i)));
+        }
+        code.op(RETURN);
+        addMethod(CONSTRUCTOR_NAME, "(" + descriptor(targetType) + ")V", code, 4, 2);
+    }
+
+    /**
+     * Adds an implementation of the given interface method that calls the given method on the object in the given field.
+     * Arguments are cast to the target method's parameter types where those are narrower, as in a bridge method.
+     */
+    void addForwarder(Method method, String field, Class<?> fieldType, Method target) {
+        Code code = new Code();
+        code.op(ALOAD_0).op(GETFIELD).u2(fieldConstant(field, fieldType));
+        int slots = loadArguments(code, method.getParameterTypes(), target.getParameterTypes());
+        boolean isInterface = fieldType.isInterface();
+        code.op(isInterface ? INVOKEINTERFACE : INVOKEVIRTUAL)
+            .u2(methodConstant(internalName(fieldType), target.getName(), methodDescriptor(target), isInterface));
+        if (isInterface) {
+            code.u1(1 + slots).u1(0);
+        }
+        code.op(returnOpcode(method.getReturnType()));
+        addMethod(method.getName(), methodDescriptor(method), code, Math.max(1 + slots, 2), 1 + slots);
+    }
+
+    /**
+     * Adds an implementation of the given interface method that returns this object
+     */
+    void addReturnThis(Method method) {
+        Code code = new Code();
+        code.op(ALOAD_0).op(ARETURN);
+        addMethod(method.getName(), methodDescriptor(method), code, 1, 1);
+    }
+
+    byte[] toByteArray() {
+        try {
+            int thisClass = classConstant(className);
+            int superClass = classConstant("java/lang/Object");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(JAVA_11_VERSION);
+            out.writeShort(constantCount);
+            constants.flush();
+            constantBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int iface : interfaces) {
+                out.writeShort(iface);
+            }
+            out.writeShort(fieldCount);
+            fields.flush();
+            fieldBytes.writeTo(out);
+            out.writeShort(methodCount);
+            methods.flush();
+            methodBytes.writeTo(out);
+            out.writeShort(0); // No class attributes
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int loadArguments(Code code, Class<?>[] parameterTypes, Class<?>[] targetParameterTypes) {
+        int slot = 1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            if (slot > 255) {
+                throw new IllegalArgumentException("Too many arguments");
+            }
+            code.op(loadOpcode(type)).u1(slot);
+            if (!targetParameterTypes[i].isAssignableFrom(type)) {
+                code.op(CHECKCAST).u2(classConstant(internalName(targetParameterTypes[i])));
+            }
+            slot += (type == long.class || type == double.class) ? 2 : 1;
+        }
+        return slot - 1;
+    }
+
+    private void addMethod(String name, String descriptor, Code code, int maxStack, int maxLocals) {
+        try {
+            byte[] bytecode = code.bytes.toByteArray();
+            methods.writeShort(ACC_PUBLIC | (CONSTRUCTOR_NAME.equals(name) ? 0 : ACC_FINAL));
+            methods.writeShort(utf8Constant(name));
+            methods.writeShort(utf8Constant(descriptor));
+            methods.writeShort(1); // Code attribute
+            methods.writeShort(utf8Constant("Code"));
+            methods.writeInt(12 + bytecode.length);
+            methods.writeShort(maxStack);
+            methods.writeShort(maxLocals);
+            methods.writeInt(bytecode.length);
+            methods.write(bytecode);
+            methods.writeShort(0); // No exception table
+            methods.writeShort(0); // No code attributes
+            methodCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int utf8Constant(String value) {
+        Integer index = constantIndexes.get("U" + value);
+        if (index == null) {
+            try {
+                constants.writeByte(CONSTANT_UTF8);
+                constants.writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index = constantCount++;
+            constantIndexes.put("U" + value, index);
+        }
+        return index;
+    }
+
+    private int classConstant(String internalName) {
+        Integer index = constantIndexes.get("C" + internalName);
+        if (index == null) {
+            int name = utf8Constant(internalName);
+            index = writeConstant(CONSTANT_CLASS, name, -1);
+            constantIndexes.put("C" + internalName, index);
+        }
+        return index;
+    }
+
+    private int nameAndTypeConstant(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int nameIndex = utf8Constant(name);
+            int descriptorIndex = utf8Constant(descriptor);
+            index = writeConstant(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+            constantIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    private int fieldConstant(String name, Class<?> type) {
+        return memberConstant(CONSTANT_FIELDREF, className, name, descriptor(type));
+    }
+
+    private int methodConstant(String owner, String name, String descriptor, boolean isInterface) {
+        return memberConstant(isInterface ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + ":" + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int ownerIndex = classConstant(owner);
+            int nameAndType = nameAndTypeConstant(name, descriptor);
+            index = writeConstant(tag, ownerIndex, nameAndType);
+            constantIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    private int writeConstant(int tag, int first, int second) {
+        try {
+            constants.writeByte(tag);
+            constants.writeShort(first);
+            if (second >= 0) {
+                constants.writeShort(second);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return constantCount++;
+    }
+
+    static String internalName(Class<?> cls) {
+        return cls.getName().replace('.', '/');
+    }
+
+    static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return internalName(type);
+        } else if (type == void.class) {
+            return "V";
+        } else if (type == boolean.class) {
+            return "Z";
+        } else if (type == byte.class) {
+            return "B";
+        } else if (type == char.class) {
+            return "C";
+        } else if (type == short.class) {
+            return "S";
+        } else if (type == int.class) {
+            return "I";
+        } else if (type == long.class) {
+            return "J";
+        } else if (type == float.class) {
+            return "F";
+        } else if (type == double.class) {
+            return "D";
+        }
+        return "L" + internalName(type) + ";";
+    }
+
+    static String methodDescriptor(Method method) {
+        StringBuilder result = new StringBuilder("(");
+        for (Class<?> type : method.getParameterTypes()) {
+            result.append(descriptor(type));
+        }
+        return result.append(")").append(descriptor(method.getReturnType())).toString();
+    }
+
+    private static int loadOpcode(Class<?> type) {
+        if (type == long.class) {
+            return LLOAD;
+        } else if (type == float.class) {
+            return FLOAD;
+        } else if (type == double.class) {
+            return DLOAD;
+        } else if (type.isPrimitive()) {
+            return ILOAD;
+        }
+        return ALOAD;
+    }
+
+    private static int returnOpcode(Class<?> type) {
+        if (type == void.class) {
+            return RETURN;
+        } else if (type == long.class) {
+            return LRETURN;
+        } else if (type == float.class) {
+            return FRETURN;
+        } else if (type == double.class) {
+            return DRETURN;
+        } else if (type.isPrimitive()) {
+            return IRETURN;
+        }
+        return ARETURN;
+    }
+
+    private static final class Code {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Code u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+/**
+ * Implemented by the generated superclasses of classes annotated with
+ * {@literal @}{@link com.yahoo.javatraits.annotations.HasTraits}(poolable=true), whose instances can be reused
+ * through a {@link TraitPool}.
+ */
+public interface Poolable {
+
+    /**
+     * Restores the state of this instance, and of all its traits, to that of a newly created instance
+     */
+    void reset();
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import com.yahoo.javatraits.annotations.Cached.Eviction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, concurrent cache for the results of a {@literal @}{@link com.yahoo.javatraits.annotations.Cached}
+ * trait method. Generated trait delegates hold one cache per cached method in a static field, created with
+ * {@link #create(Class, String, int, Eviction)}.
+ *
+ * <br/><br/>
+ *
+ * The cache is split into segments, each a small hash table whose entries are also kept in a queue. Lookups don't
+ * lock: a hit only marks the entry as referenced and, for LFU eviction, counts it. Insertions lock their segment,
+ * and evict with the CLOCK approximation of LRU: referenced entries at the front of the queue get a second chance
+ * at the back instead of being evicted. LFU eviction then evicts the least frequently used of the first
+ * {@value #LFU_SAMPLE_SIZE} entries, and periodically halves all frequencies so that entries that were only popular
+ * in the past can be evicted. Hit counts are updated without synchronization, so a few can be lost under contention.
+ *
+ * <br/><br/>
+ *
+ * Keys are either a long, for methods whose primitive arguments can be packed into 64 bits, or objects compared with
+ * equals(). Methods with up to {@value #MAX_UNKEYED_ARGUMENTS} arguments pass them directly, so lookups don't
+ * allocate a key.
+ */
+public final class ResultCache<V> {
+
+    /**
+     * The maximum number of arguments that can be passed to the lookup methods without building a key
+     */
+    public static final int MAX_UNKEYED_ARGUMENTS = 3;
+
+    static final int LFU_SAMPLE_SIZE = 8;
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    private static final Object NULL_KEY = new Object();
+
+    private static final ConcurrentMap<String, ResultCache<?>> CACHES = new ConcurrentHashMap<String, ResultCache<?>>();
+
+    private final Class<?> traitClass;
+    private final String method;
+    private final int maxSize;
+    private final Eviction eviction;
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Called by generated code to create the cache for the given method. The method is identified by its name and
+     * erased parameter types, e.g. "add(int,int)".
+     */
+    public static <V> ResultCache<V> create(Class<?> traitClass, String method, int maxSize, Eviction eviction) {
+        ResultCache<V> cache = new ResultCache<V>(traitClass, method, maxSize, eviction);
+        CACHES.put(key(traitClass, method), cache);
+        return cache;
+    }
+
+    /**
+     * @param method the method's name and erased parameter types, e.g. "add(int,int)"
+     * @return the cache for the given trait method, or null if the method is not cached or the trait delegate has
+     * not been initialized yet
+     */
+    public static ResultCache<?> forMethod(Class<?> traitClass, String method) {
+        return CACHES.get(key(traitClass, method));
+    }
+
+    /**
+     * @return all caches that have been created so far
+     */
+    public static List<ResultCache<?>> getAllCaches() {
+        return new ArrayList<ResultCache<?>>(CACHES.values());
+    }
+
+    /**
+     * Called by generated code to build a key from the arguments of a method that has more than
+     * {@value #MAX_UNKEYED_ARGUMENTS} arguments and can't be keyed by a long
+     */
+    public static Object key(Object... args) {
+        return new Arguments(args);
+    }
+
+    private static String key(Class<?> traitClass, String method) {
+        return traitClass.getName() + "#" + method;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResultCache(Class<?> traitClass, String method, int maxSize, Eviction eviction) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.traitClass = traitClass;
+        this.method = method;
+        this.maxSize = maxSize;
+        this.eviction = eviction;
+
+        int numSegments = 1;
+        while (numSegments < MAX_SEGMENTS && numSegments * 2 * MIN_SEGMENT_CAPACITY <= maxSize) {
+            numSegments *= 2;
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(numSegments);
+        this.segments = (Segment<V>[]) new Segment<?>[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            int segmentCapacity = maxSize / numSegments + (i < maxSize % numSegments ? 1 : 0);
+            segments[i] = new Segment<V>(segmentCapacity, eviction == Eviction.LFU);
+        }
+    }
+
+    /**
+     * @return the value cached for the given packed primitive arguments, or null if there is none
+     */
+    public V getPacked(long key) {
+        int hash = hash(key);
+        return recordLookup(segmentFor(hash).get(hash, key, null));
+    }
+
+    /**
+     * Caches the given value for the given packed primitive arguments unless it is null
+     *
+     * @return value
+     */
+    public V putPacked(long key, V value) {
+        if (value != null) {
+            int hash = hash(key);
+            recordPut(segmentFor(hash).put(new Entry<V>(hash, key, null, value)));
+        }
+        return value;
+    }
+
+    /**
+     * @return the value cached for the given key, or null if there is none
+     */
+    public V get(Object key) {
+        key = key == null ? NULL_KEY : key;
+        int hash = hash(key.hashCode());
+        return recordLookup(segmentFor(hash).get(hash, 0, key));
+    }
+
+    /**
+     * Caches the given value for the given key unless it is null
+     *
+     * @return value
+     */
+    public V put(Object key, V value) {
+        if (value != null) {
+            key = key == null ? NULL_KEY : key;
+            int hash = hash(key.hashCode());
+            recordPut(segmentFor(hash).put(new Entry<V>(hash, 0, key, value)));
+        }
+        return value;
+    }
+
+    /**
+     * @return the value cached for the given arguments, or null if there is none
+     */
+    public V get(Object arg0, Object arg1) {
+        int hash = hash(Arguments.hashCode(arg0, arg1, null, 2));
+        return recordLookup(segmentFor(hash).get(hash, 2, arg0, arg1, null));
+    }
+
+    /**
+     * Caches the given value for the given arguments unless it is null
+     *
+     * @return value
+     */
+    public V put(Object arg0, Object arg1, V value) {
+        return put(new Arguments(new Object[] { arg0, arg1 }), value);
+    }
+
+    /**
+     * @return the value cached for the given arguments, or null if there is none
+     */
+    public V get(Object arg0, Object arg1, Object arg2) {
+        int hash = hash(Arguments.hashCode(arg0, arg1, arg2, 3));
+        return recordLookup(segmentFor(hash).get(hash, 3, arg0, arg1, arg2));
+    }
+
+    /**
+     * Caches the given value for the given arguments unless it is null
+     *
+     * @return value
+     */
+    public V put(Object arg0, Object arg1, Object arg2, V value) {
+        return put(new Arguments(new Object[] { arg0, arg1, arg2 }), value);
+    }
+
+    private V recordLookup(V value) {
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    private void recordPut(boolean evicted) {
+        if (evicted) {
+            evictions.increment();
+        }
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int hash(int h) {
+        return hash((long) h);
+    }
+
+    public Class<?> getTraitClass() {
+        return traitClass;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Eviction getEviction() {
+        return eviction;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Removes all cached values and resets the statistics
+     */
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCache[" + key(traitClass, method) + ", size=" + size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * The arguments of a method keyed by more than one object. Its hash code and equality match those of the
+     * argument lists passed directly to the lookup methods.
+     */
+    private static final class Arguments {
+        final Object[] values;
+
+        Arguments(Object[] values) {
+            this.values = values;
+        }
+
+        static int hashCode(Object arg0, Object arg1, Object arg2, int count) {
+            int result = 31 * (31 + Objects.hashCode(arg0)) + Objects.hashCode(arg1);
+            return count == 2 ? result : 31 * result + Objects.hashCode(arg2);
+        }
+
+        boolean matches(int count, Object arg0, Object arg1, Object arg2) {
+            return values.length == count && Objects.equals(values[0], arg0) && Objects.equals(values[1], arg1)
+                    && (count == 2 || Objects.equals(values[2], arg2));
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Arguments && Arrays.equals(values, ((Arguments) obj).values);
+        }
+    }
+
+    private static final class Entry<V> {
+        final int hash;
+        final long longKey;
+        final Object key;
+        volatile V value;
+        volatile Entry<V> nextInBucket;
+        // Updated without locking on hits, and read when choosing an entry to evict
+        boolean referenced;
+        int frequency;
+        // Only accessed with the segment locked
+        Entry<V> before;
+        Entry<V> after;
+
+        Entry(int hash, long longKey, Object key, V value) {
+            this.hash = hash;
+            this.longKey = longKey;
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean matches(int hash, long longKey, Object key) {
+            if (this.hash != hash) {
+                return false;
+            }
+            return key == null ? (this.key == null && this.longKey == longKey) : key.equals(this.key);
+        }
+
+        boolean matches(int hash, int count, Object arg0, Object arg1, Object arg2) {
+            return this.hash == hash && key instanceof Arguments && ((Arguments) key).matches(count, arg0, arg1, arg2);
+        }
+    }
+
+    /**
+     * A hash table whose entries are also kept in a queue, from the next one to consider for eviction to the most
+     * recently inserted one. Readers traverse the buckets without locking; writers lock the segment.
+     */
+    private static final class Segment<V> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final boolean lfu;
+        private final AtomicReferenceArray<Entry<V>> table;
+        private final Entry<V> head = new Entry<V>(0, 0, null, null); // head.after is the next to consider
+        private final int agingPeriod;
+        private volatile int size;
+        private int accessesSinceAging; // Counted without locking, so increments can be lost
+
+        Segment(int capacity, boolean lfu) {
+            this.capacity = capacity;
+            this.lfu = lfu;
+            int tableSize = Integer.highestOneBit(Math.max(capacity * 4 / 3, 1)) * 2;
+            this.table = new AtomicReferenceArray<Entry<V>>(tableSize);
+            this.agingPeriod = capacity * 10;
+            head.before = head;
+            head.after = head;
+        }
+
+        V get(int hash, long longKey, Object key) {
+            Entry<V> entry = table.get(hash & (table.length() - 1));
+            while (entry != null && !entry.matches(hash, longKey, key)) {
+                entry = entry.nextInBucket;
+            }
+            return entry != null ? recordAccess(entry) : null;
+        }
+
+        V get(int hash, int count, Object arg0, Object arg1, Object arg2) {
+            Entry<V> entry = table.get(hash & (table.length() - 1));
+            while (entry != null && !entry.matches(hash, count, arg0, arg1, arg2)) {
+                entry = entry.nextInBucket;
+            }
+            return entry != null ? recordAccess(entry) : null;
+        }
+
+        /**
+         * @return true if an entry was evicted
+         */
+        boolean put(Entry<V> newEntry) {
+            lock.lock();
+            try {
+                int bucket = newEntry.hash & (table.length() - 1);
+                for (Entry<V> entry = table.get(bucket); entry != null; entry = entry.nextInBucket) {
+                    if (entry.matches(newEntry.hash, newEntry.longKey, newEntry.key)) { // Computed concurrently
+                        entry.value = newEntry.value;
+                        recordAccess(entry);
+                        return false;
+                    }
+                }
+                if (lfu && accessesSinceAging >= agingPeriod) {
+                    accessesSinceAging = 0;
+                    for (Entry<V> e = head.after; e != head; e = e.after) {
+                        e.frequency >>>= 1;
+                    }
+                }
+                boolean evict = size >= capacity;
+                if (evict) { // Before inserting so that LFU never evicts the new entry
+                    remove(selectVictim());
+                }
+                newEntry.nextInBucket = table.get(bucket);
+                table.set(bucket, newEntry); // Publishes the entry to readers
+                linkLast(newEntry);
+                size++;
+                return evict;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                for (int i = 0; i < table.length(); i++) {
+                    table.set(i, null);
+                }
+                head.before = head;
+                head.after = head;
+                size = 0;
+                accessesSinceAging = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private V recordAccess(Entry<V> entry) {
+            entry.referenced = true;
+            if (lfu) {
+                if (entry.frequency < Integer.MAX_VALUE) {
+                    entry.frequency++;
+                }
+                accessesSinceAging++;
+            }
+            return entry.value;
+        }
+
+        private Entry<V> selectVictim() {
+            // Referenced entries get a second chance at the back of the queue, until one that isn't comes up
+            for (int i = 0; i < size && head.after.referenced; i++) {
+                Entry<V> entry = head.after;
+                entry.referenced = false;
+                unlink(entry);
+                linkLast(entry);
+            }
+            return lfu ? sampleLeastFrequentlyUsed() : head.after;
+        }
+
+        private Entry<V> sampleLeastFrequentlyUsed() {
+            Entry<V> victim = head.after;
+            Entry<V> candidate = victim.after;
+            for (int i = 1; i < LFU_SAMPLE_SIZE && candidate != head; i++) {
+                if (candidate.frequency < victim.frequency) {
+                    victim = candidate;
+                }
+                candidate = candidate.after;
+            }
+            return victim;
+        }
+
+        private void remove(Entry<V> entry) {
+            int bucket = entry.hash & (table.length() - 1);
+            Entry<V> prev = null;
+            for (Entry<V> e = table.get(bucket); e != null; prev = e, e = e.nextInBucket) {
+                if (e == entry) {
+                    if (prev == null) {
+                        table.set(bucket, e.nextInBucket);
+                    } else {
+                        prev.nextInBucket = e.nextInBucket;
+                    }
+                    break;
+                }
+            }
+            unlink(entry);
+            size--;
+        }
+
+        private void linkLast(Entry<V> entry) {
+            entry.before = head.before;
+            entry.after = head;
+            head.before.after = entry;
+            head.before = entry;
+        }
+
+        private void unlink(Entry<V> entry) {
+            entry.before.after = entry.after;
+            entry.after.before = entry.before;
+        }
+    }
+}
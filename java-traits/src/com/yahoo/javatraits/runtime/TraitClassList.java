@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class lists of the classes generated by the annotation processors, for use with class data sharing (AppCDS).
+ * Each compilation writes the generated interfaces, delegate wrappers and other trait classes to
+ * {@value #TRAITS_RESOURCE}, and the generated superclasses to {@value #HOSTS_RESOURCE}, in the format of
+ * -XX:SharedClassListFile.
+ *
+ * <br/><br/>
+ *
+ * The main method merges the lists from all jars on the classpath, optionally after the contents of existing
+ * class lists, into a single file:
+ * <pre>
+ * java -cp app.jar com.yahoo.javatraits.runtime.TraitClassList app.classlist [base.classlist ...]
+ * java -Xshare:dump -XX:SharedClassListFile=app.classlist -XX:SharedArchiveFile=app.jsa -cp app.jar
+ * </pre>
+ */
+public final class TraitClassList {
+
+    public static final String TRAITS_RESOURCE = "META-INF/javatraits/classlist-traits";
+    public static final String HOSTS_RESOURCE = "META-INF/javatraits/classlist-hosts";
+    public static final String HEADER = "# javatraits classlist 1";
+
+    private static final String COMMENT_PREFIX = "#";
+
+    private TraitClassList() {
+        // No instances
+    }
+
+    /**
+     * @return the internal (slash separated) name of the class with the given binary name, as used in class lists
+     */
+    public static String toInternalName(String binaryName) {
+        return binaryName.replace('.', '/');
+    }
+
+    /**
+     * @return the merged class lists visible to the given class loader, without duplicates
+     * @throws UncheckedIOException if a class list could not be read
+     */
+    public static List<String> load(ClassLoader classLoader) {
+        Set<String> result = new LinkedHashSet<String>();
+        try {
+            for (String resource : new String[] { TRAITS_RESOURCE, HOSTS_RESOURCE }) {
+                Enumeration<URL> urls = classLoader.getResources(resource);
+                while (urls.hasMoreElements()) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(urls.nextElement().openStream(),
+                            StandardCharsets.UTF_8));
+                    try {
+                        readClassNames(reader, result);
+                    } finally {
+                        reader.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ArrayList<String>(result);
+    }
+
+    /**
+     * Writes the contents of the given class lists, followed by the class lists visible to the given class loader,
+     * to the given file without duplicates
+     */
+    public static void merge(Path output, List<Path> existing, ClassLoader classLoader) throws IOException {
+        Set<String> result = new LinkedHashSet<String>();
+        for (Path path : existing) {
+            BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            try {
+                readClassNames(reader, result);
+            } finally {
+                reader.close();
+            }
+        }
+        result.addAll(load(classLoader));
+        List<String> lines = new ArrayList<String>();
+        lines.add(HEADER);
+        lines.addAll(result);
+        Files.write(output, lines, StandardCharsets.UTF_8);
+    }
+
+    private static void readClassNames(BufferedReader reader, Set<String> result) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith(COMMENT_PREFIX)) {
+                result.add(line);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TraitClassList <output file> [<existing class list> ...]");
+            System.exit(1);
+        }
+        List<Path> existing = new ArrayList<Path>();
+        for (int i = 1; i < args.length; i++) {
+            existing.add(Paths.get(args[i]));
+        }
+        merge(Paths.get(args[0]), existing, Thread.currentThread().getContextClassLoader());
+    }
+}
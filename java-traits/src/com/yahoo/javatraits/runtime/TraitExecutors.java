@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors used by the generated xxxAsync() variants of {@literal @}{@link com.yahoo.javatraits.annotations.Async}
+ * trait methods. Executors are looked up by the name given in the annotation, and can be registered at startup:
+ * <pre>
+ * TraitExecutors.register("io", Executors.newFixedThreadPool(32));
+ * </pre>
+ * Methods using the default (empty) name run on the default executor, which creates a new virtual thread per task when running on JDK 21 or later and otherwise uses a cached pool
+ * of daemon threads. The default can be replaced with {@link #setDefaultExecutor(Executor)}. Calling a method
+ * whose executor hasn't been registered throws an IllegalArgumentException, since a misspelled name would
+ * otherwise silently move its work onto the default executor.
+ */
+public final class TraitExecutors {
+
+    /**
+     * A trait method invocation, which unlike a Supplier may throw checked exceptions
+     */
+    public interface Task<R> {
+        R call() throws Exception;
+    }
+
+    private static final ConcurrentMap<String, Executor> EXECUTORS = new ConcurrentHashMap<String, Executor>();
+    private static volatile Executor defaultExecutor;
+
+    private TraitExecutors() {
+        // No instances
+    }
+
+    public static void register(String name, Executor executor) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Use setDefaultExecutor to replace the default executor");
+        }
+        EXECUTORS.put(name, executor);
+    }
+
+    public static Executor unregister(String name) {
+        return EXECUTORS.remove(name);
+    }
+
+    public static void setDefaultExecutor(Executor executor) {
+        defaultExecutor = executor;
+    }
+
+    /**
+     * @return the executor registered with the given name, or the default executor if the name is empty
+     * @throws IllegalArgumentException if no executor is registered with the given name
+     */
+    public static Executor executorFor(String name) {
+        if (name == null || name.isEmpty()) {
+            return getDefaultExecutor();
+        }
+        Executor executor = EXECUTORS.get(name);
+        if (executor == null) {
+            throw new IllegalArgumentException("No executor registered with name \"" + name + "\", see TraitExecutors.register");
+        }
+        return executor;
+    }
+
+    public static Executor getDefaultExecutor() {
+        Executor executor = defaultExecutor;
+        return executor != null ? executor : DefaultExecutorHolder.INSTANCE;
+    }
+
+    /**
+     * Called by generated code to run the given task on the named executor
+     *
+     * @throws IllegalArgumentException if no executor is registered with the given name
+     */
+    public static <R> CompletableFuture<R> submit(String executorName, final Task<R> task) {
+        final CompletableFuture<R> future = new CompletableFuture<R>();
+        Executor executor = executorFor(executorName);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.complete(task.call());
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (Throwable t) { // e.g. RejectedExecutionException
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+    private static final class DefaultExecutorHolder { // Created on first use
+        static final Executor INSTANCE = createDefaultExecutor();
+    }
+
+    private static Executor createDefaultExecutor() {
+        try {
+            Method virtualThreadExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreadExecutor.invoke(null);
+        } catch (Exception e) { // Before JDK 21
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "trait-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the traits and the classes using them, written by the annotation processors at compile time.
+ * Frameworks can use it to discover traits and their hosts without scanning the classpath:
+ * <pre>
+ * for (Class&lt;?&gt; host : TraitIndex.getDefault().getHostClasses(Rectangular.class)) {
+ *     ...
+ * }
+ * </pre>
+ * Each compilation writes two resources, {@value #TRAITS_RESOURCE} and {@value #HOSTS_RESOURCE}. The first line
+ * of each names the format version, and each following line describes one trait (name, generated interface
+ * and generated delegate) or one host class (name, generated superclass and the traits it uses), separated
+ * by spaces. Classes with injected traits have no generated superclass, which is written as {@value #NO_CLASS}.
+ * Indexes from all jars visible to a class loader are merged. Classes are identified by their binary names, and
+ * are only loaded when requested through one of the Class-based methods.
+ */
+public final class TraitIndex {
+
+    public static final String TRAITS_RESOURCE = "META-INF/javatraits/traits";
+    public static final String HOSTS_RESOURCE = "META-INF/javatraits/hosts";
+    public static final String FORMAT_HEADER = "javatraits-index";
+    public static final int FORMAT_VERSION = 1;
+    public static final String NO_CLASS = "-";
+
+    private static final class DefaultHolder { // Loaded on first use
+        static final TraitIndex INSTANCE = load(TraitIndex.class.getClassLoader());
+    }
+
+    private final ClassLoader classLoader;
+    private final Map<String, String[]> traits = new LinkedHashMap<String, String[]>();
+    private final Map<String, String> interfaceTraits = new LinkedHashMap<String, String>();
+    private final Map<String, String> hostSuperclasses = new LinkedHashMap<String, String>();
+    private final Map<String, List<String>> hostTraits = new LinkedHashMap<String, List<String>>();
+    private final Map<String, Set<String>> traitHosts = new LinkedHashMap<String, Set<String>>();
+
+    private TraitIndex(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return the index visible to the class loader that loaded the java-traits runtime
+     */
+    public static TraitIndex getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Reads and merges all the indexes visible to the given class loader
+     *
+     * @throws UncheckedIOException if an index could not be read
+     * @throws IllegalStateException if an index uses an unknown format version
+     */
+    public static TraitIndex load(ClassLoader classLoader) {
+        TraitIndex index = new TraitIndex(classLoader);
+        try {
+            for (String[] fields : readEntries(classLoader, TRAITS_RESOURCE)) {
+                index.traits.put(fields[0], new String[] { fields[1], fields[2] });
+                index.interfaceTraits.put(fields[1], fields[0]);
+            }
+            for (String[] fields : readEntries(classLoader, HOSTS_RESOURCE)) {
+                List<String> hostTraitNames = new ArrayList<String>();
+                for (int i = 2; i < fields.length; i++) {
+                    hostTraitNames.add(fields[i]);
+                    Set<String> hosts = index.traitHosts.get(fields[i]);
+                    if (hosts == null) {
+                        hosts = new LinkedHashSet<String>();
+                        index.traitHosts.put(fields[i], hosts);
+                    }
+                    hosts.add(fields[0]);
+                }
+                index.hostSuperclasses.put(fields[0], NO_CLASS.equals(fields[1]) ? null : fields[1]);
+                index.hostTraits.put(fields[0], Collections.unmodifiableList(hostTraitNames));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return index;
+    }
+
+    private static List<String[]> readEntries(ClassLoader classLoader, String resource) throws IOException {
+        List<String[]> result = new ArrayList<String[]>();
+        Enumeration<URL> urls = classLoader.getResources(resource);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8));
+            try {
+                String header = reader.readLine();
+                if (header == null || !header.equals(FORMAT_HEADER + " " + FORMAT_VERSION)) {
+                    throw new IllegalStateException("Unsupported trait index format in " + url + ": " + header);
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        result.add(line.split(" "));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the binary names of all indexed traits
+     */
+    public Set<String> getTraitNames() {
+        return Collections.unmodifiableSet(traits.keySet());
+    }
+
+    /**
+     * @return the binary names of all indexed classes using traits
+     */
+    public Set<String> getHostNames() {
+        return Collections.unmodifiableSet(hostTraits.keySet());
+    }
+
+    /**
+     * @return the binary name of the interface generated for the given trait, or null if it isn't indexed
+     */
+    public String getInterfaceName(String traitName) {
+        String[] generated = traits.get(traitName);
+        return generated != null ? generated[0] : null;
+    }
+
+    /**
+     * @return the binary name of the trait the given interface was generated for, or null if it isn't indexed
+     */
+    public String getTraitNameOfInterface(String interfaceName) {
+        return interfaceTraits.get(interfaceName);
+    }
+
+    /**
+     * @return the binary name of the delegate wrapper generated for the given trait, or null if it isn't indexed
+     */
+    public String getDelegateName(String traitName) {
+        String[] generated = traits.get(traitName);
+        return generated != null ? generated[1] : null;
+    }
+
+    /**
+     * @return the binary name of the superclass generated for the given host class, or null if it isn't indexed or
+     * uses injected traits
+     */
+    public String getGeneratedSuperclassName(String hostName) {
+        return hostSuperclasses.get(hostName);
+    }
+
+    /**
+     * @return the binary names of the traits used by the given host class, in declaration order
+     */
+    public List<String> getTraitNames(String hostName) {
+        List<String> result = hostTraits.get(hostName);
+        return result != null ? result : Collections.<String>emptyList();
+    }
+
+    /**
+     * @return the binary names of the indexed classes using the given trait
+     */
+    public Set<String> getHostNames(String traitName) {
+        Set<String> result = traitHosts.get(traitName);
+        return result != null ? Collections.unmodifiableSet(result) : Collections.<String>emptySet();
+    }
+
+    /**
+     * @return the indexed classes using the given trait
+     * @throws IllegalStateException if an indexed class can't be loaded
+     */
+    public List<Class<?>> getHostClasses(Class<?> trait) {
+        List<Class<?>> result = new ArrayList<Class<?>>();
+        for (String hostName : getHostNames(trait.getName())) {
+            result.add(loadClass(hostName));
+        }
+        return result;
+    }
+
+    /**
+     * @return the traits used by the given class, or an empty list if it isn't indexed
+     * @throws IllegalStateException if an indexed trait can't be loaded
+     */
+    public List<Class<?>> getTraits(Class<?> host) {
+        List<Class<?>> result = new ArrayList<Class<?>>();
+        for (String traitName : getTraitNames(host.getName())) {
+            result.add(loadClass(traitName));
+        }
+        return result;
+    }
+
+    private Class<?> loadClass(String name) {
+        try {
+            return Class.forName(name, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Indexed class " + name + " not found", e);
+        }
+    }
+}
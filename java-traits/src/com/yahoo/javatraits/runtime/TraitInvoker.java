@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Invokes the methods of a trait interface by id, for callers like RPC or scripting layers that only know the
+ * method to call at runtime. The processor generates an invoker named &lt;TraitName&gt;Invoker for each trait
+ * annotated with {@literal @}{@link com.yahoo.javatraits.annotations.Invoker}, which calls the typed interface
+ * method for each id from a switch statement, so calls don't go through {@link java.lang.reflect.Method#invoke}:
+ * <pre>
+ * TraitInvoker&lt;ICounting&gt; invoker = TraitInvoker.forTrait(Counting.class);
+ * int id = invoker.getMethodId("setCount(long)"); // Once, e.g. when binding a request handler
+ * invoker.invoke(counter, id, 42L);
+ * </pre>
+ * Methods are identified by their signature, i.e. their name followed by the erased types of their arguments.
+ * Methods returning void return null, and exceptions thrown by the method are thrown as is.
+ */
+public abstract class TraitInvoker<T> {
+
+    private static final String INVOKER_SUFFIX = "Invoker";
+    private static final String INSTANCE_FIELD = "INSTANCE";
+
+    private static final ClassValue<TraitInvoker<?>> INVOKERS = new ClassValue<TraitInvoker<?>>() {
+        @Override
+        protected TraitInvoker<?> computeValue(Class<?> trait) {
+            try {
+                Class<?> invokerClass = Class.forName(trait.getName() + INVOKER_SUFFIX, true, trait.getClassLoader());
+                return (TraitInvoker<?>) invokerClass.getField(INSTANCE_FIELD).get(null);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException(trait.getName() + " is not a trait annotated with @Invoker", e);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Couldn't load the invoker of " + trait.getName(), e);
+            }
+        }
+    };
+
+    private final Class<T> interfaceClass;
+    private final String[] signatures;
+    private final int[] argumentCounts;
+    private final Map<String, Integer> methodIds;
+
+    protected TraitInvoker(Class<T> interfaceClass, String... signatures) {
+        this.interfaceClass = interfaceClass;
+        this.signatures = signatures;
+        this.argumentCounts = new int[signatures.length];
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        for (int i = 0; i < signatures.length; i++) {
+            ids.put(signatures[i], i);
+            String arguments = signatures[i].substring(signatures[i].indexOf('(') + 1, signatures[i].length() - 1);
+            argumentCounts[i] = arguments.isEmpty() ? 0 : arguments.split(",").length;
+        }
+        this.methodIds = Collections.unmodifiableMap(ids);
+    }
+
+    /**
+     * @return the invoker generated for the given trait
+     * @throws IllegalArgumentException if the trait isn't annotated with {@literal @}Invoker
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TraitInvoker<T> forTrait(Class<?> trait) {
+        return (TraitInvoker<T>) INVOKERS.get(trait);
+    }
+
+    /**
+     * @return the generated interface whose methods this invoker calls
+     */
+    public Class<T> getInterfaceClass() {
+        return interfaceClass;
+    }
+
+    /**
+     * @return the number of methods, whose ids range from 0 to this number - 1
+     */
+    public int getMethodCount() {
+        return signatures.length;
+    }
+
+    /**
+     * @return the signature of the method with the given id, e.g. "setCount(long)"
+     */
+    public String getSignature(int methodId) {
+        return signatures[methodId];
+    }
+
+    /**
+     * @return the id of the method with the given signature, e.g. "setCount(long)", or -1 if there is none
+     */
+    public int getMethodId(String signature) {
+        Integer id = methodIds.get(signature);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @return the id of the only method with the given name and number of arguments, or -1 if there is none
+     * @throws IllegalArgumentException if the method is overloaded with the same number of arguments
+     */
+    public int getMethodId(String name, int argumentCount) {
+        int result = -1;
+        for (int i = 0; i < signatures.length; i++) {
+            if (argumentCounts[i] == argumentCount && signatures[i].startsWith(name + "(")) {
+                if (result >= 0) {
+                    throw new IllegalArgumentException("Method " + name + " of " + interfaceClass.getName() + " is overloaded with "
+                            + argumentCount + " arguments");
+                }
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calls the method with the given id on the given target
+     *
+     * @return the value returned by the method, boxed if primitive, or null if it returns void
+     * @throws IllegalArgumentException if there is no method with the given id or it takes a different number of arguments
+     * @throws ClassCastException if an argument has the wrong type
+     * @throws Exception any exception thrown by the method
+     */
+    public abstract Object invoke(T target, int methodId, Object... args) throws Exception;
+
+    protected final IllegalArgumentException noSuchMethod(int methodId) {
+        return new IllegalArgumentException("No method with id " + methodId + " in " + interfaceClass.getName());
+    }
+
+    protected final IllegalArgumentException wrongArgumentCount(int methodId, int argumentCount) {
+        return new IllegalArgumentException(signatures[methodId] + " called with " + argumentCount + " arguments");
+    }
+}
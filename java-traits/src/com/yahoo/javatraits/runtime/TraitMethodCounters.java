@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counters and timers for the instrumented methods of one trait, as used by one
+ * class with traits. Instances are obtained from {@link TraitMetrics#countersFor(Class, String...)}
+ * by generated code; methods are identified by their index in the list of method signatures
+ * passed when the counters were created.
+ */
+public final class TraitMethodCounters {
+
+    private final Class<?> hostClass;
+    private final Class<?> traitClass;
+    private final String[] methodSignatures;
+    private final LongAdder[] calls;
+    private final LongAdder[] nanos;
+
+    TraitMethodCounters(Class<?> hostClass, Class<?> traitClass, String[] methodSignatures) {
+        this.hostClass = hostClass;
+        this.traitClass = traitClass;
+        this.methodSignatures = methodSignatures.clone();
+        this.calls = new LongAdder[methodSignatures.length];
+        this.nanos = new LongAdder[methodSignatures.length];
+        for (int i = 0; i < methodSignatures.length; i++) {
+            calls[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a call to the method with the given index
+     */
+    public void increment(int method) {
+        calls[method].increment();
+    }
+
+    /**
+     * Records a call to the method with the given index that started at the given
+     * {@link System#nanoTime()} and has just finished
+     */
+    public void record(int method, long startNanos) {
+        calls[method].increment();
+        nanos[method].add(System.nanoTime() - startNanos);
+    }
+
+    public Class<?> getHostClass() {
+        return hostClass;
+    }
+
+    public Class<?> getTraitClass() {
+        return traitClass;
+    }
+
+    /**
+     * @param method an erased method signature, or a method name if it isn't overloaded
+     */
+    int indexOf(String method) {
+        boolean isSignature = method.indexOf('(') >= 0;
+        int result = -1;
+        for (int i = 0; i < methodSignatures.length; i++) {
+            String signature = methodSignatures[i];
+            if (isSignature ? signature.equals(method)
+                    : signature.length() > method.length() && signature.startsWith(method) && signature.charAt(method.length()) == '(') {
+                if (result >= 0) {
+                    throw new IllegalArgumentException(method + " is overloaded in " + traitClass.getName()
+                            + ", use its signature, e.g. " + methodSignatures[result]);
+                }
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    int getNumMethods() {
+        return methodSignatures.length;
+    }
+
+    String getMethodSignature(int method) {
+        return methodSignatures[method];
+    }
+
+    long getCallCount(int method) {
+        return calls[method].sum();
+    }
+
+    long getTotalNanos(int method) {
+        return nanos[method].sum();
+    }
+
+    void reset() {
+        for (int i = 0; i < methodSignatures.length; i++) {
+            calls[i].reset();
+            nanos[i].reset();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the call counters generated for trait methods annotated with
+ * {@literal @}{@link com.yahoo.javatraits.annotations.Instrumented}. Counters are kept
+ * separately for each class with traits, and each method is identified by its erased signature,
+ * or by its name if the trait has no other instrumented method with that name, e.g.
+ * <pre>
+ * long areaCalls = TraitMetrics.getCallCount(FootballField.class, Rectangular.class, "getArea()");
+ * </pre>
+ * The same values are exposed through a {@link TraitMetricsMXBean} registered as {@link #OBJECT_NAME}.
+ * Metrics are disabled unless the system property {@link #ENABLED_PROPERTY} is set to "true" at startup.
+ */
+public final class TraitMetrics {
+
+    /**
+     * System property that must be set to "true" to enable trait metrics
+     */
+    public static final String ENABLED_PROPERTY = "javatraits.metrics";
+
+    public static final String OBJECT_NAME = "com.yahoo.javatraits:type=TraitMetrics";
+
+    private static final ConcurrentMap<String, TraitMethodCounters> COUNTERS = new ConcurrentHashMap<String, TraitMethodCounters>();
+    private static final AtomicBoolean MBEAN_REGISTERED = new AtomicBoolean(false);
+
+    private TraitMetrics() {
+        // No instances
+    }
+
+    /**
+     * Generated code stores the result of this method in a static final field, so the
+     * value is read once per trait delegate class
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Called by generated code, once per trait delegate class, to obtain the counters of each class using the trait.
+     * The counters for a class are created and registered the first time they are requested.
+     *
+     * @param methodSignatures the erased signatures of the instrumented methods, e.g. "resize(int,int)"
+     */
+    public static ClassValue<TraitMethodCounters> countersFor(final Class<?> traitClass, final String... methodSignatures) {
+        return new ClassValue<TraitMethodCounters>() {
+            @Override
+            protected TraitMethodCounters computeValue(Class<?> hostClass) {
+                String key = key(hostClass, traitClass);
+                TraitMethodCounters counters = COUNTERS.get(key);
+                if (counters == null) {
+                    TraitMethodCounters newCounters = new TraitMethodCounters(hostClass, traitClass, methodSignatures);
+                    counters = COUNTERS.putIfAbsent(key, newCounters);
+                    if (counters == null) {
+                        counters = newCounters;
+                    }
+                    registerMBean();
+                }
+                return counters;
+            }
+        };
+    }
+
+    /**
+     * @param method the erased signature of the method, e.g. "resize(int,int)", or its name if it isn't overloaded
+     * @return the number of calls to the given trait method made through instances of the given class,
+     * or 0 if the method is not instrumented
+     * @throws IllegalArgumentException if a name is given for an overloaded method
+     */
+    public static long getCallCount(Class<?> hostClass, Class<?> traitClass, String method) {
+        TraitMethodCounters counters = COUNTERS.get(key(hostClass, traitClass));
+        int index = counters != null ? counters.indexOf(method) : -1;
+        return index >= 0 ? counters.getCallCount(index) : 0;
+    }
+
+    /**
+     * @param method the erased signature of the method, e.g. "resize(int,int)", or its name if it isn't overloaded
+     * @return the total time in nanoseconds spent in calls to the given trait method made through instances
+     * of the given class, or 0 if the method is not timed
+     * @throws IllegalArgumentException if a name is given for an overloaded method
+     */
+    public static long getTotalNanos(Class<?> hostClass, Class<?> traitClass, String method) {
+        TraitMethodCounters counters = COUNTERS.get(key(hostClass, traitClass));
+        int index = counters != null ? counters.indexOf(method) : -1;
+        return index >= 0 ? counters.getTotalNanos(index) : 0;
+    }
+
+    /**
+     * @return the counters for all classes with instrumented traits that have been instantiated so far
+     */
+    public static List<TraitMethodCounters> getAllCounters() {
+        return new ArrayList<TraitMethodCounters>(COUNTERS.values());
+    }
+
+    /**
+     * Resets all counters to zero
+     */
+    public static void reset() {
+        for (TraitMethodCounters counters : COUNTERS.values()) {
+            counters.reset();
+        }
+    }
+
+    static Map<String, Long> snapshot(boolean nanos) {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (TraitMethodCounters counters : COUNTERS.values()) {
+            String prefix = key(counters.getHostClass(), counters.getTraitClass()) + ".";
+            for (int i = 0; i < counters.getNumMethods(); i++) {
+                result.put(prefix + counters.getMethodSignature(i), nanos ? counters.getTotalNanos(i) : counters.getCallCount(i));
+            }
+        }
+        return result;
+    }
+
+    private static String key(Class<?> hostClass, Class<?> traitClass) {
+        return hostClass.getName() + "#" + traitClass.getName();
+    }
+
+    private static void registerMBean() {
+        if (MBEAN_REGISTERED.compareAndSet(false, true)) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new TraitMetricsMXBean() {
+                    @Override
+                    public Map<String, Long> getCallCounts() {
+                        return snapshot(false);
+                    }
+
+                    @Override
+                    public Map<String, Long> getTotalNanos() {
+                        return snapshot(true);
+                    }
+
+                    @Override
+                    public void reset() {
+                        TraitMetrics.reset();
+                    }
+                }, new ObjectName(OBJECT_NAME));
+            } catch (Throwable t) {
+                // JMX may be unavailable (e.g. on Android) or the name may already be registered
+                // by another class loader; the static API still works in either case
+            }
+        }
+    }
+}
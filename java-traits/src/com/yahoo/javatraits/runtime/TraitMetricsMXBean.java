@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.util.Map;
+
+/**
+ * Management interface for {@link TraitMetrics}, registered with the platform MBean server
+ * under {@link TraitMetrics#OBJECT_NAME}. Map keys have the form "HostClass#TraitClass.method(ParameterTypes)".
+ */
+public interface TraitMetricsMXBean {
+
+    Map<String, Long> getCallCounts();
+
+    Map<String, Long> getTotalNanos();
+
+    void reset();
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies traits to objects at runtime. The mixer spins up one class per target class and combination of traits,
+ * which implements the generated interfaces of the traits and forwards each method with a direct call, so mixed
+ * objects don't pay for reflection or boxing like java.lang.reflect.Proxy instances do:
+ * <pre>
+ * TraitMixer mixer = new TraitMixer(MethodHandles.lookup());
+ * IRectangular rect = (IRectangular) mixer.mix(new Dimensions(3, 4), Rectangular.class);
+ * </pre>
+ * Concrete trait methods run the trait's implementation, through the same generated delegate wrappers as classes
+ * using {@literal @}HasTraits, and the abstract trait methods are forwarded to the public methods of the target object
+ * with the same signatures. A target method can also take subtypes of the erased parameter types, like accept(Integer)
+ * for accept(T) of a Consuming&lt;Integer&gt; trait, in which case the arguments are cast as in a bridge method.
+ * If several traits implement the same method, the first one listed wins.
+ *
+ * <br/><br/>
+ *
+ * The classes are defined as hidden classes in the package of the given lookup, which must have full privilege
+ * access, so they can be unloaded along with the lookup's class loader. On JDKs older than 15 they are defined as
+ * ordinary classes instead. The target class, the traits and their generated classes must all be accessible from
+ * the lookup class.
+ */
+public final class TraitMixer {
+
+    private static final String CLASS_NAME_PREFIX = "TraitMixin$";
+    private static final String TARGET_FIELD = "target";
+    private static final String WRAPPER_FIELD_PREFIX = "wrapper";
+    private static final String DELEGATE_SUFFIX = "DelegateWrapper";
+    private static final String GET_THIS = "getThis";
+
+    private static final Map<String, String> WRAPPER_PREFIXES = new LinkedHashMap<String, String>();
+    static {
+        WRAPPER_PREFIXES.put("default__", "");
+        WRAPPER_PREFIXES.put("invalidate__", "invalidate");
+        WRAPPER_PREFIXES.put("batched__", "Batched");
+        WRAPPER_PREFIXES.put("async__", "Async");
+    }
+
+    private static final AtomicLong CLASS_COUNTER = new AtomicLong();
+    private static final Method DEFINE_HIDDEN_CLASS;
+    private static final Object NO_CLASS_OPTIONS;
+    static {
+        Method defineHiddenClass = null;
+        Object noClassOptions = null;
+        try { // Java 15+
+            Class<?> classOption = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            noClassOptions = Array.newInstance(classOption, 0);
+            defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class,
+                    noClassOptions.getClass());
+        } catch (Exception e) {
+            // Fall back to Lookup.defineClass
+        }
+        DEFINE_HIDDEN_CLASS = defineHiddenClass;
+        NO_CLASS_OPTIONS = noClassOptions;
+    }
+
+    private final MethodHandles.Lookup lookup;
+    private final ClassValue<ConcurrentMap<List<Class<?>>, MixedClass>> mixedClasses =
+            new ClassValue<ConcurrentMap<List<Class<?>>, MixedClass>>() {
+        @Override
+        protected ConcurrentMap<List<Class<?>>, MixedClass> computeValue(Class<?> targetClass) {
+            return new ConcurrentHashMap<List<Class<?>>, MixedClass>();
+        }
+    };
+
+    private static final class MixedClass {
+        final Class<?> cls;
+        final MethodHandle constructor; // (Object)Object
+
+        MixedClass(Class<?> cls, MethodHandle constructor) {
+            this.cls = cls;
+            this.constructor = constructor;
+        }
+    }
+
+    /**
+     * @param lookup a lookup with full privilege access, usually MethodHandles.lookup() in the calling class
+     */
+    public TraitMixer(MethodHandles.Lookup lookup) {
+        if ((lookup.lookupModes() & MethodHandles.Lookup.PRIVATE) == 0) {
+            throw new IllegalArgumentException("TraitMixer requires a lookup with private access");
+        }
+        this.lookup = lookup;
+    }
+
+    /**
+     * @return a new object implementing the interfaces generated for the given traits, whose abstract trait methods
+     * are forwarded to the given target
+     * @throws IllegalArgumentException if a class isn't a trait or the target doesn't implement an abstract trait method
+     */
+    public Object mix(Object target, Class<?>... traits) {
+        MethodHandle constructor = getOrDefineMixedClass(target.getClass(), traits).constructor;
+        try {
+            return (Object) constructor.invokeExact(target);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * @return the class used for objects mixing the given traits into instances of the given target class
+     * @throws IllegalArgumentException if a class isn't a trait or the target doesn't implement an abstract trait method
+     */
+    public Class<?> getMixedClass(Class<?> targetClass, Class<?>... traits) {
+        return getOrDefineMixedClass(targetClass, traits).cls;
+    }
+
+    private MixedClass getOrDefineMixedClass(Class<?> targetClass, Class<?>... traits) {
+        List<Class<?>> key = Arrays.asList(traits.clone());
+        ConcurrentMap<List<Class<?>>, MixedClass> cache = mixedClasses.get(targetClass);
+        MixedClass mixedClass = cache.get(key);
+        if (mixedClass == null) {
+            mixedClass = defineMixedClass(targetClass, key);
+            MixedClass existing = cache.putIfAbsent(key, mixedClass);
+            if (existing != null) {
+                mixedClass = existing;
+            }
+        }
+        return mixedClass;
+    }
+
+    private MixedClass defineMixedClass(Class<?> targetClass, List<Class<?>> traits) {
+        try {
+            lookup.accessClass(targetClass);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Target class " + targetClass.getName() + " is not accessible from "
+                    + lookup.lookupClass().getName(), e);
+        }
+
+        String packagePrefix = lookup.lookupClass().getPackageName().replace('.', '/');
+        String className = (packagePrefix.isEmpty() ? "" : packagePrefix + "/") + CLASS_NAME_PREFIX + CLASS_COUNTER.incrementAndGet();
+        MixinClassWriter writer = new MixinClassWriter(className);
+        writer.addField(TARGET_FIELD, targetClass);
+
+        List<String> wrapperFields = new ArrayList<String>();
+        List<Class<?>> wrapperTypes = new ArrayList<Class<?>>();
+        List<Class<?>> wrapperArgTypes = new ArrayList<Class<?>>();
+        Map<String, Method> interfaceMethods = new LinkedHashMap<String, Method>();
+        Map<String, Integer> wrapperMethodOwners = new LinkedHashMap<String, Integer>();
+        Map<String, Method> wrapperMethods = new LinkedHashMap<String, Method>();
+        for (Class<?> trait : traits) {
+            Class<?> iface = Traits.interfaceOf(trait);
+            Class<?> wrapper = getDelegateWrapper(trait);
+            Constructor<?>[] wrapperConstructors = wrapper.getConstructors();
+            if (wrapperConstructors.length != 1 || wrapperConstructors[0].getParameterTypes().length != 1) {
+                throw new IllegalArgumentException("Unexpected constructors in " + wrapper.getName());
+            }
+            writer.addInterface(iface);
+            String field = WRAPPER_FIELD_PREFIX + wrapperFields.size();
+            writer.addField(field, wrapper);
+            wrapperFields.add(field);
+            wrapperTypes.add(wrapper);
+            wrapperArgTypes.add(wrapperConstructors[0].getParameterTypes()[0]);
+
+            for (Method method : iface.getMethods()) {
+                if (!method.isDefault() && !Modifier.isStatic(method.getModifiers())) {
+                    String signature = method.getName() + MixinClassWriter.methodDescriptor(method);
+                    if (!interfaceMethods.containsKey(signature)) {
+                        interfaceMethods.put(signature, method);
+                    }
+                }
+            }
+            for (Method method : wrapper.getDeclaredMethods()) {
+                String implemented = getImplementedMethodName(method);
+                if (implemented != null && Modifier.isPublic(method.getModifiers())) {
+                    String signature = implemented + MixinClassWriter.methodDescriptor(method);
+                    if (!wrapperMethods.containsKey(signature)) {
+                        wrapperMethods.put(signature, method);
+                        wrapperMethodOwners.put(signature, wrapperTypes.size() - 1);
+                    }
+                }
+            }
+        }
+        writer.addConstructor(TARGET_FIELD, targetClass, wrapperFields, wrapperTypes, wrapperArgTypes);
+
+        for (Map.Entry<String, Method> entry : interfaceMethods.entrySet()) {
+            Method method = entry.getValue();
+            Method wrapperMethod = wrapperMethods.get(entry.getKey());
+            if (wrapperMethod != null) {
+                int owner = wrapperMethodOwners.get(entry.getKey());
+                writer.addForwarder(method, wrapperFields.get(owner), wrapperTypes.get(owner), wrapperMethod);
+            } else if (GET_THIS.equals(method.getName()) && method.getParameterTypes().length == 0
+                    && method.getReturnType().isAssignableFrom(method.getDeclaringClass())) {
+                writer.addReturnThis(method);
+            } else {
+                writer.addForwarder(method, TARGET_FIELD, targetClass, getTargetMethod(targetClass, method));
+            }
+        }
+
+        try {
+            Class<?> mixedClass = defineClass(writer.toByteArray());
+            MethodHandle constructor = lookup.in(mixedClass).findConstructor(mixedClass, MethodType.methodType(void.class, targetClass));
+            return new MixedClass(mixedClass, constructor.asType(MethodType.methodType(Object.class, Object.class)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not define class mixing " + traits + " into " + targetClass.getName(), e);
+        }
+    }
+
+    private Class<?> defineClass(byte[] bytes) throws ReflectiveOperationException {
+        if (DEFINE_HIDDEN_CLASS == null) {
+            return lookup.defineClass(bytes);
+        }
+        try {
+            MethodHandles.Lookup hiddenLookup = (MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(lookup, bytes, true, NO_CLASS_OPTIONS);
+            return hiddenLookup.lookupClass();
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Class<?> getDelegateWrapper(Class<?> trait) {
+        String wrapperName = TraitIndex.getDefault().getDelegateName(trait.getName());
+        if (wrapperName == null) {
+            wrapperName = trait.getName() + DELEGATE_SUFFIX;
+        }
+        try {
+            return Class.forName(wrapperName, false, trait.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException(trait.getName() + " is not a trait", e);
+        }
+    }
+
+    /**
+     * @return the name of the interface method the given generated delegate wrapper method implements, or null if it
+     * doesn't implement one
+     */
+    private static String getImplementedMethodName(Method wrapperMethod) {
+        String name = wrapperMethod.getName();
+        for (Map.Entry<String, String> prefix : WRAPPER_PREFIXES.entrySet()) {
+            if (name.startsWith(prefix.getKey())) {
+                String method = name.substring(prefix.getKey().length());
+                if (prefix.getValue().isEmpty()) {
+                    return method;
+                } else if (Character.isUpperCase(prefix.getValue().charAt(0))) {
+                    return method + prefix.getValue();
+                } else {
+                    return prefix.getValue() + Character.toUpperCase(method.charAt(0)) + method.substring(1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Method getTargetMethod(Class<?> targetClass, Method method) {
+        Method target;
+        try {
+            target = targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            target = getNarrowerTargetMethod(targetClass, method);
+            if (target == null) {
+                throw new IllegalArgumentException(targetClass.getName() + " doesn't implement " + method, e);
+            }
+        }
+        Class<?> expected = method.getReturnType();
+        Class<?> actual = target.getReturnType();
+        if (expected.isPrimitive() ? expected != actual : !expected.isAssignableFrom(actual)) {
+            throw new IllegalArgumentException(target + " doesn't return " + expected.getName());
+        }
+        return target;
+    }
+
+    /**
+     * @return the public method of the target class that implements the given interface method for the arguments of
+     * its type parameters, e.g. accept(Integer) for accept(T), or null if there is none
+     * @throws IllegalArgumentException if more than one method matches
+     */
+    private static Method getNarrowerTargetMethod(Class<?> targetClass, Method method) {
+        Method result = null;
+        for (Method candidate : targetClass.getMethods()) {
+            if (candidate.getName().equals(method.getName()) && !candidate.isBridge()
+                    && !Modifier.isStatic(candidate.getModifiers())
+                    && isNarrowing(method.getParameterTypes(), candidate.getParameterTypes())) {
+                if (result != null) {
+                    throw new IllegalArgumentException(targetClass.getName() + " has more than one method implementing "
+                            + method + ": " + result + " and " + candidate);
+                }
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isNarrowing(Class<?>[] types, Class<?>[] narrowerTypes) {
+        if (types.length != narrowerTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].isPrimitive() ? types[i] != narrowerTypes[i] : !types[i].isAssignableFrom(narrowerTypes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free pool of {@link Poolable} instances. The code generator writes a subclass for each poolable class
+ * with a no-argument constructor, e.g. "MyClassPool" for "MyClass".
+ *
+ * <br/><br/>
+ *
+ * The pool is split into stripes, and each thread starts at the stripe its id maps to, so threads acquiring and
+ * releasing instances at high rates rarely contend for the same slots. Each slot is claimed with a single compare and
+ * set. When the thread's own stripe is empty (or full, when releasing), only the next {@link #NEIGHBOUR_STRIPES}
+ * stripes are searched, so a miss costs a bounded number of reads however many stripes there are. Threads whose
+ * stripes are close share instances; an instance released out of the reach of a thread isn't found by it, and
+ * {@link #acquire()} then creates a new one. Instances are reset when they are released; when the searched stripes
+ * are full the instance is dropped. An instance must not be used after it has been released, and must not be
+ * released twice.
+ *
+ * <br/><br/>
+ *
+ * The slots of all stripes are allocated with the pool: twice the number of processors, rounded up to a power of
+ * two, times the capacity per stripe. With 16 processors and the default capacity that's 512 references, about 2 KB
+ * with compressed references, and up to 512 idle instances kept reachable by the pool.
+ */
+public abstract class TraitPool<T extends Poolable> {
+
+    public static final int DEFAULT_CAPACITY_PER_STRIPE = 16;
+
+    /**
+     * The number of stripes after its own that a thread searches when its own stripe is empty or full
+     */
+    public static final int NEIGHBOUR_STRIPES = 3;
+
+    private static final int STRIPES = stripeCount();
+
+    private final AtomicReferenceArray<T> slots;
+    private final int capacityPerStripe;
+    private final int probedSlots;
+
+    private final LongAdder created = new LongAdder();
+
+    protected TraitPool() {
+        this(DEFAULT_CAPACITY_PER_STRIPE);
+    }
+
+    protected TraitPool(int capacityPerStripe) {
+        if (capacityPerStripe <= 0) {
+            throw new IllegalArgumentException("capacityPerStripe must be positive");
+        }
+        this.capacityPerStripe = capacityPerStripe;
+        this.slots = new AtomicReferenceArray<T>(STRIPES * capacityPerStripe);
+        this.probedSlots = Math.min(STRIPES, NEIGHBOUR_STRIPES + 1) * capacityPerStripe;
+    }
+
+    private static int stripeCount() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, processors * 2 - 1)) << 1; // Next power of two >= 2 * processors
+    }
+
+    /**
+     * @return a new instance of the pooled class
+     */
+    protected abstract T create();
+
+    /**
+     * @return a pooled instance, or a new one if the stripes searched by this thread are empty
+     */
+    public T acquire() {
+        int start = stripeStart();
+        int length = slots.length();
+        for (int n = 0, i = start; n < probedSlots; n++, i = i + 1 < length ? i + 1 : 0) {
+            T instance = slots.get(i);
+            if (instance != null && slots.compareAndSet(i, instance, null)) {
+                return instance;
+            }
+        }
+        created.increment();
+        return create();
+    }
+
+    /**
+     * Resets the given instance and returns it to the pool
+     */
+    public void release(T instance) {
+        if (instance == null) {
+            throw new IllegalArgumentException("Can't release null");
+        }
+        instance.reset();
+        int start = stripeStart();
+        int length = slots.length();
+        for (int n = 0, i = start; n < probedSlots; n++, i = i + 1 < length ? i + 1 : 0) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, instance)) {
+                return;
+            }
+        }
+        // Searched stripes full, let the instance be collected
+    }
+
+    /**
+     * @return the number of instances this pool can hold, over all stripes
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return the number of slots a single thread searches, over its own stripe and its neighbours
+     */
+    public int getProbedCapacity() {
+        return probedSlots;
+    }
+
+    /**
+     * @return the number of instances this pool has created because none could be reused
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    private int stripeStart() {
+        int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return (hash & (STRIPES - 1)) * capacityPerStripe;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Yahoo Inc.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ *   http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yahoo.javatraits.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runtime lookups of the traits of an object:
+ * <pre>
+ * if (Traits.has(shape, Rectangular.class)) {
+ *     IRectangular rect = Traits.as(shape, IRectangular.class);
+ *     ...
+ * }
+ * </pre>
+ * The generated interface of each trait and the traits of each class are resolved once per class from the
+ * {@link TraitIndex} and cached in {@link ClassValue}s, so later lookups don't use reflection or type checks.
+ * Traits that aren't in the index are resolved by the naming convention of the generated interfaces.
+ */
+public final class Traits {
+
+    private static final String INTERFACE_PREFIX = "I";
+
+    private static final Class<?> NO_TRAIT = Void.class; // ClassValue can't hold null
+
+    private static final ClassValue<Class<?>> TRAIT_INTERFACES = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> trait) {
+            String interfaceName = TraitIndex.getDefault().getInterfaceName(trait.getName());
+            if (interfaceName == null) {
+                interfaceName = getPackagePrefix(trait) + INTERFACE_PREFIX + trait.getSimpleName();
+            }
+            try {
+                return Class.forName(interfaceName, false, trait.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException(trait.getName() + " is not a trait", e);
+            }
+        }
+    };
+
+    private static final ClassValue<Class<?>> INTERFACE_TRAITS = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> iface) {
+            String traitName = TraitIndex.getDefault().getTraitNameOfInterface(iface.getName());
+            if (traitName == null) {
+                String simpleName = iface.getSimpleName();
+                if (!iface.isInterface() || !simpleName.startsWith(INTERFACE_PREFIX)) {
+                    return NO_TRAIT;
+                }
+                traitName = getPackagePrefix(iface) + simpleName.substring(INTERFACE_PREFIX.length());
+            }
+            try {
+                Class<?> trait = Class.forName(traitName, false, iface.getClassLoader());
+                return !trait.isInterface() && TRAIT_INTERFACES.get(trait) == iface ? trait : NO_TRAIT;
+            } catch (ClassNotFoundException e) {
+                return NO_TRAIT;
+            }
+        }
+    };
+
+    private static final ClassValue<List<Class<?>>> CLASS_TRAITS = new ClassValue<List<Class<?>>>() {
+        @Override
+        protected List<Class<?>> computeValue(Class<?> cls) {
+            List<Class<?>> result = new ArrayList<Class<?>>();
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Class<?> trait : TraitIndex.getDefault().getTraits(c)) {
+                    addTrait(result, trait);
+                }
+            }
+            // Classes that aren't indexed, like the ones spun up by TraitMixer, have their traits' interfaces
+            for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+                addInterfaceTraits(result, c);
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        private void addInterfaceTraits(List<Class<?>> result, Class<?> cls) {
+            for (Class<?> iface : cls.getInterfaces()) {
+                Class<?> trait = INTERFACE_TRAITS.get(iface);
+                if (trait != NO_TRAIT) {
+                    addTrait(result, trait);
+                }
+                addInterfaceTraits(result, iface);
+            }
+        }
+
+        private void addTrait(List<Class<?>> result, Class<?> trait) {
+            if (!result.contains(trait)) {
+                result.add(trait);
+            }
+        }
+    };
+
+    private Traits() {
+        // No instances
+    }
+
+    private static String getPackagePrefix(Class<?> cls) {
+        return cls.getPackage() != null ? cls.getPackage().getName() + "." : "";
+    }
+
+    /**
+     * @return true if the given object's class or one of its superclasses uses the given trait, or implements
+     * the interface generated for it
+     * @throws IllegalArgumentException if the given class isn't a trait
+     */
+    public static boolean has(Object obj, Class<?> trait) {
+        if (obj != null && CLASS_TRAITS.get(obj.getClass()).contains(trait)) {
+            return true;
+        }
+        TRAIT_INTERFACES.get(trait); // Rejects classes that aren't traits
+        return false;
+    }
+
+    /**
+     * @return the given object as the given generated trait interface, or null if it doesn't have the trait
+     * @throws IllegalArgumentException if the given class isn't an interface generated for a trait
+     */
+    public static <I> I as(Object obj, Class<I> traitInterface) {
+        Class<?> trait = INTERFACE_TRAITS.get(traitInterface);
+        if (trait == NO_TRAIT) {
+            throw new IllegalArgumentException(traitInterface.getName() + " is not a trait interface");
+        }
+        return has(obj, trait) ? traitInterface.cast(obj) : null;
+    }
+
+    /**
+     * @return the interface generated for the given trait
+     * @throws IllegalArgumentException if the given class isn't a trait
+     */
+    public static Class<?> interfaceOf(Class<?> trait) {
+        return TRAIT_INTERFACES.get(trait);
+    }
+
+    /**
+     * @return the traits used by the given class or its superclasses through {@literal @}HasTraits, as listed
+     * in the trait index, followed by the traits whose generated interfaces it implements otherwise
+     */
+    public static List<Class<?>> traitsOf(Class<?> cls) {
+        return CLASS_TRAITS.get(cls);
+    }
+}